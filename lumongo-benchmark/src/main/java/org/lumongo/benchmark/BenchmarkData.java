@@ -0,0 +1,120 @@
+package org.lumongo.benchmark;
+
+import org.bson.Document;
+import org.lumongo.DefaultAnalyzers;
+import org.lumongo.cluster.message.Lumongo.FacetAs;
+import org.lumongo.cluster.message.Lumongo.FieldConfig.FieldType;
+import org.lumongo.cluster.message.Lumongo.IndexSettings;
+import org.lumongo.fields.FieldConfigBuilder;
+
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Generates the same documents and index settings on every run so results from different builds can be compared
+ */
+public class BenchmarkData {
+
+	/** title and body analyzed as text */
+	public static final String TEXT = "text";
+	/** text plus keyword fields that are faceted */
+	public static final String TEXT_FACET = "textFacet";
+	/** text, facets, numeric and date fields indexed and sortable */
+	public static final String FULL = "full";
+
+	public static final String TITLE = "title";
+	public static final String BODY = "body";
+	public static final String CATEGORY = "category";
+	public static final String TAG = "tag";
+	public static final String YEAR = "year";
+	public static final String RATING = "rating";
+	public static final String PUBLISHED = "published";
+	public static final String ACTIVE = "active";
+
+	private static final int VOCABULARY_SIZE = 5000;
+	private static final int CATEGORIES = 50;
+	private static final int TAGS = 500;
+
+	private final Random random;
+	private final String[] vocabulary;
+
+	public BenchmarkData(long seed) {
+		this.random = new Random(seed);
+		this.vocabulary = new String[VOCABULARY_SIZE];
+		for (int i = 0; i < VOCABULARY_SIZE; i++) {
+			vocabulary[i] = randomWord();
+		}
+	}
+
+	private String randomWord() {
+		int length = 3 + random.nextInt(8);
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('a' + random.nextInt(26)));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Words are picked with a skewed distribution so some terms are common and most are rare, as in natural text
+	 */
+	public String getWord() {
+		double r = random.nextDouble();
+		return vocabulary[(int) (r * r * r * VOCABULARY_SIZE)];
+	}
+
+	/**
+	 * @return one of the most common words, which matches many documents
+	 */
+	public String getCommonWord(int i) {
+		return vocabulary[i % 10];
+	}
+
+	private String getText(int words) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < words; i++) {
+			if (i != 0) {
+				sb.append(' ');
+			}
+			sb.append(getWord());
+		}
+		return sb.toString();
+	}
+
+	public Document createDocument(int bodyWords) {
+		Document document = new Document();
+		document.put(TITLE, getText(8));
+		document.put(BODY, getText(bodyWords));
+		document.put(CATEGORY, "category" + random.nextInt(CATEGORIES));
+		document.put(TAG, "tag" + random.nextInt(TAGS));
+		document.put(YEAR, 1950 + random.nextInt(70));
+		document.put(RATING, random.nextDouble() * 5);
+		document.put(PUBLISHED, new Date(946684800000L + (long) random.nextInt(6000) * 86400000L));
+		document.put(ACTIVE, random.nextBoolean());
+		return document;
+	}
+
+	public static IndexSettings getIndexSettings(String fieldMix) {
+		org.lumongo.client.config.IndexConfig indexConfig = new org.lumongo.client.config.IndexConfig(BODY);
+		indexConfig.setStoreDocumentInIndex(true);
+		indexConfig.setStoreDocumentInMongo(false);
+
+		indexConfig.addFieldConfig(FieldConfigBuilder.create(TITLE, FieldType.STRING).indexAs(DefaultAnalyzers.STANDARD));
+		indexConfig.addFieldConfig(FieldConfigBuilder.create(BODY, FieldType.STRING).indexAs(DefaultAnalyzers.STANDARD));
+
+		if (TEXT_FACET.equals(fieldMix) || FULL.equals(fieldMix)) {
+			indexConfig.addFieldConfig(FieldConfigBuilder.create(CATEGORY, FieldType.STRING).indexAs(DefaultAnalyzers.LC_KEYWORD).facet());
+			indexConfig.addFieldConfig(FieldConfigBuilder.create(TAG, FieldType.STRING).indexAs(DefaultAnalyzers.LC_KEYWORD).facet());
+		}
+
+		if (FULL.equals(fieldMix)) {
+			indexConfig.addFieldConfig(FieldConfigBuilder.create(YEAR, FieldType.NUMERIC_INT).index().sort());
+			indexConfig.addFieldConfig(FieldConfigBuilder.create(RATING, FieldType.NUMERIC_DOUBLE).index().sort());
+			indexConfig.addFieldConfig(
+					FieldConfigBuilder.create(PUBLISHED, FieldType.DATE).index().sort().facetAs(FacetAs.DateHandling.DATE_YYYY_MM_DD));
+			indexConfig.addFieldConfig(FieldConfigBuilder.create(ACTIVE, FieldType.BOOL).index());
+		}
+
+		return indexConfig.getIndexSettings();
+	}
+}
@@ -0,0 +1,107 @@
+package org.lumongo.benchmark;
+
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.lumongo.cluster.message.Lumongo.FacetAs;
+import org.lumongo.cluster.message.Lumongo.FieldConfig;
+import org.lumongo.cluster.message.Lumongo.IndexSettings;
+import org.lumongo.server.config.IndexConfig;
+import org.lumongo.server.index.IndexOperationLatencies;
+import org.lumongo.server.index.IndexSegmentInterface;
+import org.lumongo.server.index.LumongoAnalyzerFactory;
+import org.lumongo.server.index.LumongoSegment;
+import org.lumongo.server.search.QueryLatencies;
+import org.lumongo.storage.lucene.DistributedDirectory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A single {@link LumongoSegment} stored in a {@link MemoryNosqlDirectory} with its source documents in a {@link MemoryDocumentStorage},
+ * configured the way LumongoIndex configures segments but without Mongo or Hazelcast
+ */
+public class BenchmarkSegment implements IndexSegmentInterface {
+
+	private static final String INDEX_NAME = "benchmark";
+	private static final int RAM_BUFFER_MB = 128;
+
+	private final IndexConfig indexConfig;
+	private final LumongoAnalyzerFactory lumongoAnalyzerFactory;
+	private final QueryLatencies queryLatencies;
+	private final IndexOperationLatencies operationLatencies;
+	private final LumongoSegment segment;
+
+	public BenchmarkSegment(IndexSettings indexSettings) throws Exception {
+		this.indexConfig = new IndexConfig(INDEX_NAME, 1, indexSettings);
+		this.lumongoAnalyzerFactory = new LumongoAnalyzerFactory(indexConfig);
+		this.queryLatencies = new QueryLatencies();
+		this.operationLatencies = new IndexOperationLatencies();
+		this.segment = new LumongoSegment(0, this, indexConfig, getFacetsConfig(), new MemoryDocumentStorage(INDEX_NAME));
+	}
+
+	private FacetsConfig getFacetsConfig() {
+		FacetsConfig facetsConfig = new FacetsConfig();
+		for (String storedFieldName : indexConfig.getIndexedStoredFieldNames()) {
+			FieldConfig fc = indexConfig.getFieldConfig(storedFieldName);
+			for (FacetAs fa : fc.getFacetAsList()) {
+				facetsConfig.setMultiValued(fa.getFacetName(), true);
+			}
+		}
+		return facetsConfig;
+	}
+
+	public IndexConfig getIndexConfig() {
+		return indexConfig;
+	}
+
+	public LumongoSegment getSegment() {
+		return segment;
+	}
+
+	@Override
+	public IndexWriter getIndexWriter(int segmentNumber) throws Exception {
+		IndexWriterConfig config = new IndexWriterConfig(getPerFieldAnalyzer());
+		config.setMaxBufferedDocs(Integer.MAX_VALUE);
+		config.setRAMBufferSizeMB(RAM_BUFFER_MB);
+		config.setUseCompoundFile(false);
+		return new IndexWriter(new DistributedDirectory(new MemoryNosqlDirectory()), config);
+	}
+
+	@Override
+	public PerFieldAnalyzerWrapper getPerFieldAnalyzer() throws Exception {
+		return lumongoAnalyzerFactory.getPerFieldAnalyzer();
+	}
+
+	@Override
+	public DirectoryTaxonomyWriter getTaxoWriter(int segmentNumber) throws IOException {
+		return new DirectoryTaxonomyWriter(new DistributedDirectory(new MemoryNosqlDirectory()));
+	}
+
+	@Override
+	public Path getTranslogPath(int segmentNumber) {
+		//translog is not enabled in benchmark index settings
+		return null;
+	}
+
+	@Override
+	public void segmentChanged(int segmentNumber) {
+
+	}
+
+	@Override
+	public QueryLatencies getQueryLatencies() {
+		return queryLatencies;
+	}
+
+	@Override
+	public IndexOperationLatencies getOperationLatencies() {
+		return operationLatencies;
+	}
+
+	public void close() throws IOException {
+		segment.close(true);
+	}
+}
@@ -0,0 +1,166 @@
+package org.lumongo.benchmark;
+
+import com.google.protobuf.ByteString;
+import org.bson.Document;
+import org.lumongo.cluster.message.Lumongo.AssociatedDocument;
+import org.lumongo.cluster.message.Lumongo.FetchType;
+import org.lumongo.cluster.message.Lumongo.Metadata;
+import org.lumongo.cluster.message.Lumongo.ResultDocument;
+import org.lumongo.storage.rawfiles.DocumentStorage;
+import org.lumongo.storage.rawfiles.SourceDocument;
+import org.lumongo.util.LumongoUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps source and associated documents in memory so segments can be benchmarked without Mongo
+ */
+public class MemoryDocumentStorage implements DocumentStorage {
+
+	private final String indexName;
+	private final ConcurrentHashMap<String, ResultDocument> documents;
+	private final ConcurrentHashMap<String, ConcurrentHashMap<String, AssociatedDocument>> associatedDocuments;
+
+	public MemoryDocumentStorage(String indexName) {
+		this.indexName = indexName;
+		this.documents = new ConcurrentHashMap<>();
+		this.associatedDocuments = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public void storeSourceDocument(String uniqueId, long timeStamp, Document document, List<Metadata> metaDataList) throws Exception {
+		ResultDocument.Builder builder = ResultDocument.newBuilder().setUniqueId(uniqueId).setIndexName(indexName).setTimestamp(timeStamp);
+		builder.setDocument(ByteString.copyFrom(LumongoUtil.mongoDocumentToByteArray(document)));
+		builder.addAllMetadata(metaDataList);
+		documents.put(uniqueId, builder.build());
+	}
+
+	@Override
+	public Map<Integer, String> storeSourceDocuments(List<SourceDocument> sourceDocuments, long timeStamp) throws Exception {
+		for (SourceDocument sourceDocument : sourceDocuments) {
+			storeSourceDocument(sourceDocument.getUniqueId(), timeStamp, sourceDocument.getDocument(), sourceDocument.getMetadataList());
+		}
+		return new HashMap<>();
+	}
+
+	/**
+	 * Documents are kept as given, the compressed flag is only returned with them
+	 */
+	@Override
+	public void storeAssociatedDocument(AssociatedDocument doc) throws Exception {
+		associatedDocuments.computeIfAbsent(doc.getDocumentUniqueId(), k -> new ConcurrentHashMap<>())
+				.put(doc.getFilename(), doc.toBuilder().setIndexName(indexName).build());
+	}
+
+	@Override
+	public List<AssociatedDocument> getAssociatedDocuments(String uniqueId, FetchType fetchType) throws Exception {
+		Map<String, AssociatedDocument> docs = associatedDocuments.get(uniqueId);
+		if (FetchType.NONE.equals(fetchType) || docs == null) {
+			return Collections.emptyList();
+		}
+		List<AssociatedDocument> fetched = new ArrayList<>();
+		for (AssociatedDocument doc : docs.values()) {
+			fetched.add(fetch(doc, fetchType));
+		}
+		return fetched;
+	}
+
+	@Override
+	public AssociatedDocument getAssociatedDocument(String uniqueId, String filename, FetchType fetchType) throws Exception {
+		Map<String, AssociatedDocument> docs = associatedDocuments.get(uniqueId);
+		if (FetchType.NONE.equals(fetchType) || docs == null) {
+			return null;
+		}
+		AssociatedDocument doc = docs.get(filename);
+		return (doc != null) ? fetch(doc, fetchType) : null;
+	}
+
+	private static AssociatedDocument fetch(AssociatedDocument doc, FetchType fetchType) {
+		if (!FetchType.FULL.equals(fetchType)) {
+			return doc.toBuilder().clearDocument().build();
+		}
+		return doc;
+	}
+
+	@Override
+	public void getAssociatedDocuments(OutputStream outputstream) throws IOException {
+
+	}
+
+	@Override
+	public void storeAssociatedDocument(String uniqueId, String fileName, InputStream is, boolean compress, long timestamp,
+			Map<String, String> metadataMap) throws Exception {
+		AssociatedDocument.Builder builder = AssociatedDocument.newBuilder().setDocumentUniqueId(uniqueId).setFilename(fileName)
+				.setCompressed(compress).setTimestamp(timestamp);
+		builder.setDocument(ByteString.readFrom(is));
+		if (metadataMap != null) {
+			for (String key : metadataMap.keySet()) {
+				builder.addMetadata(Metadata.newBuilder().setKey(key).setValue(metadataMap.get(key)));
+			}
+		}
+		storeAssociatedDocument(builder.build());
+	}
+
+	@Override
+	public InputStream getAssociatedDocumentStream(String uniqueId, String filename) {
+		Map<String, AssociatedDocument> docs = associatedDocuments.get(uniqueId);
+		AssociatedDocument doc = (docs != null) ? docs.get(filename) : null;
+		return (doc != null) ? doc.getDocument().newInput() : null;
+	}
+
+	@Override
+	public List<String> getAssociatedFilenames(String uniqueId) throws Exception {
+		Map<String, AssociatedDocument> docs = associatedDocuments.get(uniqueId);
+		return (docs != null) ? new ArrayList<>(docs.keySet()) : new ArrayList<>();
+	}
+
+	@Override
+	public void deleteSourceDocument(String uniqueId) throws Exception {
+		documents.remove(uniqueId);
+	}
+
+	@Override
+	public void deleteAssociatedDocument(String uniqueId, String fileName) {
+		Map<String, AssociatedDocument> docs = associatedDocuments.get(uniqueId);
+		if (docs != null) {
+			docs.remove(fileName);
+		}
+	}
+
+	@Override
+	public void deleteAssociatedDocuments(String uniqueId) {
+		associatedDocuments.remove(uniqueId);
+	}
+
+	@Override
+	public void drop() {
+		documents.clear();
+		associatedDocuments.clear();
+	}
+
+	@Override
+	public void deleteAllDocuments() {
+		documents.clear();
+		associatedDocuments.clear();
+	}
+
+	@Override
+	public ResultDocument getSourceDocument(String uniqueId, FetchType fetchType) throws Exception {
+		if (FetchType.NONE.equals(fetchType)) {
+			return null;
+		}
+		ResultDocument resultDocument = documents.get(uniqueId);
+		if (resultDocument != null && !FetchType.FULL.equals(fetchType)) {
+			return resultDocument.toBuilder().clearDocument().build();
+		}
+		return resultDocument;
+	}
+}
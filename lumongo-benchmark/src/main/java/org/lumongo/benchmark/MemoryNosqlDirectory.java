@@ -0,0 +1,83 @@
+package org.lumongo.benchmark;
+
+import org.lumongo.storage.lucene.MongoDirectory;
+import org.lumongo.storage.lucene.NosqlDirectory;
+import org.lumongo.storage.lucene.NosqlFile;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link NosqlDirectory} of {@link MemoryNosqlFile} so the distributed directory classes can be measured without Mongo
+ */
+public class MemoryNosqlDirectory implements NosqlDirectory {
+
+	private final int blockSize;
+	private final ConcurrentHashMap<String, MemoryNosqlFile> nameToFileMap;
+	private final AtomicInteger fileCounter;
+
+	public MemoryNosqlDirectory() {
+		this(MongoDirectory.DEFAULT_BLOCK_SIZE);
+	}
+
+	public MemoryNosqlDirectory(int blockSize) {
+		this.blockSize = blockSize;
+		this.nameToFileMap = new ConcurrentHashMap<>();
+		this.fileCounter = new AtomicInteger();
+	}
+
+	@Override
+	public String[] getFileNames() throws IOException {
+		return nameToFileMap.keySet().toArray(new String[0]);
+	}
+
+	@Override
+	public NosqlFile getFileHandle(String fileName) throws IOException {
+		return getFileHandle(fileName, false);
+	}
+
+	@Override
+	public NosqlFile getFileHandle(String fileName, boolean createIfNotFound) throws IOException {
+		MemoryNosqlFile file = nameToFileMap.get(fileName);
+		if (file != null) {
+			return file;
+		}
+		if (!createIfNotFound) {
+			throw new FileNotFoundException(fileName);
+		}
+		nameToFileMap.putIfAbsent(fileName, new MemoryNosqlFile(fileName, (short) fileCounter.getAndIncrement(), blockSize));
+		return nameToFileMap.get(fileName);
+	}
+
+	@Override
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	@Override
+	public void updateFileMetadata(NosqlFile nosqlFile) throws IOException {
+
+	}
+
+	@Override
+	public void deleteFile(NosqlFile nosqlFile) throws IOException {
+		nameToFileMap.remove(nosqlFile.getFileName());
+	}
+
+	@Override
+	public void close() {
+
+	}
+
+	@Override
+	public void rename(String source, String dest) throws IOException {
+		MemoryNosqlFile file = nameToFileMap.remove(source);
+		if (file == null) {
+			throw new FileNotFoundException(source);
+		}
+		file.setFileName(dest);
+		nameToFileMap.put(dest, file);
+	}
+}
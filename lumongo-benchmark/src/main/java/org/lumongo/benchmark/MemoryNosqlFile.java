@@ -0,0 +1,161 @@
+package org.lumongo.benchmark;
+
+import org.lumongo.storage.lucene.NosqlFile;
+import org.lumongo.storage.lucene.ReadCursor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link NosqlFile} held in memory in fixed size blocks laid out the same way as {@link org.lumongo.storage.lucene.MongoFile} so reads
+ * through {@link org.lumongo.storage.lucene.DistributedIndexInput} cross block boundaries in the same places
+ */
+public class MemoryNosqlFile implements NosqlFile {
+
+	private final short fileNumber;
+	private final int blockSize;
+	private final List<byte[]> blocks;
+	private final CRC32 crc;
+
+	private String fileName;
+	private long fileLength;
+	private long lastModified;
+
+	public MemoryNosqlFile(String fileName, short fileNumber, int blockSize) {
+		this.fileName = fileName;
+		this.fileNumber = fileNumber;
+		this.blockSize = blockSize;
+		this.blocks = new ArrayList<>();
+		this.crc = new CRC32();
+		this.lastModified = System.currentTimeMillis();
+	}
+
+	private byte[] getBlock(int block) {
+		synchronized (blocks) {
+			while (blocks.size() <= block) {
+				blocks.add(new byte[blockSize]);
+			}
+			return blocks.get(block);
+		}
+	}
+
+	@Override
+	public String getFileName() {
+		return fileName;
+	}
+
+	@Override
+	public void setFileName(String fileName) {
+		this.fileName = fileName;
+	}
+
+	@Override
+	public short getFileNumber() {
+		return fileNumber;
+	}
+
+	@Override
+	public long getFileLength() {
+		return fileLength;
+	}
+
+	@Override
+	public void setFileLength(long fileLength) {
+		this.fileLength = fileLength;
+	}
+
+	@Override
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	@Override
+	public void setLastModified(long lastModified) {
+		this.lastModified = lastModified;
+	}
+
+	@Override
+	public void write(long position, byte b) throws IOException {
+		crc.update(b);
+		int block = (int) (position / blockSize);
+		getBlock(block)[(int) (position - ((long) block * blockSize))] = b;
+		fileLength = Math.max(position + 1, fileLength);
+	}
+
+	@Override
+	public void write(long position, byte[] b, int offset, int length) throws IOException {
+		crc.update(b, offset, length);
+		while (length > 0) {
+			int block = (int) (position / blockSize);
+			int blockOffset = (int) (position - ((long) block * blockSize));
+			int writeSize = Math.min(blockSize - blockOffset, length);
+			System.arraycopy(b, offset, getBlock(block), blockOffset, writeSize);
+			position += writeSize;
+			offset += writeSize;
+			length -= writeSize;
+		}
+		fileLength = Math.max(position, fileLength);
+	}
+
+	@Override
+	public void flush() throws IOException {
+
+	}
+
+	@Override
+	public byte readByte(ReadCursor cursor, long position) throws IOException {
+		int block = (int) (position / blockSize);
+		return getBlock(block)[(int) (position - ((long) block * blockSize))];
+	}
+
+	@Override
+	public void readBytes(ReadCursor cursor, long position, byte[] b, int offset, int length) throws IOException {
+		while (length > 0) {
+			int block = (int) (position / blockSize);
+			int blockOffset = (int) (position - ((long) block * blockSize));
+			int readSize = Math.min(blockSize - blockOffset, length);
+			System.arraycopy(getBlock(block), blockOffset, b, offset, readSize);
+			position += readSize;
+			offset += readSize;
+			length -= readSize;
+		}
+	}
+
+	@Override
+	public int readInt(ReadCursor cursor, long position) throws IOException {
+		return ((readByte(cursor, position) & 0xFF) << 24) | ((readByte(cursor, position + 1) & 0xFF) << 16) | ((readByte(cursor, position + 2) & 0xFF)
+				<< 8) | (readByte(cursor, position + 3) & 0xFF);
+	}
+
+	@Override
+	public long readLong(ReadCursor cursor, long position) throws IOException {
+		return (((long) readInt(cursor, position)) << 32) | (readInt(cursor, position + 4) & 0xFFFFFFFFL);
+	}
+
+	@Override
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	@Override
+	public void setCacheWrites(boolean cacheWrites) {
+		//nothing is cached
+	}
+
+	@Override
+	public long getChecksum() {
+		return crc.getValue();
+	}
+
+	@Override
+	public void resetChecksum() {
+		crc.reset();
+	}
+
+	@Override
+	public void close() {
+
+	}
+}
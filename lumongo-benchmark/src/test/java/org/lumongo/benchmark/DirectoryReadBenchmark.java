@@ -0,0 +1,116 @@
+package org.lumongo.benchmark;
+
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.lumongo.storage.lucene.DistributedDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a file through {@link DistributedDirectory} and {@link org.lumongo.storage.lucene.DistributedIndexInput} the way Lucene does,
+ * sequentially in chunks and at random positions.  The file is held in a {@link MemoryNosqlDirectory} so only the directory read path
+ * is measured
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DirectoryReadBenchmark {
+
+	private static final String FILE_NAME = "benchmark.bin";
+	private static final int POSITIONS = 1 << 16;
+
+	@Param({ "4096", "131072" })
+	public int blockSize;
+
+	@Param({ "16777216" })
+	public int fileSize;
+
+	@Param({ "1024" })
+	public int chunkSize;
+
+	private DistributedDirectory directory;
+	private IndexInput indexInput;
+
+	private byte[] buffer;
+	private long[] randomPositions;
+	private int positionIndex;
+
+	@Setup
+	public void setup() throws IOException {
+		directory = new DistributedDirectory(new MemoryNosqlDirectory(blockSize));
+
+		Random random = new Random(1);
+		byte[] bytes = new byte[fileSize];
+		random.nextBytes(bytes);
+		try (IndexOutput indexOutput = directory.createOutput(FILE_NAME, IOContext.DEFAULT)) {
+			indexOutput.writeBytes(bytes, bytes.length);
+		}
+
+		indexInput = directory.openInput(FILE_NAME, IOContext.DEFAULT);
+		buffer = new byte[chunkSize];
+
+		randomPositions = new long[POSITIONS];
+		for (int i = 0; i < POSITIONS; i++) {
+			randomPositions[i] = random.nextInt(fileSize - chunkSize);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		indexInput.close();
+		directory.close();
+	}
+
+	private long nextRandomPosition() {
+		return randomPositions[positionIndex++ & (POSITIONS - 1)];
+	}
+
+	@Benchmark
+	public byte[] readBytesSequential() throws IOException {
+		if (indexInput.getFilePointer() + chunkSize > fileSize) {
+			indexInput.seek(0);
+		}
+		indexInput.readBytes(buffer, 0, chunkSize);
+		return buffer;
+	}
+
+	@Benchmark
+	public byte[] readBytesRandom() throws IOException {
+		indexInput.seek(nextRandomPosition());
+		indexInput.readBytes(buffer, 0, chunkSize);
+		return buffer;
+	}
+
+	@Benchmark
+	public long readLongSequential() throws IOException {
+		if (indexInput.getFilePointer() + 8 > fileSize) {
+			indexInput.seek(0);
+		}
+		return indexInput.readLong();
+	}
+
+	@Benchmark
+	public long readLongRandom() throws IOException {
+		indexInput.seek(nextRandomPosition());
+		return indexInput.readLong();
+	}
+
+}
@@ -0,0 +1,57 @@
+package org.lumongo.benchmark;
+
+import org.bson.Document;
+import org.lumongo.util.LumongoUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts documents to and from the BSON bytes stored in the index and sent between nodes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DocumentSerializationBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int bodyWords;
+
+	private Document document;
+	private byte[] bytes;
+
+	@Setup
+	public void setup() {
+		document = new BenchmarkData(1).createDocument(bodyWords);
+		bytes = LumongoUtil.mongoDocumentToByteArray(document);
+	}
+
+	@Benchmark
+	public byte[] toByteArray() {
+		return LumongoUtil.mongoDocumentToByteArray(document);
+	}
+
+	@Benchmark
+	public Document fromByteArray() {
+		return LumongoUtil.byteArrayToMongoDocument(bytes);
+	}
+
+	@Benchmark
+	public Document roundTrip() {
+		return LumongoUtil.byteArrayToMongoDocument(LumongoUtil.mongoDocumentToByteArray(document));
+	}
+
+}
@@ -0,0 +1,281 @@
+package org.lumongo.benchmark;
+
+import com.mongodb.MongoClient;
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.lumongo.storage.lucene.BlockCodec;
+import org.lumongo.storage.lucene.DistributedDirectory;
+import org.lumongo.storage.lucene.MongoDirectory;
+import org.lumongo.storage.lucene.MongoFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Reads and writes a file through {@link MongoFile} with its block cache, flusher and block codec.  Mongo is mocked with collections that
+ * answer from memory so the cost of the storage layer is measured without the network.  Cached reads hit the block cache, uncached reads
+ * go through the window of a read once input and decode every block again
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MongoFileBenchmark {
+
+	private static final String FILE_NAME = "benchmark.bin";
+
+	@Param({ "16384", "131072" })
+	public int blockSize;
+
+	@Param({ "NONE", "LZ4" })
+	public String codec;
+
+	@Param({ "8388608" })
+	public int fileSize;
+
+	@Param({ "4096" })
+	public int chunkSize;
+
+	private ConcurrentHashMap<Long, Document> blocks;
+	private DistributedDirectory directory;
+	private IndexInput cachedInput;
+	private IndexInput uncachedInput;
+
+	private byte[] bytes;
+	private byte[] buffer;
+	private int writes;
+
+	@Setup
+	public void setup() throws IOException {
+		blocks = new ConcurrentHashMap<>();
+		MongoDirectory mongoDirectory = new MongoDirectory(mockMongo(blocks), "benchmark", "benchmark", false, blockSize, BlockCodec.valueOf(codec));
+		directory = new DistributedDirectory(mongoDirectory);
+
+		//words from a small vocabulary so the codecs have something to compress, like postings and stored fields
+		Random random = new Random(1);
+		bytes = new byte[fileSize];
+		for (int i = 0; i < fileSize; i++) {
+			bytes[i] = (byte) ('a' + random.nextInt(8));
+		}
+		try (IndexOutput indexOutput = directory.createOutput(FILE_NAME, IOContext.DEFAULT)) {
+			indexOutput.writeBytes(bytes, bytes.length);
+		}
+		MongoFile.clearCache();
+
+		cachedInput = directory.openInput(FILE_NAME, IOContext.DEFAULT);
+		uncachedInput = directory.openInput(FILE_NAME, IOContext.READONCE);
+		buffer = new byte[chunkSize];
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		cachedInput.close();
+		uncachedInput.close();
+		directory.close();
+		MongoFile.clearCache();
+	}
+
+	private byte[] readSequential(IndexInput indexInput) throws IOException {
+		if (indexInput.getFilePointer() + chunkSize > fileSize) {
+			indexInput.seek(0);
+		}
+		indexInput.readBytes(buffer, 0, chunkSize);
+		return buffer;
+	}
+
+	@Benchmark
+	public byte[] readCached() throws IOException {
+		return readSequential(cachedInput);
+	}
+
+	@Benchmark
+	public byte[] readUncached() throws IOException {
+		return readSequential(uncachedInput);
+	}
+
+	/**
+	 * Writes a file of one block and deletes it, so each call creates, compresses and bulk writes a block
+	 */
+	@Benchmark
+	public int writeBlock() throws IOException {
+		String fileName = "write" + (writes++);
+		try (IndexOutput indexOutput = directory.createOutput(fileName, IOContext.DEFAULT)) {
+			indexOutput.writeBytes(bytes, blockSize);
+		}
+		directory.deleteFile(fileName);
+		return blocks.size();
+	}
+
+	private static long getKey(Document document) {
+		int fileNumber = ((Number) document.get(MongoDirectory.FILE_NUMBER)).intValue();
+		return getKey(fileNumber, ((Number) document.get(MongoDirectory.BLOCK_NUMBER)).intValue());
+	}
+
+	private static long getKey(int fileNumber, int blockNumber) {
+		return ((long) fileNumber << 32) | blockNumber;
+	}
+
+	/**
+	 * A client whose block collection keeps blocks in the given map.  The files collection finds nothing, the directory keeps the files it
+	 * creates
+	 */
+	@SuppressWarnings("unchecked")
+	private static MongoClient mockMongo(ConcurrentHashMap<Long, Document> blocks) {
+		MongoCollection<Document> filesCollection = mock(MongoCollection.class);
+		FindIterable<Document> noFiles = findIterable(Collections.emptyList());
+		when(filesCollection.find()).thenReturn(noFiles);
+		when(filesCollection.find(any(Bson.class))).thenReturn(noFiles);
+
+		//one iterable answers every block query from the query last made on the thread, creating a mock per query costs more than the read
+		ThreadLocal<Document> blockQuery = new ThreadLocal<>();
+		FindIterable<Document> blocksFound = mock(FindIterable.class);
+		when(blocksFound.first()).thenAnswer(invocation -> {
+			List<Document> found = findBlocks(blocks, blockQuery.get());
+			return found.isEmpty() ? null : found.get(0);
+		});
+		when(blocksFound.iterator()).thenAnswer(invocation -> new ListCursor(findBlocks(blocks, blockQuery.get()).iterator()));
+
+		MongoCollection<Document> blocksCollection = mock(MongoCollection.class);
+		when(blocksCollection.find(any(Bson.class))).thenAnswer(invocation -> {
+			blockQuery.set((Document) invocation.getArguments()[0]);
+			return blocksFound;
+		});
+		when(blocksCollection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenAnswer(invocation -> {
+			for (ReplaceOneModel<Document> model : (List<ReplaceOneModel<Document>>) invocation.getArguments()[0]) {
+				blocks.put(getKey(model.getReplacement()), model.getReplacement());
+			}
+			return null;
+		});
+		when(blocksCollection.deleteMany(any(Bson.class))).thenAnswer(invocation -> {
+			int fileNumber = ((Number) ((Document) invocation.getArguments()[0]).get(MongoDirectory.FILE_NUMBER)).intValue();
+			blocks.keySet().removeIf(key -> (key >>> 32) == fileNumber);
+			return null;
+		});
+
+		MongoDatabase database = mock(MongoDatabase.class);
+		when(database.getCollection(anyString())).thenAnswer(
+				invocation -> ((String) invocation.getArguments()[0]).endsWith(MongoDirectory.BLOCKS_SUFFIX) ? blocksCollection : filesCollection);
+
+		MongoClient mongo = mock(MongoClient.class);
+		when(mongo.getDatabase(anyString())).thenReturn(database);
+		return mongo;
+	}
+
+	/**
+	 * Answers the block queries of {@link MongoFile}, a single block number, a range or a list
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<Document> findBlocks(ConcurrentHashMap<Long, Document> blocks, Document query) {
+		int fileNumber = ((Number) query.get(MongoDirectory.FILE_NUMBER)).intValue();
+		Object blockNumber = query.get(MongoDirectory.BLOCK_NUMBER);
+
+		List<Integer> blockNumbers = new ArrayList<>();
+		if (blockNumber instanceof Document) {
+			Document condition = (Document) blockNumber;
+			if (condition.containsKey("$in")) {
+				blockNumbers.addAll((List<Integer>) condition.get("$in"));
+			}
+			else {
+				for (int block = condition.getInteger("$gte"); block < condition.getInteger("$lt"); block++) {
+					blockNumbers.add(block);
+				}
+			}
+		}
+		else {
+			blockNumbers.add(((Number) blockNumber).intValue());
+		}
+
+		List<Document> found = new ArrayList<>(blockNumbers.size());
+		for (int block : blockNumbers) {
+			Document document = blocks.get(getKey(fileNumber, block));
+			if (document != null) {
+				found.add(document);
+			}
+		}
+		return found;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static FindIterable<Document> findIterable(List<Document> documents) {
+		FindIterable<Document> findIterable = mock(FindIterable.class);
+		when(findIterable.first()).thenReturn(documents.isEmpty() ? null : documents.get(0));
+		when(findIterable.iterator()).thenAnswer(invocation -> new ListCursor(documents.iterator()));
+		return findIterable;
+	}
+
+	private static class ListCursor implements MongoCursor<Document> {
+		private final Iterator<Document> iterator;
+
+		public ListCursor(Iterator<Document> iterator) {
+			this.iterator = iterator;
+		}
+
+		@Override
+		public void close() {
+
+		}
+
+		@Override
+		public boolean hasNext() {
+			return iterator.hasNext();
+		}
+
+		@Override
+		public Document next() {
+			return iterator.next();
+		}
+
+		@Override
+		public Document tryNext() {
+			return iterator.hasNext() ? iterator.next() : null;
+		}
+
+		@Override
+		public ServerCursor getServerCursor() {
+			return null;
+		}
+
+		@Override
+		public ServerAddress getServerAddress() {
+			return null;
+		}
+	}
+
+}
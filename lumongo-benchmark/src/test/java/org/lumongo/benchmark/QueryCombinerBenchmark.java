@@ -0,0 +1,89 @@
+package org.lumongo.benchmark;
+
+import org.lumongo.cluster.message.Lumongo.IndexSegmentResponse;
+import org.lumongo.cluster.message.Lumongo.InternalQueryResponse;
+import org.lumongo.cluster.message.Lumongo.QueryRequest;
+import org.lumongo.cluster.message.Lumongo.QueryResponse;
+import org.lumongo.cluster.message.Lumongo.ScoredResult;
+import org.lumongo.cluster.message.Lumongo.SegmentResponse;
+import org.lumongo.server.index.LumongoIndex;
+import org.lumongo.server.search.QueryCombiner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Merges the responses of every segment of an index into one page.  Each segment returns a full page so no segment is short and every
+ * result is considered by the merge.  The index is a mock since the combiner only reads its segment count and tolerance
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class QueryCombinerBenchmark {
+
+	private static final String INDEX_NAME = "benchmark";
+
+	@Param({ "1", "8", "32" })
+	public int segments;
+
+	@Param({ "10", "100", "1000" })
+	public int amount;
+
+	private Map<String, LumongoIndex> indexMap;
+	private QueryRequest request;
+	private List<InternalQueryResponse> responses;
+
+	@Setup
+	public void setup() {
+		LumongoIndex index = mock(LumongoIndex.class);
+		when(index.getNumberOfSegments()).thenReturn(segments);
+		when(index.getSegmentTolerance()).thenReturn(0.05);
+		indexMap = Collections.singletonMap(INDEX_NAME, index);
+
+		request = QueryRequest.newBuilder().addIndex(INDEX_NAME).setAmount(amount).build();
+
+		Random random = new Random(1);
+		IndexSegmentResponse.Builder indexSegmentResponse = IndexSegmentResponse.newBuilder().setIndexName(INDEX_NAME);
+		for (int segment = 0; segment < segments; segment++) {
+			SegmentResponse.Builder segmentResponse = SegmentResponse.newBuilder().setSegmentNumber(segment).setIndexName(INDEX_NAME)
+					.setTotalHits(amount * 10);
+			float score = 10;
+			for (int i = 0; i < amount; i++) {
+				score -= random.nextFloat() * 0.01f;
+				segmentResponse.addScoredResult(
+						ScoredResult.newBuilder().setUniqueId("doc" + segment + "_" + i).setScore(score).setDocId(i).setIndexName(INDEX_NAME).setSegment(segment)
+								.setResultIndex(i).setTimestamp(i));
+			}
+			indexSegmentResponse.addSegmentReponse(segmentResponse);
+		}
+		responses = Collections.singletonList(InternalQueryResponse.newBuilder().addIndexSegmentResponse(indexSegmentResponse).build());
+	}
+
+	@Benchmark
+	public QueryResponse getQueryResponse() throws Exception {
+		QueryCombiner queryCombiner = new QueryCombiner(indexMap, request, responses);
+		queryCombiner.validate();
+		return queryCombiner.getQueryResponse();
+	}
+
+}
@@ -0,0 +1,72 @@
+package org.lumongo.benchmark;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexes documents into one segment with different mixes of field configs.  Unique ids repeat after {@link #UNIQUE_IDS} documents so
+ * longer runs also measure updates
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class SegmentIndexBenchmark {
+
+	private static final int DOCUMENTS = 1000;
+	private static final int UNIQUE_IDS = 100000;
+
+	@Param({ BenchmarkData.TEXT, BenchmarkData.TEXT_FACET, BenchmarkData.FULL })
+	public String fieldMix;
+
+	@Param({ "100" })
+	public int bodyWords;
+
+	private BenchmarkSegment benchmarkSegment;
+	private Document[] documents;
+	private int counter;
+
+	@Setup(Level.Trial)
+	public void setupDocuments() {
+		BenchmarkData benchmarkData = new BenchmarkData(1);
+		documents = new Document[DOCUMENTS];
+		for (int i = 0; i < DOCUMENTS; i++) {
+			documents[i] = benchmarkData.createDocument(bodyWords);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setupSegment() throws Exception {
+		benchmarkSegment = new BenchmarkSegment(BenchmarkData.getIndexSettings(fieldMix));
+		counter = 0;
+	}
+
+	@TearDown(Level.Iteration)
+	public void closeSegment() throws Exception {
+		benchmarkSegment.close();
+	}
+
+	@Benchmark
+	public void index() throws Exception {
+		int i = counter++;
+		benchmarkSegment.getSegment().index("doc" + (i % UNIQUE_IDS), i, documents[i % DOCUMENTS], Collections.emptyList());
+	}
+
+}
@@ -0,0 +1,121 @@
+package org.lumongo.benchmark;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.TermQuery;
+import org.lumongo.cluster.message.Lumongo.CountRequest;
+import org.lumongo.cluster.message.Lumongo.FacetRequest;
+import org.lumongo.cluster.message.Lumongo.FetchType;
+import org.lumongo.cluster.message.Lumongo.FieldSort;
+import org.lumongo.cluster.message.Lumongo.HighlightRequest;
+import org.lumongo.cluster.message.Lumongo.LMFacet;
+import org.lumongo.cluster.message.Lumongo.SegmentResponse;
+import org.lumongo.cluster.message.Lumongo.SortRequest;
+import org.lumongo.server.index.LumongoSegment;
+import org.lumongo.server.search.QueryWithFilters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches one segment with and without facets, sort and highlighting.  The segment is built once per trial and the segment query result
+ * cache is bypassed so every invocation searches
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class SegmentQueryBenchmark {
+
+	public static final String PLAIN = "plain";
+	public static final String FACETS = "facets";
+	public static final String SORT = "sort";
+	public static final String HIGHLIGHT = "highlight";
+
+	@Param({ PLAIN, FACETS, SORT, HIGHLIGHT })
+	public String mode;
+
+	@Param({ "10", "100" })
+	public int amount;
+
+	@Param({ "50000" })
+	public int documents;
+
+	private BenchmarkSegment benchmarkSegment;
+
+	private QueryWithFilters queryWithFilters;
+	private FacetRequest facetRequest;
+	private SortRequest sortRequest;
+	private FetchType resultFetchType;
+	private List<HighlightRequest> highlightList;
+
+	@Setup
+	public void setup() throws Exception {
+		benchmarkSegment = new BenchmarkSegment(BenchmarkData.getIndexSettings(BenchmarkData.FULL));
+		LumongoSegment segment = benchmarkSegment.getSegment();
+
+		BenchmarkData benchmarkData = new BenchmarkData(1);
+		for (int i = 0; i < documents; i++) {
+			segment.index("doc" + i, i, benchmarkData.createDocument(100), Collections.emptyList());
+		}
+		segment.forceCommit();
+
+		BooleanQuery.Builder query = new BooleanQuery.Builder();
+		query.add(new TermQuery(new Term(BenchmarkData.BODY, benchmarkData.getCommonWord(0))), BooleanClause.Occur.SHOULD);
+		query.add(new TermQuery(new Term(BenchmarkData.BODY, benchmarkData.getCommonWord(1))), BooleanClause.Occur.SHOULD);
+		queryWithFilters = new QueryWithFilters(query.build());
+
+		facetRequest = null;
+		sortRequest = null;
+		resultFetchType = FetchType.NONE;
+		highlightList = Collections.emptyList();
+
+		if (FACETS.equals(mode)) {
+			facetRequest = FacetRequest.newBuilder().addCountRequest(CountRequest.newBuilder().setFacetField(LMFacet.newBuilder().setLabel(BenchmarkData.CATEGORY)))
+					.addCountRequest(CountRequest.newBuilder().setFacetField(LMFacet.newBuilder().setLabel(BenchmarkData.TAG))).build();
+		}
+		else if (SORT.equals(mode)) {
+			sortRequest = SortRequest.newBuilder().addFieldSort(FieldSort.newBuilder().setSortField(BenchmarkData.YEAR).setDirection(FieldSort.Direction.DESCENDING))
+					.addFieldSort(FieldSort.newBuilder().setSortField(BenchmarkData.RATING)).build();
+		}
+		else if (HIGHLIGHT.equals(mode)) {
+			resultFetchType = FetchType.FULL;
+			highlightList = Collections.singletonList(HighlightRequest.newBuilder().setField(BenchmarkData.BODY).build());
+		}
+
+		//opens a searcher that sees every document before measuring
+		query(true);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		benchmarkSegment.close();
+	}
+
+	private SegmentResponse query(boolean realtime) throws Exception {
+		return benchmarkSegment.getSegment().querySegment(queryWithFilters, amount, null, facetRequest, sortRequest, null, resultFetchType,
+				Collections.emptyList(), Collections.emptyList(), highlightList, Collections.emptyList(), realtime, null);
+	}
+
+	@Benchmark
+	public SegmentResponse querySegment() throws Exception {
+		return query(false);
+	}
+
+}
@@ -0,0 +1,56 @@
+package org.lumongo.client.command;
+
+import com.google.protobuf.RpcController;
+import org.lumongo.client.command.base.SimpleCommand;
+import org.lumongo.client.pool.LumongoConnection;
+import org.lumongo.client.result.BatchStoreResult;
+import org.lumongo.cluster.message.Lumongo.BatchStoreRequest;
+import org.lumongo.cluster.message.Lumongo.BatchStoreResponse;
+import org.lumongo.cluster.message.Lumongo.ExternalService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchStore extends SimpleCommand<BatchStoreRequest, BatchStoreResult> {
+	
+	private List<Store> stores;
+	
+	public BatchStore() {
+		stores = new ArrayList<Store>();
+	}
+	
+	public BatchStore addStore(Store store) {
+		stores.add(store);
+		return this;
+	}
+	
+	public List<Store> getStores() {
+		return stores;
+	}
+	
+	public int size() {
+		return stores.size();
+	}
+	
+	@Override
+	public BatchStoreRequest getRequest() {
+		BatchStoreRequest.Builder batchStoreRequest = BatchStoreRequest.newBuilder();
+		
+		for (Store store : stores) {
+			batchStoreRequest.addStoreRequest(store.getRequest());
+		}
+		
+		return batchStoreRequest.build();
+	}
+	
+	@Override
+	public BatchStoreResult execute(LumongoConnection lumongoConnection) throws Exception {
+		ExternalService.BlockingInterface service = lumongoConnection.getService();
+		RpcController controller = lumongoConnection.getController();
+		
+		BatchStoreResponse batchStoreResponse = service.batchStore(controller, getRequest());
+		
+		return new BatchStoreResult(batchStoreResponse);
+	}
+	
+}
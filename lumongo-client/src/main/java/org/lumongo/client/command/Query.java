@@ -56,6 +56,7 @@ public class Query extends SimpleCommand<QueryRequest, QueryResult> {
 	private List<Lumongo.FieldSimilarity> fieldSimilarities = Collections.emptyList();
 	private Boolean dismax;
 	private Float dismaxTie;
+	private Boolean realtime;
 
 	public Query(String index, String query, int amount) {
 		this(new String[] { index }, query, amount);
@@ -387,6 +388,15 @@ public class Query extends SimpleCommand<QueryRequest, QueryResult> {
 		return this;
 	}
 
+	public Boolean getRealtime() {
+		return realtime;
+	}
+
+	public Query setRealtime(Boolean realtime) {
+		this.realtime = realtime;
+		return this;
+	}
+
 	public Set<String> getDocumentMaskedFields() {
 		return documentMaskedFields;
 	}
@@ -480,6 +490,10 @@ public class Query extends SimpleCommand<QueryRequest, QueryResult> {
 			requestBuilder.setResultFetchType(resultFetchType);
 		}
 
+		if (realtime != null) {
+			requestBuilder.setRealtime(realtime);
+		}
+
 		requestBuilder.addAllDocumentFields(documentFields);
 		requestBuilder.addAllDocumentMaskedFields(documentMaskedFields);
 
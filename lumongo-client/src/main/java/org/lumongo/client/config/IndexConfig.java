@@ -24,6 +24,13 @@ public class IndexConfig {
 	private Boolean storeDocumentInMongo;
 	private Boolean storeDocumentInIndex;
 	private Boolean storeIndexOnDisk;
+	private Integer refreshIntervalMs;
+	private Boolean translog;
+	private Boolean adaptiveRequestFactor;
+	private Double minRequestFactor;
+	private Double maxRequestFactor;
+	private Boolean globalTermStats;
+	private IndexSettings.BlockCompression blockCompression;
 
 	private TreeMap<String, FieldConfig> fieldMap;
 	private TreeMap<String, AnalyzerSettings> analyzerSettingsMap;
@@ -199,6 +206,62 @@ public class IndexConfig {
 		this.storeIndexOnDisk = storeIndexOnDisk;
 	}
 
+	public Integer getRefreshIntervalMs() {
+		return refreshIntervalMs;
+	}
+
+	public void setRefreshIntervalMs(Integer refreshIntervalMs) {
+		this.refreshIntervalMs = refreshIntervalMs;
+	}
+
+	public Boolean getTranslog() {
+		return translog;
+	}
+
+	public void setTranslog(Boolean translog) {
+		this.translog = translog;
+	}
+
+	public Boolean getAdaptiveRequestFactor() {
+		return adaptiveRequestFactor;
+	}
+
+	public void setAdaptiveRequestFactor(Boolean adaptiveRequestFactor) {
+		this.adaptiveRequestFactor = adaptiveRequestFactor;
+	}
+
+	public Double getMinRequestFactor() {
+		return minRequestFactor;
+	}
+
+	public void setMinRequestFactor(Double minRequestFactor) {
+		this.minRequestFactor = minRequestFactor;
+	}
+
+	public Double getMaxRequestFactor() {
+		return maxRequestFactor;
+	}
+
+	public void setMaxRequestFactor(Double maxRequestFactor) {
+		this.maxRequestFactor = maxRequestFactor;
+	}
+
+	public Boolean getGlobalTermStats() {
+		return globalTermStats;
+	}
+
+	public void setGlobalTermStats(Boolean globalTermStats) {
+		this.globalTermStats = globalTermStats;
+	}
+
+	public IndexSettings.BlockCompression getBlockCompression() {
+		return blockCompression;
+	}
+
+	public void setBlockCompression(IndexSettings.BlockCompression blockCompression) {
+		this.blockCompression = blockCompression;
+	}
+
 	public IndexSettings getIndexSettings() {
 		IndexSettings.Builder isb = IndexSettings.newBuilder();
 		if (defaultSearchField != null) {
@@ -243,6 +306,28 @@ public class IndexConfig {
 			isb.setStoreIndexOnDisk(storeIndexOnDisk);
 		}
 
+		if (refreshIntervalMs != null) {
+			isb.setRefreshIntervalMs(refreshIntervalMs);
+		}
+		if (translog != null) {
+			isb.setTranslog(translog);
+		}
+		if (adaptiveRequestFactor != null) {
+			isb.setAdaptiveRequestFactor(adaptiveRequestFactor);
+		}
+		if (minRequestFactor != null) {
+			isb.setMinRequestFactor(minRequestFactor);
+		}
+		if (maxRequestFactor != null) {
+			isb.setMaxRequestFactor(maxRequestFactor);
+		}
+		if (globalTermStats != null) {
+			isb.setGlobalTermStats(globalTermStats);
+		}
+		if (blockCompression != null) {
+			isb.setBlockCompression(blockCompression);
+		}
+
 		for (String fieldName : fieldMap.keySet()) {
 			FieldConfig fieldConfig = fieldMap.get(fieldName);
 			isb.addFieldConfig(fieldConfig);
@@ -268,6 +353,13 @@ public class IndexConfig {
 		this.storeDocumentInIndex = indexSettings.getStoreDocumentInIndex();
 		this.storeDocumentInMongo = indexSettings.getStoreDocumentInMongo();
 		this.storeIndexOnDisk = indexSettings.getStoreIndexOnDisk();
+		this.refreshIntervalMs = indexSettings.getRefreshIntervalMs();
+		this.translog = indexSettings.getTranslog();
+		this.adaptiveRequestFactor = indexSettings.getAdaptiveRequestFactor();
+		this.minRequestFactor = indexSettings.getMinRequestFactor();
+		this.maxRequestFactor = indexSettings.getMaxRequestFactor();
+		this.globalTermStats = indexSettings.getGlobalTermStats();
+		this.blockCompression = indexSettings.getBlockCompression();
 		this.fieldMap = new TreeMap<>();
 
 		for (FieldConfig fc : indexSettings.getFieldConfigList()) {
@@ -60,6 +60,14 @@ public class LumongoWorkPool extends LumongoBaseWorkPool {
 		return executeAsync(delete);
 	}
 
+	public BatchStoreResult batchStore(BatchStore batchStore) throws Exception {
+		return execute(batchStore);
+	}
+
+	public ListenableFuture<BatchStoreResult> batchStoreAsync(BatchStore batchStore) throws Exception {
+		return executeAsync(batchStore);
+	}
+
 	public BatchDeleteResult batchDelete(BatchDelete batchDelete) throws Exception {
 		return execute(batchDelete);
 	}
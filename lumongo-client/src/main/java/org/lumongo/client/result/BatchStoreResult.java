@@ -0,0 +1,45 @@
+package org.lumongo.client.result;
+
+import org.lumongo.cluster.message.Lumongo.BatchStoreResponse;
+import org.lumongo.cluster.message.Lumongo.StoreStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchStoreResult extends Result {
+	
+	private BatchStoreResponse batchStoreResponse;
+	
+	public BatchStoreResult(BatchStoreResponse batchStoreResponse) {
+		this.batchStoreResponse = batchStoreResponse;
+	}
+	
+	public List<StoreStatus> getStoreStatuses() {
+		return batchStoreResponse.getStoreStatusList();
+	}
+	
+	public List<StoreStatus> getFailures() {
+		List<StoreStatus> failures = new ArrayList<StoreStatus>();
+		for (StoreStatus storeStatus : batchStoreResponse.getStoreStatusList()) {
+			if (!storeStatus.getSuccess()) {
+				failures.add(storeStatus);
+			}
+		}
+		return failures;
+	}
+	
+	public boolean hasFailures() {
+		for (StoreStatus storeStatus : batchStoreResponse.getStoreStatusList()) {
+			if (!storeStatus.getSuccess()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public String toString() {
+		return batchStoreResponse.toString();
+	}
+	
+}
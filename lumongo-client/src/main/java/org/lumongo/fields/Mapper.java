@@ -140,6 +140,12 @@ public class Mapper<T> {
 		indexConfig.setStoreDocumentInIndex(settings.storeDocumentInIndex());
 		indexConfig.setStoreDocumentInMongo(settings.storeDocumentInMongo());
 		indexConfig.setStoreIndexOnDisk(settings.storeIndexOnDisk());
+		indexConfig.setRefreshIntervalMs(settings.refreshIntervalMs());
+		indexConfig.setTranslog(settings.translog());
+		indexConfig.setAdaptiveRequestFactor(settings.adaptiveRequestFactor());
+		indexConfig.setMinRequestFactor(settings.minRequestFactor());
+		indexConfig.setMaxRequestFactor(settings.maxRequestFactor());
+		indexConfig.setGlobalTermStats(settings.globalTermStats());
 
 		for (Lumongo.FieldConfig fieldConfig : fieldConfigMapper.getFieldConfigs()) {
 			indexConfig.addFieldConfig(fieldConfig);
@@ -37,5 +37,17 @@ public @interface Settings {
 	boolean storeDocumentInMongo() default false;
 
 	boolean storeIndexOnDisk() default false;
+
+	int refreshIntervalMs() default 0;
+
+	boolean translog() default false;
+
+	boolean adaptiveRequestFactor() default false;
+
+	double minRequestFactor() default 1.0;
+
+	double maxRequestFactor() default 10.0;
+
+	boolean globalTermStats() default false;
 	
 }
@@ -3,6 +3,8 @@ package org.lumongo.server;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoException;
 import org.apache.log4j.Logger;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LRUQueryCache;
 import org.lumongo.server.config.ClusterConfig;
 import org.lumongo.server.config.LocalNodeConfig;
 import org.lumongo.server.config.MongoConfig;
@@ -12,11 +14,13 @@ import org.lumongo.server.connection.InternalServiceHandler;
 import org.lumongo.server.hazelcast.HazelcastManager;
 import org.lumongo.server.index.LumongoIndexManager;
 import org.lumongo.server.rest.RestServiceManager;
+import org.lumongo.storage.lucene.DistributedDirectory;
 import org.lumongo.storage.lucene.MongoDirectory;
 import org.lumongo.util.ClusterHelper;
 import org.lumongo.util.LogUtil;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 
 public class LumongoNode {
 	private final static Logger log = Logger.getLogger(LumongoNode.class);
@@ -50,7 +54,14 @@ public class LumongoNode {
 
 		log.info("Loaded cluster config: <" + clusterConfig + ">");
 
-		MongoDirectory.setMaxIndexBlocks(clusterConfig.getMaxIndexBlocks());
+		MongoDirectory.setMaxIndexCacheMB(clusterConfig.getMaxIndexCacheMB());
+		MongoDirectory.setReadAheadBlocks(clusterConfig.getIndexReadAheadBlocks());
+		DistributedDirectory.setCacheMergeOutput(clusterConfig.isIndexCacheMergeOutput());
+		if (localNodeConfig.hasIndexDiskCache()) {
+			MongoDirectory.setIndexDiskCache(Paths.get(localNodeConfig.getIndexDiskCachePath()), localNodeConfig.getIndexDiskCacheMB(),
+					clusterConfig.getIndexBlockSize());
+		}
+		IndexSearcher.setDefaultQueryCache(new LRUQueryCache(10000, clusterConfig.getFilterCacheSizeMB() * 1024L * 1024L));
 
 		this.indexManager = new LumongoIndexManager(mongo, mongoConfig, clusterConfig);
 
@@ -1,6 +1,7 @@
 package org.lumongo.server.config;
 
 import org.bson.Document;
+import org.lumongo.storage.lucene.MongoDirectory;
 import org.lumongo.util.properties.PropertiesReader;
 import org.lumongo.util.properties.PropertiesReader.PropertyException;
 
@@ -12,11 +13,31 @@ public class ClusterConfig {
 	public static final String SHARDED = "sharded";
 	public static final String INDEX_BLOCK_SIZE = "indexBlockSize";
 	public static final String MAX_INDEX_BLOCKS = "maxIndexBlocks";
+	public static final String MAX_INDEX_CACHE_MB = "maxIndexCacheMB";
+	public static final String INDEX_READ_AHEAD_BLOCKS = "indexReadAheadBlocks";
+	public static final String INDEX_CACHE_MERGE_OUTPUT = "indexCacheMergeOutput";
 	public static final String MAX_INTERNAL_CLIENT_CONNECTIONS = "maxInternalClientConnections";
 	public static final String INTERNAL_WORKERS = "internalWorkers";
 	public static final String EXTERNAL_WORKERS = "externalWorkers";
 	public static final String INTERNAL_SHUTDOWN_TIMEOUT = "internalShutdownTimeout";
 	public static final String EXTERNAL_SHUTDOWN_TIMEOUT = "externalShutdownTimeout";
+	public static final String FILTER_CACHE_SIZE_MB = "filterCacheSizeMB";
+	public static final String INDEXING_BUFFER_MB = "indexingBufferMB";
+	public static final String SEARCH_THREADS = "searchThreads";
+	public static final String SEARCH_QUEUE_DEPTH = "searchQueueDepth";
+	public static final String COORDINATOR_CACHE_TTL_MS = "coordinatorCacheTtlMs";
+	public static final String COORDINATOR_CACHE_SIZE = "coordinatorCacheSize";
+	public static final String SLOW_QUERY_THRESHOLD_MS = "slowQueryThresholdMs";
+	public static final String SLOW_QUERY_LOGS_PER_SECOND = "slowQueryLogsPerSecond";
+
+	public static final int DEFAULT_FILTER_CACHE_SIZE_MB = 64;
+	public static final int DEFAULT_INDEXING_BUFFER_MB = 512;
+	public static final int DEFAULT_SEARCH_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+	public static final int DEFAULT_SEARCH_QUEUE_DEPTH = 1000;
+	public static final int DEFAULT_COORDINATOR_CACHE_TTL_MS = 1000;
+	public static final int DEFAULT_COORDINATOR_CACHE_SIZE = 1024;
+	public static final int DEFAULT_SLOW_QUERY_THRESHOLD_MS = 1000;
+	public static final int DEFAULT_SLOW_QUERY_LOGS_PER_SECOND = 10;
 	
 	public static ClusterConfig getClusterConfig(File propertiesFile) throws IOException, PropertyException {
 		PropertiesReader propertiesReader = new PropertiesReader(propertiesFile);
@@ -34,6 +55,9 @@ public class ClusterConfig {
 	// general
 	private int indexBlockSize;
 	private int maxIndexBlocks;
+	private int maxIndexCacheMB;
+	private int indexReadAheadBlocks;
+	private boolean indexCacheMergeOutput;
 	
 	// sockets
 	private int maxInternalClientConnections;
@@ -43,6 +67,20 @@ public class ClusterConfig {
 	// timeouts
 	private int internalShutdownTimeout;
 	private int externalShutdownTimeout;
+
+	// caches
+	private int filterCacheSizeMB;
+
+	// indexing
+	private int indexingBufferMB;
+
+	// search
+	private int searchThreads;
+	private int searchQueueDepth;
+	private int coordinatorCacheTtlMs;
+	private int coordinatorCacheSize;
+	private int slowQueryThresholdMs;
+	private int slowQueryLogsPerSecond;
 	
 	protected ClusterConfig() {
 		
@@ -53,7 +91,30 @@ public class ClusterConfig {
 		sharded = propertiesReader.getBoolean(SHARDED);
 		
 		indexBlockSize = propertiesReader.getInteger(INDEX_BLOCK_SIZE);
-		maxIndexBlocks = propertiesReader.getInteger(MAX_INDEX_BLOCKS);
+		if (propertiesReader.hasKey(MAX_INDEX_BLOCKS)) {
+			maxIndexBlocks = propertiesReader.getInteger(MAX_INDEX_BLOCKS);
+		}
+
+		if (propertiesReader.hasKey(MAX_INDEX_CACHE_MB)) {
+			maxIndexCacheMB = propertiesReader.getInteger(MAX_INDEX_CACHE_MB);
+		}
+		else if (maxIndexBlocks > 0) {
+			maxIndexCacheMB = getCacheMBFromBlocks(maxIndexBlocks, indexBlockSize);
+		}
+		else {
+			maxIndexCacheMB = MongoDirectory.DEFAULT_MAX_CACHE_MB;
+		}
+
+		if (propertiesReader.hasKey(INDEX_READ_AHEAD_BLOCKS)) {
+			indexReadAheadBlocks = propertiesReader.getInteger(INDEX_READ_AHEAD_BLOCKS);
+		}
+		else {
+			indexReadAheadBlocks = MongoDirectory.DEFAULT_READ_AHEAD_BLOCKS;
+		}
+
+		if (propertiesReader.hasKey(INDEX_CACHE_MERGE_OUTPUT)) {
+			indexCacheMergeOutput = propertiesReader.getBoolean(INDEX_CACHE_MERGE_OUTPUT);
+		}
 		
 		maxInternalClientConnections = propertiesReader.getInteger(MAX_INTERNAL_CLIENT_CONNECTIONS);
 		internalWorkers = propertiesReader.getInteger(INTERNAL_WORKERS);
@@ -61,9 +122,72 @@ public class ClusterConfig {
 		
 		internalShutdownTimeout = propertiesReader.getInteger(INTERNAL_SHUTDOWN_TIMEOUT);
 		externalShutdownTimeout = propertiesReader.getInteger(EXTERNAL_SHUTDOWN_TIMEOUT);
+
+		if (propertiesReader.hasKey(FILTER_CACHE_SIZE_MB)) {
+			filterCacheSizeMB = propertiesReader.getInteger(FILTER_CACHE_SIZE_MB);
+		}
+		else {
+			filterCacheSizeMB = DEFAULT_FILTER_CACHE_SIZE_MB;
+		}
+
+		if (propertiesReader.hasKey(INDEXING_BUFFER_MB)) {
+			indexingBufferMB = propertiesReader.getInteger(INDEXING_BUFFER_MB);
+		}
+		else {
+			indexingBufferMB = DEFAULT_INDEXING_BUFFER_MB;
+		}
+
+		if (propertiesReader.hasKey(SEARCH_THREADS)) {
+			searchThreads = propertiesReader.getInteger(SEARCH_THREADS);
+		}
+		else {
+			searchThreads = DEFAULT_SEARCH_THREADS;
+		}
+
+		if (propertiesReader.hasKey(SEARCH_QUEUE_DEPTH)) {
+			searchQueueDepth = propertiesReader.getInteger(SEARCH_QUEUE_DEPTH);
+		}
+		else {
+			searchQueueDepth = DEFAULT_SEARCH_QUEUE_DEPTH;
+		}
+
+		if (propertiesReader.hasKey(COORDINATOR_CACHE_TTL_MS)) {
+			coordinatorCacheTtlMs = propertiesReader.getInteger(COORDINATOR_CACHE_TTL_MS);
+		}
+		else {
+			coordinatorCacheTtlMs = DEFAULT_COORDINATOR_CACHE_TTL_MS;
+		}
+
+		if (propertiesReader.hasKey(COORDINATOR_CACHE_SIZE)) {
+			coordinatorCacheSize = propertiesReader.getInteger(COORDINATOR_CACHE_SIZE);
+		}
+		else {
+			coordinatorCacheSize = DEFAULT_COORDINATOR_CACHE_SIZE;
+		}
+
+		if (propertiesReader.hasKey(SLOW_QUERY_THRESHOLD_MS)) {
+			slowQueryThresholdMs = propertiesReader.getInteger(SLOW_QUERY_THRESHOLD_MS);
+		}
+		else {
+			slowQueryThresholdMs = DEFAULT_SLOW_QUERY_THRESHOLD_MS;
+		}
+
+		if (propertiesReader.hasKey(SLOW_QUERY_LOGS_PER_SECOND)) {
+			slowQueryLogsPerSecond = propertiesReader.getInteger(SLOW_QUERY_LOGS_PER_SECOND);
+		}
+		else {
+			slowQueryLogsPerSecond = DEFAULT_SLOW_QUERY_LOGS_PER_SECOND;
+		}
 		
 	}
 	
+	/**
+	 * Sizes the cache from the older maxIndexBlocks setting
+	 */
+	private static int getCacheMBFromBlocks(int maxIndexBlocks, int indexBlockSize) {
+		return (int) Math.max(1, ((long) maxIndexBlocks * indexBlockSize) / (1024 * 1024));
+	}
+
 	public boolean isSharded() {
 		return sharded;
 	}
@@ -75,6 +199,18 @@ public class ClusterConfig {
 	public int getMaxIndexBlocks() {
 		return maxIndexBlocks;
 	}
+
+	public int getMaxIndexCacheMB() {
+		return maxIndexCacheMB;
+	}
+
+	public int getIndexReadAheadBlocks() {
+		return indexReadAheadBlocks;
+	}
+
+	public boolean isIndexCacheMergeOutput() {
+		return indexCacheMergeOutput;
+	}
 	
 	public int getMaxInternalClientConnections() {
 		return maxInternalClientConnections;
@@ -96,16 +232,59 @@ public class ClusterConfig {
 		return externalShutdownTimeout;
 	}
 	
+	public int getFilterCacheSizeMB() {
+		return filterCacheSizeMB;
+	}
+
+	public int getIndexingBufferMB() {
+		return indexingBufferMB;
+	}
+
+	public int getSearchThreads() {
+		return searchThreads;
+	}
+
+	public int getSearchQueueDepth() {
+		return searchQueueDepth;
+	}
+
+	public int getCoordinatorCacheTtlMs() {
+		return coordinatorCacheTtlMs;
+	}
+
+	public int getCoordinatorCacheSize() {
+		return coordinatorCacheSize;
+	}
+
+	public int getSlowQueryThresholdMs() {
+		return slowQueryThresholdMs;
+	}
+
+	public int getSlowQueryLogsPerSecond() {
+		return slowQueryLogsPerSecond;
+	}
+	
 	public Document toDocument() {
 		Document document = new Document();
 		document.put(SHARDED, sharded);
 		document.put(INDEX_BLOCK_SIZE, indexBlockSize);
 		document.put(MAX_INDEX_BLOCKS, maxIndexBlocks);
+		document.put(MAX_INDEX_CACHE_MB, maxIndexCacheMB);
+		document.put(INDEX_READ_AHEAD_BLOCKS, indexReadAheadBlocks);
+		document.put(INDEX_CACHE_MERGE_OUTPUT, indexCacheMergeOutput);
 		document.put(MAX_INTERNAL_CLIENT_CONNECTIONS, maxInternalClientConnections);
 		document.put(INTERNAL_WORKERS, internalWorkers);
 		document.put(EXTERNAL_WORKERS, externalWorkers);
 		document.put(INTERNAL_SHUTDOWN_TIMEOUT, internalShutdownTimeout);
 		document.put(EXTERNAL_SHUTDOWN_TIMEOUT, externalShutdownTimeout);
+		document.put(FILTER_CACHE_SIZE_MB, filterCacheSizeMB);
+		document.put(INDEXING_BUFFER_MB, indexingBufferMB);
+		document.put(SEARCH_THREADS, searchThreads);
+		document.put(SEARCH_QUEUE_DEPTH, searchQueueDepth);
+		document.put(COORDINATOR_CACHE_TTL_MS, coordinatorCacheTtlMs);
+		document.put(COORDINATOR_CACHE_SIZE, coordinatorCacheSize);
+		document.put(SLOW_QUERY_THRESHOLD_MS, slowQueryThresholdMs);
+		document.put(SLOW_QUERY_LOGS_PER_SECOND, slowQueryLogsPerSecond);
 		return document;
 		
 	}
@@ -114,20 +293,91 @@ public class ClusterConfig {
 		ClusterConfig clusterConfig = new ClusterConfig();
 		clusterConfig.sharded = (boolean) settings.get(SHARDED);
 		clusterConfig.indexBlockSize = (int) settings.get(INDEX_BLOCK_SIZE);
-		clusterConfig.maxIndexBlocks = (int) settings.get(MAX_INDEX_BLOCKS);
+		if (settings.get(MAX_INDEX_BLOCKS) != null) {
+			clusterConfig.maxIndexBlocks = (int) settings.get(MAX_INDEX_BLOCKS);
+		}
+		if (settings.get(MAX_INDEX_CACHE_MB) != null) {
+			clusterConfig.maxIndexCacheMB = (int) settings.get(MAX_INDEX_CACHE_MB);
+		}
+		else if (clusterConfig.maxIndexBlocks > 0) {
+			clusterConfig.maxIndexCacheMB = getCacheMBFromBlocks(clusterConfig.maxIndexBlocks, clusterConfig.indexBlockSize);
+		}
+		else {
+			clusterConfig.maxIndexCacheMB = MongoDirectory.DEFAULT_MAX_CACHE_MB;
+		}
+		if (settings.get(INDEX_READ_AHEAD_BLOCKS) != null) {
+			clusterConfig.indexReadAheadBlocks = (int) settings.get(INDEX_READ_AHEAD_BLOCKS);
+		}
+		else {
+			clusterConfig.indexReadAheadBlocks = MongoDirectory.DEFAULT_READ_AHEAD_BLOCKS;
+		}
+		if (settings.get(INDEX_CACHE_MERGE_OUTPUT) != null) {
+			clusterConfig.indexCacheMergeOutput = (boolean) settings.get(INDEX_CACHE_MERGE_OUTPUT);
+		}
 		clusterConfig.maxInternalClientConnections = (int) settings.get(MAX_INTERNAL_CLIENT_CONNECTIONS);
 		clusterConfig.internalWorkers = (int) settings.get(INTERNAL_WORKERS);
 		clusterConfig.externalWorkers = (int) settings.get(EXTERNAL_WORKERS);
 		clusterConfig.internalShutdownTimeout = (int) settings.get(INTERNAL_SHUTDOWN_TIMEOUT);
 		clusterConfig.externalShutdownTimeout = (int) settings.get(EXTERNAL_SHUTDOWN_TIMEOUT);
+		if (settings.get(FILTER_CACHE_SIZE_MB) != null) {
+			clusterConfig.filterCacheSizeMB = (int) settings.get(FILTER_CACHE_SIZE_MB);
+		}
+		else {
+			clusterConfig.filterCacheSizeMB = DEFAULT_FILTER_CACHE_SIZE_MB;
+		}
+		if (settings.get(INDEXING_BUFFER_MB) != null) {
+			clusterConfig.indexingBufferMB = (int) settings.get(INDEXING_BUFFER_MB);
+		}
+		else {
+			clusterConfig.indexingBufferMB = DEFAULT_INDEXING_BUFFER_MB;
+		}
+		if (settings.get(SEARCH_THREADS) != null) {
+			clusterConfig.searchThreads = (int) settings.get(SEARCH_THREADS);
+		}
+		else {
+			clusterConfig.searchThreads = DEFAULT_SEARCH_THREADS;
+		}
+		if (settings.get(SEARCH_QUEUE_DEPTH) != null) {
+			clusterConfig.searchQueueDepth = (int) settings.get(SEARCH_QUEUE_DEPTH);
+		}
+		else {
+			clusterConfig.searchQueueDepth = DEFAULT_SEARCH_QUEUE_DEPTH;
+		}
+		if (settings.get(COORDINATOR_CACHE_TTL_MS) != null) {
+			clusterConfig.coordinatorCacheTtlMs = (int) settings.get(COORDINATOR_CACHE_TTL_MS);
+		}
+		else {
+			clusterConfig.coordinatorCacheTtlMs = DEFAULT_COORDINATOR_CACHE_TTL_MS;
+		}
+		if (settings.get(COORDINATOR_CACHE_SIZE) != null) {
+			clusterConfig.coordinatorCacheSize = (int) settings.get(COORDINATOR_CACHE_SIZE);
+		}
+		else {
+			clusterConfig.coordinatorCacheSize = DEFAULT_COORDINATOR_CACHE_SIZE;
+		}
+		if (settings.get(SLOW_QUERY_THRESHOLD_MS) != null) {
+			clusterConfig.slowQueryThresholdMs = (int) settings.get(SLOW_QUERY_THRESHOLD_MS);
+		}
+		else {
+			clusterConfig.slowQueryThresholdMs = DEFAULT_SLOW_QUERY_THRESHOLD_MS;
+		}
+		if (settings.get(SLOW_QUERY_LOGS_PER_SECOND) != null) {
+			clusterConfig.slowQueryLogsPerSecond = (int) settings.get(SLOW_QUERY_LOGS_PER_SECOND);
+		}
+		else {
+			clusterConfig.slowQueryLogsPerSecond = DEFAULT_SLOW_QUERY_LOGS_PER_SECOND;
+		}
 		return clusterConfig;
 	}
 	
 	@Override
 	public String toString() {
-		return "ClusterConfig [sharded=" + sharded + ", indexBlockSize=" + indexBlockSize + ", maxIndexBlocks=" + maxIndexBlocks
+		return "ClusterConfig [sharded=" + sharded + ", indexBlockSize=" + indexBlockSize + ", maxIndexBlocks=" + maxIndexBlocks + ", maxIndexCacheMB=" + maxIndexCacheMB + ", indexReadAheadBlocks=" + indexReadAheadBlocks
+						+ ", indexCacheMergeOutput=" + indexCacheMergeOutput
 						+ ", maxInternalClientConnections=" + maxInternalClientConnections + ", internalWorkers=" + internalWorkers + ", externalWorkers="
 						+ externalWorkers + ", internalShutdownTimeout=" + internalShutdownTimeout + ", externalShutdownTimeout=" + externalShutdownTimeout
-						+ "]";
+						+ ", filterCacheSizeMB=" + filterCacheSizeMB + ", indexingBufferMB=" + indexingBufferMB + ", searchThreads=" + searchThreads
+						+ ", searchQueueDepth=" + searchQueueDepth + ", coordinatorCacheTtlMs=" + coordinatorCacheTtlMs + ", coordinatorCacheSize="
+						+ coordinatorCacheSize + ", slowQueryThresholdMs=" + slowQueryThresholdMs + ", slowQueryLogsPerSecond=" + slowQueryLogsPerSecond + "]";
 	}
 }
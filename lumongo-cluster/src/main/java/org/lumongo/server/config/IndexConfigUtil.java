@@ -30,6 +30,13 @@ public class IndexConfigUtil {
 	private static final String STORE_DOCUMENT_IN_MONGO = "storeDocumentInMongo";
 	private static final String STORE_DOCUMENT_IN_INDEX = "storeDocumentInIndex";
 	private static final String STORE_INDEX_ON_DISK = "storeIndexOnDisk";
+	private static final String REFRESH_INTERVAL_MS = "refreshIntervalMs";
+	private static final String TRANSLOG = "translog";
+	private static final String ADAPTIVE_REQUEST_FACTOR = "adaptiveRequestFactor";
+	private static final String MIN_REQUEST_FACTOR = "minRequestFactor";
+	private static final String MAX_REQUEST_FACTOR = "maxRequestFactor";
+	private static final String GLOBAL_TERM_STATS = "globalTermStats";
+	private static final String BLOCK_COMPRESSION = "blockCompression";
 	private static final String SEGMENT_TOLERANCE = "segmentTolerance";
 	private static final String FIELD_CONFIGS = "fieldConfigs";
 	private static final String STORED_FIELD_NAME = "storedFieldName";
@@ -95,6 +102,27 @@ public class IndexConfigUtil {
 		indexSettings.setSegmentQueryCacheSize(settings.getInteger(SEGMENT_QUERY_CACHE_SIZE));
 		indexSettings.setSegmentQueryCacheMaxAmount(settings.getInteger(SEGMENT_QUERY_CACHE_MAX_AMOUNT));
 		indexSettings.setStoreIndexOnDisk(settings.getBoolean(STORE_INDEX_ON_DISK));
+		if (settings.getInteger(REFRESH_INTERVAL_MS) != null) {
+			indexSettings.setRefreshIntervalMs(settings.getInteger(REFRESH_INTERVAL_MS));
+		}
+		if (settings.getBoolean(TRANSLOG) != null) {
+			indexSettings.setTranslog(settings.getBoolean(TRANSLOG));
+		}
+		if (settings.getBoolean(ADAPTIVE_REQUEST_FACTOR) != null) {
+			indexSettings.setAdaptiveRequestFactor(settings.getBoolean(ADAPTIVE_REQUEST_FACTOR));
+		}
+		if (settings.getDouble(MIN_REQUEST_FACTOR) != null) {
+			indexSettings.setMinRequestFactor(settings.getDouble(MIN_REQUEST_FACTOR));
+		}
+		if (settings.getDouble(MAX_REQUEST_FACTOR) != null) {
+			indexSettings.setMaxRequestFactor(settings.getDouble(MAX_REQUEST_FACTOR));
+		}
+		if (settings.getBoolean(GLOBAL_TERM_STATS) != null) {
+			indexSettings.setGlobalTermStats(settings.getBoolean(GLOBAL_TERM_STATS));
+		}
+		if (settings.getString(BLOCK_COMPRESSION) != null) {
+			indexSettings.setBlockCompression(IndexSettings.BlockCompression.valueOf(settings.getString(BLOCK_COMPRESSION)));
+		}
 
 		Document analyzerSettings = settings.get(ANALYZER_SETTINGS, Document.class);
 		for (String key : analyzerSettings.keySet()) {
@@ -207,6 +235,13 @@ public class IndexConfigUtil {
 		document.put(SEGMENT_TOLERANCE, indexSettings.getSegmentTolerance());
 		document.put(SEGMENT_QUERY_CACHE_SIZE, indexSettings.getSegmentQueryCacheSize());
 		document.put(SEGMENT_QUERY_CACHE_MAX_AMOUNT, indexSettings.getSegmentQueryCacheMaxAmount());
+		document.put(REFRESH_INTERVAL_MS, indexSettings.getRefreshIntervalMs());
+		document.put(TRANSLOG, indexSettings.getTranslog());
+		document.put(ADAPTIVE_REQUEST_FACTOR, indexSettings.getAdaptiveRequestFactor());
+		document.put(MIN_REQUEST_FACTOR, indexSettings.getMinRequestFactor());
+		document.put(MAX_REQUEST_FACTOR, indexSettings.getMaxRequestFactor());
+		document.put(GLOBAL_TERM_STATS, indexSettings.getGlobalTermStats());
+		document.put(BLOCK_COMPRESSION, indexSettings.getBlockCompression().name());
 
 		Document analyzerSettingsDocs = new Document();
 		for (AnalyzerSettings analyzerSettings : indexSettings.getAnalyzerSettingsList()) {
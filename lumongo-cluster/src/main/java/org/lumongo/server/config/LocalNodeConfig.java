@@ -13,6 +13,8 @@ public class LocalNodeConfig {
 	public static final String INTERNAL_SERVICE_PORT = "internalServicePort";
 	public static final String EXTERNAL_SERVICE_PORT = "externalServicePort";
 	public static final String REST_PORT = "restPort";
+	public static final String INDEX_DISK_CACHE_PATH = "indexDiskCachePath";
+	public static final String INDEX_DISK_CACHE_MB = "indexDiskCacheMB";
 	
 	public static LocalNodeConfig getNodeConfig(File propertiesFile) throws IOException, PropertyException {
 		PropertiesReader propertiesReader = new PropertiesReader(propertiesFile);
@@ -32,6 +34,10 @@ public class LocalNodeConfig {
 	private int externalServicePort;
 	
 	private int restPort;
+
+	// disk cache
+	private String indexDiskCachePath;
+	private int indexDiskCacheMB;
 	
 	protected LocalNodeConfig() {
 		restPort = -1;
@@ -45,6 +51,10 @@ public class LocalNodeConfig {
 		if (propertiesReader.hasKey(REST_PORT)) {
 			restPort = propertiesReader.getInteger(REST_PORT);
 		}
+		if (propertiesReader.hasKey(INDEX_DISK_CACHE_PATH)) {
+			indexDiskCachePath = propertiesReader.getString(INDEX_DISK_CACHE_PATH);
+			indexDiskCacheMB = propertiesReader.getInteger(INDEX_DISK_CACHE_MB);
+		}
 	}
 	
 	public int getHazelcastPort() {
@@ -62,6 +72,14 @@ public class LocalNodeConfig {
 	public int getRestPort() {
 		return restPort;
 	}
+
+	public String getIndexDiskCachePath() {
+		return indexDiskCachePath;
+	}
+
+	public int getIndexDiskCacheMB() {
+		return indexDiskCacheMB;
+	}
 	
 	public Document toDocument() {
 		Document document = new Document();
@@ -69,6 +87,10 @@ public class LocalNodeConfig {
 		document.put(INTERNAL_SERVICE_PORT, internalServicePort);
 		document.put(EXTERNAL_SERVICE_PORT, externalServicePort);
 		document.put(REST_PORT, restPort);
+		if (indexDiskCachePath != null) {
+			document.put(INDEX_DISK_CACHE_PATH, indexDiskCachePath);
+			document.put(INDEX_DISK_CACHE_MB, indexDiskCacheMB);
+		}
 		return document;
 		
 	}
@@ -76,6 +98,10 @@ public class LocalNodeConfig {
 	public boolean hasRestPort() {
 		return (restPort != -1);
 	}
+
+	public boolean hasIndexDiskCache() {
+		return (indexDiskCachePath != null && indexDiskCacheMB > 0);
+	}
 	
 	public static LocalNodeConfig fromDocument(Document settings) {
 		LocalNodeConfig localNodeConfig = new LocalNodeConfig();
@@ -85,6 +111,10 @@ public class LocalNodeConfig {
 		if (settings.containsKey(REST_PORT)) {
 			localNodeConfig.restPort = (int) settings.get(REST_PORT);
 		}
+		if (settings.containsKey(INDEX_DISK_CACHE_PATH)) {
+			localNodeConfig.indexDiskCachePath = (String) settings.get(INDEX_DISK_CACHE_PATH);
+			localNodeConfig.indexDiskCacheMB = (int) settings.get(INDEX_DISK_CACHE_MB);
+		}
 		
 		return localNodeConfig;
 	}
@@ -92,7 +122,8 @@ public class LocalNodeConfig {
 	@Override
 	public String toString() {
 		return "LocalNodeConfig [hazelcastPort=" + hazelcastPort + ", internalServicePort=" + internalServicePort + ", externalServicePort="
-						+ externalServicePort + ", restPort=" + restPort + "]";
+						+ externalServicePort + ", restPort=" + restPort + ", indexDiskCachePath=" + indexDiskCachePath + ", indexDiskCacheMB=" + indexDiskCacheMB
+						+ "]";
 	}
 	
 }
@@ -4,6 +4,8 @@ import com.google.protobuf.RpcController;
 import com.hazelcast.core.Member;
 import org.apache.log4j.Logger;
 import org.lumongo.cluster.message.Lumongo;
+import org.lumongo.cluster.message.Lumongo.BatchStoreRequest;
+import org.lumongo.cluster.message.Lumongo.BatchStoreResponse;
 import org.lumongo.cluster.message.Lumongo.ClearRequest;
 import org.lumongo.cluster.message.Lumongo.ClearResponse;
 import org.lumongo.cluster.message.Lumongo.DeleteRequest;
@@ -26,6 +28,8 @@ import org.lumongo.server.config.MongoConfig;
 import org.lumongo.server.config.Nodes;
 import org.lumongo.util.ClusterHelper;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -107,6 +111,10 @@ public class InternalClient {
 		
 	}
 	
+	public Map<Member, InternalRpcConnectionPool> getConnectionPools() {
+		return new HashMap<>(internalConnectionPoolMap);
+	}
+
 	private ReadWriteLock getLockForMember(Member m) {
 		
 		ReadWriteLock lock = internalConnectionLockMap.get(m);
@@ -205,6 +213,34 @@ public class InternalClient {
 		
 	}
 
+	public BatchStoreResponse executeBatchStore(Member m, BatchStoreRequest request) throws Exception {
+
+		ReadWriteLock lock = getLockForMember(m);
+		lock.readLock().lock();
+
+		InternalRpcConnection rpcConnection = null;
+		try {
+			rpcConnection = getInternalRpcConnection(m);
+			RpcController controller = rpcConnection.getClientRPCController();
+			BatchStoreResponse response = rpcConnection.getService().batchStore(controller, request);
+			if (controller.failed()) {
+				throw new Exception(m + ":" + controller.errorText());
+			}
+
+			returnInternalBlockingConnection(m, rpcConnection, true);
+
+			return response;
+		}
+		catch (Exception e) {
+			returnInternalBlockingConnection(m, rpcConnection, false);
+			throw e;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+
+	}
+
 	public DeleteResponse executeDelete(Member m, DeleteRequest request) throws Exception {
 
 		ReadWriteLock lock = getLockForMember(m);
@@ -391,4 +427,56 @@ public class InternalClient {
 		}
 	}
 	
+	public Lumongo.InternalFetchResultsResponse executeFetchResults(Member m, Lumongo.InternalFetchResultsRequest request) throws Exception {
+		ReadWriteLock lock = getLockForMember(m);
+		lock.readLock().lock();
+		
+		InternalRpcConnection rpcConnection = null;
+		try {
+			rpcConnection = getInternalRpcConnection(m);
+			RpcController controller = rpcConnection.getClientRPCController();
+			Lumongo.InternalFetchResultsResponse response = rpcConnection.getService().fetchResults(controller, request);
+			if (controller.failed()) {
+				throw new Exception(m + ":" + controller.errorText());
+			}
+			
+			returnInternalBlockingConnection(m, rpcConnection, true);
+			
+			return response;
+		}
+		catch (Exception e) {
+			returnInternalBlockingConnection(m, rpcConnection, false);
+			throw e;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	public Lumongo.InternalTermStatsResponse executeTermStats(Member m, QueryRequest request) throws Exception {
+		ReadWriteLock lock = getLockForMember(m);
+		lock.readLock().lock();
+		
+		InternalRpcConnection rpcConnection = null;
+		try {
+			rpcConnection = getInternalRpcConnection(m);
+			RpcController controller = rpcConnection.getClientRPCController();
+			Lumongo.InternalTermStatsResponse response = rpcConnection.getService().getTermStats(controller, request);
+			if (controller.failed()) {
+				throw new Exception(m + ":" + controller.errorText());
+			}
+			
+			returnInternalBlockingConnection(m, rpcConnection, true);
+			
+			return response;
+		}
+		catch (Exception e) {
+			returnInternalBlockingConnection(m, rpcConnection, false);
+			throw e;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
 }
@@ -13,6 +13,8 @@ import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import org.apache.log4j.Logger;
 import org.lumongo.cluster.message.Lumongo;
+import org.lumongo.cluster.message.Lumongo.BatchStoreRequest;
+import org.lumongo.cluster.message.Lumongo.BatchStoreResponse;
 import org.lumongo.cluster.message.Lumongo.ClearRequest;
 import org.lumongo.cluster.message.Lumongo.ClearResponse;
 import org.lumongo.cluster.message.Lumongo.DeleteRequest;
@@ -133,6 +135,19 @@ public class InternalServiceHandler extends InternalService {
 		}
 	}
 
+	@Override
+	public void batchStore(RpcController controller, BatchStoreRequest request, RpcCallback<BatchStoreResponse> done) {
+		try {
+			BatchStoreResponse r = indexManager.batchStoreInternal(request);
+			done.run(r);
+		}
+		catch (Exception e) {
+			log.error("Failed to run internal batch store of <" + request.getStoreRequestCount() + "> documents: " + e.getClass().getSimpleName() + ": ", e);
+			controller.setFailed(e.getMessage());
+			done.run(null);
+		}
+	}
+
 	@Override
 	public void fetch(RpcController controller, Lumongo.FetchRequest request, RpcCallback<Lumongo.FetchResponse> done) {
 		try {
@@ -224,4 +239,30 @@ public class InternalServiceHandler extends InternalService {
 		}
 	}
 	
+	@Override
+	public void fetchResults(RpcController controller, Lumongo.InternalFetchResultsRequest request, RpcCallback<Lumongo.InternalFetchResultsResponse> done) {
+		try {
+			Lumongo.InternalFetchResultsResponse r = indexManager.internalFetchResults(request);
+			done.run(r);
+		}
+		catch (Exception e) {
+			log.error("Failed to fetch results: <" + request + ">: " + e.getClass().getSimpleName() + ": ", e);
+			controller.setFailed(e.getMessage());
+			done.run(null);
+		}
+	}
+	
+	@Override
+	public void getTermStats(RpcController controller, QueryRequest request, RpcCallback<Lumongo.InternalTermStatsResponse> done) {
+		try {
+			Lumongo.InternalTermStatsResponse r = indexManager.internalTermStats(request);
+			done.run(r);
+		}
+		catch (Exception e) {
+			log.error("Failed to get term stats: <" + request + ">: " + e.getClass().getSimpleName() + ": ", e);
+			controller.setFailed(e.getMessage());
+			done.run(null);
+		}
+	}
+	
 }
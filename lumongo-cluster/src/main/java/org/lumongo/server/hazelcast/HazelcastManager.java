@@ -5,6 +5,7 @@ import com.hazelcast.config.JoinConfig;
 import com.hazelcast.config.NetworkConfig;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IAtomicLong;
 import com.hazelcast.core.IExecutorService;
 import com.hazelcast.core.ILock;
 import com.hazelcast.core.LifecycleEvent;
@@ -187,6 +188,10 @@ public class HazelcastManager implements MembershipListener, LifecycleListener {
 		return hazelcastInstance.getLock(lockName);
 	}
 	
+	public IAtomicLong getAtomicLong(String name) {
+		return hazelcastInstance.getAtomicLong(name);
+	}
+	
 	public void reloadIndexSettings(String indexName) throws Exception {
 		indexManager.reloadIndexSettings(indexName);
 	}
@@ -0,0 +1,17 @@
+package org.lumongo.server.index;
+
+/**
+ * Operations run against the segments of an index on this node whose latency is recorded
+ */
+public enum IndexOperation {
+	/** storing one document */
+	STORE,
+	/** storing the part of a batch owned by this node's segments of the index */
+	BATCH_STORE,
+	/** deleting one document */
+	DELETE,
+	/** fetching one document by unique id */
+	FETCH,
+	/** committing one segment */
+	COMMIT
+}
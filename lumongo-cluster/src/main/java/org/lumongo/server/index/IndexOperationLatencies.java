@@ -0,0 +1,35 @@
+package org.lumongo.server.index;
+
+import org.lumongo.server.search.LatencyHistogram;
+
+/**
+ * Latency histograms for each {@link IndexOperation} run against one index on this node
+ */
+public class IndexOperationLatencies {
+
+	private static final IndexOperation[] OPERATIONS = IndexOperation.values();
+
+	private final LatencyHistogram[] histograms;
+
+	public IndexOperationLatencies() {
+		this.histograms = new LatencyHistogram[OPERATIONS.length];
+		for (int i = 0; i < OPERATIONS.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	public void record(IndexOperation operation, long nanos) {
+		histograms[operation.ordinal()].recordNanos(nanos);
+	}
+
+	/**
+	 * @param start the {@link System#nanoTime()} when the operation started
+	 */
+	public void recordSince(IndexOperation operation, long start) {
+		record(operation, System.nanoTime() - start);
+	}
+
+	public LatencyHistogram getHistogram(IndexOperation operation) {
+		return histograms[operation.ordinal()];
+	}
+}
@@ -3,8 +3,10 @@ package org.lumongo.server.index;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
 import org.apache.lucene.index.IndexWriter;
+import org.lumongo.server.search.QueryLatencies;
 
 import java.io.IOException;
+import java.nio.file.Path;
 
 /**
  * Created by Matt Davis on 7/29/15.
@@ -16,4 +18,12 @@ public interface IndexSegmentInterface {
 	PerFieldAnalyzerWrapper getPerFieldAnalyzer() throws Exception;
 
 	DirectoryTaxonomyWriter getTaxoWriter(int segmentNumber) throws Exception;
+
+	Path getTranslogPath(int segmentNumber);
+
+	void segmentChanged(int segmentNumber);
+
+	QueryLatencies getQueryLatencies();
+
+	IndexOperationLatencies getOperationLatencies();
 }
@@ -0,0 +1,165 @@
+package org.lumongo.server.index;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Keeps the index writer buffers of every segment loaded on this node within a shared budget.  When the total buffered is over the budget
+ * the segments buffering the most are flushed first, and segments that have not changed for a while are flushed so their buffer is
+ * given back
+ */
+public class IndexingMemoryController {
+
+	private final static Logger log = Logger.getLogger(IndexingMemoryController.class);
+
+	private static final long CHECK_INTERVAL_MS = 1000;
+	private static final long INACTIVE_TIME_MS = 5 * 60 * 1000;
+
+	private static final double WRITER_BUFFER_SHARE = 0.5;
+	private static final double INDEX_CACHE_SHARE = 0.375;
+	private static final double TAXONOMY_CACHE_SHARE = 0.125;
+
+	private final Collection<LumongoIndex> indexes;
+	private final int indexingBufferMB;
+	private final long indexingBufferBytes;
+
+	private final Timer checkTimer;
+
+	public IndexingMemoryController(Collection<LumongoIndex> indexes, int indexingBufferMB) {
+		this.indexes = indexes;
+		this.indexingBufferMB = indexingBufferMB;
+		this.indexingBufferBytes = indexingBufferMB * 1024L * 1024L;
+
+		this.checkTimer = new Timer("IndexingMemoryTimer", true);
+		this.checkTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					checkIndexingBuffers();
+				}
+				catch (Throwable t) {
+					log.error("Failed to check indexing buffers: " + t.getClass().getSimpleName() + ": ", t);
+				}
+			}
+		}, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS);
+	}
+
+	/**
+	 * The share of the node budget for one segment, the budget divided by the segments assigned to this node across every index.  The share
+	 * is split between the writer buffer and the NRT caches of the index and the taxonomy so together they stay within it.  Only the writer
+	 * buffers are checked against the node total since the caches are bounded by their part of the share
+	 *
+	 * @param index index opening a writer, counted even when it is still loading and not yet one of the indexes of the node
+	 */
+	private double getSegmentShareMB(LumongoIndex index) {
+		int segments = index.getLocalSegmentCount();
+		for (LumongoIndex i : indexes) {
+			if (i != index) {
+				segments += i.getLocalSegmentCount();
+			}
+		}
+		return (double) indexingBufferMB / Math.max(1, segments);
+	}
+
+	/**
+	 * A writer buffering more than this is flushed by its writer before the node total has to be checked
+	 */
+	public double getWriterBufferMB(LumongoIndex index) {
+		return getSegmentShareMB(index) * WRITER_BUFFER_SHARE;
+	}
+
+	public double getIndexCacheMB(LumongoIndex index) {
+		return getSegmentShareMB(index) * INDEX_CACHE_SHARE;
+	}
+
+	public double getTaxonomyCacheMB(LumongoIndex index) {
+		return getSegmentShareMB(index) * TAXONOMY_CACHE_SHARE;
+	}
+
+	private static class SegmentUsage implements Comparable<SegmentUsage> {
+		private final LumongoSegment segment;
+		private final long bytesUsed;
+
+		public SegmentUsage(LumongoSegment segment, long bytesUsed) {
+			this.segment = segment;
+			this.bytesUsed = bytesUsed;
+		}
+
+		@Override
+		public int compareTo(SegmentUsage o) {
+			return Long.compare(o.bytesUsed, bytesUsed);
+		}
+	}
+
+	private void checkIndexingBuffers() {
+		long currentTime = System.currentTimeMillis();
+
+		long totalBytesUsed = 0;
+		List<SegmentUsage> activeSegments = new ArrayList<>();
+
+		for (LumongoIndex index : indexes) {
+			for (LumongoSegment segment : index.getLoadedSegments()) {
+				long bytesUsed;
+				try {
+					bytesUsed = segment.getIndexingRamBytesUsed();
+				}
+				catch (Exception e) {
+					//writer is being reopened or closed
+					continue;
+				}
+
+				if (bytesUsed == 0) {
+					continue;
+				}
+
+				Long lastChange = segment.getLastChange();
+				if (lastChange != null && (currentTime - lastChange) > INACTIVE_TIME_MS) {
+					log.info("Flushing inactive segment <" + segment.getSegmentNumber() + "> for index <" + segment.getIndexName() + "> to free <"
+							+ bytesUsed + "> bytes");
+					if (flush(segment)) {
+						continue;
+					}
+				}
+
+				totalBytesUsed += bytesUsed;
+				activeSegments.add(new SegmentUsage(segment, bytesUsed));
+			}
+		}
+
+		if (totalBytesUsed > indexingBufferBytes) {
+			log.info("Indexing buffers using <" + totalBytesUsed + "> bytes exceed the node budget of <" + indexingBufferBytes
+					+ "> bytes, flushing the largest segments");
+
+			activeSegments.sort(null);
+			for (SegmentUsage segmentUsage : activeSegments) {
+				if (totalBytesUsed <= indexingBufferBytes) {
+					break;
+				}
+				if (flush(segmentUsage.segment)) {
+					totalBytesUsed -= segmentUsage.bytesUsed;
+				}
+			}
+		}
+	}
+
+	private boolean flush(LumongoSegment segment) {
+		try {
+			segment.flushIndexingBuffer();
+			return true;
+		}
+		catch (Exception e) {
+			log.error("Failed to flush segment <" + segment.getSegmentNumber() + "> for index <" + segment.getIndexName() + ">: " + e.getClass()
+					.getSimpleName() + ": ", e);
+			return false;
+		}
+	}
+
+	public void shutdown() {
+		checkTimer.cancel();
+	}
+}
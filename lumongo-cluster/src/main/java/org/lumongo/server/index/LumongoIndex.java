@@ -1,5 +1,9 @@
 package org.lumongo.server.index;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.hazelcast.core.IAtomicLong;
 import com.hazelcast.core.IExecutorService;
 import com.hazelcast.core.ILock;
 import com.hazelcast.core.Member;
@@ -25,6 +29,7 @@ import org.apache.lucene.search.BoostQuery;
 import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.NRTCachingDirectory;
@@ -41,14 +46,21 @@ import org.lumongo.server.exceptions.InvalidIndexConfig;
 import org.lumongo.server.exceptions.SegmentDoesNotExist;
 import org.lumongo.server.hazelcast.HazelcastManager;
 import org.lumongo.server.hazelcast.UpdateSegmentsTask;
+import org.lumongo.server.search.GlobalTermStats;
 import org.lumongo.server.search.LumongoMultiFieldQueryParser;
 import org.lumongo.server.search.QueryCacheKey;
+import org.lumongo.server.search.QueryLatencies;
+import org.lumongo.server.search.QueryStats;
 import org.lumongo.server.search.QueryWithFilters;
+import org.lumongo.server.search.RequestFactorTuner;
+import org.lumongo.server.search.SearchExecutor;
 import org.lumongo.storage.constants.MongoConstants;
+import org.lumongo.storage.lucene.BlockCodec;
 import org.lumongo.storage.lucene.DistributedDirectory;
 import org.lumongo.storage.lucene.MongoDirectory;
 import org.lumongo.storage.rawfiles.DocumentStorage;
 import org.lumongo.storage.rawfiles.MongoDocumentStorage;
+import org.lumongo.storage.rawfiles.SourceDocument;
 import org.lumongo.util.DeletingFileVisitor;
 import org.lumongo.util.LockHandler;
 import org.lumongo.util.LumongoThreadFactory;
@@ -62,21 +74,28 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -90,6 +109,8 @@ public class LumongoIndex implements IndexSegmentInterface {
 
 	private final static Logger log = Logger.getLogger(LumongoIndex.class);
 	private static final String SETTINGS_ID = "settings";
+	private static final String READER_GENERATION_SUFFIX = "_readerGeneration";
+	private static final int PARSED_QUERY_CACHE_SIZE = 1024;
 
 	private final IndexConfig indexConfig;
 	private final MongoConfig mongoConfig;
@@ -97,16 +118,27 @@ public class LumongoIndex implements IndexSegmentInterface {
 
 	private final MongoClient mongo;
 	private final GenericObjectPool<LumongoMultiFieldQueryParser> parsers;
+	private final Cache<Lumongo.Query, Query> parsedQueryCache;
+	private final Cache<List<LMFacet>, List<Query>> drillDownQueryCache;
 	private final ConcurrentHashMap<Integer, LumongoSegment> segmentMap;
 	private final ConcurrentHashMap<Integer, ILock> hazelLockMap;
 	private final ReadWriteLock indexLock;
 	private final ExecutorService segmentPool;
+	private final SearchExecutor searchExecutor;
+	private final ScheduledExecutorService refreshScheduler;
+	private final ConcurrentHashMap<Integer, ScheduledFuture<?>> refreshTasks;
+	private final IndexingMemoryController indexingMemoryController;
+	private final QueryStats queryStats;
+	private final QueryLatencies queryLatencies;
+	private final IndexOperationLatencies operationLatencies;
+	private final RequestFactorTuner requestFactorTuner;
 	private final int numberOfSegments;
 	private final String indexName;
 	private final HazelcastManager hazelcastManager;
 	private final DocumentStorage documentStorage;
+	private final IAtomicLong readerGeneration;
 
-	private Map<Member, Set<Integer>> memberToSegmentMap;
+	private volatile Map<Member, Set<Integer>> memberToSegmentMap;
 	private Map<Integer, Member> segmentToMemberMap;
 	private Timer commitTimer;
 	private TimerTask commitTask;
@@ -115,7 +147,8 @@ public class LumongoIndex implements IndexSegmentInterface {
 	private LockHandler documentLockHandler;
 	private FacetsConfig facetsConfig;
 
-	private LumongoIndex(HazelcastManager hazelcastManger, MongoConfig mongoConfig, ClusterConfig clusterConfig, IndexConfig indexConfig) throws Exception {
+	private LumongoIndex(HazelcastManager hazelcastManger, MongoConfig mongoConfig, ClusterConfig clusterConfig, SearchExecutor searchExecutor,
+			ScheduledExecutorService refreshScheduler, IndexingMemoryController indexingMemoryController, IndexConfig indexConfig) throws Exception {
 
 		this.documentLockHandler = new LockHandler();
 
@@ -137,6 +170,15 @@ public class LumongoIndex implements IndexSegmentInterface {
 		this.documentStorage = new MongoDocumentStorage(storageMongoClient, indexName, rawStorageDb, RESULT_STORAGE_COLLECTION, clusterConfig.isSharded());
 
 		this.segmentPool = Executors.newCachedThreadPool(new LumongoThreadFactory(indexName + "-segments"));
+		this.searchExecutor = searchExecutor;
+		this.refreshScheduler = refreshScheduler;
+		this.refreshTasks = new ConcurrentHashMap<>();
+		this.indexingMemoryController = indexingMemoryController;
+		this.queryStats = new QueryStats();
+		this.queryLatencies = new QueryLatencies();
+		this.operationLatencies = new IndexOperationLatencies();
+		this.requestFactorTuner = new RequestFactorTuner();
+		this.readerGeneration = hazelcastManager.getAtomicLong(indexName + READER_GENERATION_SUFFIX);
 
 		this.parsers = new GenericObjectPool<>(new BasePoolableObjectFactory<LumongoMultiFieldQueryParser>() {
 
@@ -147,6 +189,10 @@ public class LumongoIndex implements IndexSegmentInterface {
 
 		});
 
+		//parsed queries are shared between requests and are never modified after parsing
+		this.parsedQueryCache = CacheBuilder.newBuilder().maximumSize(PARSED_QUERY_CACHE_SIZE).build();
+		this.drillDownQueryCache = CacheBuilder.newBuilder().maximumSize(PARSED_QUERY_CACHE_SIZE).build();
+
 		this.indexLock = new ReentrantReadWriteLock(true);
 		this.segmentMap = new ConcurrentHashMap<>();
 		this.hazelLockMap = new ConcurrentHashMap<>();
@@ -182,22 +228,191 @@ public class LumongoIndex implements IndexSegmentInterface {
 	}
 
 	public static LumongoIndex loadIndex(HazelcastManager hazelcastManager, MongoConfig mongoConfig, MongoClient mongo, ClusterConfig clusterConfig,
+			SearchExecutor searchExecutor, ScheduledExecutorService refreshScheduler, IndexingMemoryController indexingMemoryController,
 			String indexName) throws Exception {
 		IndexConfig indexConfig = loadIndexSettings(mongo, mongoConfig.getDatabaseName(), indexName);
 		log.info("Loading index <" + indexName + ">");
 
-		return new LumongoIndex(hazelcastManager, mongoConfig, clusterConfig, indexConfig);
+		return new LumongoIndex(hazelcastManager, mongoConfig, clusterConfig, searchExecutor, refreshScheduler, indexingMemoryController,
+				indexConfig);
 
 	}
 
-	public static LumongoIndex createIndex(HazelcastManager hazelcastManager, MongoConfig mongoConfig, ClusterConfig clusterConfig, IndexConfig indexConfig)
-			throws Exception {
-		LumongoIndex i = new LumongoIndex(hazelcastManager, mongoConfig, clusterConfig, indexConfig);
+	public static LumongoIndex createIndex(HazelcastManager hazelcastManager, MongoConfig mongoConfig, ClusterConfig clusterConfig,
+			SearchExecutor searchExecutor, ScheduledExecutorService refreshScheduler, IndexingMemoryController indexingMemoryController,
+			IndexConfig indexConfig) throws Exception {
+		LumongoIndex i = new LumongoIndex(hazelcastManager, mongoConfig, clusterConfig, searchExecutor, refreshScheduler, indexingMemoryController,
+				indexConfig);
 		i.storeIndexSettings();
 		return i;
 
 	}
 
+	/**
+	 * Stores a batch of documents owned by this node.  The batch is split by segment and each segment applies its part under one ordered
+	 * acquisition of the document locks, with one bulk index call and one bulk Mongo write
+	 * @return the status of each store request in request order
+	 */
+	public List<StoreStatus> batchStoreInternal(List<StoreRequest> storeRequests) throws Exception {
+		long start = System.nanoTime();
+		indexLock.readLock().lock();
+
+		try {
+
+			long timestamp = hazelcastManager.getClusterTime();
+
+			StoreStatus[] storeStatuses = new StoreStatus[storeRequests.size()];
+
+			Map<LumongoSegment, List<Integer>> segmentPositions = new HashMap<>();
+			for (int i = 0; i < storeRequests.size(); i++) {
+				StoreRequest storeRequest = storeRequests.get(i);
+				try {
+					LumongoSegment s = findSegmentFromUniqueId(storeRequest.getUniqueId());
+					segmentPositions.computeIfAbsent(s, k -> new ArrayList<>()).add(i);
+				}
+				catch (Exception e) {
+					storeStatuses[i] = getFailedStoreStatus(storeRequest, e);
+				}
+			}
+
+			List<Future<?>> responses = new ArrayList<>();
+			for (Map.Entry<LumongoSegment, List<Integer>> entry : segmentPositions.entrySet()) {
+				LumongoSegment segment = entry.getKey();
+				List<Integer> positions = entry.getValue();
+				responses.add(segmentPool.submit(() -> batchStoreSegment(segment, storeRequests, positions, timestamp, storeStatuses)));
+			}
+
+			for (Future<?> response : responses) {
+				response.get();
+			}
+
+			return Arrays.asList(storeStatuses);
+		}
+		finally {
+			indexLock.readLock().unlock();
+			operationLatencies.recordSince(IndexOperation.BATCH_STORE, start);
+		}
+	}
+
+	private void batchStoreSegment(LumongoSegment segment, List<StoreRequest> storeRequests, List<Integer> positions, long timestamp,
+			StoreStatus[] storeStatuses) {
+
+		Set<String> uniqueIds = new HashSet<>();
+		for (int position : positions) {
+			uniqueIds.add(storeRequests.get(position).getUniqueId());
+		}
+
+		List<ReadWriteLock> documentLocks = documentLockHandler.getLocks(uniqueIds);
+		for (ReadWriteLock documentLock : documentLocks) {
+			documentLock.writeLock().lock();
+		}
+		try {
+
+			//like sequential stores, the last result document for a unique id in a batch wins
+			Map<String, Integer> lastPositionForUniqueId = new HashMap<>();
+			for (int position : positions) {
+				StoreRequest storeRequest = storeRequests.get(position);
+				if (storeRequest.hasResultDocument()) {
+					lastPositionForUniqueId.put(storeRequest.getUniqueId(), position);
+				}
+			}
+
+			List<SourceDocument> sourceDocuments = new ArrayList<>();
+			List<Integer> sourcePositions = new ArrayList<>();
+			for (int position : positions) {
+				StoreRequest storeRequest = storeRequests.get(position);
+				if (storeRequest.hasResultDocument() && lastPositionForUniqueId.get(storeRequest.getUniqueId()) == position) {
+					try {
+						ResultDocument resultDocument = storeRequest.getResultDocument();
+						Document document;
+						if (resultDocument.hasDocument()) {
+							document = LumongoUtil.byteArrayToMongoDocument(resultDocument.getDocument().toByteArray());
+						}
+						else {
+							document = new Document();
+						}
+						sourceDocuments.add(new SourceDocument(storeRequest.getUniqueId(), document, resultDocument.getMetadataList()));
+						sourcePositions.add(position);
+					}
+					catch (Exception e) {
+						storeStatuses[position] = getFailedStoreStatus(storeRequest, e);
+					}
+				}
+			}
+
+			Map<Integer, String> indexErrors = segment.index(sourceDocuments, timestamp);
+
+			List<SourceDocument> indexedDocuments = new ArrayList<>();
+			List<Integer> indexedPositions = new ArrayList<>();
+			for (int i = 0; i < sourceDocuments.size(); i++) {
+				int position = sourcePositions.get(i);
+				if (indexErrors.containsKey(i)) {
+					storeStatuses[position] = getFailedStoreStatus(storeRequests.get(position), indexErrors.get(i));
+				}
+				else {
+					indexedDocuments.add(sourceDocuments.get(i));
+					indexedPositions.add(position);
+				}
+			}
+
+			if (indexConfig.getIndexSettings().getStoreDocumentInMongo()) {
+				Map<Integer, String> storageErrors = documentStorage.storeSourceDocuments(indexedDocuments, timestamp);
+				for (Map.Entry<Integer, String> storageError : storageErrors.entrySet()) {
+					int position = indexedPositions.get(storageError.getKey());
+					storeStatuses[position] = getFailedStoreStatus(storeRequests.get(position), storageError.getValue());
+				}
+			}
+
+			for (int position : positions) {
+				StoreRequest storeRequest = storeRequests.get(position);
+				if (storeStatuses[position] == null) {
+					try {
+						if (storeRequest.getClearExistingAssociated()) {
+							documentStorage.deleteAssociatedDocuments(storeRequest.getUniqueId());
+						}
+
+						for (AssociatedDocument ad : storeRequest.getAssociatedDocumentList()) {
+							ad = AssociatedDocument.newBuilder(ad).setTimestamp(timestamp).build();
+							documentStorage.storeAssociatedDocument(ad);
+						}
+
+						storeStatuses[position] = StoreStatus.newBuilder().setUniqueId(storeRequest.getUniqueId()).setIndexName(indexName).build();
+					}
+					catch (Exception e) {
+						storeStatuses[position] = getFailedStoreStatus(storeRequest, e);
+					}
+				}
+			}
+		}
+		catch (Exception e) {
+			log.error("Failed to batch store in segment <" + segment.getSegmentNumber() + "> of index <" + indexName + ">: " + e.getClass().getSimpleName()
+					+ ": ", e);
+			for (int position : positions) {
+				if (storeStatuses[position] == null) {
+					storeStatuses[position] = getFailedStoreStatus(storeRequests.get(position), e);
+				}
+			}
+		}
+		finally {
+			for (ReadWriteLock documentLock : documentLocks) {
+				documentLock.writeLock().unlock();
+			}
+		}
+	}
+
+	private static StoreStatus getFailedStoreStatus(StoreRequest storeRequest, Exception e) {
+		return getFailedStoreStatus(storeRequest, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+	}
+
+	private static StoreStatus getFailedStoreStatus(StoreRequest storeRequest, String errorMessage) {
+		StoreStatus.Builder storeStatus = StoreStatus.newBuilder().setUniqueId(storeRequest.getUniqueId()).setIndexName(storeRequest.getIndexName())
+				.setSuccess(false);
+		if (errorMessage != null) {
+			storeStatus.setErrorMessage(errorMessage);
+		}
+		return storeStatus.build();
+	}
+
 	/** From org.apache.solr.search.QueryUtils **/
 	public static boolean isNegative(Query q) {
 		if (!(q instanceof BooleanQuery))
@@ -251,6 +466,52 @@ public class LumongoIndex implements IndexSegmentInterface {
 		return indexConfig.getFieldTypeForSortField(fieldName);
 	}
 
+	/**
+	 * Each segment is refreshed by its own task on the node refresh scheduler so a slow segment does not delay the others
+	 */
+	private void scheduleRefreshTask(int segmentNumber, LumongoSegment segment) {
+		cancelRefreshTask(segmentNumber);
+
+		int refreshIntervalMs = indexConfig.getIndexSettings().getRefreshIntervalMs();
+		if (refreshIntervalMs > 0) {
+			refreshTasks.put(segmentNumber, refreshScheduler.scheduleWithFixedDelay(() -> refreshSegment(segmentNumber, segment), refreshIntervalMs,
+					refreshIntervalMs, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	private void cancelRefreshTask(int segmentNumber) {
+		ScheduledFuture<?> refreshTask = refreshTasks.remove(segmentNumber);
+		if (refreshTask != null) {
+			refreshTask.cancel(false);
+		}
+	}
+
+	private void refreshSegment(int segmentNumber, LumongoSegment segment) {
+		//held for this segment only, settings updates and unloads wait for the refreshes running now and not for every segment
+		indexLock.readLock().lock();
+		try {
+			if (segmentMap.get(segmentNumber) == segment) {
+				segment.refresh();
+			}
+		}
+		catch (Exception e) {
+			log.error("Failed to refresh segment <" + segmentNumber + "> for index <" + indexName + ">: " + e.getClass().getSimpleName() + ": ", e);
+		}
+		finally {
+			indexLock.readLock().unlock();
+		}
+	}
+
+	public List<LumongoSegment> getLoadedSegments() {
+		indexLock.readLock().lock();
+		try {
+			return new ArrayList<>(segmentMap.values());
+		}
+		finally {
+			indexLock.readLock().unlock();
+		}
+	}
+
 	private void doCommit(boolean force) {
 		indexLock.readLock().lock();
 		try {
@@ -327,11 +588,15 @@ public class LumongoIndex implements IndexSegmentInterface {
 		indexLock.writeLock().lock();
 		try {
 			Member self = hazelcastManager.getSelf();
+			//assigned before loading so the writers are sized for every segment
+			Set<Integer> segments = new HashSet<>();
+			for (int segmentNumber = 0; segmentNumber < numberOfSegments; segmentNumber++) {
+				segments.add(segmentNumber);
+			}
 			this.memberToSegmentMap = new HashMap<>();
-			this.memberToSegmentMap.put(self, new HashSet<>());
+			this.memberToSegmentMap.put(self, segments);
 			for (int segmentNumber = 0; segmentNumber < numberOfSegments; segmentNumber++) {
 				loadSegment(segmentNumber);
-				this.memberToSegmentMap.get(self).add(segmentNumber);
 			}
 
 			this.segmentToMemberMap = new HashMap<>();
@@ -353,6 +618,9 @@ public class LumongoIndex implements IndexSegmentInterface {
 			log.info("Canceling timers for <" + indexName + ">");
 			commitTask.cancel();
 			commitTimer.cancel();
+			for (Integer segmentNumber : refreshTasks.keySet()) {
+				cancelRefreshTask(segmentNumber);
+			}
 
 			if (!terminate) {
 				log.info("Committing <" + indexName + ">");
@@ -406,7 +674,14 @@ public class LumongoIndex implements IndexSegmentInterface {
 
 				facetsConfig = generateFacetsConfig();
 				LumongoSegment s = new LumongoSegment(segmentNumber, indexSegmentInterface, indexConfig, facetsConfig, documentStorage);
+
+				int replayed = s.replayTranslog();
+				if (replayed > 0) {
+					log.info("Replayed <" + replayed + "> uncommitted changes from translog for index <" + indexName + "> segment <" + segmentNumber + ">");
+				}
+
 				segmentMap.put(segmentNumber, s);
+				scheduleRefreshTask(segmentNumber, s);
 
 				log.info("Loaded segment <" + segmentNumber + "> for index <" + indexName + ">");
 				log.info("Current segments <" + (new TreeSet<>(segmentMap.keySet())) + "> for index <" + indexName + ">");
@@ -418,6 +693,10 @@ public class LumongoIndex implements IndexSegmentInterface {
 		}
 	}
 
+	private BlockCodec getBlockCodec() {
+		return BlockCodec.valueOf(indexConfig.getIndexSettings().getBlockCompression().name());
+	}
+
 	public IndexWriter getIndexWriter(int segmentNumber) throws Exception {
 
 		Directory d;
@@ -428,7 +707,7 @@ public class LumongoIndex implements IndexSegmentInterface {
 			String indexSegmentDbName = getIndexSegmentDbName(segmentNumber);
 			String indexSegmentCollectionName = getIndexSegmentCollectionName(segmentNumber) + "_index";
 			MongoDirectory mongoDirectory = new MongoDirectory(mongo, indexSegmentDbName, indexSegmentCollectionName, clusterConfig.isSharded(),
-					clusterConfig.getIndexBlockSize());
+					clusterConfig.getIndexBlockSize(), getBlockCodec());
 			d = new DistributedDirectory(mongoDirectory);
 		}
 
@@ -436,7 +715,8 @@ public class LumongoIndex implements IndexSegmentInterface {
 		IndexWriterConfig config = new IndexWriterConfig(getPerFieldAnalyzer());
 
 		config.setMaxBufferedDocs(Integer.MAX_VALUE);
-		config.setRAMBufferSizeMB(100);
+		//IndexingMemoryController also flushes the largest writers when the node total exceeds the budget
+		config.setRAMBufferSizeMB(indexingMemoryController.getWriterBufferMB(this));
 		config.setIndexDeletionPolicy(new IndexDeletionPolicy() {
 			public void onInit(List<? extends IndexCommit> commits) {
 				// Note that commits.size() should normally be 1:
@@ -464,7 +744,9 @@ public class LumongoIndex implements IndexSegmentInterface {
 
 		config.setUseCompoundFile(false);
 
-		NRTCachingDirectory nrtCachingDirectory = new NRTCachingDirectory(d, 15, 90);
+		//flushed segments cached in memory take their own part of the segment share, apart from the writer buffer
+		double cacheMB = indexingMemoryController.getIndexCacheMB(this);
+		NRTCachingDirectory nrtCachingDirectory = new NRTCachingDirectory(d, Math.min(15, cacheMB / 6), Math.min(90, cacheMB));
 
 		return new IndexWriter(nrtCachingDirectory, config);
 	}
@@ -477,6 +759,36 @@ public class LumongoIndex implements IndexSegmentInterface {
 		return Paths.get("indexes", indexName + "_" + segmentNumber + "_facets");
 	}
 
+	@Override
+	public Path getTranslogPath(int segmentNumber) {
+		return Paths.get("translog", indexName + "_" + segmentNumber);
+	}
+
+	/**
+	 * Called the first time a segment changes after a refresh and whenever a refresh opens a new reader.  Coordinators include the generation
+	 * in their cache keys so their cached responses for this index are no longer used
+	 */
+	@Override
+	public void segmentChanged(int segmentNumber) {
+		incrementReaderGeneration();
+	}
+
+	private void incrementReaderGeneration() {
+		try {
+			readerGeneration.incrementAndGet();
+		}
+		catch (Exception e) {
+			log.error("Failed to update reader generation for index <" + indexName + ">: " + e.getClass().getSimpleName() + ": ", e);
+		}
+	}
+
+	/**
+	 * @return a cluster wide count that changes whenever any segment of the index changes
+	 */
+	public long getReaderGeneration() {
+		return readerGeneration.get();
+	}
+
 	public DirectoryTaxonomyWriter getTaxoWriter(int segmentNumber) throws IOException {
 
 
@@ -489,11 +801,12 @@ public class LumongoIndex implements IndexSegmentInterface {
 			String indexSegmentDbName = getIndexSegmentDbName(segmentNumber);
 			String indexSegmentCollectionName = getIndexSegmentCollectionName(segmentNumber) + "_facets";
 			MongoDirectory mongoDirectory = new MongoDirectory(mongo, indexSegmentDbName, indexSegmentCollectionName, clusterConfig.isSharded(),
-					clusterConfig.getIndexBlockSize());
+					clusterConfig.getIndexBlockSize(), getBlockCodec());
 			d = new DistributedDirectory(mongoDirectory);
 		}
 
-		NRTCachingDirectory nrtCachingDirectory = new NRTCachingDirectory(d, 2, 10);
+		double cacheMB = indexingMemoryController.getTaxonomyCacheMB(this);
+		NRTCachingDirectory nrtCachingDirectory = new NRTCachingDirectory(d, Math.min(2, cacheMB / 5), Math.min(10, cacheMB));
 
 		return new DirectoryTaxonomyWriter(nrtCachingDirectory);
 	}
@@ -515,6 +828,7 @@ public class LumongoIndex implements IndexSegmentInterface {
 		try {
 			ILock hzLock = hazelLockMap.get(segmentNumber);
 			try {
+				cancelRefreshTask(segmentNumber);
 				if (segmentMap.containsKey(segmentNumber)) {
 					LumongoSegment s = segmentMap.remove(segmentNumber);
 					if (s != null) {
@@ -804,6 +1118,14 @@ public class LumongoIndex implements IndexSegmentInterface {
 			}
 		}
 
+		//translogs on other nodes are discarded when they are next opened because they do not match any commit
+		for (int i = 0; i < numberOfSegments; i++) {
+			Path p = getTranslogPath(i);
+			if (Files.exists(p)) {
+				Files.walkFileTree(p, new DeletingFileVisitor());
+			}
+		}
+
 		documentStorage.drop();
 
 		for (int i = 0; i < numberOfSegments; i++) {
@@ -812,9 +1134,13 @@ public class LumongoIndex implements IndexSegmentInterface {
 			db.drop();
 		}
 
+		//the counter is cluster wide and otherwise stays in every member until the cluster is restarted
+		readerGeneration.destroy();
+
 	}
 
 	public void storeInternal(StoreRequest storeRequest) throws Exception {
+		long start = System.nanoTime();
 		indexLock.readLock().lock();
 
 		try {
@@ -860,13 +1186,14 @@ public class LumongoIndex implements IndexSegmentInterface {
 		}
 		finally {
 			indexLock.readLock().unlock();
+			operationLatencies.recordSince(IndexOperation.STORE, start);
 		}
 	}
 
 	/** From org.apache.solr.search.QueryUtils **/
 
 	public void deleteDocument(DeleteRequest deleteRequest) throws Exception {
-
+		long start = System.nanoTime();
 		indexLock.readLock().lock();
 
 		try {
@@ -899,87 +1226,192 @@ public class LumongoIndex implements IndexSegmentInterface {
 		}
 		finally {
 			indexLock.readLock().unlock();
+			operationLatencies.recordSince(IndexOperation.DELETE, start);
 		}
 	}
 
+	/**
+	 * Parsed queries are cached until the index settings are reloaded, the index lock keeps a reload from running during a parse so a query
+	 * parsed with the old settings is never cached after the reload
+	 */
 	public Query getQuery(Lumongo.Query lumongoQuery) throws Exception {
 		indexLock.readLock().lock();
+		try {
+			Query query = parsedQueryCache.getIfPresent(lumongoQuery);
+			if (query == null) {
+				query = parseQuery(lumongoQuery);
+				parsedQueryCache.put(lumongoQuery, query);
+			}
+			return query;
+		}
+		finally {
+			indexLock.readLock().unlock();
+		}
+	}
 
+	private Query parseQuery(Lumongo.Query lumongoQuery) throws Exception {
 		Lumongo.Query.Operator defaultOperator = lumongoQuery.getDefaultOp();
 		String queryText = lumongoQuery.getQ();
 		Integer minimumShouldMatchNumber = lumongoQuery.getMm();
 		List<String> queryFields = lumongoQuery.getQfList();
 
+		Operator operator = null;
+		if (defaultOperator.equals(Lumongo.Query.Operator.OR)) {
+			operator = Operator.OR;
+		}
+		else if (defaultOperator.equals(Lumongo.Query.Operator.AND)) {
+			operator = Operator.AND;
+		}
+		else {
+			//this should never happen
+			log.error("Unknown operator type: <" + defaultOperator + ">");
+		}
+
+		LumongoMultiFieldQueryParser qp = null;
+		if (queryText == null || queryText.isEmpty()) {
+			return new MatchAllDocsQuery();
+		}
 		try {
+			qp = parsers.borrowObject();
+			qp.setMinimumNumberShouldMatch(minimumShouldMatchNumber);
+			qp.setDefaultOperator(operator);
 
-			Operator operator = null;
-			if (defaultOperator.equals(Lumongo.Query.Operator.OR)) {
-				operator = Operator.OR;
-			}
-			else if (defaultOperator.equals(Lumongo.Query.Operator.AND)) {
-				operator = Operator.AND;
+			if (lumongoQuery.getDismax()) {
+				qp.enableDismax(lumongoQuery.getDismaxTie());
 			}
 			else {
-				//this should never happen
-				log.error("Unknown operator type: <" + defaultOperator + ">");
+				qp.disableDismax();
 			}
 
-			LumongoMultiFieldQueryParser qp = null;
-			if (queryText == null || queryText.isEmpty()) {
-				return new MatchAllDocsQuery();
+			if (queryFields.isEmpty()) {
+				qp.setDefaultField(indexConfig.getIndexSettings().getDefaultSearchField());
 			}
-			try {
-				qp = parsers.borrowObject();
-				qp.setMinimumNumberShouldMatch(minimumShouldMatchNumber);
-				qp.setDefaultOperator(operator);
+			else {
+				Set<String> fields = new LinkedHashSet<>();
 
-				if (lumongoQuery.getDismax()) {
-					qp.enableDismax(lumongoQuery.getDismaxTie());
-				}
-				else {
-					qp.disableDismax();
-				}
+				HashMap<String, Float> boostMap = new HashMap<>();
+				for (String queryField : queryFields) {
+
+					if (queryField.contains("^")) {
+						try {
+							float boost = Float.parseFloat(queryField.substring(queryField.indexOf("^") + 1));
+							queryField = queryField.substring(0, queryField.indexOf("^"));
+							boostMap.put(queryField, boost);
+						}
+						catch (Exception e) {
+							throw new IllegalArgumentException("Invalid queryText field boost <" + queryField + ">");
+						}
+					}
+					fields.add(queryField);
 
-				if (queryFields.isEmpty()) {
-					qp.setDefaultField(indexConfig.getIndexSettings().getDefaultSearchField());
 				}
-				else {
-					Set<String> fields = new LinkedHashSet<>();
+				qp.setDefaultFields(fields, boostMap);
+			}
+			Query query = qp.parse(queryText);
+			boolean negative = isNegative(query);
+			if (negative) {
+				query = fixNegativeQuery(query);
+			}
+			return query;
 
-					HashMap<String, Float> boostMap = new HashMap<>();
-					for (String queryField : queryFields) {
+		}
+		finally {
+			parsers.returnObject(qp);
+		}
+	}
 
-						if (queryField.contains("^")) {
-							try {
-								float boost = Float.parseFloat(queryField.substring(queryField.indexOf("^") + 1));
-								queryField = queryField.substring(0, queryField.indexOf("^"));
-								boostMap.put(queryField, boost);
-							}
-							catch (Exception e) {
-								throw new IllegalArgumentException("Invalid queryText field boost <" + queryField + ">");
-							}
-						}
-						fields.add(queryField);
+	/**
+	 * @return a filter for each drill down dimension matching any of the values given for it, cached like parsed queries
+	 */
+	public List<Query> getDrillDownQueries(List<LMFacet> drillDownList) {
+		indexLock.readLock().lock();
+		try {
+			List<Query> drillDownQueries = drillDownQueryCache.getIfPresent(drillDownList);
+			if (drillDownQueries == null) {
+				drillDownQueries = buildDrillDownQueries(drillDownList);
+				drillDownQueryCache.put(drillDownList, drillDownQueries);
+			}
+			return drillDownQueries;
+		}
+		finally {
+			indexLock.readLock().unlock();
+		}
+	}
+
+	private List<Query> buildDrillDownQueries(List<LMFacet> drillDownList) {
+		Map<String, Set<String>> dimToValues = new HashMap<>();
+		for (LMFacet drillDown : drillDownList) {
+			String key = drillDown.getLabel();
+			String value = drillDown.getPath();
+			if (!dimToValues.containsKey(key)) {
+				dimToValues.put(key, new HashSet<>());
+			}
+			dimToValues.get(key).add(value);
+		}
+
+		List<Query> drillDownQueries = new ArrayList<>();
+		for (Map.Entry<String, Set<String>> entry : dimToValues.entrySet()) {
+			String indexFieldName = facetsConfig.getDimConfig(entry.getKey()).indexFieldName;
+
+			BooleanQuery.Builder booleanQuery = new BooleanQuery.Builder();
+			for (String value : entry.getValue()) {
+				booleanQuery.add(new BooleanClause(new TermQuery(new org.apache.lucene.index.Term(indexFieldName, value)), BooleanClause.Occur.SHOULD));
+			}
+
+			drillDownQueries.add(booleanQuery.build());
+		}
+		return Collections.unmodifiableList(drillDownQueries);
+	}
+
+	private FieldDoc getAfter(ScoredResult sr, SortRequest sortRequest) throws Exception {
+		int docId = sr.getDocId();
+		float score = sr.getScore();
+
+		Object[] sortTerms = new Object[sortRequest.getFieldSortCount()];
 
+		int sortTermsIndex = 0;
+
+		SortValues sortValues = sr.getSortValues();
+		for (FieldSort fs : sortRequest.getFieldSortList()) {
+
+			String sortField = fs.getSortField();
+			FieldConfig.FieldType sortType = indexConfig.getFieldTypeForSortField(sortField);
+
+			SortValue sortValue = sortValues.getSortValue(sortTermsIndex);
+
+			if (sortValue.getExists()) {
+				if (IndexConfigUtil.isNumericOrDateFieldType(sortType)) {
+					if (IndexConfigUtil.isNumericIntFieldType(sortType)) {
+						sortTerms[sortTermsIndex] = sortValue.getIntegerValue();
+					}
+					else if (IndexConfigUtil.isNumericLongFieldType(sortType)) {
+						sortTerms[sortTermsIndex] = sortValue.getLongValue();
+					}
+					else if (IndexConfigUtil.isNumericFloatFieldType(sortType)) {
+						sortTerms[sortTermsIndex] = sortValue.getFloatValue();
+					}
+					else if (IndexConfigUtil.isNumericDoubleFieldType(sortType)) {
+						sortTerms[sortTermsIndex] = sortValue.getDoubleValue();
+					}
+					else if (IndexConfigUtil.isDateFieldType(sortType)) {
+						sortTerms[sortTermsIndex] = sortValue.getDateValue();
+					}
+					else {
+						throw new Exception("Invalid numeric sort type <" + sortType + "> for sort field <" + sortField + ">");
 					}
-					qp.setDefaultFields(fields, boostMap);
 				}
-				Query query = qp.parse(queryText);
-				boolean negative = isNegative(query);
-				if (negative) {
-					query = fixNegativeQuery(query);
+				else { //string
+					sortTerms[sortTermsIndex] = new BytesRef(sortValue.getStringValue());
 				}
-				return query;
-
 			}
-			finally {
-				parsers.returnObject(qp);
+			else {
+				sortTerms[sortTermsIndex] = null;
 			}
 
+			sortTermsIndex++;
 		}
-		finally {
-			indexLock.readLock().unlock();
-		}
+
+		return new FieldDoc(docId, score, sortTerms, sr.getSegment());
 	}
 
 	public IndexSegmentResponse queryInternal(final QueryWithFilters queryWithFilters, final QueryRequest queryRequest) throws Exception {
@@ -987,74 +1419,51 @@ public class LumongoIndex implements IndexSegmentInterface {
 		try {
 			int amount = queryRequest.getAmount() + queryRequest.getStart();
 
+			boolean retry = queryRequest.getSegmentRetryCount() != 0;
+
 			if (indexConfig.getNumberOfSegments() != 1) {
-				if (!queryRequest.getFetchFull() && (amount > 0)) {
-					amount = (int) (((amount / numberOfSegments) + indexConfig.getIndexSettings().getMinSegmentRequest()) * indexConfig.getIndexSettings()
-							.getRequestFactor());
+				if (!queryRequest.getFetchFull() && !retry && (amount > 0)) {
+					Integer segmentAmount = null;
+					for (SegmentAmount sa : queryRequest.getSegmentAmountList()) {
+						if (indexName.equals(sa.getIndexName())) {
+							segmentAmount = sa.getAmount();
+						}
+					}
+
+					if (segmentAmount != null) {
+						amount = segmentAmount;
+					}
+					else {
+						amount = (int) (getEvenSegmentAmount(amount) * indexConfig.getIndexSettings().getRequestFactor());
+					}
 				}
 			}
 
 			final int requestedAmount = amount;
 
 			final HashMap<Integer, FieldDoc> lastScoreDocMap = new HashMap<>();
-			FieldDoc after;
-
-			LastResult lr = queryRequest.getLastResult();
-			if (lr != null) {
-				for (LastIndexResult lir : lr.getLastIndexResultList()) {
-					if (indexName.equals(lir.getIndexName())) {
-						for (ScoredResult sr : lir.getLastForSegmentList()) {
-							int docId = sr.getDocId();
-							float score = sr.getScore();
-
-							SortRequest sortRequest = queryRequest.getSortRequest();
-
-							Object[] sortTerms = new Object[sortRequest.getFieldSortCount()];
-
-							int sortTermsIndex = 0;
-
-							SortValues sortValues = sr.getSortValues();
-							for (FieldSort fs : sortRequest.getFieldSortList()) {
-
-								String sortField = fs.getSortField();
-								FieldConfig.FieldType sortType = indexConfig.getFieldTypeForSortField(sortField);
-
-								SortValue sortValue = sortValues.getSortValue(sortTermsIndex);
-
-								if (sortValue.getExists()) {
-									if (IndexConfigUtil.isNumericOrDateFieldType(sortType)) {
-										if (IndexConfigUtil.isNumericIntFieldType(sortType)) {
-											sortTerms[sortTermsIndex] = sortValue.getIntegerValue();
-										}
-										else if (IndexConfigUtil.isNumericLongFieldType(sortType)) {
-											sortTerms[sortTermsIndex] = sortValue.getLongValue();
-										}
-										else if (IndexConfigUtil.isNumericFloatFieldType(sortType)) {
-											sortTerms[sortTermsIndex] = sortValue.getFloatValue();
-										}
-										else if (IndexConfigUtil.isNumericDoubleFieldType(sortType)) {
-											sortTerms[sortTermsIndex] = sortValue.getDoubleValue();
-										}
-										else if (IndexConfigUtil.isDateFieldType(sortType)) {
-											sortTerms[sortTermsIndex] = sortValue.getDateValue();
-										}
-										else {
-											throw new Exception("Invalid numeric sort type <" + sortType + "> for sort field <" + sortField + ">");
-										}
-									}
-									else { //string
-										sortTerms[sortTermsIndex] = new BytesRef(sortValue.getStringValue());
-									}
-								}
-								else {
-									sortTerms[sortTermsIndex] = null;
-								}
-
-								sortTermsIndex++;
-							}
 
-							after = new FieldDoc(docId, score, sortTerms, sr.getSegment());
-							lastScoreDocMap.put(sr.getSegment(), after);
+			//when retrying only the given segments are searched again after the last result they returned
+			Set<Integer> segmentsToQuery = null;
+			if (retry) {
+				segmentsToQuery = new HashSet<>();
+				for (SegmentRetry segmentRetry : queryRequest.getSegmentRetryList()) {
+					if (indexName.equals(segmentRetry.getIndexName())) {
+						segmentsToQuery.add(segmentRetry.getSegmentNumber());
+						if (segmentRetry.hasAfter()) {
+							lastScoreDocMap.put(segmentRetry.getSegmentNumber(), getAfter(segmentRetry.getAfter(), queryRequest.getSortRequest()));
+						}
+					}
+				}
+			}
+			else {
+				LastResult lr = queryRequest.getLastResult();
+				if (lr != null) {
+					for (LastIndexResult lir : lr.getLastIndexResultList()) {
+						if (indexName.equals(lir.getIndexName())) {
+							for (ScoredResult sr : lir.getLastForSegmentList()) {
+								lastScoreDocMap.put(sr.getSegment(), getAfter(sr, queryRequest.getSortRequest()));
+							}
 						}
 					}
 				}
@@ -1062,15 +1471,28 @@ public class LumongoIndex implements IndexSegmentInterface {
 
 			IndexSegmentResponse.Builder builder = IndexSegmentResponse.newBuilder();
 
+			final QueryRequest cacheableRequest = QueryCacheKey.getCacheableRequest(queryRequest);
+
+			GlobalTermStats termStats = null;
+			for (IndexTermStats indexTermStats : queryRequest.getIndexTermStatsList()) {
+				if (indexName.equals(indexTermStats.getIndexName())) {
+					termStats = new GlobalTermStats(indexTermStats);
+				}
+			}
+			final GlobalTermStats globalTermStats = termStats;
+
 			List<Future<SegmentResponse>> responses = new ArrayList<>();
 
 			for (final LumongoSegment segment : segmentMap.values()) {
+				if (segmentsToQuery != null && !segmentsToQuery.contains(segment.getSegmentNumber())) {
+					continue;
+				}
 
-				Future<SegmentResponse> response = segmentPool.submit(() -> segment
+				Future<SegmentResponse> response = searchExecutor.submit(indexName, () -> segment
 						.querySegment(queryWithFilters, requestedAmount, lastScoreDocMap.get(segment.getSegmentNumber()), queryRequest.getFacetRequest(),
-								queryRequest.getSortRequest(), new QueryCacheKey(queryRequest), queryRequest.getResultFetchType(),
+								queryRequest.getSortRequest(), cacheableRequest, queryRequest.getResultFetchType(),
 								queryRequest.getDocumentFieldsList(), queryRequest.getDocumentMaskedFieldsList(), queryRequest.getHighlightRequestList(),
-								queryRequest.getAnalysisRequestList()));
+								queryRequest.getAnalysisRequestList(), queryRequest.getRealtime(), globalTermStats));
 
 				responses.add(response);
 
@@ -1101,14 +1523,265 @@ public class LumongoIndex implements IndexSegmentInterface {
 
 	}
 
+	/**
+	 * @return the statistics of the query's scoring terms summed over the segments of this index loaded on this node
+	 */
+	public IndexTermStats getTermStats(final QueryWithFilters queryWithFilters, final QueryRequest queryRequest) throws Exception {
+		indexLock.readLock().lock();
+		try {
+			List<Future<GlobalTermStats>> responses = new ArrayList<>();
+			for (final LumongoSegment segment : segmentMap.values()) {
+				responses.add(searchExecutor.submit(indexName, () -> segment.getTermStats(queryWithFilters, queryRequest.getRealtime())));
+			}
+
+			GlobalTermStats termStats = new GlobalTermStats(indexName);
+			for (Future<GlobalTermStats> response : responses) {
+				try {
+					termStats.add(response.get());
+				}
+				catch (ExecutionException e) {
+					Throwable t = e.getCause();
+
+					if (t instanceof OutOfMemoryError) {
+						throw (OutOfMemoryError) t;
+					}
+
+					throw ((Exception) e.getCause());
+				}
+			}
+			return termStats.toIndexTermStats();
+		}
+		finally {
+			indexLock.readLock().unlock();
+		}
+	}
+
+	public List<ScoredResult> fetchResults(final QueryWithFilters queryWithFilters, final QueryRequest queryRequest, List<ScoredResult> scoredResults)
+			throws Exception {
+		indexLock.readLock().lock();
+		try {
+
+			Map<Integer, List<ScoredResult>> segmentToResults = new HashMap<>();
+			for (ScoredResult scoredResult : scoredResults) {
+				int segmentNumber = scoredResult.getSegment();
+				if (!segmentMap.containsKey(segmentNumber)) {
+					throw new SegmentDoesNotExist(indexName, segmentNumber);
+				}
+				if (!segmentToResults.containsKey(segmentNumber)) {
+					segmentToResults.put(segmentNumber, new ArrayList<>());
+				}
+				segmentToResults.get(segmentNumber).add(scoredResult);
+			}
+
+			Map<Integer, Future<List<ScoredResult>>> responses = new HashMap<>();
+			for (Integer segmentNumber : segmentToResults.keySet()) {
+				final LumongoSegment segment = segmentMap.get(segmentNumber);
+				final List<ScoredResult> segmentResults = segmentToResults.get(segmentNumber);
+
+				Future<List<ScoredResult>> response = searchExecutor.submit(indexName, () -> segment
+						.fetchResults(queryWithFilters, segmentResults, queryRequest.getResultFetchType(), queryRequest.getDocumentFieldsList(),
+								queryRequest.getDocumentMaskedFieldsList(), queryRequest.getHighlightRequestList(), queryRequest.getAnalysisRequestList()));
+
+				responses.put(segmentNumber, response);
+			}
+
+			Map<Integer, Iterator<ScoredResult>> fetchedForSegment = new HashMap<>();
+			for (Integer segmentNumber : responses.keySet()) {
+				try {
+					fetchedForSegment.put(segmentNumber, responses.get(segmentNumber).get().iterator());
+				}
+				catch (ExecutionException e) {
+					Throwable t = e.getCause();
+
+					if (t instanceof OutOfMemoryError) {
+						throw (OutOfMemoryError) t;
+					}
+
+					throw ((Exception) e.getCause());
+				}
+			}
+
+			//segments return results in the order given so the original order can be rebuilt
+			List<ScoredResult> fetchedResults = new ArrayList<>(scoredResults.size());
+			for (ScoredResult scoredResult : scoredResults) {
+				fetchedResults.add(fetchedForSegment.get(scoredResult.getSegment()).next());
+			}
+			return fetchedResults;
+		}
+		finally {
+			indexLock.readLock().unlock();
+		}
+	}
+
+	public CacheStats getQueryResultCacheStats() {
+		indexLock.readLock().lock();
+		try {
+			CacheStats cacheStats = new CacheStats(0, 0, 0, 0, 0, 0);
+			for (LumongoSegment segment : segmentMap.values()) {
+				cacheStats = cacheStats.plus(segment.getQueryResultCacheStats());
+			}
+			return cacheStats;
+		}
+		finally {
+			indexLock.readLock().unlock();
+		}
+	}
+
+	public long getQueryResultCacheSize() {
+		indexLock.readLock().lock();
+		try {
+			long size = 0;
+			for (LumongoSegment segment : segmentMap.values()) {
+				size += segment.getQueryResultCacheSize();
+			}
+			return size;
+		}
+		finally {
+			indexLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Segments whose writer is being reopened or closed are skipped
+	 */
+	public long getIndexingRamBytesUsed() {
+		indexLock.readLock().lock();
+		try {
+			long bytesUsed = 0;
+			for (LumongoSegment segment : segmentMap.values()) {
+				try {
+					bytesUsed += segment.getIndexingRamBytesUsed();
+				}
+				catch (Exception e) {
+					//writer is being reopened or closed
+				}
+			}
+			return bytesUsed;
+		}
+		finally {
+			indexLock.readLock().unlock();
+		}
+	}
+
+	public long getIndexingRamDocs() {
+		indexLock.readLock().lock();
+		try {
+			long ramDocs = 0;
+			for (LumongoSegment segment : segmentMap.values()) {
+				try {
+					ramDocs += segment.getIndexingRamDocs();
+				}
+				catch (Exception e) {
+					//writer is being reopened or closed
+				}
+			}
+			return ramDocs;
+		}
+		finally {
+			indexLock.readLock().unlock();
+		}
+	}
+
+	public long getPendingDeletes() {
+		indexLock.readLock().lock();
+		try {
+			long pendingDeletes = 0;
+			for (LumongoSegment segment : segmentMap.values()) {
+				try {
+					pendingDeletes += segment.getPendingDeletes();
+				}
+				catch (Exception e) {
+					//writer is being reopened or closed
+				}
+			}
+			return pendingDeletes;
+		}
+		finally {
+			indexLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Segments of the index assigned to this node, including any still loading
+	 */
+	public int getLocalSegmentCount() {
+		Map<Member, Set<Integer>> memberToSegmentMap = this.memberToSegmentMap;
+		if (memberToSegmentMap == null) {
+			return 0;
+		}
+		Set<Integer> segments = memberToSegmentMap.get(hazelcastManager.getSelf());
+		return (segments != null) ? segments.size() : 0;
+	}
+
 	public Integer getNumberOfSegments() {
 		return numberOfSegments;
 	}
 
+	/**
+	 * @return the amount each segment would return if results were spread evenly, before the request factor is applied
+	 */
+	public int getEvenSegmentAmount(int amount) {
+		return (amount / numberOfSegments) + indexConfig.getIndexSettings().getMinSegmentRequest();
+	}
+
+	/**
+	 * @return the per segment amount from the learned request factor, or null when the index does not use an adaptive request factor
+	 */
+	public Integer getAdaptiveSegmentAmount(QueryRequest queryRequest) {
+		IndexSettings indexSettings = indexConfig.getIndexSettings();
+		int amount = queryRequest.getAmount() + queryRequest.getStart();
+		if (!indexSettings.getAdaptiveRequestFactor() || numberOfSegments == 1 || amount == 0) {
+			return null;
+		}
+		return (int) (getEvenSegmentAmount(amount) * requestFactorTuner.getRequestFactor(indexSettings, queryRequest.getSortRequest()));
+	}
+
+	public void recordSegmentDepth(QueryRequest queryRequest, int maxTaken, boolean isShort) {
+		IndexSettings indexSettings = indexConfig.getIndexSettings();
+		int amount = queryRequest.getAmount() + queryRequest.getStart();
+		if (indexSettings.getAdaptiveRequestFactor() && numberOfSegments != 1 && amount != 0) {
+			requestFactorTuner.record(indexSettings, queryRequest.getSortRequest(), getEvenSegmentAmount(amount), maxTaken, isShort);
+		}
+	}
+
+	/**
+	 * @return the request factor used for each sort learned so far, and the one used for other sorts under default
+	 */
+	public Map<String, Double> getRequestFactors() {
+		IndexSettings indexSettings = indexConfig.getIndexSettings();
+		Map<String, Double> requestFactors = new TreeMap<>();
+		if (indexSettings.getAdaptiveRequestFactor()) {
+			requestFactors.put("default", requestFactorTuner.getDefaultRequestFactor(indexSettings));
+			requestFactors.putAll(requestFactorTuner.getRequestFactors());
+		}
+		else {
+			requestFactors.put("default", indexSettings.getRequestFactor());
+		}
+		return requestFactors;
+	}
+
+	public QueryStats getQueryStats() {
+		return queryStats;
+	}
+
+	@Override
+	public QueryLatencies getQueryLatencies() {
+		return queryLatencies;
+	}
+
+	@Override
+	public IndexOperationLatencies getOperationLatencies() {
+		return operationLatencies;
+	}
+
 	public double getSegmentTolerance() {
 		return indexConfig.getIndexSettings().getSegmentTolerance();
 	}
 
+	public boolean isGlobalTermStats() {
+		return indexConfig.getIndexSettings().getGlobalTermStats();
+	}
+
 	private void storeIndexSettings() {
 		indexLock.writeLock().lock();
 		try {
@@ -1139,7 +1812,15 @@ public class LumongoIndex implements IndexSegmentInterface {
 
 			facetsConfig = generateFacetsConfig();
 
+			for (Map.Entry<Integer, LumongoSegment> entry : segmentMap.entrySet()) {
+				scheduleRefreshTask(entry.getKey(), entry.getValue());
+			}
+
+			incrementReaderGeneration();
+
 			parsers.clear();
+			parsedQueryCache.invalidateAll();
+			drillDownQueryCache.invalidateAll();
 
 			//force analyzer to be fetched first so it doesn't fail only on one segment below
 			getPerFieldAnalyzer();
@@ -1178,7 +1859,7 @@ public class LumongoIndex implements IndexSegmentInterface {
 
 			for (final LumongoSegment segment : segmentMap.values()) {
 
-				Future<SegmentCountResponse> response = segmentPool.submit(segment::getNumberOfDocs);
+				Future<SegmentCountResponse> response = searchExecutor.submit(indexName, segment::getNumberOfDocs);
 
 				responses.add(response);
 
@@ -1220,7 +1901,7 @@ public class LumongoIndex implements IndexSegmentInterface {
 
 			for (final LumongoSegment segment : segmentMap.values()) {
 
-				Future<GetFieldNamesResponse> response = segmentPool.submit(segment::getFieldNames);
+				Future<GetFieldNamesResponse> response = searchExecutor.submit(indexName, segment::getFieldNames);
 
 				responses.add(response);
 
@@ -1313,7 +1994,7 @@ public class LumongoIndex implements IndexSegmentInterface {
 
 			for (final LumongoSegment segment : segmentMap.values()) {
 
-				Future<GetTermsResponse> response = segmentPool.submit(() -> segment.getTerms(request));
+				Future<GetTermsResponse> response = searchExecutor.submit(indexName, () -> segment.getTerms(request));
 
 				responses.add(response);
 
@@ -1377,6 +2058,7 @@ public class LumongoIndex implements IndexSegmentInterface {
 
 	public ResultDocument getSourceDocument(String uniqueId, Long timestamp, FetchType resultFetchType, List<String> fieldsToReturn, List<String> fieldsToMask,
 			List<HighlightRequest> highlightRequests) throws Exception {
+		long start = System.nanoTime();
 		indexLock.readLock().lock();
 		try {
 			LumongoSegment s = findSegmentFromUniqueId(uniqueId);
@@ -1384,6 +2066,7 @@ public class LumongoIndex implements IndexSegmentInterface {
 		}
 		finally {
 			indexLock.readLock().unlock();
+			operationLatencies.recordSince(IndexOperation.FETCH, start);
 		}
 	}
 
@@ -1,5 +1,6 @@
 package org.lumongo.server.index;
 
+import com.google.common.cache.CacheStats;
 import com.google.protobuf.util.JsonFormat;
 import com.hazelcast.core.IExecutorService;
 import com.hazelcast.core.Member;
@@ -8,11 +9,7 @@ import com.mongodb.MongoException;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.MongoIterable;
 import org.apache.log4j.Logger;
-import org.apache.lucene.facet.FacetsConfig;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TermQuery;
 import org.lumongo.cluster.message.Lumongo;
 import org.lumongo.cluster.message.Lumongo.*;
 import org.lumongo.server.config.ClusterConfig;
@@ -21,14 +18,24 @@ import org.lumongo.server.config.LocalNodeConfig;
 import org.lumongo.server.config.MongoConfig;
 import org.lumongo.server.config.Nodes;
 import org.lumongo.server.connection.InternalClient;
+import org.lumongo.server.connection.InternalRpcConnectionPool;
 import org.lumongo.server.connection.SocketRequestFederator;
 import org.lumongo.server.exceptions.IndexDoesNotExist;
 import org.lumongo.server.exceptions.InvalidIndexConfig;
+import org.lumongo.server.exceptions.SegmentDoesNotExist;
 import org.lumongo.server.hazelcast.HazelcastManager;
 import org.lumongo.server.hazelcast.ReloadIndexSettingsTask;
 import org.lumongo.server.hazelcast.UnloadIndexTask;
+import org.lumongo.server.search.CoordinatorQueryCache;
+import org.lumongo.server.search.GlobalTermStats;
 import org.lumongo.server.search.QueryCombiner;
+import org.lumongo.server.search.QueryLatencies;
+import org.lumongo.server.search.QueryPhase;
+import org.lumongo.server.search.QueryStats;
+import org.lumongo.server.search.QueryTimer;
 import org.lumongo.server.search.QueryWithFilters;
+import org.lumongo.server.search.SearchExecutor;
+import org.lumongo.server.search.SlowQueryLog;
 import org.lumongo.util.ClusterHelper;
 import org.lumongo.util.LumongoThreadFactory;
 
@@ -38,17 +45,21 @@ import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -56,13 +67,20 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class LumongoIndexManager {
 	private final static Logger log = Logger.getLogger(LumongoIndexManager.class);
 
+	private static final int REFRESH_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
 	private final ReadWriteLock globalLock;
 
 	private final ConcurrentHashMap<String, LumongoIndex> indexMap;
 	private final InternalClient internalClient;
 
-	private final ExecutorService pool;
+	private final ThreadPoolExecutor pool;
 	private final ClusterHelper clusterHelper;
+	private final IndexingMemoryController indexingMemoryController;
+	private final SearchExecutor searchExecutor;
+	private final ScheduledExecutorService refreshScheduler;
+	private final CoordinatorQueryCache coordinatorQueryCache;
+	private final SlowQueryLog slowQueryLog;
 
 	private HazelcastManager hazelcastManager;
 
@@ -83,7 +101,13 @@ public class LumongoIndexManager {
 		this.clusterHelper = new ClusterHelper(mongo, mongoConfig.getDatabaseName());
 		this.internalClient = new InternalClient(clusterHelper, clusterConfig);
 
-		this.pool = Executors.newCachedThreadPool(new LumongoThreadFactory("manager"));
+		this.pool = (ThreadPoolExecutor) Executors.newCachedThreadPool(new LumongoThreadFactory("manager"));
+
+		this.indexingMemoryController = new IndexingMemoryController(indexMap.values(), clusterConfig.getIndexingBufferMB());
+		this.searchExecutor = new SearchExecutor(clusterConfig.getSearchThreads(), clusterConfig.getSearchQueueDepth());
+		this.refreshScheduler = Executors.newScheduledThreadPool(REFRESH_THREADS, new LumongoThreadFactory("refresh"));
+		this.coordinatorQueryCache = new CoordinatorQueryCache(clusterConfig.getCoordinatorCacheTtlMs(), clusterConfig.getCoordinatorCacheSize());
+		this.slowQueryLog = new SlowQueryLog(clusterConfig.getSlowQueryThresholdMs(), clusterConfig.getSlowQueryLogsPerSecond());
 
 	}
 
@@ -91,6 +115,32 @@ public class LumongoIndexManager {
 		return clusterConfig;
 	}
 
+	public SearchExecutor getSearchExecutor() {
+		return searchExecutor;
+	}
+
+	public CoordinatorQueryCache getCoordinatorQueryCache() {
+		return coordinatorQueryCache;
+	}
+
+	public SlowQueryLog getSlowQueryLog() {
+		return slowQueryLog;
+	}
+
+	public Map<String, QueryLatencies> getIndexQueryLatencies() {
+		globalLock.readLock().lock();
+		try {
+			Map<String, QueryLatencies> indexQueryLatencies = new TreeMap<>();
+			for (String indexName : indexMap.keySet()) {
+				indexQueryLatencies.put(indexName, indexMap.get(indexName).getQueryLatencies());
+			}
+			return indexQueryLatencies;
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
 	public void init(HazelcastManager hazelcastManager) throws UnknownHostException, MongoException {
 		globalLock.writeLock().lock();
 		try {
@@ -136,6 +186,62 @@ public class LumongoIndexManager {
 
 	}
 
+	public CacheStats getQueryResultCacheStats() {
+		globalLock.readLock().lock();
+		try {
+			CacheStats cacheStats = new CacheStats(0, 0, 0, 0, 0, 0);
+			for (LumongoIndex index : indexMap.values()) {
+				cacheStats = cacheStats.plus(index.getQueryResultCacheStats());
+			}
+			return cacheStats;
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
+	public long getQueryResultCacheSize() {
+		globalLock.readLock().lock();
+		try {
+			long size = 0;
+			for (LumongoIndex index : indexMap.values()) {
+				size += index.getQueryResultCacheSize();
+			}
+			return size;
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the indexes loaded on this node by name
+	 */
+	public Map<String, LumongoIndex> getLoadedIndexes() {
+		globalLock.readLock().lock();
+		try {
+			return new TreeMap<>(indexMap);
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
+	public Map<Member, InternalRpcConnectionPool> getInternalConnectionPools() {
+		return internalClient.getConnectionPools();
+	}
+
+	/**
+	 * @return the threads of the pool used to federate requests to members that are running a task
+	 */
+	public int getPoolActiveCount() {
+		return pool.getActiveCount();
+	}
+
+	public int getPoolSize() {
+		return pool.getPoolSize();
+	}
+
 	public List<String> getIndexNames() {
 		globalLock.writeLock().lock();
 
@@ -192,7 +298,8 @@ public class LumongoIndexManager {
 			if (indexMap.containsKey(indexName)) {
 				throw new Exception("Index <" + indexName + "> already exist");
 			}
-			LumongoIndex i = LumongoIndex.createIndex(hazelcastManager, mongoConfig, clusterConfig, indexConfig);
+			LumongoIndex i = LumongoIndex.createIndex(hazelcastManager, mongoConfig, clusterConfig, searchExecutor, refreshScheduler,
+					indexingMemoryController, indexConfig);
 			indexMap.put(indexConfig.getIndexName(), i);
 			i.loadAllSegments();
 			i.forceBalance(hazelcastManager.getMembers());
@@ -209,7 +316,8 @@ public class LumongoIndexManager {
 	public void loadIndex(String indexName, boolean loadAllSegments) throws Exception {
 		globalLock.writeLock().lock();
 		try {
-			LumongoIndex i = LumongoIndex.loadIndex(hazelcastManager, mongoConfig, mongo, clusterConfig, indexName);
+			LumongoIndex i = LumongoIndex.loadIndex(hazelcastManager, mongoConfig, mongo, clusterConfig, searchExecutor, refreshScheduler,
+					indexingMemoryController, indexName);
 			if (loadAllSegments) {
 				i.loadAllSegments();
 			}
@@ -306,6 +414,7 @@ public class LumongoIndexManager {
 			log.info("Deleting index <" + indexName + ">");
 			i.deleteIndex();
 			indexMap.remove(indexName);
+			searchExecutor.removeIndex(indexName);
 
 			return IndexDeleteResponse.newBuilder().build();
 		}
@@ -324,6 +433,8 @@ public class LumongoIndexManager {
 
 			i.unload(terminate);
 			indexMap.remove(indexName);
+			searchExecutor.removeIndex(indexName);
+			coordinatorQueryCache.invalidate(indexName);
 		}
 		finally {
 			globalLock.writeLock().unlock();
@@ -354,6 +465,10 @@ public class LumongoIndexManager {
 			log.info("Stopping manager pool");
 			pool.shutdownNow();
 
+			indexingMemoryController.shutdown();
+			searchExecutor.shutdown();
+			refreshScheduler.shutdownNow();
+
 			log.info("Shutting down indexes");
 			for (String indexName : indexMap.keySet()) {
 				LumongoIndex i = indexMap.get(indexName);
@@ -591,6 +706,123 @@ public class LumongoIndexManager {
 
 	}
 
+	/**
+	 * Splits the batch by owning member and stores each member's part with one request
+	 * @return the status of each store request in request order
+	 */
+	public BatchStoreResponse batchStore(BatchStoreRequest batchStoreRequest) throws Exception {
+		globalLock.readLock().lock();
+		try {
+
+			List<StoreRequest> storeRequests = batchStoreRequest.getStoreRequestList();
+			StoreStatus[] storeStatuses = new StoreStatus[storeRequests.size()];
+
+			Map<Member, List<Integer>> memberPositions = new HashMap<>();
+			for (int i = 0; i < storeRequests.size(); i++) {
+				StoreRequest storeRequest = storeRequests.get(i);
+				LumongoIndex index = indexMap.get(storeRequest.getIndexName());
+				if (index == null) {
+					storeStatuses[i] = getFailedStoreStatus(storeRequest, new IndexDoesNotExist(storeRequest.getIndexName()).getMessage());
+					continue;
+				}
+
+				Member m = index.findMember(storeRequest.getUniqueId());
+				memberPositions.computeIfAbsent(m, k -> new ArrayList<>()).add(i);
+			}
+
+			Member self = hazelcastManager.getSelf();
+
+			Map<Member, Future<BatchStoreResponse>> responses = new HashMap<>();
+			for (Map.Entry<Member, List<Integer>> entry : memberPositions.entrySet()) {
+				Member m = entry.getKey();
+
+				BatchStoreRequest.Builder memberRequest = BatchStoreRequest.newBuilder();
+				for (int position : entry.getValue()) {
+					memberRequest.addStoreRequest(storeRequests.get(position));
+				}
+
+				if (!self.equals(m)) {
+					responses.put(m, pool.submit(() -> internalClient.executeBatchStore(m, memberRequest.build())));
+				}
+				else {
+					responses.put(m, pool.submit(() -> batchStoreInternal(memberRequest.build())));
+				}
+			}
+
+			for (Map.Entry<Member, Future<BatchStoreResponse>> entry : responses.entrySet()) {
+				List<Integer> positions = memberPositions.get(entry.getKey());
+				try {
+					List<StoreStatus> memberStatuses = entry.getValue().get().getStoreStatusList();
+					for (int i = 0; i < positions.size(); i++) {
+						storeStatuses[positions.get(i)] = memberStatuses.get(i);
+					}
+				}
+				catch (Exception e) {
+					log.error("Failed to batch store on member <" + entry.getKey() + ">: " + e.getClass().getSimpleName() + ": ", e);
+					for (int position : positions) {
+						storeStatuses[position] = getFailedStoreStatus(storeRequests.get(position), e.getMessage());
+					}
+				}
+			}
+
+			return BatchStoreResponse.newBuilder().addAllStoreStatus(Arrays.asList(storeStatuses)).build();
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
+	public BatchStoreResponse batchStoreInternal(BatchStoreRequest batchStoreRequest) throws Exception {
+		globalLock.readLock().lock();
+		try {
+
+			List<StoreRequest> storeRequests = batchStoreRequest.getStoreRequestList();
+			StoreStatus[] storeStatuses = new StoreStatus[storeRequests.size()];
+
+			Map<String, List<Integer>> indexPositions = new HashMap<>();
+			for (int i = 0; i < storeRequests.size(); i++) {
+				indexPositions.computeIfAbsent(storeRequests.get(i).getIndexName(), k -> new ArrayList<>()).add(i);
+			}
+
+			for (Map.Entry<String, List<Integer>> entry : indexPositions.entrySet()) {
+				String indexName = entry.getKey();
+				List<Integer> positions = entry.getValue();
+
+				LumongoIndex i = indexMap.get(indexName);
+				if (i == null) {
+					for (int position : positions) {
+						storeStatuses[position] = getFailedStoreStatus(storeRequests.get(position), new IndexDoesNotExist(indexName).getMessage());
+					}
+					continue;
+				}
+
+				List<StoreRequest> indexStoreRequests = new ArrayList<>(positions.size());
+				for (int position : positions) {
+					indexStoreRequests.add(storeRequests.get(position));
+				}
+
+				List<StoreStatus> indexStatuses = i.batchStoreInternal(indexStoreRequests);
+				for (int p = 0; p < positions.size(); p++) {
+					storeStatuses[positions.get(p)] = indexStatuses.get(p);
+				}
+			}
+
+			return BatchStoreResponse.newBuilder().addAllStoreStatus(Arrays.asList(storeStatuses)).build();
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
+	private static StoreStatus getFailedStoreStatus(StoreRequest storeRequest, String errorMessage) {
+		StoreStatus.Builder storeStatus = StoreStatus.newBuilder().setUniqueId(storeRequest.getUniqueId()).setIndexName(storeRequest.getIndexName())
+				.setSuccess(false);
+		if (errorMessage != null) {
+			storeStatus.setErrorMessage(errorMessage);
+		}
+		return storeStatus.build();
+	}
+
 	public FetchResponse fetch(FetchRequest request) throws Exception {
 		globalLock.readLock().lock();
 		try {
@@ -647,30 +879,9 @@ public class LumongoIndexManager {
 
 					List<LMFacet> drillDownList = facetRequest.getDrillDownList();
 					if (!drillDownList.isEmpty()) {
-						FacetsConfig facetsConfig = i.getFacetsConfig();
-
-						Map<String, Set<String>> dimToValues = new HashMap<>();
-						for (LMFacet drillDown : drillDownList) {
-							String key = drillDown.getLabel();
-							String value = drillDown.getPath();
-							if (!dimToValues.containsKey(key)) {
-								dimToValues.put(key, new HashSet<>());
-							}
-							dimToValues.get(key).add(value);
-						}
-
-						for (Map.Entry<String, Set<String>> entry : dimToValues.entrySet()) {
-							String indexFieldName = facetsConfig.getDimConfig(entry.getKey()).indexFieldName;
-
-							BooleanQuery.Builder booleanQuery = new BooleanQuery.Builder();
-							for (String value : entry.getValue()) {
-								booleanQuery.add(new BooleanClause(new TermQuery(new org.apache.lucene.index.Term(indexFieldName, value)),
-										BooleanClause.Occur.SHOULD));
-							}
-
-							queryWithFilters.addFilterQuery(booleanQuery.build());
+						for (Query drillDownQuery : i.getDrillDownQueries(drillDownList)) {
+							queryWithFilters.addFilterQuery(drillDownQuery);
 						}
-
 					}
 				}
 
@@ -688,65 +899,515 @@ public class LumongoIndexManager {
 		}
 	}
 
+	/**
+	 * Realtime queries must see every change made before they were sent so they are never shared with other requests
+	 */
 	public QueryResponse query(final QueryRequest request) throws Exception {
+		if (request.getRealtime()) {
+			return executeQuery(request);
+		}
+		return coordinatorQueryCache.getResponse(request, getReaderGenerations(request), () -> executeQuery(request));
+	}
+
+	private List<Long> getReaderGenerations(QueryRequest request) throws IndexDoesNotExist {
 		globalLock.readLock().lock();
-		long start = System.currentTimeMillis();
-		String queryJson = "";
 		try {
-			//log.info("Running query: <" + request.getQuery() + "> on indexes <" + request.getIndexList() + ">");
-
-			queryJson = JsonFormat.printer().print(request);
-			log.info("Running query: <" + queryJson + ">");
-
-			final Map<String, QueryWithFilters> queryMap = getQueryMap(request);
-
-			final Map<String, LumongoIndex> indexSegmentMap = new HashMap<>();
+			List<Long> readerGenerations = new ArrayList<>();
 			for (String indexName : request.getIndexList()) {
 				LumongoIndex i = indexMap.get(indexName);
 				if (i == null) {
 					throw new IndexDoesNotExist(indexName);
 				}
-				indexSegmentMap.put(indexName, i);
+				readerGenerations.add(i.getReaderGeneration());
 			}
+			return readerGenerations;
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
 
-			SocketRequestFederator<QueryRequest, InternalQueryResponse> queryFederator = new SocketRequestFederator<QueryRequest, InternalQueryResponse>(
-					hazelcastManager, pool) {
+	private QueryResponse executeQuery(final QueryRequest request) throws Exception {
+		globalLock.readLock().lock();
+		QueryTimer queryTimer = new QueryTimer();
+		try {
+			if (log.isDebugEnabled()) {
+				log.debug("Running query: <" + JsonFormat.printer().print(request) + ">");
+			}
 
-				@Override
-				public InternalQueryResponse processExternal(Member m, QueryRequest request) throws Exception {
-					return internalClient.executeQuery(m, request);
+			return executeQuery(request, queryTimer);
+		}
+		finally {
+			long total = queryTimer.getElapsedNanos();
+			recordLatencies(request, queryTimer, total);
+			slowQueryLog.check(request, queryTimer, total);
+			if (log.isDebugEnabled()) {
+				log.debug("Finished query on <" + request.getIndexList() + "> in <" + TimeUnit.NANOSECONDS.toMillis(total) + "ms>");
+			}
+
+			globalLock.readLock().unlock();
+		}
+	}
+
+	private void recordLatencies(QueryRequest request, QueryTimer queryTimer, long totalNanos) {
+		for (String indexName : request.getIndexList()) {
+			LumongoIndex i = indexMap.get(indexName);
+			if (i != null) {
+				QueryLatencies queryLatencies = i.getQueryLatencies();
+				for (QueryPhase phase : QueryPhase.values()) {
+					long nanos = queryTimer.getNanos(phase);
+					if (nanos > 0) {
+						queryLatencies.record(phase, nanos);
+					}
 				}
+				queryLatencies.record(QueryPhase.TOTAL, totalNanos);
+			}
+		}
+	}
 
-				@Override
-				public InternalQueryResponse processInternal(QueryRequest request) throws Exception {
-					return internalQuery(queryMap, request);
+	/**
+	 * A full retry runs with the same timer so its time is added to the phases of the original query
+	 */
+	private QueryResponse executeQuery(final QueryRequest request, final QueryTimer queryTimer) throws Exception {
+		long phaseStart = System.nanoTime();
+		final Map<String, QueryWithFilters> queryMap = getQueryMap(request);
+		queryTimer.addSince(QueryPhase.PARSE, phaseStart);
+
+		final Map<String, LumongoIndex> indexSegmentMap = new HashMap<>();
+		for (String indexName : request.getIndexList()) {
+			LumongoIndex i = indexMap.get(indexName);
+			if (i == null) {
+				throw new IndexDoesNotExist(indexName);
+			}
+			indexSegmentMap.put(indexName, i);
+		}
+
+		final boolean twoPhase = isTwoPhaseQuery(request);
+
+		QueryRequest scoreRequest = request;
+		if (twoPhase) {
+			scoreRequest = request.toBuilder().setResultFetchType(FetchType.NONE).clearDocumentFields().clearDocumentMaskedFields().clearHighlightRequest()
+					.clearAnalysisRequest().build();
+		}
+
+		if (!request.getFetchFull()) {
+			QueryRequest.Builder scoreRequestBuilder = null;
+			for (String indexName : indexSegmentMap.keySet()) {
+				Integer segmentAmount = indexSegmentMap.get(indexName).getAdaptiveSegmentAmount(request);
+				if (segmentAmount != null) {
+					if (scoreRequestBuilder == null) {
+						scoreRequestBuilder = scoreRequest.toBuilder();
+					}
+					scoreRequestBuilder.addSegmentAmount(SegmentAmount.newBuilder().setIndexName(indexName).setAmount(segmentAmount));
 				}
-			};
+			}
+			if (scoreRequestBuilder != null) {
+				scoreRequest = scoreRequestBuilder.build();
+			}
+		}
+
+		phaseStart = System.nanoTime();
+		if (needsGlobalTermStats(request, indexSegmentMap.values())) {
+			scoreRequest = scoreRequest.toBuilder().addAllIndexTermStats(getGlobalTermStats(queryMap, request)).build();
+		}
+
+		SocketRequestFederator<QueryRequest, InternalQueryResponse> queryFederator = new SocketRequestFederator<QueryRequest, InternalQueryResponse>(
+				hazelcastManager, pool) {
+
+			@Override
+			public InternalQueryResponse processExternal(Member m, QueryRequest request) throws Exception {
+				return internalClient.executeQuery(m, request);
+			}
+
+			@Override
+			public InternalQueryResponse processInternal(QueryRequest request) throws Exception {
+				return internalQuery(queryMap, request);
+			}
+		};
 
-			List<InternalQueryResponse> results = queryFederator.send(request);
+		List<InternalQueryResponse> results = queryFederator.send(scoreRequest);
+		queryTimer.addSince(QueryPhase.FEDERATE, phaseStart);
 
-			QueryCombiner queryCombiner = new QueryCombiner(indexSegmentMap, request, results);
+		phaseStart = System.nanoTime();
+		QueryCombiner queryCombiner = new QueryCombiner(indexSegmentMap, scoreRequest, results);
 
+		queryCombiner.validate();
+
+		QueryResponse qr = queryCombiner.getQueryResponse();
+		queryTimer.addSince(QueryPhase.COMBINE, phaseStart);
+
+		if (!request.getFetchFull()) {
+			Set<String> shortIndexes = new HashSet<>();
+			for (SegmentRetry segmentRetry : queryCombiner.getShortSegments()) {
+				shortIndexes.add(segmentRetry.getIndexName());
+			}
+
+			Map<String, Integer> maxTakenForIndex = queryCombiner.getMaxTakenForIndex();
+			for (String indexName : indexSegmentMap.keySet()) {
+				LumongoIndex i = indexSegmentMap.get(indexName);
+				i.getQueryStats().addQuery();
+				i.recordSegmentDepth(request, maxTakenForIndex.get(indexName), shortIndexes.contains(indexName));
+			}
+		}
+
+		if (queryCombiner.isShort() && !request.getFetchFull() && !hasSummaryAnalysis(request)) {
+			List<SegmentRetry> shortSegments = queryCombiner.getShortSegments();
+
+			Map<String, Integer> shortSegmentsForIndex = new HashMap<>();
+			for (SegmentRetry segmentRetry : shortSegments) {
+				shortSegmentsForIndex.merge(segmentRetry.getIndexName(), 1, Integer::sum);
+			}
+			for (String indexName : shortSegmentsForIndex.keySet()) {
+				indexSegmentMap.get(indexName).getQueryStats().addShortQuery(shortSegmentsForIndex.get(indexName));
+			}
+
+			phaseStart = System.nanoTime();
+			List<InternalQueryResponse> retryResults = retryShortSegments(queryMap, scoreRequest, shortSegments);
+			results = QueryCombiner.addRetryResults(results, retryResults);
+
+			queryCombiner = new QueryCombiner(indexSegmentMap, scoreRequest, results);
 			queryCombiner.validate();
+			qr = queryCombiner.getQueryResponse();
+			queryTimer.addSince(QueryPhase.RETRY, phaseStart);
+		}
 
-			QueryResponse qr = queryCombiner.getQueryResponse();
+		if (!queryCombiner.isShort()) {
+			if (twoPhase && qr.getResultsCount() > 0) {
+				phaseStart = System.nanoTime();
+				List<ScoredResult> fetchedResults = fetchResults(queryMap, request, qr.getResultsList());
+				qr = qr.toBuilder().clearResults().addAllResults(fetchedResults).build();
+				queryTimer.addSince(QueryPhase.FETCH_RESULTS, phaseStart);
+			}
+			return qr;
+		}
+		else {
+			if (!request.getFetchFull()) {
+				for (LumongoIndex i : indexSegmentMap.values()) {
+					i.getQueryStats().addFullRetry();
+				}
+				return executeQuery(request.toBuilder().setFetchFull(true).build(), queryTimer);
+			}
+
+			throw new Exception("Full fetch request is short");
+		}
+	}
 
-			if (!queryCombiner.isShort()) {
-				return qr;
+	/**
+	 * Searches only the short segments again, on the members that own them, starting after the last result each returned.  Each segment is
+	 * asked for the full amount since every remaining result on the page could come from it.  Facets were already counted in full so they are
+	 * not requested again
+	 */
+	private List<InternalQueryResponse> retryShortSegments(final Map<String, QueryWithFilters> queryMap, QueryRequest request,
+			List<SegmentRetry> shortSegments) throws Exception {
+
+		Map<Member, QueryRequest.Builder> memberToRequest = new HashMap<>();
+		for (SegmentRetry segmentRetry : shortSegments) {
+			LumongoIndex i = indexMap.get(segmentRetry.getIndexName());
+			if (i == null) {
+				throw new IndexDoesNotExist(segmentRetry.getIndexName());
 			}
-			else {
-				if (!request.getFetchFull()) {
-					return query(request.toBuilder().setFetchFull(true).build());
+
+			Member m = i.getSegmentToMemberMap().get(segmentRetry.getSegmentNumber());
+			if (m == null) {
+				throw new SegmentDoesNotExist(segmentRetry.getIndexName(), segmentRetry.getSegmentNumber());
+			}
+
+			if (!memberToRequest.containsKey(m)) {
+				memberToRequest.put(m, request.toBuilder().clearFacetRequest().clearLastResult());
+			}
+			memberToRequest.get(m).addSegmentRetry(segmentRetry);
+		}
+
+		final Member self = hazelcastManager.getSelf();
+
+		List<Future<InternalQueryResponse>> futureResponses = new ArrayList<>();
+		for (final Member m : memberToRequest.keySet()) {
+			final QueryRequest retryRequest = memberToRequest.get(m).build();
+
+			futureResponses.add(pool.submit(() -> {
+				if (!self.equals(m)) {
+					return internalClient.executeQuery(m, retryRequest);
 				}
+				return internalQuery(queryMap, retryRequest);
+			}));
+		}
 
-				throw new Exception("Full fetch request is short");
+		List<InternalQueryResponse> responses = new ArrayList<>();
+		for (Future<InternalQueryResponse> futureResponse : futureResponses) {
+			try {
+				responses.add(futureResponse.get());
+			}
+			catch (InterruptedException e) {
+				throw new Exception("Interrupted while waiting for results");
 			}
+			catch (Exception e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Exception) {
+					throw (Exception) cause;
+				}
 
+				throw e;
+			}
+		}
+		return responses;
+	}
+
+	/**
+	 * Global term stats only change scores so they are skipped for queries sorted by fields or matching all documents
+	 */
+	private boolean needsGlobalTermStats(QueryRequest request, Collection<LumongoIndex> indexes) {
+		if (request.getSortRequest().getFieldSortCount() != 0 || request.getQuery().getQ().isEmpty()) {
+			return false;
+		}
+		for (LumongoIndex i : indexes) {
+			if (i.isGlobalTermStats()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collects the statistics of the query's scoring terms from every member and sums them for each index so every segment scores with
+	 * the same document frequencies and field lengths
+	 */
+	private List<IndexTermStats> getGlobalTermStats(final Map<String, QueryWithFilters> queryMap, QueryRequest request) throws Exception {
+		SocketRequestFederator<QueryRequest, InternalTermStatsResponse> termStatsFederator = new SocketRequestFederator<QueryRequest, InternalTermStatsResponse>(
+				hazelcastManager, pool) {
+
+			@Override
+			public InternalTermStatsResponse processExternal(Member m, QueryRequest request) throws Exception {
+				return internalClient.executeTermStats(m, request);
+			}
+
+			@Override
+			public InternalTermStatsResponse processInternal(QueryRequest request) throws Exception {
+				return internalTermStats(queryMap, request);
+			}
+		};
+
+		Map<String, GlobalTermStats> indexToTermStats = new HashMap<>();
+		for (InternalTermStatsResponse response : termStatsFederator.send(request)) {
+			for (IndexTermStats indexTermStats : response.getIndexTermStatsList()) {
+				String indexName = indexTermStats.getIndexName();
+				if (!indexToTermStats.containsKey(indexName)) {
+					indexToTermStats.put(indexName, new GlobalTermStats(indexName));
+				}
+				indexToTermStats.get(indexName).add(indexTermStats);
+			}
+		}
+
+		List<IndexTermStats> globalTermStats = new ArrayList<>();
+		for (GlobalTermStats termStats : indexToTermStats.values()) {
+			globalTermStats.add(termStats.toIndexTermStats());
+		}
+		return globalTermStats;
+	}
+
+	public InternalTermStatsResponse internalTermStats(QueryRequest request) throws Exception {
+		globalLock.readLock().lock();
+		try {
+			Map<String, QueryWithFilters> queryMap = getQueryMap(request);
+			return internalTermStats(queryMap, request);
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
+	private InternalTermStatsResponse internalTermStats(Map<String, QueryWithFilters> queryMap, QueryRequest request) throws Exception {
+		globalLock.readLock().lock();
+		try {
+			InternalTermStatsResponse.Builder builder = InternalTermStatsResponse.newBuilder();
+			for (String indexName : queryMap.keySet()) {
+				LumongoIndex i = indexMap.get(indexName);
+				if (i == null) {
+					throw new IndexDoesNotExist(indexName);
+				}
+				if (i.isGlobalTermStats()) {
+					builder.addIndexTermStats(i.getTermStats(queryMap.get(indexName), request));
+				}
+			}
+			return builder.build();
 		}
 		finally {
-			long end = System.currentTimeMillis();
-			log.info("Finished query: <" + queryJson + "> in " + (end - start) + "ms");
+			globalLock.readLock().unlock();
+		}
+	}
 
+	/**
+	 * Summary analysis covers every document each segment returns so it cannot be extended by retrying only some segments
+	 */
+	private boolean hasSummaryAnalysis(QueryRequest request) {
+		for (AnalysisRequest analysisRequest : request.getAnalysisRequestList()) {
+			if (analysisRequest.getSummaryTerms()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the request factor currently used for each sort, learned when the index uses an adaptive request factor
+	 */
+	public Map<String, Double> getRequestFactors(String indexName) {
+		globalLock.readLock().lock();
+		try {
+			LumongoIndex i = indexMap.get(indexName);
+			if (i == null) {
+				return Collections.emptyMap();
+			}
+			return i.getRequestFactors();
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
+	public Map<String, QueryStats> getIndexQueryStats() {
+		globalLock.readLock().lock();
+		try {
+			Map<String, QueryStats> indexQueryStats = new TreeMap<>();
+			for (String indexName : indexMap.keySet()) {
+				indexQueryStats.put(indexName, indexMap.get(indexName).getQueryStats());
+			}
+			return indexQueryStats;
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Queries that load documents, highlight, or analyze per document are scored and merged first without loading any stored documents,
+	 * then only the results that survive the merge are fetched from the members that own them.  Summary analysis needs every document
+	 * the segment returns so it stays single phase.
+	 */
+	private boolean isTwoPhaseQuery(QueryRequest request) {
+		for (AnalysisRequest analysisRequest : request.getAnalysisRequestList()) {
+			if (analysisRequest.getSummaryTerms()) {
+				return false;
+			}
+		}
+		return !FetchType.NONE.equals(request.getResultFetchType()) || !request.getHighlightRequestList().isEmpty() || !request.getAnalysisRequestList()
+				.isEmpty();
+	}
+
+	private List<ScoredResult> fetchResults(final Map<String, QueryWithFilters> queryMap, QueryRequest request, List<ScoredResult> scoredResults)
+			throws Exception {
+
+		Map<Member, InternalFetchResultsRequest.Builder> memberToRequest = new HashMap<>();
+		Map<Member, List<Integer>> memberToPositions = new HashMap<>();
+
+		int position = 0;
+		for (ScoredResult scoredResult : scoredResults) {
+			LumongoIndex i = indexMap.get(scoredResult.getIndexName());
+			if (i == null) {
+				throw new IndexDoesNotExist(scoredResult.getIndexName());
+			}
+
+			Member m = i.findMember(scoredResult.getUniqueId());
+			if (!memberToRequest.containsKey(m)) {
+				memberToRequest.put(m, InternalFetchResultsRequest.newBuilder().setQueryRequest(request));
+				memberToPositions.put(m, new ArrayList<>());
+			}
+			memberToRequest.get(m).addScoredResult(scoredResult);
+			memberToPositions.get(m).add(position);
+			position++;
+		}
+
+		final Member self = hazelcastManager.getSelf();
+
+		Map<Member, Future<InternalFetchResultsResponse>> futureResponses = new HashMap<>();
+		for (final Member m : memberToRequest.keySet()) {
+			final InternalFetchResultsRequest fetchResultsRequest = memberToRequest.get(m).build();
+
+			Future<InternalFetchResultsResponse> futureResponse = pool.submit(() -> {
+				if (!self.equals(m)) {
+					return internalClient.executeFetchResults(m, fetchResultsRequest);
+				}
+				return internalFetchResults(queryMap, fetchResultsRequest);
+			});
+			futureResponses.put(m, futureResponse);
+		}
+
+		ScoredResult[] fetchedResults = new ScoredResult[scoredResults.size()];
+		for (Member m : futureResponses.keySet()) {
+			InternalFetchResultsResponse response;
+			try {
+				response = futureResponses.get(m).get();
+			}
+			catch (InterruptedException e) {
+				throw new Exception("Interrupted while waiting for results");
+			}
+			catch (Exception e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Exception) {
+					throw (Exception) cause;
+				}
+
+				throw e;
+			}
+
+			List<Integer> positions = memberToPositions.get(m);
+			if (response.getScoredResultCount() != positions.size()) {
+				throw new Exception("Expected <" + positions.size() + "> fetched results from <" + m + "> and found <" + response.getScoredResultCount() + ">");
+			}
+
+			int r = 0;
+			for (Integer p : positions) {
+				fetchedResults[p] = response.getScoredResult(r++);
+			}
+		}
+
+		return Arrays.asList(fetchedResults);
+	}
+
+	public InternalFetchResultsResponse internalFetchResults(InternalFetchResultsRequest request) throws Exception {
+		globalLock.readLock().lock();
+		try {
+			Map<String, QueryWithFilters> queryMap = Collections.emptyMap();
+			if (!request.getQueryRequest().getHighlightRequestList().isEmpty()) {
+				queryMap = getQueryMap(request.getQueryRequest());
+			}
+			return internalFetchResults(queryMap, request);
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
+	private InternalFetchResultsResponse internalFetchResults(Map<String, QueryWithFilters> queryMap, InternalFetchResultsRequest request) throws Exception {
+		globalLock.readLock().lock();
+		try {
+
+			Map<String, List<ScoredResult>> indexToResults = new HashMap<>();
+			for (ScoredResult scoredResult : request.getScoredResultList()) {
+				String indexName = scoredResult.getIndexName();
+				if (!indexToResults.containsKey(indexName)) {
+					indexToResults.put(indexName, new ArrayList<>());
+				}
+				indexToResults.get(indexName).add(scoredResult);
+			}
+
+			Map<String, Iterator<ScoredResult>> fetchedForIndex = new HashMap<>();
+			for (String indexName : indexToResults.keySet()) {
+				LumongoIndex i = indexMap.get(indexName);
+				if (i == null) {
+					throw new IndexDoesNotExist(indexName);
+				}
+
+				List<ScoredResult> fetched = i.fetchResults(queryMap.get(indexName), request.getQueryRequest(), indexToResults.get(indexName));
+				fetchedForIndex.put(indexName, fetched.iterator());
+			}
+
+			InternalFetchResultsResponse.Builder builder = InternalFetchResultsResponse.newBuilder();
+			for (ScoredResult scoredResult : request.getScoredResultList()) {
+				builder.addScoredResult(fetchedForIndex.get(scoredResult.getIndexName()).next());
+			}
+			return builder.build();
+		}
+		finally {
 			globalLock.readLock().unlock();
 		}
 	}
@@ -766,6 +1427,7 @@ public class LumongoIndexManager {
 		globalLock.readLock().lock();
 		try {
 
+			Map<String, LumongoIndex> usedIndexMap = new HashMap<>();
 			InternalQueryResponse.Builder internalQueryResponseBuilder = InternalQueryResponse.newBuilder();
 			for (String indexName : queryMap.keySet()) {
 
@@ -773,13 +1435,16 @@ public class LumongoIndexManager {
 				if (i == null) {
 					throw new IndexDoesNotExist(indexName);
 				}
+				usedIndexMap.put(indexName, i);
 				QueryWithFilters queryWithFilters = queryMap.get(indexName);
 
 				IndexSegmentResponse isr = i.queryInternal(queryWithFilters, request);
 				internalQueryResponseBuilder.addIndexSegmentResponse(isr);
 			}
 
-			return internalQueryResponseBuilder.build();
+			//drop the results of this node's segments that cannot reach the final page before they are sent to the coordinator
+			QueryCombiner nodeCombiner = new QueryCombiner(usedIndexMap, request, Collections.singletonList(internalQueryResponseBuilder.build()));
+			return nodeCombiner.getNodeResponse();
 		}
 		finally {
 			globalLock.readLock().unlock();
@@ -1,5 +1,6 @@
 package org.lumongo.server.index;
 
+import com.google.common.cache.CacheStats;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.protobuf.ByteString;
 import org.apache.log4j.Logger;
@@ -21,17 +22,20 @@ import org.apache.lucene.facet.FacetsCollector;
 import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.facet.LabelAndValue;
 import org.apache.lucene.facet.taxonomy.FastTaxonomyFacetCounts;
+import org.apache.lucene.facet.taxonomy.SearcherTaxonomyManager;
 import org.apache.lucene.facet.taxonomy.TaxonomyReader;
-import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyReader;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiFields;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.index.TermsEnum.SeekStatus;
@@ -48,6 +52,7 @@ import org.apache.lucene.search.similarities.PerFieldSimilarityWrapper;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
 import org.lumongo.LumongoConstants;
@@ -65,12 +70,16 @@ import org.lumongo.server.index.field.FloatFieldIndexer;
 import org.lumongo.server.index.field.IntFieldIndexer;
 import org.lumongo.server.index.field.LongFieldIndexer;
 import org.lumongo.server.index.field.StringFieldIndexer;
+import org.lumongo.server.search.GlobalTermStats;
 import org.lumongo.server.search.QueryCacheKey;
+import org.lumongo.server.search.QueryLatencies;
+import org.lumongo.server.search.QueryPhase;
 import org.lumongo.server.search.QueryResultCache;
 import org.lumongo.server.search.QueryWithFilters;
 import org.lumongo.similarity.ConstantSimilarity;
 import org.lumongo.similarity.TFSimilarity;
 import org.lumongo.storage.rawfiles.DocumentStorage;
+import org.lumongo.storage.rawfiles.SourceDocument;
 import org.lumongo.util.LumongoUtil;
 import org.lumongo.util.ResultHelper;
 
@@ -82,13 +91,18 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -109,7 +123,6 @@ public class LumongoSegment {
 	private final IndexSegmentInterface indexSegmentInterface;
 	private final DocumentStorage documentStorage;
 	private IndexWriter indexWriter;
-	private DirectoryReader directoryReader;
 	private Long lastCommit;
 	private Long lastChange;
 	private String indexName;
@@ -120,7 +133,12 @@ public class LumongoSegment {
 	private PerFieldAnalyzerWrapper perFieldAnalyzer;
 
 	private DirectoryTaxonomyWriter taxoWriter;
-	private DirectoryTaxonomyReader taxoReader;
+	private SearcherTaxonomyManager searcherTaxonomyManager;
+
+	private Translog translog;
+	private final ReadWriteLock translogLock;
+	private final Object commitLock;
+	private final AtomicBoolean changedSinceRefresh;
 
 	public LumongoSegment(int segmentNumber, IndexSegmentInterface indexSegmentInterface, IndexConfig indexConfig, FacetsConfig facetsConfig,
 			DocumentStorage documentStorage) throws Exception {
@@ -132,7 +150,11 @@ public class LumongoSegment {
 		this.indexSegmentInterface = indexSegmentInterface;
 		this.indexConfig = indexConfig;
 
+		this.translogLock = new ReentrantReadWriteLock();
+		this.commitLock = new Object();
+
 		openIndexWriters();
+		openTranslogIfEnabled();
 
 		this.facetsConfig = facetsConfig;
 
@@ -146,6 +168,7 @@ public class LumongoSegment {
 						LumongoConstants.STORED_DOC_FIELD)));
 
 		this.counter = new AtomicLong();
+		this.changedSinceRefresh = new AtomicBoolean();
 		this.lastCommit = null;
 		this.lastChange = null;
 		this.indexName = indexConfig.getIndexName();
@@ -165,7 +188,7 @@ public class LumongoSegment {
 			synchronized (this) {
 				if (!indexWriter.isOpen()) {
 					this.indexWriter = this.indexSegmentInterface.getIndexWriter(segmentNumber);
-					this.directoryReader = DirectoryReader.open(indexWriter, indexConfig.getIndexSettings().getApplyUncommittedDeletes(), false);
+					openSearcherManager();
 				}
 			}
 		}
@@ -177,13 +200,16 @@ public class LumongoSegment {
 		catch (AlreadyClosedException e) {
 			synchronized (this) {
 				this.taxoWriter = this.indexSegmentInterface.getTaxoWriter(segmentNumber);
-				this.taxoReader = new DirectoryTaxonomyReader(taxoWriter);
+				openSearcherManager();
 			}
 		}
 
 	}
 
 	private void openIndexWriters() throws Exception {
+		if (this.searcherTaxonomyManager != null) {
+			searcherTaxonomyManager.close();
+		}
 		if (this.indexWriter != null) {
 			indexWriter.close();
 		}
@@ -194,10 +220,74 @@ public class LumongoSegment {
 		this.perFieldAnalyzer = this.indexSegmentInterface.getPerFieldAnalyzer();
 
 		this.indexWriter = this.indexSegmentInterface.getIndexWriter(segmentNumber);
-		this.directoryReader = DirectoryReader.open(indexWriter, indexConfig.getIndexSettings().getApplyUncommittedDeletes(), false);
-
 		this.taxoWriter = this.indexSegmentInterface.getTaxoWriter(segmentNumber);
-		this.taxoReader = new DirectoryTaxonomyReader(taxoWriter);
+
+		openSearcherManager();
+	}
+
+	private void openSearcherManager() throws IOException {
+		SearcherTaxonomyManager oldSearcherTaxonomyManager = this.searcherTaxonomyManager;
+
+		this.searcherTaxonomyManager = new SearcherTaxonomyManager(indexWriter, indexConfig.getIndexSettings().getApplyUncommittedDeletes(), null,
+				taxoWriter);
+		this.searcherTaxonomyManager.addListener(new ReferenceManager.RefreshListener() {
+			@Override
+			public void beforeRefresh() {
+				changedSinceRefresh.set(false);
+			}
+
+			@Override
+			public void afterRefresh(boolean didRefresh) {
+				if (didRefresh) {
+					indexSegmentInterface.segmentChanged(segmentNumber);
+				}
+			}
+		});
+
+		if (oldSearcherTaxonomyManager != null) {
+			try {
+				oldSearcherTaxonomyManager.close();
+			}
+			catch (AlreadyClosedException ignored) {
+
+			}
+		}
+	}
+
+	/**
+	 * Searchers are normally refreshed in the background every refreshIntervalMs, realtime requests (or a refresh interval of 0) refresh
+	 * before acquiring so they see all changes made before the call
+	 */
+	private SearcherTaxonomyManager.SearcherAndTaxonomy acquireSearcher(boolean realtime) throws IOException {
+		SearcherTaxonomyManager stm = searcherTaxonomyManager;
+		if (realtime || indexConfig.getIndexSettings().getRefreshIntervalMs() == 0) {
+			stm.maybeRefreshBlocking();
+		}
+		return stm.acquire();
+	}
+
+	private void releaseSearcher(SearcherTaxonomyManager.SearcherAndTaxonomy searcherAndTaxonomy) throws IOException {
+		searcherTaxonomyManager.release(searcherAndTaxonomy);
+	}
+
+	public CacheStats getQueryResultCacheStats() {
+		QueryResultCache qrc = queryResultCache;
+		if (qrc != null) {
+			return qrc.getStats();
+		}
+		return new CacheStats(0, 0, 0, 0, 0, 0);
+	}
+
+	public long getQueryResultCacheSize() {
+		QueryResultCache qrc = queryResultCache;
+		if (qrc != null) {
+			return qrc.getSize();
+		}
+		return 0;
+	}
+
+	public void refresh() throws IOException {
+		searcherTaxonomyManager.maybeRefresh();
 	}
 
 	private void setupCaches(IndexConfig indexConfig) {
@@ -221,45 +311,131 @@ public class LumongoSegment {
 		setupCaches(indexConfig);
 		openIndexWriters();
 
+		if (indexConfig.getIndexSettings().getTranslog()) {
+			if (translog == null) {
+				openTranslogIfEnabled();
+				forceCommit();
+			}
+		}
+		else if (translog != null) {
+			//commit first so nothing only in the translog is lost, then stop logging
+			forceCommit();
+			Translog oldTranslog = translog;
+			translog = null;
+			oldTranslog.delete();
+		}
+
+	}
+
+	private void openTranslogIfEnabled() throws Exception {
+		if (indexConfig.getIndexSettings().getTranslog()) {
+			this.translog = new Translog(indexSegmentInterface.getTranslogPath(segmentNumber), indexWriter.getCommitData());
+		}
+	}
+
+	/**
+	 * Applies changes that were in the translog but not in the last commit, then commits them
+	 * @return the number of changes replayed
+	 */
+	public int replayTranslog() throws Exception {
+		Translog t = translog;
+		if (t == null) {
+			return 0;
+		}
+
+		int count = t.replay(new Translog.Handler() {
+			@Override
+			public void index(ResultDocument resultDocument) throws Exception {
+				org.bson.Document document;
+				if (resultDocument.hasDocument()) {
+					document = LumongoUtil.byteArrayToMongoDocument(resultDocument.getDocument().toByteArray());
+				}
+				else {
+					document = new org.bson.Document();
+				}
+				String uniqueId = resultDocument.getUniqueId();
+				Document luceneDocument = getLuceneDocument(uniqueId, resultDocument.getTimestamp(), document, resultDocument.getMetadataList());
+				indexWriter.updateDocument(new Term(LumongoConstants.ID_FIELD, uniqueId), luceneDocument);
+			}
+
+			@Override
+			public void delete(String uniqueId) throws Exception {
+				indexWriter.deleteDocuments(new Term(LumongoConstants.ID_FIELD, uniqueId));
+			}
+
+			@Override
+			public void deleteAll() throws Exception {
+				indexWriter.deleteAll();
+			}
+		});
+
+		forceCommit();
+
+		return count;
 	}
 
 	public int getSegmentNumber() {
 		return segmentNumber;
 	}
 
+	public String getIndexName() {
+		return indexName;
+	}
+
+	public Long getLastChange() {
+		return lastChange;
+	}
+
+	public long getIndexingRamBytesUsed() {
+		return indexWriter.ramBytesUsed();
+	}
+
+	public int getIndexingRamDocs() {
+		return indexWriter.numRamDocs();
+	}
+
+	/**
+	 * Deleted documents still held by flushed segments until they are merged away.  Deletes buffered in ram are not counted
+	 */
+	public int getPendingDeletes() {
+		return indexWriter.maxDoc() - indexWriter.numDocs();
+	}
+
+	/**
+	 * Writes the buffered documents to a new Lucene segment without committing, freeing the index writer buffer
+	 */
+	public void flushIndexingBuffer() throws IOException {
+		indexWriter.flush();
+	}
+
 	public SegmentResponse querySegment(QueryWithFilters queryWithFilters, int amount, FieldDoc after, FacetRequest facetRequest, SortRequest sortRequest,
-			QueryCacheKey queryCacheKey, FetchType resultFetchType, List<String> fieldsToReturn, List<String> fieldsToMask,
-			List<HighlightRequest> highlightList, List<AnalysisRequest> analysisRequestList) throws Exception {
+			QueryRequest cacheableRequest, FetchType resultFetchType, List<String> fieldsToReturn, List<String> fieldsToMask,
+			List<HighlightRequest> highlightList, List<AnalysisRequest> analysisRequestList, boolean realtime, GlobalTermStats globalTermStats)
+			throws Exception {
+		SearcherTaxonomyManager.SearcherAndTaxonomy searcherAndTaxonomy = null;
 		try {
 			reopenIndexWritersIfNecessary();
 
-			openReaderIfChanges();
+			searcherAndTaxonomy = acquireSearcher(realtime);
 
 			QueryResultCache qrc = queryResultCache;
 
-			boolean useCache = (qrc != null) && ((segmentQueryCacheMaxAmount <= 0) || (segmentQueryCacheMaxAmount >= amount)) && queryCacheKey != null;
+			QueryCacheKey queryCacheKey = null;
+			boolean useCache = (qrc != null) && ((segmentQueryCacheMaxAmount <= 0) || (segmentQueryCacheMaxAmount >= amount)) && cacheableRequest != null;
 			if (useCache) {
+				long readerVersion = ((DirectoryReader) searcherAndTaxonomy.searcher.getIndexReader()).getVersion();
+				queryCacheKey = new QueryCacheKey(cacheableRequest, amount, after, readerVersion);
+
 				SegmentResponse cacheSegmentResponse = qrc.getCacheSegmentResponse(queryCacheKey);
 				if (cacheSegmentResponse != null) {
 					return cacheSegmentResponse;
 				}
 			}
 
-			Query q = queryWithFilters.getQuery();
-
-			if (!queryWithFilters.getFilterQueries().isEmpty()) {
-				BooleanQuery.Builder booleanQuery = new BooleanQuery.Builder();
-
-				for (Query filterQuery : queryWithFilters.getFilterQueries()) {
-					booleanQuery.add(filterQuery, BooleanClause.Occur.FILTER);
-				}
-
-				booleanQuery.add(q, BooleanClause.Occur.MUST);
-
-				q = booleanQuery.build();
-			}
+			Query q = getFilteredQuery(queryWithFilters);
 
-			IndexSearcher indexSearcher = new IndexSearcher(directoryReader);
+			IndexReader indexReader = searcherAndTaxonomy.searcher.getIndexReader();
+			IndexSearcher indexSearcher = (globalTermStats != null) ? globalTermStats.getIndexSearcher(indexReader) : new IndexSearcher(indexReader);
 
 			//similarity is only set query time, indexing time all these similarities are the same
 			indexSearcher.setSimilarity(getSimilarity(queryWithFilters));
@@ -279,15 +455,27 @@ public class LumongoSegment {
 
 			SegmentResponse.Builder segmentReponseBuilder = SegmentResponse.newBuilder();
 
-			if ((facetRequest != null) && !facetRequest.getCountRequestList().isEmpty()) {
+			QueryLatencies queryLatencies = indexSegmentInterface.getQueryLatencies();
 
-				searchWithFacets(facetRequest, q, indexSearcher, collector, segmentReponseBuilder);
+			long searchStart = System.nanoTime();
 
+			FacetsCollector facetsCollector = null;
+			if ((facetRequest != null) && !facetRequest.getCountRequestList().isEmpty()) {
+				facetsCollector = new FacetsCollector();
+				indexSearcher.search(q, MultiCollector.wrap(collector, facetsCollector));
 			}
 			else {
 				indexSearcher.search(q, collector);
 			}
 
+			long searchEnd = System.nanoTime();
+			queryLatencies.record(QueryPhase.SEGMENT_SEARCH, searchEnd - searchStart);
+
+			if (facetsCollector != null) {
+				countFacets(facetRequest, searcherAndTaxonomy.taxonomyReader, facetsCollector, segmentReponseBuilder);
+				queryLatencies.record(QueryPhase.FACET, System.nanoTime() - searchEnd);
+			}
+
 			ScoreDoc[] results = collector.topDocs().scoreDocs;
 
 			int totalHits = collector.getTotalHits();
@@ -300,14 +488,16 @@ public class LumongoSegment {
 
 			List<LumongoHighlighter> highlighterList = getHighlighterList(highlightList, q);
 
-			List<AnalysisHandler> analysisHandlerList = getAnalysisHandlerList(analysisRequestList);
+			List<AnalysisHandler> analysisHandlerList = getAnalysisHandlerList(indexSearcher.getIndexReader(), analysisRequestList);
 
+			long fetchStart = System.nanoTime();
 			for (int i = 0; i < numResults; i++) {
 				ScoredResult.Builder srBuilder = handleDocResult(indexSearcher, sortRequest, sorting, results, i, resultFetchType, fieldsToReturn, fieldsToMask,
 						highlighterList, analysisHandlerList);
 
 				segmentReponseBuilder.addScoredResult(srBuilder.build());
 			}
+			queryLatencies.record(QueryPhase.STORED_FETCH, System.nanoTime() - fetchStart);
 
 			if (moreAvailable) {
 				ScoredResult.Builder srBuilder = handleDocResult(indexSearcher, sortRequest, sorting, results, numResults, FetchType.NONE,
@@ -342,9 +532,154 @@ public class LumongoSegment {
 
 			throw e;
 		}
+		finally {
+			if (searcherAndTaxonomy != null) {
+				releaseSearcher(searcherAndTaxonomy);
+			}
+		}
+	}
+
+	/**
+	 * Collects this segment's statistics for the scoring terms of the query and their fields so they can be summed with the other segments
+	 */
+	public GlobalTermStats getTermStats(QueryWithFilters queryWithFilters, boolean realtime) throws Exception {
+		SearcherTaxonomyManager.SearcherAndTaxonomy searcherAndTaxonomy = null;
+		try {
+			reopenIndexWritersIfNecessary();
+
+			searcherAndTaxonomy = acquireSearcher(realtime);
+
+			IndexSearcher indexSearcher = new IndexSearcher(searcherAndTaxonomy.searcher.getIndexReader());
+			indexSearcher.setSimilarity(getSimilarity(queryWithFilters));
+
+			Set<Term> terms = new HashSet<>();
+			indexSearcher.createNormalizedWeight(queryWithFilters.getQuery(), true).extractTerms(terms);
+
+			GlobalTermStats termStats = new GlobalTermStats(indexName);
+			Set<String> fields = new HashSet<>();
+			for (Term term : terms) {
+				TermContext termContext = TermContext.build(indexSearcher.getTopReaderContext(), term);
+				termStats.addTermStats(term, indexSearcher.termStatistics(term, termContext));
+				fields.add(term.field());
+			}
+			for (String field : fields) {
+				termStats.addFieldStats(indexSearcher.collectionStatistics(field));
+			}
+			return termStats;
+		}
+		finally {
+			if (searcherAndTaxonomy != null) {
+				releaseSearcher(searcherAndTaxonomy);
+			}
+		}
+	}
+
+	private Query getFilteredQuery(QueryWithFilters queryWithFilters) {
+		Query q = queryWithFilters.getQuery();
+
+		if (!queryWithFilters.getFilterQueries().isEmpty()) {
+			BooleanQuery.Builder booleanQuery = new BooleanQuery.Builder();
+
+			for (Query filterQuery : queryWithFilters.getFilterQueries()) {
+				booleanQuery.add(filterQuery, BooleanClause.Occur.FILTER);
+			}
+
+			booleanQuery.add(q, BooleanClause.Occur.MUST);
+
+			q = booleanQuery.build();
+		}
+		return q;
+	}
+
+	public List<ScoredResult> fetchResults(QueryWithFilters queryWithFilters, List<ScoredResult> scoredResults, FetchType resultFetchType,
+			List<String> fieldsToReturn, List<String> fieldsToMask, List<HighlightRequest> highlightList, List<AnalysisRequest> analysisRequestList)
+			throws Exception {
+
+		reopenIndexWritersIfNecessary();
+
+		long fetchStart = System.nanoTime();
+		SearcherTaxonomyManager.SearcherAndTaxonomy searcherAndTaxonomy = acquireSearcher(false);
+		try {
+			return fetchResults(searcherAndTaxonomy.searcher, queryWithFilters, scoredResults, resultFetchType, fieldsToReturn, fieldsToMask, highlightList,
+					analysisRequestList);
+		}
+		finally {
+			releaseSearcher(searcherAndTaxonomy);
+			indexSegmentInterface.getQueryLatencies().record(QueryPhase.STORED_FETCH, System.nanoTime() - fetchStart);
+		}
+	}
+
+	private List<ScoredResult> fetchResults(IndexSearcher indexSearcher, QueryWithFilters queryWithFilters, List<ScoredResult> scoredResults,
+			FetchType resultFetchType, List<String> fieldsToReturn, List<String> fieldsToMask, List<HighlightRequest> highlightList,
+			List<AnalysisRequest> analysisRequestList) throws Exception {
+
+		IndexReader indexReader = indexSearcher.getIndexReader();
+
+		List<LumongoHighlighter> highlighterList = Collections.emptyList();
+		if (!highlightList.isEmpty()) {
+			highlighterList = getHighlighterList(highlightList, getFilteredQuery(queryWithFilters));
+		}
+
+		List<AnalysisHandler> analysisHandlerList = getAnalysisHandlerList(indexReader, analysisRequestList);
+
+		if (!highlighterList.isEmpty() && !FetchType.FULL.equals(resultFetchType)) {
+			throw new Exception("Highlighting requires a full fetch of the document");
+		}
+
+		if (!analysisHandlerList.isEmpty() && !FetchType.FULL.equals(resultFetchType)) {
+			throw new Exception("Analysis requires a full fetch of the document");
+		}
+
+		Set<String> fieldsToFetch = fetchSet;
+		if (indexConfig.getIndexSettings().getStoreDocumentInIndex()) {
+			if (FetchType.FULL.equals(resultFetchType)) {
+				fieldsToFetch = fetchSetWithDocument;
+			}
+			else if (FetchType.META.equals(resultFetchType)) {
+				fieldsToFetch = fetchSetWithMeta;
+			}
+		}
+
+		Bits liveDocs = MultiFields.getLiveDocs(indexReader);
+
+		List<ScoredResult> fetchedResults = new ArrayList<>(scoredResults.size());
+		for (ScoredResult scoredResult : scoredResults) {
+			String uniqueId = scoredResult.getUniqueId();
+
+			//the doc id is only valid for the reader that scored the result, if the reader has changed since then go back to the unique id
+			Document d = null;
+			int docId = scoredResult.getDocId();
+			if (docId < indexReader.maxDoc() && (liveDocs == null || liveDocs.get(docId))) {
+				d = indexSearcher.doc(docId, fieldsToFetch);
+				if (!uniqueId.equals(d.get(LumongoConstants.ID_FIELD))) {
+					d = null;
+				}
+			}
+
+			if (d == null) {
+				TopDocs topDocs = indexSearcher.search(new TermQuery(new org.apache.lucene.index.Term(LumongoConstants.ID_FIELD, uniqueId)), 1);
+				if (topDocs.scoreDocs.length == 0) {
+					//document was deleted between scoring and fetching
+					fetchedResults.add(scoredResult);
+					continue;
+				}
+				d = indexSearcher.doc(topDocs.scoreDocs[0].doc, fieldsToFetch);
+			}
+
+			ScoredResult.Builder srBuilder = scoredResult.toBuilder();
+			srBuilder.setTimestamp(d.getField(LumongoConstants.TIMESTAMP_FIELD).numericValue().longValue());
+
+			if (!FetchType.NONE.equals(resultFetchType)) {
+				handleStoredDoc(srBuilder, uniqueId, d, resultFetchType, fieldsToReturn, fieldsToMask, highlighterList, analysisHandlerList);
+			}
+
+			fetchedResults.add(srBuilder.build());
+		}
+
+		return fetchedResults;
 	}
 
-	private List<AnalysisHandler> getAnalysisHandlerList(List<AnalysisRequest> analysisRequests) throws Exception {
+	private List<AnalysisHandler> getAnalysisHandlerList(IndexReader indexReader, List<AnalysisRequest> analysisRequests) throws Exception {
 		if (analysisRequests.isEmpty()) {
 			return Collections.emptyList();
 		}
@@ -366,7 +701,7 @@ public class LumongoSegment {
 				}
 			}
 			System.out.println(analysisRequest.getAnalyzerOverride());
-			AnalysisHandler analysisHandler = new AnalysisHandler(directoryReader, analyzer, indexConfig, analysisRequest);
+			AnalysisHandler analysisHandler = new AnalysisHandler(indexReader, analyzer, indexConfig, analysisRequest);
 			analysisHandlerList.add(analysisHandler);
 		}
 		return analysisHandlerList;
@@ -428,11 +763,8 @@ public class LumongoSegment {
 		};
 	}
 
-	private void searchWithFacets(FacetRequest facetRequest, Query q, IndexSearcher indexSearcher, TopDocsCollector<?> collector,
+	private void countFacets(FacetRequest facetRequest, TaxonomyReader taxoReader, FacetsCollector facetsCollector,
 			SegmentResponse.Builder segmentReponseBuilder) throws Exception {
-		FacetsCollector facetsCollector = new FacetsCollector();
-		indexSearcher.search(q, MultiCollector.wrap(collector, facetsCollector));
-
 		Facets facets = new FastTaxonomyFacetCounts(taxoReader, facetsConfig, facetsCollector);
 
 		for (CountRequest countRequest : facetRequest.getCountRequestList()) {
@@ -561,24 +893,6 @@ public class LumongoSegment {
 		return collector;
 	}
 
-	private void openReaderIfChanges() throws IOException {
-		DirectoryReader newDirectoryReader = DirectoryReader
-				.openIfChanged(directoryReader, indexWriter, indexConfig.getIndexSettings().getApplyUncommittedDeletes());
-		if (newDirectoryReader != null) {
-			directoryReader = newDirectoryReader;
-			QueryResultCache qrc = queryResultCache;
-			if (qrc != null) {
-				qrc.clear();
-			}
-
-		}
-
-		DirectoryTaxonomyReader newone = TaxonomyReader.openIfChanged(taxoReader);
-		if (newone != null) {
-			taxoReader = newone;
-		}
-	}
-
 	private ScoredResult.Builder handleDocResult(IndexSearcher is, SortRequest sortRequest, boolean sorting, ScoreDoc[] results, int i,
 			FetchType resultFetchType, List<String> fieldsToReturn, List<String> fieldsToMask, List<LumongoHighlighter> highlighterList,
 			List<AnalysisHandler> analysisHandlerList) throws Exception {
@@ -671,11 +985,15 @@ public class LumongoSegment {
 		if (!highlighterList.isEmpty() || !analysisHandlerList.isEmpty() || !fieldsToMask.isEmpty() || !fieldsToReturn.isEmpty()) {
 			org.bson.Document mongoDoc = ResultHelper.getDocumentFromResultDocument(resultDocument);
 			if (mongoDoc != null) {
-				if (!highlighterList.isEmpty()) {
-					handleHighlight(highlighterList, srBuilder, mongoDoc);
-				}
-				if (!analysisHandlerList.isEmpty()) {
-					AnalysisHandler.handleDocument(mongoDoc, analysisHandlerList, srBuilder);
+				if (!highlighterList.isEmpty() || !analysisHandlerList.isEmpty()) {
+					long highlightStart = System.nanoTime();
+					if (!highlighterList.isEmpty()) {
+						handleHighlight(highlighterList, srBuilder, mongoDoc);
+					}
+					if (!analysisHandlerList.isEmpty()) {
+						AnalysisHandler.handleDocument(mongoDoc, analysisHandlerList, srBuilder);
+					}
+					indexSegmentInterface.getQueryLatencies().record(QueryPhase.HIGHLIGHT_ANALYSIS, System.nanoTime() - highlightStart);
 				}
 
 				resultDocument = filterDocument(resultDocument, fieldsToReturn, fieldsToMask, mongoDoc);
@@ -786,7 +1104,7 @@ public class LumongoSegment {
 
 			SegmentResponse segmentResponse = this
 					.querySegment(queryWithFilters, 1, null, null, null, null, resultFetchType, fieldsToReturn, fieldsToMask, Collections.emptyList(),
-							Collections.emptyList());
+							Collections.emptyList(), true, null);
 
 			List<ScoredResult> scoredResultList = segmentResponse.getScoredResultList();
 			if (!scoredResultList.isEmpty()) {
@@ -839,8 +1157,18 @@ public class LumongoSegment {
 
 	}
 
+	/**
+	 * Only the first change after a refresh is reported, the refresh that makes it visible reports again
+	 */
+	private void markChanged() {
+		if (changedSinceRefresh.compareAndSet(false, true)) {
+			indexSegmentInterface.segmentChanged(segmentNumber);
+		}
+	}
+
 	private void possibleCommit() throws IOException {
 		lastChange = System.currentTimeMillis();
+		markChanged();
 
 		long count = counter.incrementAndGet();
 		if ((count % indexConfig.getIndexSettings().getSegmentCommitInterval()) == 0) {
@@ -849,13 +1177,47 @@ public class LumongoSegment {
 
 	}
 
+	/**
+	 * With a translog, a new translog generation is started and recorded in the commit, and older generations are removed once the commit
+	 * succeeds.  The taxonomy is committed first so a committed index never references ordinals missing from the committed taxonomy
+	 */
 	public void forceCommit() throws IOException {
 		log.info("Committing segment <" + segmentNumber + "> for index <" + indexName + ">");
 		long currentTime = System.currentTimeMillis();
-		indexWriter.commit();
-		taxoWriter.commit();
+		long start = System.nanoTime();
+
+		synchronized (commitLock) {
+			Translog t = translog;
+
+			Map<String, String> commitData = null;
+			if (t != null) {
+				translogLock.writeLock().lock();
+				try {
+					commitData = t.rollGeneration();
+				}
+				finally {
+					translogLock.writeLock().unlock();
+				}
+			}
+			else if (indexWriter.getCommitData().containsKey(Translog.TRANSLOG_UUID)) {
+				//commits made without a translog must not point at an old one
+				commitData = Collections.emptyMap();
+			}
+
+			if (commitData != null) {
+				indexWriter.setCommitData(commitData);
+			}
+
+			taxoWriter.commit();
+			indexWriter.commit();
+
+			if (t != null) {
+				t.trim(commitData);
+			}
+		}
 
 		lastCommit = currentTime;
+		indexSegmentInterface.getOperationLatencies().recordSince(IndexOperation.COMMIT, start);
 
 	}
 
@@ -880,6 +1242,12 @@ public class LumongoSegment {
 			forceCommit();
 		}
 
+		if (translog != null) {
+			translog.close();
+		}
+
+		searcherTaxonomyManager.close();
+
 		Directory directory = indexWriter.getDirectory();
 		indexWriter.close();
 		directory.close();
@@ -893,6 +1261,94 @@ public class LumongoSegment {
 
 		reopenIndexWritersIfNecessary();
 
+		Document luceneDocument = getLuceneDocument(uniqueId, timestamp, mongoDocument, metadataList);
+
+		Term term = new Term(LumongoConstants.ID_FIELD, uniqueId);
+
+		Translog t = translog;
+		long translogLocation = 0;
+
+		translogLock.readLock().lock();
+		try {
+			if (t != null) {
+				translogLocation = t.addIndex(getTranslogDocument(uniqueId, timestamp, mongoDocument, metadataList));
+			}
+			indexWriter.updateDocument(term, luceneDocument);
+		}
+		finally {
+			translogLock.readLock().unlock();
+		}
+
+		if (t != null) {
+			t.sync(translogLocation);
+		}
+
+		possibleCommit();
+	}
+
+	/**
+	 * Indexes a batch of documents with a single writer check and commit check.  A document that cannot be converted is skipped and reported
+	 * @return error messages keyed by the position of the failed document in sourceDocuments
+	 */
+	public Map<Integer, String> index(List<SourceDocument> sourceDocuments, long timestamp) throws Exception {
+		Map<Integer, String> errors = new HashMap<>();
+
+		reopenIndexWritersIfNecessary();
+
+		Translog t = translog;
+		long translogLocation = 0;
+
+		int position = 0;
+		for (SourceDocument sourceDocument : sourceDocuments) {
+			String uniqueId = sourceDocument.getUniqueId();
+
+			Document luceneDocument;
+			try {
+				luceneDocument = getLuceneDocument(uniqueId, timestamp, sourceDocument.getDocument(), sourceDocument.getMetadataList());
+			}
+			catch (Exception e) {
+				log.error("Failed to index document <" + uniqueId + "> in segment <" + segmentNumber + "> of index <" + indexName + ">: " + e.getClass()
+						.getSimpleName() + ": ", e);
+				errors.put(position, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+				position++;
+				continue;
+			}
+
+			translogLock.readLock().lock();
+			try {
+				if (t != null) {
+					translogLocation = t.addIndex(
+							getTranslogDocument(uniqueId, timestamp, sourceDocument.getDocument(), sourceDocument.getMetadataList()));
+				}
+				indexWriter.updateDocument(new Term(LumongoConstants.ID_FIELD, uniqueId), luceneDocument);
+			}
+			finally {
+				translogLock.readLock().unlock();
+			}
+			position++;
+		}
+
+		//one fsync for the whole batch
+		if (t != null) {
+			t.sync(translogLocation);
+		}
+
+		possibleCommit();
+
+		return errors;
+	}
+
+	private ResultDocument getTranslogDocument(String uniqueId, long timestamp, org.bson.Document mongoDocument, List<Metadata> metadataList) {
+		ResultDocument.Builder rdBuilder = ResultDocument.newBuilder();
+		rdBuilder.setUniqueId(uniqueId);
+		rdBuilder.setIndexName(indexName);
+		rdBuilder.setTimestamp(timestamp);
+		rdBuilder.setDocument(ByteString.copyFrom(LumongoUtil.mongoDocumentToByteArray(mongoDocument)));
+		rdBuilder.addAllMetadata(metadataList);
+		return rdBuilder.build();
+	}
+
+	private Document getLuceneDocument(String uniqueId, long timestamp, org.bson.Document mongoDocument, List<Metadata> metadataList) throws Exception {
 		Document luceneDocument = new Document();
 
 		addStoredFieldsForDocument(mongoDocument, luceneDocument);
@@ -914,13 +1370,7 @@ public class LumongoSegment {
 
 		}
 
-		luceneDocument = facetsConfig.build(taxoWriter, luceneDocument);
-
-		Term term = new Term(LumongoConstants.ID_FIELD, uniqueId);
-
-		indexWriter.updateDocument(term, luceneDocument);
-
-		possibleCommit();
+		return facetsConfig.build(taxoWriter, luceneDocument);
 	}
 
 	private void addStoredFieldsForDocument(org.bson.Document mongoDocument, Document luceneDocument) throws Exception {
@@ -1129,7 +1579,25 @@ public class LumongoSegment {
 
 	public void deleteDocument(String uniqueId) throws Exception {
 		Term term = new Term(LumongoConstants.ID_FIELD, uniqueId);
-		indexWriter.deleteDocuments(term);
+
+		Translog t = translog;
+		long translogLocation = 0;
+
+		translogLock.readLock().lock();
+		try {
+			if (t != null) {
+				translogLocation = t.addDelete(uniqueId);
+			}
+			indexWriter.deleteDocuments(term);
+		}
+		finally {
+			translogLock.readLock().unlock();
+		}
+
+		if (t != null) {
+			t.sync(translogLocation);
+		}
+
 		possibleCommit();
 
 	}
@@ -1142,19 +1610,23 @@ public class LumongoSegment {
 
 	public GetFieldNamesResponse getFieldNames() throws IOException {
 
-		openReaderIfChanges();
-
 		GetFieldNamesResponse.Builder builder = GetFieldNamesResponse.newBuilder();
 
 		Set<String> fields = new HashSet<>();
 
-		for (LeafReaderContext subReaderContext : directoryReader.leaves()) {
-			FieldInfos fieldInfos = subReaderContext.reader().getFieldInfos();
-			for (FieldInfo fi : fieldInfos) {
-				String fieldName = fi.name;
-				fields.add(fieldName);
+		SearcherTaxonomyManager.SearcherAndTaxonomy searcherAndTaxonomy = acquireSearcher(false);
+		try {
+			for (LeafReaderContext subReaderContext : searcherAndTaxonomy.searcher.getIndexReader().leaves()) {
+				FieldInfos fieldInfos = subReaderContext.reader().getFieldInfos();
+				for (FieldInfo fi : fieldInfos) {
+					String fieldName = fi.name;
+					fields.add(fieldName);
+				}
 			}
 		}
+		finally {
+			releaseSearcher(searcherAndTaxonomy);
+		}
 
 		fields.forEach(builder::addFieldName);
 
@@ -1163,12 +1635,26 @@ public class LumongoSegment {
 
 	public void clear() throws IOException {
 		// index has write lock so none needed here
+		Translog t = translog;
+		if (t != null) {
+			t.sync(t.addDeleteAll());
+		}
 		indexWriter.deleteAll();
+		markChanged();
 		forceCommit();
 	}
 
 	public GetTermsResponse getTerms(GetTermsRequest request) throws IOException {
-		openReaderIfChanges();
+		SearcherTaxonomyManager.SearcherAndTaxonomy searcherAndTaxonomy = acquireSearcher(false);
+		try {
+			return getTerms(searcherAndTaxonomy.searcher.getIndexReader(), request);
+		}
+		finally {
+			releaseSearcher(searcherAndTaxonomy);
+		}
+	}
+
+	private GetTermsResponse getTerms(IndexReader indexReader, GetTermsRequest request) throws IOException {
 
 		GetTermsResponse.Builder builder = GetTermsResponse.newBuilder();
 
@@ -1185,7 +1671,7 @@ public class LumongoSegment {
 				termBytesList.add(termBytes);
 			}
 
-			for (LeafReaderContext subReaderContext : directoryReader.leaves()) {
+			for (LeafReaderContext subReaderContext : indexReader.leaves()) {
 				Fields fields = subReaderContext.reader().fields();
 				if (fields != null) {
 
@@ -1230,7 +1716,7 @@ public class LumongoSegment {
 				termMatch = Pattern.compile(request.getTermMatch());
 			}
 
-			for (LeafReaderContext subReaderContext : directoryReader.leaves()) {
+			for (LeafReaderContext subReaderContext : indexReader.leaves()) {
 				Fields fields = subReaderContext.reader().fields();
 				if (fields != null) {
 
@@ -1301,8 +1787,14 @@ public class LumongoSegment {
 
 	public SegmentCountResponse getNumberOfDocs() throws IOException {
 
-		openReaderIfChanges();
-		int count = directoryReader.numDocs();
+		int count;
+		SearcherTaxonomyManager.SearcherAndTaxonomy searcherAndTaxonomy = acquireSearcher(false);
+		try {
+			count = searcherAndTaxonomy.searcher.getIndexReader().numDocs();
+		}
+		finally {
+			releaseSearcher(searcherAndTaxonomy);
+		}
 		return SegmentCountResponse.newBuilder().setNumberOfDocs(count).setSegmentNumber(segmentNumber).build();
 
 	}
@@ -0,0 +1,301 @@
+package org.lumongo.server.index;
+
+import org.apache.log4j.Logger;
+import org.lumongo.cluster.message.Lumongo.ResultDocument;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of the changes made to a segment since its last commit.  Each generation is a local file, a new generation is started
+ * before a commit and older generations are removed once the commit that covers them succeeds.  The commit records the translog id and
+ * generation so logs left by another node or an older copy of the segment are never replayed
+ */
+public class Translog implements Closeable {
+
+	private final static Logger log = Logger.getLogger(Translog.class);
+
+	public static final String TRANSLOG_UUID = "translogUUID";
+	public static final String TRANSLOG_GENERATION = "translogGeneration";
+
+	private static final String SUFFIX = ".tlog";
+
+	private static final byte INDEX = 1;
+	private static final byte DELETE = 2;
+	private static final byte DELETE_ALL = 3;
+
+	public interface Handler {
+		void index(ResultDocument resultDocument) throws Exception;
+
+		void delete(String uniqueId) throws Exception;
+
+		void deleteAll() throws Exception;
+	}
+
+	private final Path directory;
+	private final String translogUUID;
+	private final List<Path> uncommittedFiles;
+
+	private final Object writeLock;
+	private final Object syncLock;
+
+	private FileChannel channel;
+	private long generation;
+
+	private long writtenLocation;
+	private volatile long syncedLocation;
+
+	public Translog(Path directory, Map<String, String> commitData) throws IOException {
+		this.directory = directory;
+		this.writeLock = new Object();
+		this.syncLock = new Object();
+
+		Files.createDirectories(directory);
+
+		String committedUUID = commitData.get(TRANSLOG_UUID);
+		long committedGeneration = commitData.containsKey(TRANSLOG_GENERATION) ? Long.parseLong(commitData.get(TRANSLOG_GENERATION)) : 0;
+
+		TreeMap<Long, Path> generationFiles = new TreeMap<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : files) {
+				String[] parts = file.getFileName().toString().split("\\.");
+				if (parts.length == 3 && parts[0].equals(committedUUID) && Long.parseLong(parts[1]) >= committedGeneration) {
+					generationFiles.put(Long.parseLong(parts[1]), file);
+				}
+				else {
+					log.info("Removing stale translog <" + file + ">");
+					Files.delete(file);
+				}
+			}
+		}
+
+		//a new id each time so files written here can never be confused with ones left from an earlier open
+		this.translogUUID = UUID.randomUUID().toString();
+		this.uncommittedFiles = new ArrayList<>(generationFiles.values());
+		this.generation = 0;
+
+		synchronized (writeLock) {
+			openNextGeneration();
+		}
+	}
+
+	private Path getFile(long generation) {
+		return directory.resolve(translogUUID + "." + generation + SUFFIX);
+	}
+
+	private void openNextGeneration() throws IOException {
+		generation++;
+		channel = FileChannel.open(getFile(generation), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+	}
+
+	public long addIndex(ResultDocument resultDocument) throws IOException {
+		return add(INDEX, resultDocument.toByteArray());
+	}
+
+	public long addDelete(String uniqueId) throws IOException {
+		return add(DELETE, uniqueId.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public long addDeleteAll() throws IOException {
+		return add(DELETE_ALL, new byte[0]);
+	}
+
+	/**
+	 * Record layout is length, crc of the payload, type, payload
+	 * @return the location to pass to sync to make this record durable
+	 */
+	private long add(byte type, byte[] payload) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(payload);
+
+		ByteBuffer buffer = ByteBuffer.allocate(9 + payload.length);
+		buffer.putInt(payload.length);
+		buffer.putInt((int) crc.getValue());
+		buffer.put(type);
+		buffer.put(payload);
+		buffer.flip();
+
+		synchronized (writeLock) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			writtenLocation += buffer.limit();
+			return writtenLocation;
+		}
+	}
+
+	/**
+	 * Group commit: the first caller forces everything written so far, callers waiting behind it return without another fsync
+	 * if their records were covered
+	 */
+	public void sync(long location) throws IOException {
+		if (syncedLocation >= location) {
+			return;
+		}
+		synchronized (syncLock) {
+			if (syncedLocation >= location) {
+				return;
+			}
+			FileChannel toSync;
+			long toSyncLocation;
+			synchronized (writeLock) {
+				toSync = channel;
+				toSyncLocation = writtenLocation;
+			}
+			toSync.force(false);
+			syncedLocation = toSyncLocation;
+		}
+	}
+
+	/**
+	 * Starts a new generation, the caller must make sure no changes are in flight.  Changes logged after this call are in the new
+	 * generation
+	 * @return commit data to store with the commit that covers every older generation
+	 */
+	public Map<String, String> rollGeneration() throws IOException {
+		synchronized (syncLock) {
+			synchronized (writeLock) {
+				channel.force(false);
+				channel.close();
+				syncedLocation = writtenLocation;
+				openNextGeneration();
+
+				Map<String, String> commitData = new HashMap<>();
+				commitData.put(TRANSLOG_UUID, translogUUID);
+				commitData.put(TRANSLOG_GENERATION, Long.toString(generation));
+				return commitData;
+			}
+		}
+	}
+
+	/**
+	 * Removes the generations older than the one in the given commit data, and any replayed files, once that commit is durable
+	 */
+	public void trim(Map<String, String> commitData) throws IOException {
+		long committedGeneration = Long.parseLong(commitData.get(TRANSLOG_GENERATION));
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, translogUUID + ".*" + SUFFIX)) {
+			for (Path file : files) {
+				String[] parts = file.getFileName().toString().split("\\.");
+				if (Long.parseLong(parts[1]) < committedGeneration) {
+					Files.delete(file);
+				}
+			}
+		}
+		for (Path file : uncommittedFiles) {
+			Files.deleteIfExists(file);
+		}
+		uncommittedFiles.clear();
+	}
+
+	/**
+	 * Replays the changes that were logged but not committed when the segment was last closed.  Only the newest file can end in a record
+	 * torn by a crash, older generations were synced before the next one was started so a bad record in one of them is corruption
+	 * @return number of changes replayed
+	 */
+	public int replay(Handler handler) throws Exception {
+		int count = 0;
+		for (int i = 0; i < uncommittedFiles.size(); i++) {
+			Path file = uncommittedFiles.get(i);
+			boolean newest = (i == uncommittedFiles.size() - 1);
+			long fileSize = Files.size(file);
+			long position = 0;
+			try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+				while (position < fileSize) {
+					int length;
+					int checksum;
+					byte type;
+					byte[] payload;
+					try {
+						length = input.readInt();
+						checksum = input.readInt();
+						type = input.readByte();
+						if (length < 0 || length > fileSize - position - 9) {
+							handleCorruptRecord(file, newest, position, count);
+							break;
+						}
+						payload = new byte[length];
+						input.readFully(payload);
+					}
+					catch (EOFException e) {
+						//a record torn by a crash before it was synced
+						handleCorruptRecord(file, newest, position, count);
+						break;
+					}
+
+					CRC32 crc = new CRC32();
+					crc.update(type);
+					crc.update(payload);
+					if ((int) crc.getValue() != checksum) {
+						handleCorruptRecord(file, newest, position, count);
+						break;
+					}
+
+					if (type == INDEX) {
+						handler.index(ResultDocument.parseFrom(payload));
+					}
+					else if (type == DELETE) {
+						handler.delete(new String(payload, StandardCharsets.UTF_8));
+					}
+					else if (type == DELETE_ALL) {
+						handler.deleteAll();
+					}
+					else {
+						throw new IOException("Unknown translog entry type <" + type + "> in <" + file + ">");
+					}
+					position += 9 + length;
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private static void handleCorruptRecord(Path file, boolean newest, long position, int count) throws IOException {
+		if (!newest) {
+			throw new IOException("Corrupt record at <" + position + "> in translog <" + file + "> that is followed by newer generations");
+		}
+		log.warn("Ignoring corrupt tail of translog <" + file + "> at <" + position + "> after <" + count + "> changes");
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (syncLock) {
+			synchronized (writeLock) {
+				channel.force(false);
+				channel.close();
+				syncedLocation = writtenLocation;
+			}
+		}
+	}
+
+	/**
+	 * Closes and removes every generation, used when the segment is deleted
+	 */
+	public void delete() throws IOException {
+		close();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : files) {
+				Files.delete(file);
+			}
+		}
+	}
+
+}
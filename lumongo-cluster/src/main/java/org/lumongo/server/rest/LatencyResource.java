@@ -0,0 +1,83 @@
+package org.lumongo.server.rest;
+
+import com.cedarsoftware.util.io.JsonWriter;
+import com.mongodb.util.JSONSerializers;
+import org.bson.Document;
+import org.lumongo.LumongoConstants;
+import org.lumongo.server.index.LumongoIndexManager;
+import org.lumongo.server.search.LatencyHistogram;
+import org.lumongo.server.search.QueryLatencies;
+import org.lumongo.server.search.QueryPhase;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Map;
+
+@Path(LumongoConstants.LATENCY_URL)
+public class LatencyResource {
+
+	private LumongoIndexManager indexManager;
+
+	public LatencyResource(LumongoIndexManager indexManager) {
+		this.indexManager = indexManager;
+	}
+
+	@GET
+	@Produces({ MediaType.APPLICATION_JSON + ";charset=utf-8" })
+	public Response get(@Context Response response, @QueryParam(LumongoConstants.INDEX) String index,
+			@QueryParam(LumongoConstants.PRETTY) boolean pretty) {
+
+		try {
+
+			Document mongoDocument = new Document();
+
+			Map<String, QueryLatencies> indexQueryLatencies = indexManager.getIndexQueryLatencies();
+			Document indexesDocument = new Document();
+			for (String indexName : indexQueryLatencies.keySet()) {
+				if (index != null && !index.equals(indexName)) {
+					continue;
+				}
+
+				QueryLatencies queryLatencies = indexQueryLatencies.get(indexName);
+				Document indexDocument = new Document();
+				for (QueryPhase phase : QueryPhase.values()) {
+					LatencyHistogram histogram = queryLatencies.getHistogram(phase);
+					if (histogram.getCount() == 0) {
+						continue;
+					}
+					Document phaseDocument = new Document();
+					phaseDocument.put("count", histogram.getCount());
+					phaseDocument.put("meanMs", histogram.getMeanMs());
+					phaseDocument.put("p50Ms", histogram.getPercentileMs(50));
+					phaseDocument.put("p90Ms", histogram.getPercentileMs(90));
+					phaseDocument.put("p99Ms", histogram.getPercentileMs(99));
+					phaseDocument.put("p999Ms", histogram.getPercentileMs(99.9));
+					phaseDocument.put("maxMs", histogram.getMaxMs());
+					indexDocument.put(phase.name().toLowerCase(), phaseDocument);
+				}
+				indexesDocument.put(indexName, indexDocument);
+			}
+			mongoDocument.put("indexes", indexesDocument);
+			mongoDocument.put("slowQueries", indexManager.getSlowQueryLog().getSlowQueries());
+
+			String docString = JSONSerializers.getStrict().serialize(mongoDocument);
+
+			if (pretty) {
+				docString = JsonWriter.formatJson(docString);
+			}
+
+			return Response.status(LumongoConstants.SUCCESS).entity(docString).build();
+
+		}
+		catch (Exception e) {
+			return Response.status(LumongoConstants.INTERNAL_ERROR).entity("Failed to get query latencies: " + e.getMessage()).build();
+		}
+
+	}
+
+}
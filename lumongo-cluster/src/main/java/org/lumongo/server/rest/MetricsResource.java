@@ -0,0 +1,300 @@
+package org.lumongo.server.rest;
+
+import com.google.common.cache.CacheStats;
+import com.hazelcast.core.Member;
+import org.lumongo.LumongoConstants;
+import org.lumongo.server.connection.InternalRpcConnectionPool;
+import org.lumongo.server.index.IndexOperation;
+import org.lumongo.server.index.IndexOperationLatencies;
+import org.lumongo.server.index.LumongoIndex;
+import org.lumongo.server.index.LumongoIndexManager;
+import org.lumongo.server.search.CoordinatorQueryCache;
+import org.lumongo.server.search.LatencyHistogram;
+import org.lumongo.server.search.QueryLatencies;
+import org.lumongo.server.search.QueryPhase;
+import org.lumongo.server.search.QueryStats;
+import org.lumongo.server.search.SearchExecutor;
+import org.lumongo.storage.lucene.MongoFile;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Metrics for this node in the Prometheus text format.  Everything reported is read from counters and histograms that are updated
+ * without locks, the locks taken here are only held to list the loaded indexes and segments
+ */
+@Path(LumongoConstants.METRICS_URL)
+public class MetricsResource {
+
+	private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private LumongoIndexManager indexManager;
+
+	public MetricsResource(LumongoIndexManager indexManager) {
+		this.indexManager = indexManager;
+	}
+
+	@GET
+	@Produces({ PROMETHEUS_TEXT })
+	public Response get(@Context Response response) {
+
+		try {
+			StringBuilder sb = new StringBuilder();
+
+			Map<String, LumongoIndex> indexes = indexManager.getLoadedIndexes();
+
+			header(sb, "lumongo_query_seconds", "summary", "Time spent in each phase of queries on the index");
+			for (String indexName : indexes.keySet()) {
+				QueryLatencies queryLatencies = indexes.get(indexName).getQueryLatencies();
+				for (QueryPhase phase : QueryPhase.values()) {
+					summary(sb, "lumongo_query_seconds", "index", indexName, "phase", phase.name().toLowerCase(), queryLatencies.getHistogram(phase));
+				}
+			}
+
+			header(sb, "lumongo_operation_seconds", "summary", "Time taken by store, delete, fetch and commit operations on the index");
+			for (String indexName : indexes.keySet()) {
+				IndexOperationLatencies operationLatencies = indexes.get(indexName).getOperationLatencies();
+				for (IndexOperation operation : IndexOperation.values()) {
+					summary(sb, "lumongo_operation_seconds", "index", indexName, "operation", operation.name().toLowerCase(),
+							operationLatencies.getHistogram(operation));
+				}
+			}
+
+			//every sample of a family follows its header, Prometheus rejects a family that is split up
+			Map<String, QueryStats> queryStats = new TreeMap<>();
+			Map<String, CacheStats> cacheStats = new TreeMap<>();
+			for (String indexName : indexes.keySet()) {
+				queryStats.put(indexName, indexes.get(indexName).getQueryStats());
+				cacheStats.put(indexName, indexes.get(indexName).getQueryResultCacheStats());
+			}
+
+			header(sb, "lumongo_queries_total", "counter", "Queries coordinated by this node");
+			for (String indexName : queryStats.keySet()) {
+				sample(sb, "lumongo_queries_total", "index", indexName, queryStats.get(indexName).getQueries());
+			}
+			header(sb, "lumongo_short_queries_total", "counter", "Queries with at least one short segment");
+			for (String indexName : queryStats.keySet()) {
+				sample(sb, "lumongo_short_queries_total", "index", indexName, queryStats.get(indexName).getShortQueries());
+			}
+			header(sb, "lumongo_retried_segments_total", "counter", "Segments searched again after being short");
+			for (String indexName : queryStats.keySet()) {
+				sample(sb, "lumongo_retried_segments_total", "index", indexName, queryStats.get(indexName).getRetriedSegments());
+			}
+			header(sb, "lumongo_full_retries_total", "counter", "Queries run again with every segment fetching in full");
+			for (String indexName : queryStats.keySet()) {
+				sample(sb, "lumongo_full_retries_total", "index", indexName, queryStats.get(indexName).getFullRetries());
+			}
+
+			header(sb, "lumongo_query_result_cache_hits_total", "counter", "Segment query result cache hits");
+			for (String indexName : cacheStats.keySet()) {
+				sample(sb, "lumongo_query_result_cache_hits_total", "index", indexName, cacheStats.get(indexName).hitCount());
+			}
+			header(sb, "lumongo_query_result_cache_misses_total", "counter", "Segment query result cache misses");
+			for (String indexName : cacheStats.keySet()) {
+				sample(sb, "lumongo_query_result_cache_misses_total", "index", indexName, cacheStats.get(indexName).missCount());
+			}
+			header(sb, "lumongo_query_result_cache_evictions_total", "counter", "Segment query result cache evictions");
+			for (String indexName : cacheStats.keySet()) {
+				sample(sb, "lumongo_query_result_cache_evictions_total", "index", indexName, cacheStats.get(indexName).evictionCount());
+			}
+			header(sb, "lumongo_query_result_cache_size", "gauge", "Segment query results cached");
+			for (String indexName : indexes.keySet()) {
+				sample(sb, "lumongo_query_result_cache_size", "index", indexName, indexes.get(indexName).getQueryResultCacheSize());
+			}
+
+			header(sb, "lumongo_indexing_ram_bytes", "gauge", "Bytes buffered by the index writers of the index");
+			for (String indexName : indexes.keySet()) {
+				sample(sb, "lumongo_indexing_ram_bytes", "index", indexName, indexes.get(indexName).getIndexingRamBytesUsed());
+			}
+			header(sb, "lumongo_indexing_ram_docs", "gauge", "Documents buffered by the index writers of the index");
+			for (String indexName : indexes.keySet()) {
+				sample(sb, "lumongo_indexing_ram_docs", "index", indexName, indexes.get(indexName).getIndexingRamDocs());
+			}
+			header(sb, "lumongo_pending_deletes", "gauge", "Deleted documents not yet merged away");
+			for (String indexName : indexes.keySet()) {
+				sample(sb, "lumongo_pending_deletes", "index", indexName, indexes.get(indexName).getPendingDeletes());
+			}
+
+			header(sb, "lumongo_slow_queries_total", "counter", "Queries slower than the slow query threshold");
+			sample(sb, "lumongo_slow_queries_total", indexManager.getSlowQueryLog().getSlowQueries());
+
+			CoordinatorQueryCache coordinatorQueryCache = indexManager.getCoordinatorQueryCache();
+			header(sb, "lumongo_coordinator_cache_hits_total", "counter", "Query responses served from the coordinator cache");
+			sample(sb, "lumongo_coordinator_cache_hits_total", coordinatorQueryCache.getHits());
+			header(sb, "lumongo_coordinator_cache_shared_total", "counter", "Query responses shared with an identical running query");
+			sample(sb, "lumongo_coordinator_cache_shared_total", coordinatorQueryCache.getShared());
+			header(sb, "lumongo_coordinator_cache_misses_total", "counter", "Queries run because no response could be shared");
+			sample(sb, "lumongo_coordinator_cache_misses_total", coordinatorQueryCache.getMisses());
+			header(sb, "lumongo_coordinator_cache_size", "gauge", "Query responses in the coordinator cache");
+			sample(sb, "lumongo_coordinator_cache_size", coordinatorQueryCache.getSize());
+
+			CacheStats blockCacheStats = MongoFile.getCacheStats();
+			header(sb, "lumongo_block_cache_hits_total", "counter", "Index block cache hits");
+			sample(sb, "lumongo_block_cache_hits_total", blockCacheStats.hitCount());
+			header(sb, "lumongo_block_cache_misses_total", "counter", "Index block cache misses");
+			sample(sb, "lumongo_block_cache_misses_total", blockCacheStats.missCount());
+			header(sb, "lumongo_block_cache_evictions_total", "counter", "Index blocks evicted from the cache");
+			sample(sb, "lumongo_block_cache_evictions_total", blockCacheStats.evictionCount());
+			header(sb, "lumongo_block_cache_blocks", "gauge", "Index blocks in the cache");
+			sample(sb, "lumongo_block_cache_blocks", MongoFile.getCacheSize());
+			header(sb, "lumongo_block_cache_bytes", "gauge", "Bytes of the index blocks in the cache");
+			sample(sb, "lumongo_block_cache_bytes", MongoFile.getCacheBytes());
+			header(sb, "lumongo_block_cache_allocated_bytes", "gauge", "Off heap bytes allocated by the block cache");
+			sample(sb, "lumongo_block_cache_allocated_bytes", MongoFile.getCacheAllocatedBytes());
+			header(sb, "lumongo_block_cache_max_bytes", "gauge", "Off heap bytes the block cache can allocate");
+			sample(sb, "lumongo_block_cache_max_bytes", MongoFile.getMaxCacheBytes());
+			if (MongoFile.hasDiskCache()) {
+				header(sb, "lumongo_block_disk_cache_blocks", "gauge", "Index blocks in the disk cache");
+				sample(sb, "lumongo_block_disk_cache_blocks", MongoFile.getDiskCacheSize());
+				header(sb, "lumongo_block_disk_cache_max_bytes", "gauge", "Bytes of index blocks the disk cache can hold");
+				sample(sb, "lumongo_block_disk_cache_max_bytes", MongoFile.getDiskCacheMaxBytes());
+				header(sb, "lumongo_block_disk_cache_hits_total", "counter", "Index blocks read from the disk cache instead of Mongo");
+				sample(sb, "lumongo_block_disk_cache_hits_total", MongoFile.getDiskCacheHits());
+				header(sb, "lumongo_block_disk_cache_misses_total", "counter", "Index blocks not found in the disk cache");
+				sample(sb, "lumongo_block_disk_cache_misses_total", MongoFile.getDiskCacheMisses());
+				header(sb, "lumongo_block_disk_cache_stores_total", "counter", "Index blocks copied to the disk cache when evicted from memory");
+				sample(sb, "lumongo_block_disk_cache_stores_total", MongoFile.getDiskCacheStores());
+			}
+			header(sb, "lumongo_block_size_bytes", "gauge", "Size of an index block");
+			sample(sb, "lumongo_block_size_bytes", indexManager.getClusterConfig().getIndexBlockSize());
+			header(sb, "lumongo_blocks_loaded_total", "counter", "Index blocks read from Mongo");
+			sample(sb, "lumongo_blocks_loaded_total", MongoFile.getBlocksLoaded());
+			header(sb, "lumongo_blocks_read_ahead_total", "counter", "Index blocks read from Mongo ahead of a sequential reader");
+			sample(sb, "lumongo_blocks_read_ahead_total", MongoFile.getBlocksReadAhead());
+			header(sb, "lumongo_blocks_loaded_uncached_total", "counter", "Index blocks read from Mongo by merges and read once inputs without caching");
+			sample(sb, "lumongo_blocks_loaded_uncached_total", MongoFile.getBlocksLoadedUncached());
+			header(sb, "lumongo_blocks_loaded_bytes_total", "counter", "Bytes of index blocks read from Mongo");
+			sample(sb, "lumongo_blocks_loaded_bytes_total", MongoFile.getBytesLoaded());
+			header(sb, "lumongo_blocks_flushed_total", "counter", "Index blocks written to Mongo");
+			sample(sb, "lumongo_blocks_flushed_total", MongoFile.getBlocksStored());
+			header(sb, "lumongo_blocks_flushed_bytes_total", "counter", "Bytes of index blocks written to Mongo");
+			sample(sb, "lumongo_blocks_flushed_bytes_total", MongoFile.getBytesStored());
+			header(sb, "lumongo_block_flush_queue", "gauge", "Dirty index blocks waiting to be written behind");
+			sample(sb, "lumongo_block_flush_queue", MongoFile.getFlushQueueSize());
+			header(sb, "lumongo_block_bulk_writes_total", "counter", "Bulk writes of dirty index blocks to Mongo");
+			sample(sb, "lumongo_block_bulk_writes_total", MongoFile.getBulkWrites());
+			header(sb, "lumongo_block_bulk_write_failures_total", "counter", "Bulk writes of dirty index blocks that failed");
+			sample(sb, "lumongo_block_bulk_write_failures_total", MongoFile.getFailedBulkWrites());
+
+			Map<Member, InternalRpcConnectionPool> connectionPools = indexManager.getInternalConnectionPools();
+			Map<String, InternalRpcConnectionPool> memberPools = new TreeMap<>();
+			for (Member m : connectionPools.keySet()) {
+				InetSocketAddress address = m.getSocketAddress();
+				memberPools.put(address.getHostString() + ":" + address.getPort(), connectionPools.get(m));
+			}
+			header(sb, "lumongo_internal_connections_active", "gauge", "Internal connections to the member in use");
+			for (String member : memberPools.keySet()) {
+				sample(sb, "lumongo_internal_connections_active", "member", member, memberPools.get(member).getNumActive());
+			}
+			header(sb, "lumongo_internal_connections_idle", "gauge", "Internal connections to the member idle in the pool");
+			for (String member : memberPools.keySet()) {
+				sample(sb, "lumongo_internal_connections_idle", "member", member, memberPools.get(member).getNumIdle());
+			}
+			header(sb, "lumongo_internal_connections_max_idle", "gauge", "Internal connections to the member kept when idle");
+			for (String member : memberPools.keySet()) {
+				sample(sb, "lumongo_internal_connections_max_idle", "member", member, memberPools.get(member).getMaxIdle());
+			}
+
+			SearchExecutor searchExecutor = indexManager.getSearchExecutor();
+			header(sb, "lumongo_search_threads", "gauge", "Threads searching segments");
+			sample(sb, "lumongo_search_threads", searchExecutor.getThreads());
+			header(sb, "lumongo_search_active_threads", "gauge", "Threads currently searching segments");
+			sample(sb, "lumongo_search_active_threads", searchExecutor.getActiveCount());
+			header(sb, "lumongo_search_queued", "gauge", "Segment searches waiting for a thread");
+			sample(sb, "lumongo_search_queued", searchExecutor.getQueuedCount());
+			header(sb, "lumongo_search_queue_depth", "gauge", "Segment searches that can wait before new ones are rejected");
+			sample(sb, "lumongo_search_queue_depth", searchExecutor.getQueueDepth());
+			header(sb, "lumongo_search_completed_total", "counter", "Segment searches completed");
+			sample(sb, "lumongo_search_completed_total", searchExecutor.getCompletedCount());
+			header(sb, "lumongo_search_rejected_total", "counter", "Segment searches rejected because the queue was full");
+			sample(sb, "lumongo_search_rejected_total", searchExecutor.getRejectedCount());
+
+			header(sb, "lumongo_manager_pool_threads", "gauge", "Threads in the pool federating requests to members");
+			sample(sb, "lumongo_manager_pool_threads", indexManager.getPoolSize());
+			header(sb, "lumongo_manager_pool_active_threads", "gauge", "Threads in the pool federating requests to members that are running a task");
+			sample(sb, "lumongo_manager_pool_active_threads", indexManager.getPoolActiveCount());
+
+			Runtime runtime = Runtime.getRuntime();
+			header(sb, "lumongo_jvm_used_memory_bytes", "gauge", "JVM heap in use");
+			sample(sb, "lumongo_jvm_used_memory_bytes", runtime.totalMemory() - runtime.freeMemory());
+			header(sb, "lumongo_jvm_total_memory_bytes", "gauge", "JVM heap allocated");
+			sample(sb, "lumongo_jvm_total_memory_bytes", runtime.totalMemory());
+			header(sb, "lumongo_jvm_max_memory_bytes", "gauge", "JVM heap limit");
+			sample(sb, "lumongo_jvm_max_memory_bytes", runtime.maxMemory());
+
+			return Response.status(LumongoConstants.SUCCESS).entity(sb.toString()).build();
+		}
+		catch (Exception e) {
+			return Response.status(LumongoConstants.INTERNAL_ERROR).entity("Failed to get metrics: " + e.getMessage()).build();
+		}
+
+	}
+
+	private static void header(StringBuilder sb, String name, String type, String help) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(StringBuilder sb, String name, double value) {
+		sb.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void sample(StringBuilder sb, String name, String label, String labelValue, double value) {
+		sb.append(name).append('{');
+		label(sb, label, labelValue);
+		sb.append("} ").append(value).append('\n');
+	}
+
+	private static void summary(StringBuilder sb, String name, String label1, String labelValue1, String label2, String labelValue2,
+			LatencyHistogram histogram) {
+		if (histogram.getCount() == 0) {
+			return;
+		}
+
+		for (double quantile : QUANTILES) {
+			sb.append(name).append('{');
+			label(sb, label1, labelValue1);
+			sb.append(',');
+			label(sb, label2, labelValue2);
+			sb.append(",quantile=\"").append(quantile).append("\"} ").append(histogram.getPercentileMs(quantile * 100) / 1000).append('\n');
+		}
+
+		sb.append(name).append("_sum{");
+		label(sb, label1, labelValue1);
+		sb.append(',');
+		label(sb, label2, labelValue2);
+		sb.append("} ").append(histogram.getTotalMs() / 1000).append('\n');
+
+		sb.append(name).append("_count{");
+		label(sb, label1, labelValue1);
+		sb.append(',');
+		label(sb, label2, labelValue2);
+		sb.append("} ").append(histogram.getCount()).append('\n');
+	}
+
+	private static void label(StringBuilder sb, String label, String value) {
+		sb.append(label).append("=\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' || c == '"') {
+				sb.append('\\').append(c);
+			}
+			else if (c == '\n') {
+				sb.append("\\n");
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+
+}
@@ -40,6 +40,8 @@ public class RestServiceManager {
 		config.register(new TermsResource(indexManager));
 		config.register(new MembersResource(indexManager));
 		config.register(new StatsResource(indexManager));
+		config.register(new LatencyResource(indexManager));
+		config.register(new MetricsResource(indexManager));
 		server = GrizzlyHttpServerFactory.createHttpServer(baseUri, config);
 		
 	}
@@ -1,10 +1,17 @@
 package org.lumongo.server.rest;
 
 import com.cedarsoftware.util.io.JsonWriter;
+import com.google.common.cache.CacheStats;
 import com.mongodb.util.JSONSerializers;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LRUQueryCache;
+import org.apache.lucene.search.QueryCache;
 import org.bson.Document;
 import org.lumongo.LumongoConstants;
 import org.lumongo.server.index.LumongoIndexManager;
+import org.lumongo.server.search.CoordinatorQueryCache;
+import org.lumongo.server.search.QueryStats;
+import org.lumongo.server.search.SearchExecutor;
 import org.lumongo.storage.lucene.MongoFile;
 
 import javax.ws.rs.GET;
@@ -14,6 +21,8 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.util.HashMap;
+import java.util.Map;
 
 @Path(LumongoConstants.STATS_URL)
 public class StatsResource {
@@ -35,8 +44,64 @@ public class StatsResource {
 			Document mongoDocument = new Document();
 
 			mongoDocument.put("blockSize", indexManager.getClusterConfig().getIndexBlockSize());
-			mongoDocument.put("maxIndexBlockCount", indexManager.getClusterConfig().getMaxIndexBlocks());
+			mongoDocument.put("maxIndexCacheMB", indexManager.getClusterConfig().getMaxIndexCacheMB());
 			mongoDocument.put("currentIndexBlockCount", MongoFile.getCacheSize());
+			mongoDocument.put("currentIndexCacheBytes", MongoFile.getCacheBytes());
+
+			CacheStats queryResultCacheStats = indexManager.getQueryResultCacheStats();
+			Document queryResultCacheDocument = new Document();
+			queryResultCacheDocument.put("size", indexManager.getQueryResultCacheSize());
+			queryResultCacheDocument.put("hitCount", queryResultCacheStats.hitCount());
+			queryResultCacheDocument.put("missCount", queryResultCacheStats.missCount());
+			queryResultCacheDocument.put("evictionCount", queryResultCacheStats.evictionCount());
+			queryResultCacheDocument.put("hitRate", queryResultCacheStats.hitRate());
+			mongoDocument.put("queryResultCache", queryResultCacheDocument);
+
+			CoordinatorQueryCache coordinatorQueryCache = indexManager.getCoordinatorQueryCache();
+			Document coordinatorCacheDocument = new Document();
+			coordinatorCacheDocument.put("size", coordinatorQueryCache.getSize());
+			coordinatorCacheDocument.put("hitCount", coordinatorQueryCache.getHits());
+			coordinatorCacheDocument.put("sharedCount", coordinatorQueryCache.getShared());
+			coordinatorCacheDocument.put("missCount", coordinatorQueryCache.getMisses());
+			mongoDocument.put("coordinatorCache", coordinatorCacheDocument);
+
+			QueryCache queryCache = IndexSearcher.getDefaultQueryCache();
+			if (queryCache instanceof LRUQueryCache) {
+				LRUQueryCache filterCache = (LRUQueryCache) queryCache;
+				Document filterCacheDocument = new Document();
+				filterCacheDocument.put("size", filterCache.getCacheSize());
+				filterCacheDocument.put("memoryMB", filterCache.ramBytesUsed() / MB);
+				filterCacheDocument.put("hitCount", filterCache.getHitCount());
+				filterCacheDocument.put("missCount", filterCache.getMissCount());
+				filterCacheDocument.put("evictionCount", filterCache.getEvictionCount());
+				mongoDocument.put("filterCache", filterCacheDocument);
+			}
+
+			SearchExecutor searchExecutor = indexManager.getSearchExecutor();
+			Document searchExecutorDocument = new Document();
+			searchExecutorDocument.put("threads", searchExecutor.getThreads());
+			searchExecutorDocument.put("activeThreads", searchExecutor.getActiveCount());
+			searchExecutorDocument.put("queueDepth", searchExecutor.getQueueDepth());
+			searchExecutorDocument.put("queued", searchExecutor.getQueuedCount());
+			searchExecutorDocument.put("completedCount", searchExecutor.getCompletedCount());
+			searchExecutorDocument.put("rejectedCount", searchExecutor.getRejectedCount());
+			searchExecutorDocument.put("queuedByIndex", new Document(new HashMap<>(searchExecutor.getQueuedCountByIndex())));
+			mongoDocument.put("searchExecutor", searchExecutorDocument);
+
+			Map<String, QueryStats> indexQueryStats = indexManager.getIndexQueryStats();
+			Document queryStatsDocument = new Document();
+			for (String indexName : indexQueryStats.keySet()) {
+				QueryStats queryStats = indexQueryStats.get(indexName);
+				Document indexDocument = new Document();
+				indexDocument.put("queries", queryStats.getQueries());
+				indexDocument.put("shortQueries", queryStats.getShortQueries());
+				indexDocument.put("shortRate", queryStats.getShortRate());
+				indexDocument.put("retriedSegments", queryStats.getRetriedSegments());
+				indexDocument.put("fullRetries", queryStats.getFullRetries());
+				indexDocument.put("requestFactors", new Document(new HashMap<>(indexManager.getRequestFactors(indexName))));
+				queryStatsDocument.put(indexName, indexDocument);
+			}
+			mongoDocument.put("queryStats", queryStatsDocument);
 
 			Runtime runtime = Runtime.getRuntime();
 
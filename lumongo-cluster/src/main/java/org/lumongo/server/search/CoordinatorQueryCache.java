@@ -0,0 +1,148 @@
+package org.lumongo.server.search;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.lumongo.cluster.message.Lumongo.QueryRequest;
+import org.lumongo.cluster.message.Lumongo.QueryResponse;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shares query responses between identical requests on the coordinator.  A request identical to one already running waits for that
+ * response instead of querying the cluster again, and responses are kept for a short time after they finish.  Keys include the reader
+ * generation of every queried index so a change to any segment stops older responses from being used
+ */
+public class CoordinatorQueryCache {
+
+	private static class Key {
+		private final QueryRequest request;
+		private final List<Long> readerGenerations;
+
+		public Key(QueryRequest request, List<Long> readerGenerations) {
+			this.request = request;
+			this.readerGenerations = readerGenerations;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * request.hashCode() + readerGenerations.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null || getClass() != obj.getClass()) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return readerGenerations.equals(other.readerGenerations) && request.equals(other.request);
+		}
+	}
+
+	private final Cache<Key, QueryResponse> responseCache;
+	private final ConcurrentHashMap<Key, FutureTask<QueryResponse>> running;
+
+	private final LongAdder hits;
+	private final LongAdder shared;
+	private final LongAdder misses;
+
+	public CoordinatorQueryCache(int ttlMs, int maxSize) {
+		if (ttlMs > 0 && maxSize > 0) {
+			this.responseCache = CacheBuilder.newBuilder().expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS).maximumSize(maxSize).build();
+		}
+		else {
+			this.responseCache = null;
+		}
+		this.running = new ConcurrentHashMap<>();
+
+		this.hits = new LongAdder();
+		this.shared = new LongAdder();
+		this.misses = new LongAdder();
+	}
+
+	/**
+	 * @param readerGenerations the reader generation of each index in the request, in the order of the request's index list
+	 * @param query runs the query when there is no cached or running response to share
+	 */
+	public QueryResponse getResponse(QueryRequest request, List<Long> readerGenerations, Callable<QueryResponse> query) throws Exception {
+		Key key = new Key(request, readerGenerations);
+
+		if (responseCache != null) {
+			QueryResponse response = responseCache.getIfPresent(key);
+			if (response != null) {
+				hits.increment();
+				return response;
+			}
+		}
+
+		FutureTask<QueryResponse> task = new FutureTask<>(query);
+		FutureTask<QueryResponse> runningTask = running.putIfAbsent(key, task);
+		if (runningTask != null) {
+			shared.increment();
+			return getResponse(runningTask);
+		}
+
+		misses.increment();
+		try {
+			task.run();
+			QueryResponse response = getResponse(task);
+			if (responseCache != null) {
+				responseCache.put(key, response);
+			}
+			return response;
+		}
+		finally {
+			running.remove(key, task);
+		}
+	}
+
+	/**
+	 * Drops the cached responses of queries on the index.  A deleted index created again starts its reader generation over, so keys with its
+	 * old generations could match again
+	 */
+	public void invalidate(String indexName) {
+		if (responseCache != null) {
+			responseCache.asMap().keySet().removeIf(key -> key.request.getIndexList().contains(indexName));
+		}
+	}
+
+	private static QueryResponse getResponse(FutureTask<QueryResponse> task) throws Exception {
+		try {
+			return task.get();
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getShared() {
+		return shared.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getSize() {
+		return (responseCache != null) ? responseCache.size() : 0;
+	}
+}
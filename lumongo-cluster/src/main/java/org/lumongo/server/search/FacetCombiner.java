@@ -0,0 +1,261 @@
+package org.lumongo.server.search;
+
+import org.lumongo.cluster.message.Lumongo.CountRequest;
+import org.lumongo.cluster.message.Lumongo.FacetCount;
+import org.lumongo.cluster.message.Lumongo.FacetGroup;
+
+import java.util.Arrays;
+
+/**
+ * Sums the facet counts of one count request across segments.  Facet labels are mapped to ordinals with an open addressing table, counts
+ * and the segments that returned each facet are kept in parallel arrays indexed by ordinal, and the top facets are selected with a bounded
+ * heap instead of sorting every facet
+ */
+public class FacetCombiner {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final CountRequest countRequest;
+	private final int numberOfSegments;
+	private final int words;
+
+	private final long[] minForSegment;
+	private final long[] fullResults;
+
+	private String[] facets;
+	private long[] counts;
+	private long[] segmentsReturned;
+	private int size;
+
+	private int[] table;
+	private int mask;
+
+	public FacetCombiner(CountRequest countRequest, int numberOfSegments) {
+		this.countRequest = countRequest;
+		this.numberOfSegments = numberOfSegments;
+		this.words = (numberOfSegments + 63) >>> 6;
+
+		this.minForSegment = new long[numberOfSegments];
+		this.fullResults = new long[words];
+
+		this.facets = new String[INITIAL_CAPACITY];
+		this.counts = new long[INITIAL_CAPACITY];
+		this.segmentsReturned = new long[INITIAL_CAPACITY * words];
+
+		this.table = new int[INITIAL_CAPACITY * 2];
+		Arrays.fill(table, -1);
+		this.mask = table.length - 1;
+	}
+
+	public void addFacetGroup(int segIndex, FacetGroup fg) {
+		for (FacetCount fc : fg.getFacetCountList()) {
+			int ordinal = getOrdinal(fc.getFacet());
+			long count = fc.getCount();
+			counts[ordinal] += count;
+			segmentsReturned[ordinal * words + (segIndex >>> 6)] |= 1L << segIndex;
+
+			minForSegment[segIndex] = count;
+		}
+
+		int segmentFacets = countRequest.getSegmentFacets();
+		int facetCountCount = fg.getFacetCountCount();
+		if (facetCountCount < segmentFacets || (segmentFacets == 0)) {
+			fullResults[segIndex >>> 6] |= 1L << segIndex;
+			minForSegment[segIndex] = 0;
+		}
+	}
+
+	private int getOrdinal(String facet) {
+		int slot = mix(facet.hashCode()) & mask;
+		while (true) {
+			int ordinal = table[slot];
+			if (ordinal == -1) {
+				break;
+			}
+			if (facets[ordinal].equals(facet)) {
+				return ordinal;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		int ordinal = size++;
+		if (ordinal == facets.length) {
+			int newCapacity = facets.length * 2;
+			facets = Arrays.copyOf(facets, newCapacity);
+			counts = Arrays.copyOf(counts, newCapacity);
+			segmentsReturned = Arrays.copyOf(segmentsReturned, newCapacity * words);
+		}
+		facets[ordinal] = facet;
+		table[slot] = ordinal;
+
+		// keep the table at most half full
+		if (size * 2 > table.length) {
+			rehash();
+		}
+		return ordinal;
+	}
+
+	private void rehash() {
+		table = new int[table.length * 2];
+		Arrays.fill(table, -1);
+		mask = table.length - 1;
+		for (int ordinal = 0; ordinal < size; ordinal++) {
+			int slot = mix(facets[ordinal].hashCode()) & mask;
+			while (table[slot] != -1) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = ordinal;
+		}
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Higher counts first then facet label, the same order as {@link FacetCountResult}
+	 */
+	private boolean before(int ordinal1, int ordinal2) {
+		long count1 = counts[ordinal1];
+		long count2 = counts[ordinal2];
+		if (count1 != count2) {
+			return count1 > count2;
+		}
+		return facets[ordinal1].compareTo(facets[ordinal2]) < 0;
+	}
+
+	/**
+	 * Sum of the smallest count returned by each segment that did not return the facet and did not return all its facets
+	 */
+	private long getMaxError(int ordinal) {
+		long maxError = 0;
+		int offset = ordinal * words;
+		for (int i = 0; i < numberOfSegments; i++) {
+			long returned = segmentsReturned[offset + (i >>> 6)] | fullResults[i >>> 6];
+			if ((returned & (1L << i)) == 0) {
+				maxError += minForSegment[i];
+			}
+		}
+		return maxError;
+	}
+
+	public FacetGroup.Builder getFacetGroup() {
+		FacetGroup.Builder fg = FacetGroup.newBuilder();
+		fg.setCountRequest(countRequest);
+
+		long maxValuePossibleMissing = 0;
+		for (int i = 0; i < numberOfSegments; i++) {
+			maxValuePossibleMissing += minForSegment[i];
+		}
+
+		boolean computeError = countRequest.getSegmentFacets() != 0 && countRequest.getComputeError();
+		boolean computePossibleMissing = countRequest.getSegmentFacets() != 0 && countRequest.getComputePossibleMissed() && (maxValuePossibleMissing != 0);
+
+		int maxCount = countRequest.getMaxFacets();
+		int topN = (maxCount > 0) ? Math.min(maxCount, size) : size;
+
+		int[] top = selectTop(topN);
+
+		long minCountReturned = 0;
+		for (int ordinal : top) {
+			FacetCount.Builder facetCountBuilder = FacetCount.newBuilder().setFacet(facets[ordinal]).setCount(counts[ordinal]);
+			if (computeError) {
+				facetCountBuilder.setMaxError(getMaxError(ordinal));
+			}
+			fg.addFacetCount(facetCountBuilder);
+			minCountReturned = counts[ordinal];
+		}
+
+		// facets not returned could have a higher count than the last returned once their possible error is added
+		if (computePossibleMissing && computeError && topN < size) {
+			boolean[] returned = new boolean[size];
+			for (int ordinal : top) {
+				returned[ordinal] = true;
+			}
+			for (int ordinal = 0; ordinal < size; ordinal++) {
+				if (!returned[ordinal]) {
+					long maxWithError = getMaxError(ordinal) + counts[ordinal];
+					if (maxWithError > maxValuePossibleMissing) {
+						maxValuePossibleMissing = maxWithError;
+					}
+				}
+			}
+		}
+
+		if (size != 0) {
+			if (maxValuePossibleMissing > minCountReturned) {
+				fg.setPossibleMissing(true);
+				fg.setMaxValuePossibleMissing(maxValuePossibleMissing);
+			}
+		}
+
+		return fg;
+	}
+
+	/**
+	 * @return the ordinals of the best n facets in order, using a heap with the worst kept facet at the root
+	 */
+	private int[] selectTop(int n) {
+		int[] heap = new int[n];
+		if (n == 0) {
+			return heap;
+		}
+
+		int heapSize = 0;
+		for (int ordinal = 0; ordinal < size; ordinal++) {
+			if (heapSize < n) {
+				heap[heapSize] = ordinal;
+				upHeap(heap, heapSize);
+				heapSize++;
+			}
+			else if (before(ordinal, heap[0])) {
+				heap[0] = ordinal;
+				downHeap(heap, heapSize);
+			}
+		}
+
+		// removing the worst each time fills the array from the back
+		for (int last = heapSize - 1; last > 0; last--) {
+			int worst = heap[0];
+			heap[0] = heap[last];
+			heap[last] = worst;
+			downHeap(heap, last);
+		}
+		return heap;
+	}
+
+	private void upHeap(int[] heap, int i) {
+		int ordinal = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(heap[parent], ordinal)) {
+				break;
+			}
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = ordinal;
+	}
+
+	private void downHeap(int[] heap, int heapSize) {
+		int i = 0;
+		int ordinal = heap[0];
+		while (true) {
+			int child = (i << 1) + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			int right = child + 1;
+			if (right < heapSize && before(heap[child], heap[right])) {
+				child = right;
+			}
+			if (!before(ordinal, heap[child])) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = ordinal;
+	}
+}
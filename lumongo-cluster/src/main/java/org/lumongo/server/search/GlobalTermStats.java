@@ -0,0 +1,118 @@
+package org.lumongo.server.search;
+
+import com.google.protobuf.ByteString;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.util.BytesRef;
+import org.lumongo.cluster.message.Lumongo.FieldStats;
+import org.lumongo.cluster.message.Lumongo.IndexTermStats;
+import org.lumongo.cluster.message.Lumongo.TermStats;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Term and field statistics summed over every segment of an index.  Searching with {@link #getIndexSearcher(IndexReader)} scores a
+ * segment with these in place of its own so scores from different segments can be compared.  Terms and fields that were not collected
+ * fall back to the segment's own statistics
+ */
+public class GlobalTermStats {
+
+	private final String indexName;
+	private final Map<String, CollectionStatistics> fieldStatsMap;
+	private final Map<Term, TermStatistics> termStatsMap;
+
+	public GlobalTermStats(String indexName) {
+		this.indexName = indexName;
+		this.fieldStatsMap = new HashMap<>();
+		this.termStatsMap = new HashMap<>();
+	}
+
+	public GlobalTermStats(IndexTermStats indexTermStats) {
+		this(indexTermStats.getIndexName());
+		add(indexTermStats);
+	}
+
+	/**
+	 * A count of -1 means a segment does not track it, so the sum is unknown
+	 */
+	private static long sum(long count1, long count2) {
+		if (count1 == -1 || count2 == -1) {
+			return -1;
+		}
+		return count1 + count2;
+	}
+
+	public void addFieldStats(CollectionStatistics fieldStats) {
+		fieldStatsMap.merge(fieldStats.field(), fieldStats,
+				(s1, s2) -> new CollectionStatistics(s1.field(), s1.maxDoc() + s2.maxDoc(), sum(s1.docCount(), s2.docCount()),
+						sum(s1.sumTotalTermFreq(), s2.sumTotalTermFreq()), sum(s1.sumDocFreq(), s2.sumDocFreq())));
+	}
+
+	public void addTermStats(Term term, TermStatistics termStats) {
+		termStatsMap.merge(term, termStats, (s1, s2) -> new TermStatistics(s1.term(), s1.docFreq() + s2.docFreq(),
+				sum(s1.totalTermFreq(), s2.totalTermFreq())));
+	}
+
+	public void add(IndexTermStats indexTermStats) {
+		for (FieldStats fs : indexTermStats.getFieldStatsList()) {
+			addFieldStats(new CollectionStatistics(fs.getField(), fs.getMaxDoc(), fs.getDocCount(), fs.getSumTotalTermFreq(), fs.getSumDocFreq()));
+		}
+		for (TermStats ts : indexTermStats.getTermStatsList()) {
+			BytesRef bytes = new BytesRef(ts.getTerm().toByteArray());
+			addTermStats(new Term(ts.getField(), bytes), new TermStatistics(bytes, ts.getDocFreq(), ts.getTotalTermFreq()));
+		}
+	}
+
+	public void add(GlobalTermStats globalTermStats) {
+		for (CollectionStatistics fieldStats : globalTermStats.fieldStatsMap.values()) {
+			addFieldStats(fieldStats);
+		}
+		for (Map.Entry<Term, TermStatistics> entry : globalTermStats.termStatsMap.entrySet()) {
+			addTermStats(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public IndexTermStats toIndexTermStats() {
+		IndexTermStats.Builder builder = IndexTermStats.newBuilder().setIndexName(indexName);
+		for (CollectionStatistics fieldStats : fieldStatsMap.values()) {
+			builder.addFieldStats(FieldStats.newBuilder().setField(fieldStats.field()).setMaxDoc(fieldStats.maxDoc()).setDocCount(fieldStats.docCount())
+					.setSumTotalTermFreq(fieldStats.sumTotalTermFreq()).setSumDocFreq(fieldStats.sumDocFreq()));
+		}
+		for (Map.Entry<Term, TermStatistics> entry : termStatsMap.entrySet()) {
+			Term term = entry.getKey();
+			TermStatistics termStats = entry.getValue();
+			BytesRef bytes = term.bytes();
+			builder.addTermStats(TermStats.newBuilder().setField(term.field()).setTerm(ByteString.copyFrom(bytes.bytes, bytes.offset, bytes.length))
+					.setDocFreq(termStats.docFreq()).setTotalTermFreq(termStats.totalTermFreq()));
+		}
+		return builder.build();
+	}
+
+	public IndexSearcher getIndexSearcher(IndexReader indexReader) {
+		return new IndexSearcher(indexReader) {
+			@Override
+			public TermStatistics termStatistics(Term term, TermContext context) throws IOException {
+				TermStatistics termStats = termStatsMap.get(term);
+				if (termStats != null) {
+					return termStats;
+				}
+				return super.termStatistics(term, context);
+			}
+
+			@Override
+			public CollectionStatistics collectionStatistics(String field) throws IOException {
+				CollectionStatistics fieldStats = fieldStatsMap.get(field);
+				if (fieldStats != null) {
+					return fieldStats;
+				}
+				return super.collectionStatistics(field);
+			}
+		};
+	}
+}
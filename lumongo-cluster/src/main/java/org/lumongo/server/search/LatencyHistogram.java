@@ -0,0 +1,99 @@
+package org.lumongo.server.search;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram in microseconds with log linear buckets in the style of HdrHistogram.  Values below 32 have their own bucket and each
+ * higher power of two is split into 16 buckets so any value is within about 6% of its bucket.  Recording only updates counters and never
+ * allocates
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS >> 1;
+	private static final int BUCKETS = 64 * HALF_SUB_BUCKETS;
+
+	private final AtomicLongArray counts;
+	private final LongAdder count;
+	private final LongAdder totalMicros;
+	private final AtomicLong maxMicros;
+
+	public LatencyHistogram() {
+		this.counts = new AtomicLongArray(BUCKETS);
+		this.count = new LongAdder();
+		this.totalMicros = new LongAdder();
+		this.maxMicros = new AtomicLong();
+	}
+
+	private static int getBucket(long micros) {
+		int shift = Math.max(0, (63 - Long.numberOfLeadingZeros(micros)) - (SUB_BUCKET_BITS - 1));
+		return (shift * HALF_SUB_BUCKETS) + (int) (micros >>> shift);
+	}
+
+	private static long getBucketUpperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket >> (SUB_BUCKET_BITS - 1)) - 1;
+		long lower = (long) (bucket - (shift * HALF_SUB_BUCKETS)) << shift;
+		return lower + (1L << shift) - 1;
+	}
+
+	public void recordNanos(long nanos) {
+		long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+		counts.incrementAndGet(getBucket(micros));
+		count.increment();
+		totalMicros.add(micros);
+		maxMicros.accumulateAndGet(micros, Math::max);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getTotalMs() {
+		return totalMicros.sum() / 1000.0;
+	}
+
+	public double getMeanMs() {
+		long c = count.sum();
+		if (c == 0) {
+			return 0;
+		}
+		return (totalMicros.sum() / 1000.0) / c;
+	}
+
+	public double getMaxMs() {
+		return maxMicros.get() / 1000.0;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the upper bound of the bucket holding the given percentile
+	 */
+	public double getPercentileMs(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil((percentile / 100.0) * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= target) {
+				return Math.min(getBucketUpperBound(i), maxMicros.get()) / 1000.0;
+			}
+		}
+		return getMaxMs();
+	}
+}
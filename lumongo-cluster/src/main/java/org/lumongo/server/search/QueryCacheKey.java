@@ -1,20 +1,56 @@
 package org.lumongo.server.search;
 
+import org.apache.lucene.search.FieldDoc;
 import org.lumongo.cluster.message.Lumongo.QueryRequest;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 public class QueryCacheKey {
 	
-	private QueryRequest queryRequest;
+	private final QueryRequest cacheableRequest;
+	private final int amount;
+	private final int afterDoc;
+	private final float afterScore;
+	private final List<Object> afterFields;
+	private final long readerVersion;
+	
+	public QueryCacheKey(QueryRequest cacheableRequest, int amount, FieldDoc after, long readerVersion) {
+		this.cacheableRequest = cacheableRequest;
+		this.amount = amount;
+		if (after != null) {
+			this.afterDoc = after.doc;
+			this.afterScore = after.score;
+			this.afterFields = after.fields != null ? Arrays.asList(after.fields) : Collections.emptyList();
+		}
+		else {
+			this.afterDoc = -1;
+			this.afterScore = 0;
+			this.afterFields = null;
+		}
+		this.readerVersion = readerVersion;
+	}
 	
-	public QueryCacheKey(QueryRequest queryRequest) {
-		this.queryRequest = queryRequest;
+	/**
+	 * Removes the parts of the request that do not change a segment's response (the segment amount and after are part of the key instead)
+	 * so the same query issued with different paging, retries, or index lists can share a cache entry
+	 */
+	public static QueryRequest getCacheableRequest(QueryRequest queryRequest) {
+		return queryRequest.toBuilder().clearIndex().clearAmount().clearStart().clearLastResult().clearFetchFull().clearRealtime().clearSegmentRetry()
+				.clearSegmentAmount().buildPartial();
 	}
 	
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((queryRequest == null) ? 0 : queryRequest.hashCode());
+		result = prime * result + ((cacheableRequest == null) ? 0 : cacheableRequest.hashCode());
+		result = prime * result + amount;
+		result = prime * result + afterDoc;
+		result = prime * result + Float.floatToIntBits(afterScore);
+		result = prime * result + ((afterFields == null) ? 0 : afterFields.hashCode());
+		result = prime * result + (int) (readerVersion ^ (readerVersion >>> 32));
 		return result;
 	}
 	
@@ -30,12 +66,32 @@ public class QueryCacheKey {
 			return false;
 		}
 		QueryCacheKey other = (QueryCacheKey) obj;
-		if (queryRequest == null) {
-			if (other.queryRequest != null) {
+		if (readerVersion != other.readerVersion) {
+			return false;
+		}
+		if (amount != other.amount) {
+			return false;
+		}
+		if (afterDoc != other.afterDoc) {
+			return false;
+		}
+		if (Float.floatToIntBits(afterScore) != Float.floatToIntBits(other.afterScore)) {
+			return false;
+		}
+		if (afterFields == null) {
+			if (other.afterFields != null) {
+				return false;
+			}
+		}
+		else if (!afterFields.equals(other.afterFields)) {
+			return false;
+		}
+		if (cacheableRequest == null) {
+			if (other.cacheableRequest != null) {
 				return false;
 			}
 		}
-		else if (!queryRequest.equals(other.queryRequest)) {
+		else if (!cacheableRequest.equals(other.cacheableRequest)) {
 			return false;
 		}
 		return true;
@@ -1,7 +1,6 @@
 package org.lumongo.server.search;
 
 import org.apache.log4j.Logger;
-import org.apache.lucene.util.FixedBitSet;
 import org.lumongo.cluster.message.Lumongo;
 import org.lumongo.cluster.message.Lumongo.*;
 import org.lumongo.server.index.LumongoIndex;
@@ -14,10 +13,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.util.PriorityQueue;
 
 public class QueryCombiner {
 
@@ -39,6 +35,8 @@ public class QueryCombiner {
 	private boolean isShort;
 	private List<ScoredResult> results;
 	private int resultsSize;
+	private int[] takenForSegment;
+	private List<SegmentRetry> shortSegments;
 
 	private SortRequest sortRequest;
 
@@ -57,6 +55,7 @@ public class QueryCombiner {
 		this.analysisRequestList = request.getAnalysisRequestList();
 
 		this.isShort = false;
+		this.shortSegments = new ArrayList<>();
 		this.results = Collections.emptyList();
 		this.resultsSize = 0;
 	}
@@ -141,10 +140,7 @@ public class QueryCombiner {
 			}
 		}
 
-		Map<CountRequest, Map<String, AtomicLong>> facetCountsMap = new HashMap<>();
-		Map<CountRequest, Map<String, FixedBitSet>> segmentsReturnedMap = new HashMap<>();
-		Map<CountRequest, FixedBitSet> fullResultsMap = new HashMap<>();
-		Map<CountRequest, long[]> minForSegmentMap = new HashMap<>();
+		Map<CountRequest, FacetCombiner> facetCombinerMap = new HashMap<>();
 
 		Map<AnalysisRequest, Map<String, Lumongo.Term.Builder>> analysisRequestToTermMap = new HashMap<>();
 
@@ -153,51 +149,13 @@ public class QueryCombiner {
 		for (SegmentResponse sr : segmentResponses) {
 
 			for (FacetGroup fg : sr.getFacetGroupList()) {
-
 				CountRequest countRequest = fg.getCountRequest();
-				Map<String, AtomicLong> facetCounts = facetCountsMap.get(countRequest);
-				Map<String, FixedBitSet> segmentsReturned = segmentsReturnedMap.get(countRequest);
-				FixedBitSet fullResults = fullResultsMap.get(countRequest);
-				long[] minForSegment = minForSegmentMap.get(countRequest);
-
-				if (facetCounts == null) {
-					facetCounts = new HashMap<>();
-					facetCountsMap.put(countRequest, facetCounts);
-
-					segmentsReturned = new HashMap<>();
-					segmentsReturnedMap.put(countRequest, segmentsReturned);
-
-					fullResults = new FixedBitSet(segmentResponses.size());
-					fullResultsMap.put(countRequest, fullResults);
-
-					minForSegment = new long[segmentResponses.size()];
-					minForSegmentMap.put(countRequest, minForSegment);
-				}
-
-				for (FacetCount fc : fg.getFacetCountList()) {
-					String facet = fc.getFacet();
-					AtomicLong facetSum = facetCounts.get(facet);
-					FixedBitSet segmentSet = segmentsReturned.get(facet);
-
-					if (facetSum == null) {
-						facetSum = new AtomicLong();
-						facetCounts.put(facet, facetSum);
-						segmentSet = new FixedBitSet(segmentResponses.size());
-						segmentsReturned.put(facet, segmentSet);
-					}
-					long count = fc.getCount();
-					facetSum.addAndGet(count);
-					segmentSet.set(segIndex);
-
-					minForSegment[segIndex] = count;
-				}
-
-				int segmentFacets = countRequest.getSegmentFacets();
-				int facetCountCount = fg.getFacetCountCount();
-				if (facetCountCount < segmentFacets || (segmentFacets == 0)) {
-					fullResults.set(segIndex);
-					minForSegment[segIndex] = 0;
+				FacetCombiner facetCombiner = facetCombinerMap.get(countRequest);
+				if (facetCombiner == null) {
+					facetCombiner = new FacetCombiner(countRequest, segmentResponses.size());
+					facetCombinerMap.put(countRequest, facetCombiner);
 				}
+				facetCombiner.addFacetGroup(segIndex, fg);
 			}
 
 			for (Lumongo.AnalysisResult analysisResult : sr.getAnalysisResultList()) {
@@ -241,198 +199,24 @@ public class QueryCombiner {
 			}
 		}
 
-		for (CountRequest countRequest : facetCountsMap.keySet()) {
-
-			FacetGroup.Builder fg = FacetGroup.newBuilder();
-			fg.setCountRequest(countRequest);
-			Map<String, AtomicLong> facetCounts = facetCountsMap.get(countRequest);
-			Map<String, FixedBitSet> segmentsReturned = segmentsReturnedMap.get(countRequest);
-			FixedBitSet fullResults = fullResultsMap.get(countRequest);
-			long[] minForSegment = minForSegmentMap.get(countRequest);
-
-			int numberOfSegments = segmentResponses.size();
-			long maxValuePossibleMissing = 0;
-			for (int i = 0; i < numberOfSegments; i++) {
-				maxValuePossibleMissing += minForSegment[i];
-			}
-
-			boolean computeError = countRequest.getSegmentFacets() != 0 && countRequest.getComputeError();
-			boolean computePossibleMissing = countRequest.getSegmentFacets() != 0 && countRequest.getComputePossibleMissed() && (maxValuePossibleMissing != 0);
-
-			SortedSet<FacetCountResult> sortedFacetResults = facetCounts.keySet().stream()
-					.map(facet -> new FacetCountResult(facet, facetCounts.get(facet).get())).collect(Collectors.toCollection(TreeSet::new));
-
-			Integer maxCount = countRequest.getMaxFacets();
-
-			long minCountReturned = 0;
-
-			int count = 0;
-			for (FacetCountResult facet : sortedFacetResults) {
-
-				FixedBitSet segCount = segmentsReturned.get(facet.getFacet());
-				segCount.or(fullResults);
-
-				FacetCount.Builder facetCountBuilder = FacetCount.newBuilder().setFacet(facet.getFacet()).setCount(facet.getCount());
-
-				long maxWithError = 0;
-				if (computeError) {
-					long maxError = 0;
-					if (segCount.cardinality() < numberOfSegments) {
-						for (int i = 0; i < numberOfSegments; i++) {
-							if (!segCount.get(i)) {
-								maxError += minForSegment[i];
-							}
-						}
-					}
-					facetCountBuilder.setMaxError(maxError);
-					maxWithError = maxError + facet.getCount();
-				}
-
-				count++;
-
-				if (maxCount > 0 && count > maxCount) {
-
-					if (computePossibleMissing) {
-						if (maxWithError > maxValuePossibleMissing) {
-							maxValuePossibleMissing = maxWithError;
-						}
-					}
-					else {
-						break;
-					}
-				}
-				else {
-					fg.addFacetCount(facetCountBuilder);
-					minCountReturned = facet.getCount();
-				}
-			}
-
-			if (!sortedFacetResults.isEmpty()) {
-				if (maxValuePossibleMissing > minCountReturned) {
-					fg.setPossibleMissing(true);
-					fg.setMaxValuePossibleMissing(maxValuePossibleMissing);
-				}
-			}
-
-			builder.addFacetGroup(fg);
-		}
-
-		List<ScoredResult> mergedResults = new ArrayList<>((int) returnedHits);
-		for (SegmentResponse sr : segmentResponses) {
-			mergedResults.addAll(sr.getScoredResultList());
+		for (FacetCombiner facetCombiner : facetCombinerMap.values()) {
+			builder.addFacetGroup(facetCombiner.getFacetGroup());
 		}
 
 		Comparator<ScoredResult> myCompare = scoreCompare;
 
 		if (sorting) {
-			final List<FieldSort> fieldSortList = sortRequest.getFieldSortList();
-
-			final HashMap<String, FieldConfig.FieldType> sortTypeMap = new HashMap<>();
-
-			for (FieldSort fieldSort : fieldSortList) {
-				String sortField = fieldSort.getSortField();
-
-				for (String indexName : usedIndexMap.keySet()) {
-					LumongoIndex index = usedIndexMap.get(indexName);
-					FieldConfig.FieldType currentSortType = sortTypeMap.get(sortField);
-
-					FieldConfig.FieldType indexSortType = index.getSortFieldType(sortField);
-					if (currentSortType == null) {
-						sortTypeMap.put(sortField, indexSortType);
-					}
-					else {
-						if (!currentSortType.equals(indexSortType)) {
-							log.error("Sort fields must be defined the same in all indexes searched in a single query");
-							String message =
-									"Cannot sort on field <" + sortField + ">: found type: <" + currentSortType + "> then type: <" + indexSortType + ">";
-							log.error(message);
-
-							throw new Exception(message);
-						}
-					}
-				}
-			}
-
-			myCompare = (o1, o2) -> {
-				int compare = 0;
-
-				int sortValueIndex = 0;
-
-				Lumongo.SortValues sortValues1 = o1.getSortValues();
-				Lumongo.SortValues sortValues2 = o2.getSortValues();
-				for (FieldSort fs : fieldSortList) {
-					String sortField = fs.getSortField();
-
-					FieldConfig.FieldType sortType = sortTypeMap.get(sortField);
-
-					if (FieldConfig.FieldType.NUMERIC_INT.equals(sortType)) {
-						Integer a = null;
-						Integer b = null;
-						a = sortValues1.getSortValue(sortValueIndex).getIntegerValue();
-						b = sortValues2.getSortValue(sortValueIndex).getIntegerValue();
-
-						compare = Comparator.nullsLast(Integer::compareTo).compare(a, b);
-					}
-					else if (FieldConfig.FieldType.NUMERIC_LONG.equals(sortType) || FieldConfig.FieldType.DATE.equals(sortType)) {
-						Long a = null;
-						Long b = null;
-						a = sortValues1.getSortValue(sortValueIndex).getLongValue();
-						b = sortValues2.getSortValue(sortValueIndex).getLongValue();
-
-						compare = Comparator.nullsLast(Long::compareTo).compare(a, b);
-					}
-					else if (FieldConfig.FieldType.NUMERIC_FLOAT.equals(sortType)) {
-						Float a = null;
-						Float b = null;
-						a = sortValues1.getSortValue(sortValueIndex).getFloatValue();
-						b = sortValues2.getSortValue(sortValueIndex).getFloatValue();
-
-						compare = Comparator.nullsLast(Float::compareTo).compare(a, b);
-					}
-					else if (FieldConfig.FieldType.NUMERIC_DOUBLE.equals(sortType)) {
-						Double a = null;
-						Double b = null;
-						a = sortValues1.getSortValue(sortValueIndex).getDoubleValue();
-						b = sortValues2.getSortValue(sortValueIndex).getDoubleValue();
-
-						compare = Comparator.nullsLast(Double::compareTo).compare(a, b);
-					}
-					else {
-						String a = null;
-						String b = null;
-						a = sortValues1.getSortValue(sortValueIndex).getStringValue();
-						b = sortValues2.getSortValue(sortValueIndex).getStringValue();
-
-						compare = Comparator.nullsLast(String::compareTo).compare(a, b);
-					}
-
-					if (FieldSort.Direction.DESCENDING.equals(fs.getDirection())) {
-						compare *= -1;
-					}
-
-					if (compare != 0) {
-						return compare;
-					}
-
-					sortValueIndex++;
-
-				}
-
-				return compare;
-			};
+			myCompare = getSortCompare(sortRequest.getFieldSortList());
 		}
 
-		if (!mergedResults.isEmpty()) {
-			Collections.sort(mergedResults, myCompare);
-
-			results = mergedResults.subList(0, resultsSize);
+		if (returnedHits != 0) {
+			results = mergeResults(myCompare);
 
 			for (ScoredResult sr : results) {
 				ScoredResult[] lastForSegmentArr = lastIndexResultMap.get(sr.getIndexName());
 				lastForSegmentArr[sr.getSegment()] = sr;
 			}
 
-			outside:
 			for (String indexName : usedIndexMap.keySet()) {
 				ScoredResult[] lastForSegmentArr = lastIndexResultMap.get(indexName);
 				ScoredResult lastForIndex = null;
@@ -456,6 +240,8 @@ public class QueryCombiner {
 
 				double segmentTolerance = usedIndexMap.get(indexName).getSegmentTolerance();
 
+				boolean shortForIndex = false;
+
 				int numberOfSegments = usedIndexMap.get(indexName).getNumberOfSegments();
 				Map<Integer, SegmentResponse> segmentResponseMap = indexToSegmentResponseMap.get(indexName);
 				for (int segmentNumber = 0; segmentNumber < numberOfSegments; segmentNumber++) {
@@ -466,39 +252,44 @@ public class QueryCombiner {
 						if (compare > 0) {
 
 							if (sorting) {
-								String msg = "Result set did not return the most relevant sorted documents for index <" + indexName + ">\n";
-								msg += "    Last for index from segment <" + lastForIndex.getSegment() + "> has sort values <" + lastForIndex.getSortValues()
-										+ ">\n";
-								msg += "    Next for segment <" + next.getSegment() + ">  has sort values <" + next.getSortValues() + ">\n";
-								msg += "    Last for segments: \n";
-								msg += "      " + Arrays.toString(lastForSegmentArr) + "\n";
-								msg += "    Results: \n";
-								msg += "      " + results + "\n";
-								msg += "    If this happens frequently increase requestFactor or minSegmentRequest\n";
-								msg += "    Retrying with full request.\n";
-								log.error(msg);
-
-								isShort = true;
-								break outside;
+								if (!shortForIndex) {
+									String msg = "Result set did not return the most relevant sorted documents for index <" + indexName + ">\n";
+									msg += "    Last for index from segment <" + lastForIndex.getSegment() + "> has sort values <" + lastForIndex.getSortValues()
+											+ ">\n";
+									msg += "    Next for segment <" + next.getSegment() + ">  has sort values <" + next.getSortValues() + ">\n";
+									msg += "    Last for segments: \n";
+									msg += "      " + Arrays.toString(lastForSegmentArr) + "\n";
+									msg += "    Results: \n";
+									msg += "      " + results + "\n";
+									msg += "    If this happens frequently increase requestFactor or minSegmentRequest\n";
+									msg += "    Retrying short segments.\n";
+									log.error(msg);
+								}
+
+								addShortSegment(indexName, sr);
+								shortForIndex = true;
+								continue;
 							}
 
 							double diff = (Math.abs(lastForIndex.getScore() - next.getScore()));
 							if (diff > segmentTolerance) {
-								String msg = "Result set did not return the most relevant documents for index <" + indexName + "> with segment tolerance <"
-										+ segmentTolerance + ">\n";
-								msg += "    Query <" + query + ">\n";
-								msg += "    Last for index from segment <" + lastForIndex.getSegment() + "> has score <" + lastForIndex.getScore() + ">\n";
-								msg += "    Next for segment <" + next.getSegment() + "> has score <" + next.getScore() + ">\n";
-								msg += "    Last for segments: \n";
-								msg += "      " + Arrays.toString(lastForSegmentArr) + "\n";
-								msg += "    Results: \n";
-								msg += "      " + results + "\n";
-								msg += "    If this happens frequently increase requestFactor, minSegmentRequest, or segmentTolerance\n";
-								msg += "    Retrying with full request.\n";
-								log.error(msg);
-
-								isShort = true;
-								break outside;
+								if (!shortForIndex) {
+									String msg = "Result set did not return the most relevant documents for index <" + indexName + "> with segment tolerance <"
+											+ segmentTolerance + ">\n";
+									msg += "    Query <" + query + ">\n";
+									msg += "    Last for index from segment <" + lastForIndex.getSegment() + "> has score <" + lastForIndex.getScore() + ">\n";
+									msg += "    Next for segment <" + next.getSegment() + "> has score <" + next.getScore() + ">\n";
+									msg += "    Last for segments: \n";
+									msg += "      " + Arrays.toString(lastForSegmentArr) + "\n";
+									msg += "    Results: \n";
+									msg += "      " + results + "\n";
+									msg += "    If this happens frequently increase requestFactor, minSegmentRequest, or segmentTolerance\n";
+									msg += "    Retrying short segments.\n";
+									log.error(msg);
+								}
+
+								addShortSegment(indexName, sr);
+								shortForIndex = true;
 							}
 						}
 					}
@@ -538,8 +329,323 @@ public class QueryCombiner {
 		return builder.build();
 	}
 
+	/**
+	 * Builds the comparator for the sort once per request, resolving the sort type of each field up front so comparing two results only reads
+	 * the sort values
+	 */
+	private Comparator<ScoredResult> getSortCompare(List<FieldSort> fieldSortList) throws Exception {
+		final HashMap<String, FieldConfig.FieldType> sortTypeMap = new HashMap<>();
+
+		for (FieldSort fieldSort : fieldSortList) {
+			String sortField = fieldSort.getSortField();
+
+			for (String indexName : usedIndexMap.keySet()) {
+				LumongoIndex index = usedIndexMap.get(indexName);
+				FieldConfig.FieldType currentSortType = sortTypeMap.get(sortField);
+
+				FieldConfig.FieldType indexSortType = index.getSortFieldType(sortField);
+				if (currentSortType == null) {
+					sortTypeMap.put(sortField, indexSortType);
+				}
+				else {
+					if (!currentSortType.equals(indexSortType)) {
+						log.error("Sort fields must be defined the same in all indexes searched in a single query");
+						String message = "Cannot sort on field <" + sortField + ">: found type: <" + currentSortType + "> then type: <" + indexSortType + ">";
+						log.error(message);
+
+						throw new Exception(message);
+					}
+				}
+			}
+		}
+
+		final List<Comparator<ScoredResult>> fieldCompares = new ArrayList<>(fieldSortList.size());
+
+		int sortValueIndex = 0;
+		for (FieldSort fs : fieldSortList) {
+			final int i = sortValueIndex;
+			FieldConfig.FieldType sortType = sortTypeMap.get(fs.getSortField());
+
+			Comparator<ScoredResult> fieldCompare;
+			if (FieldConfig.FieldType.NUMERIC_INT.equals(sortType)) {
+				fieldCompare = (o1, o2) -> Integer
+						.compare(o1.getSortValues().getSortValue(i).getIntegerValue(), o2.getSortValues().getSortValue(i).getIntegerValue());
+			}
+			else if (FieldConfig.FieldType.NUMERIC_LONG.equals(sortType) || FieldConfig.FieldType.DATE.equals(sortType)) {
+				fieldCompare = (o1, o2) -> Long.compare(o1.getSortValues().getSortValue(i).getLongValue(), o2.getSortValues().getSortValue(i).getLongValue());
+			}
+			else if (FieldConfig.FieldType.NUMERIC_FLOAT.equals(sortType)) {
+				fieldCompare = (o1, o2) -> Float
+						.compare(o1.getSortValues().getSortValue(i).getFloatValue(), o2.getSortValues().getSortValue(i).getFloatValue());
+			}
+			else if (FieldConfig.FieldType.NUMERIC_DOUBLE.equals(sortType)) {
+				fieldCompare = (o1, o2) -> Double
+						.compare(o1.getSortValues().getSortValue(i).getDoubleValue(), o2.getSortValues().getSortValue(i).getDoubleValue());
+			}
+			else {
+				fieldCompare = (o1, o2) -> o1.getSortValues().getSortValue(i).getStringValue()
+						.compareTo(o2.getSortValues().getSortValue(i).getStringValue());
+			}
+
+			if (FieldSort.Direction.DESCENDING.equals(fs.getDirection())) {
+				fieldCompare = fieldCompare.reversed();
+			}
+
+			fieldCompares.add(fieldCompare);
+			sortValueIndex++;
+		}
+
+		return (o1, o2) -> {
+			for (Comparator<ScoredResult> fieldCompare : fieldCompares) {
+				int compare = fieldCompare.compare(o1, o2);
+				if (compare != 0) {
+					return compare;
+				}
+			}
+			return 0;
+		};
+	}
+
+	/**
+	 * Position in the already sorted results of one segment
+	 */
+	private static class SegmentCursor {
+		private final List<ScoredResult> scoredResults;
+		private final int segmentOrder;
+		private int position;
+
+		public SegmentCursor(List<ScoredResult> scoredResults, int segmentOrder) {
+			this.scoredResults = scoredResults;
+			this.segmentOrder = segmentOrder;
+		}
+
+		public ScoredResult current() {
+			return scoredResults.get(position);
+		}
+	}
+
+	/**
+	 * Merges the sorted results of each segment with a heap, stopping once resultsSize results are taken.  Ties are taken in segment response
+	 * order, the same order a stable sort of the concatenated results gives.  If a segment's results turn out not to be in order for the
+	 * comparator the concatenated results are sorted instead
+	 */
+	private List<ScoredResult> mergeResults(Comparator<ScoredResult> compare) {
+
+		PriorityQueue<SegmentCursor> queue = new PriorityQueue<>(Math.max(1, segmentResponses.size()), (c1, c2) -> {
+			int c = compare.compare(c1.current(), c2.current());
+			if (c == 0) {
+				return Integer.compare(c1.segmentOrder, c2.segmentOrder);
+			}
+			return c;
+		});
+
+		int segmentOrder = 0;
+		for (SegmentResponse sr : segmentResponses) {
+			List<ScoredResult> scoredResults = sr.getScoredResultList();
+			if (!scoredResults.isEmpty()) {
+				queue.add(new SegmentCursor(scoredResults, segmentOrder));
+			}
+			segmentOrder++;
+		}
+
+		takenForSegment = new int[segmentResponses.size()];
+
+		List<ScoredResult> mergedResults = new ArrayList<>(resultsSize);
+		while (mergedResults.size() < resultsSize) {
+			SegmentCursor cursor = queue.poll();
+			ScoredResult scoredResult = cursor.current();
+			mergedResults.add(scoredResult);
+			takenForSegment[cursor.segmentOrder]++;
+
+			cursor.position++;
+			if (cursor.position < cursor.scoredResults.size()) {
+				if (compare.compare(scoredResult, cursor.current()) > 0) {
+					log.warn("Segment results are not in sort order, sorting all results");
+					takenForSegment = null;
+					return sortResults(compare);
+				}
+				queue.add(cursor);
+			}
+		}
+
+		return mergedResults;
+	}
+
+	private List<ScoredResult> sortResults(Comparator<ScoredResult> compare) {
+		List<ScoredResult> allResults = new ArrayList<>();
+		for (SegmentResponse sr : segmentResponses) {
+			allResults.addAll(sr.getScoredResultList());
+		}
+		allResults.sort(compare);
+		return allResults.subList(0, resultsSize);
+	}
+
+	/**
+	 * Combines the responses from the segments on this node before they are sent to the coordinator.  Only results in this node's top amount
+	 * can reach the final page, so each segment keeps just the results that made the node's top amount and the first one dropped becomes its
+	 * next, which keeps short result detection and the last result for each segment working at the coordinator.  Total hits, facets and
+	 * analysis stay per segment since facet errors are computed from each segment's counts
+	 */
+	public InternalQueryResponse getNodeResponse() throws Exception {
+
+		List<IndexSegmentResponse> indexSegmentResponses = new ArrayList<>();
+		long returnedHits = 0;
+		for (InternalQueryResponse iqr : responses) {
+			for (IndexSegmentResponse isr : iqr.getIndexSegmentResponseList()) {
+				indexSegmentResponses.add(isr);
+				for (SegmentResponse sr : isr.getSegmentReponseList()) {
+					segmentResponses.add(sr);
+					returnedHits += sr.getScoredResultCount();
+				}
+			}
+		}
+
+		InternalQueryResponse.Builder builder = InternalQueryResponse.newBuilder();
+
+		if (returnedHits <= amount) {
+			builder.addAllIndexSegmentResponse(indexSegmentResponses);
+			return builder.build();
+		}
+
+		resultsSize = amount;
+
+		boolean sorting = (sortRequest != null && !sortRequest.getFieldSortList().isEmpty());
+		mergeResults(sorting ? getSortCompare(sortRequest.getFieldSortList()) : scoreCompare);
+
+		if (takenForSegment == null) {
+			builder.addAllIndexSegmentResponse(indexSegmentResponses);
+			return builder.build();
+		}
+
+		int segmentOrder = 0;
+		for (IndexSegmentResponse isr : indexSegmentResponses) {
+			IndexSegmentResponse.Builder isrBuilder = IndexSegmentResponse.newBuilder().setIndexName(isr.getIndexName());
+			for (SegmentResponse sr : isr.getSegmentReponseList()) {
+				int taken = takenForSegment[segmentOrder];
+				List<ScoredResult> scoredResults = sr.getScoredResultList();
+				if (taken < scoredResults.size()) {
+					SegmentResponse.Builder srBuilder = sr.toBuilder().clearScoredResult().addAllScoredResult(scoredResults.subList(0, taken));
+					srBuilder.setNext(scoredResults.get(taken));
+					isrBuilder.addSegmentReponse(srBuilder);
+				}
+				else {
+					isrBuilder.addSegmentReponse(sr);
+				}
+				segmentOrder++;
+			}
+			builder.addIndexSegmentResponse(isrBuilder);
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * The segment is searched again after the last result it returned, or after the last result it had in the request's last result when it
+	 * returned none
+	 */
+	private void addShortSegment(String indexName, SegmentResponse sr) {
+		isShort = true;
+
+		SegmentRetry.Builder segmentRetry = SegmentRetry.newBuilder().setIndexName(indexName).setSegmentNumber(sr.getSegmentNumber());
+		if (sr.getScoredResultCount() != 0) {
+			segmentRetry.setAfter(sr.getScoredResult(sr.getScoredResultCount() - 1));
+		}
+		else {
+			for (LastIndexResult lir : lastResult.getLastIndexResultList()) {
+				if (indexName.equals(lir.getIndexName())) {
+					for (ScoredResult lastForSegment : lir.getLastForSegmentList()) {
+						if (lastForSegment.getSegment() == sr.getSegmentNumber()) {
+							segmentRetry.setAfter(lastForSegment);
+						}
+					}
+				}
+			}
+		}
+		shortSegments.add(segmentRetry.build());
+	}
+
 	public boolean isShort() {
 		return isShort;
 	}
 
+	public List<SegmentRetry> getShortSegments() {
+		return shortSegments;
+	}
+
+	/**
+	 * @return for each index, the most results the merged page took from any one of its segments
+	 */
+	public Map<String, Integer> getMaxTakenForIndex() {
+		Map<String, int[]> takenForIndex = new HashMap<>();
+		for (String indexName : usedIndexMap.keySet()) {
+			takenForIndex.put(indexName, new int[usedIndexMap.get(indexName).getNumberOfSegments()]);
+		}
+		for (ScoredResult scoredResult : results) {
+			takenForIndex.get(scoredResult.getIndexName())[scoredResult.getSegment()]++;
+		}
+
+		Map<String, Integer> maxTakenForIndex = new HashMap<>();
+		for (String indexName : takenForIndex.keySet()) {
+			int maxTaken = 0;
+			for (int taken : takenForIndex.get(indexName)) {
+				maxTaken = Math.max(maxTaken, taken);
+			}
+			maxTakenForIndex.put(indexName, maxTaken);
+		}
+		return maxTakenForIndex;
+	}
+
+	/**
+	 * Adds the results from searching short segments again after the results they already returned
+	 * @return the responses with the retried segments extended, to be combined again
+	 */
+	public static List<InternalQueryResponse> addRetryResults(List<InternalQueryResponse> responses, List<InternalQueryResponse> retryResponses) {
+		Map<String, Map<Integer, SegmentResponse>> retryMap = new HashMap<>();
+		for (InternalQueryResponse iqr : retryResponses) {
+			for (IndexSegmentResponse isr : iqr.getIndexSegmentResponseList()) {
+				for (SegmentResponse sr : isr.getSegmentReponseList()) {
+					retryMap.computeIfAbsent(isr.getIndexName(), k -> new HashMap<>()).put(sr.getSegmentNumber(), sr);
+				}
+			}
+		}
+
+		List<InternalQueryResponse> combined = new ArrayList<>(responses.size());
+		for (InternalQueryResponse iqr : responses) {
+			InternalQueryResponse.Builder iqrBuilder = InternalQueryResponse.newBuilder();
+			for (IndexSegmentResponse isr : iqr.getIndexSegmentResponseList()) {
+				Map<Integer, SegmentResponse> retryForIndex = retryMap.get(isr.getIndexName());
+				if (retryForIndex == null) {
+					iqrBuilder.addIndexSegmentResponse(isr);
+					continue;
+				}
+
+				IndexSegmentResponse.Builder isrBuilder = IndexSegmentResponse.newBuilder().setIndexName(isr.getIndexName());
+				for (SegmentResponse sr : isr.getSegmentReponseList()) {
+					SegmentResponse retry = retryForIndex.get(sr.getSegmentNumber());
+					if (retry == null) {
+						isrBuilder.addSegmentReponse(sr);
+						continue;
+					}
+
+					SegmentResponse.Builder srBuilder = sr.toBuilder();
+					//result index breaks ties so it continues from the results already returned
+					int resultIndex = sr.getScoredResultCount();
+					for (ScoredResult scoredResult : retry.getScoredResultList()) {
+						srBuilder.addScoredResult(scoredResult.toBuilder().setResultIndex(resultIndex++));
+					}
+					if (retry.hasNext()) {
+						srBuilder.setNext(retry.getNext());
+					}
+					else {
+						srBuilder.clearNext();
+					}
+					isrBuilder.addSegmentReponse(srBuilder);
+				}
+				iqrBuilder.addIndexSegmentResponse(isrBuilder);
+			}
+			combined.add(iqrBuilder.build());
+		}
+		return combined;
+	}
+
 }
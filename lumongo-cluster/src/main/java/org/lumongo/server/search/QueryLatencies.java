@@ -0,0 +1,26 @@
+package org.lumongo.server.search;
+
+/**
+ * Latency histograms for each {@link QueryPhase} of the queries run against one index on this node
+ */
+public class QueryLatencies {
+
+	private static final QueryPhase[] PHASES = QueryPhase.values();
+
+	private final LatencyHistogram[] histograms;
+
+	public QueryLatencies() {
+		this.histograms = new LatencyHistogram[PHASES.length];
+		for (int i = 0; i < PHASES.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	public void record(QueryPhase phase, long nanos) {
+		histograms[phase.ordinal()].recordNanos(nanos);
+	}
+
+	public LatencyHistogram getHistogram(QueryPhase phase) {
+		return histograms[phase.ordinal()];
+	}
+}
@@ -0,0 +1,27 @@
+package org.lumongo.server.search;
+
+/**
+ * Timed parts of a query.  Coordinator phases are timed once per query, segment phases are timed on the node that owns each segment
+ */
+public enum QueryPhase {
+	/** parsing the query and filters for one index, on the coordinator and on each node */
+	PARSE,
+	/** waiting on the members for the scoring phase, including gathering global term stats */
+	FEDERATE,
+	/** searching one segment */
+	SEGMENT_SEARCH,
+	/** counting facets for one segment */
+	FACET,
+	/** loading stored documents from one segment */
+	STORED_FETCH,
+	/** highlighting and analyzing one document */
+	HIGHLIGHT_ANALYSIS,
+	/** merging the segment results on the coordinator */
+	COMBINE,
+	/** querying short segments again */
+	RETRY,
+	/** fetching the documents for the merged page from their members */
+	FETCH_RESULTS,
+	/** the whole query on the coordinator */
+	TOTAL
+}
@@ -2,13 +2,15 @@ package org.lumongo.server.search;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import org.lumongo.cluster.message.Lumongo.SegmentResponse;
 
 public class QueryResultCache {
 	private Cache<QueryCacheKey, SegmentResponse> queryResultCache;
 	
 	public QueryResultCache(int maxSize, int concurrency) {
-		queryResultCache = CacheBuilder.newBuilder().concurrencyLevel(concurrency).maximumSize(maxSize).build();
+		//keys include the reader version so entries from older readers are never returned and are evicted as they age out
+		queryResultCache = CacheBuilder.newBuilder().concurrencyLevel(concurrency).maximumSize(maxSize).recordStats().build();
 	}
 	
 	public SegmentResponse getCacheSegmentResponse(QueryCacheKey queryCacheKey) {
@@ -19,7 +21,11 @@ public class QueryResultCache {
 		queryResultCache.put(queryCacheKey, segmentResponse);
 	}
 	
-	public void clear() {
-		queryResultCache.invalidateAll();
+	public CacheStats getStats() {
+		return queryResultCache.stats();
+	}
+	
+	public long getSize() {
+		return queryResultCache.size();
 	}
 }
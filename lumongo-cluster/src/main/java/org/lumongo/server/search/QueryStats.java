@@ -0,0 +1,58 @@
+package org.lumongo.server.search;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of queries coordinated on this node for an index and how often their results were short
+ */
+public class QueryStats {
+
+	private final LongAdder queries;
+	private final LongAdder shortQueries;
+	private final LongAdder retriedSegments;
+	private final LongAdder fullRetries;
+
+	public QueryStats() {
+		this.queries = new LongAdder();
+		this.shortQueries = new LongAdder();
+		this.retriedSegments = new LongAdder();
+		this.fullRetries = new LongAdder();
+	}
+
+	public void addQuery() {
+		queries.increment();
+	}
+
+	public void addShortQuery(int segments) {
+		shortQueries.increment();
+		retriedSegments.add(segments);
+	}
+
+	public void addFullRetry() {
+		fullRetries.increment();
+	}
+
+	public long getQueries() {
+		return queries.sum();
+	}
+
+	public long getShortQueries() {
+		return shortQueries.sum();
+	}
+
+	public long getRetriedSegments() {
+		return retriedSegments.sum();
+	}
+
+	public long getFullRetries() {
+		return fullRetries.sum();
+	}
+
+	public double getShortRate() {
+		long q = queries.sum();
+		if (q == 0) {
+			return 0;
+		}
+		return (double) shortQueries.sum() / q;
+	}
+}
@@ -0,0 +1,35 @@
+package org.lumongo.server.search;
+
+/**
+ * Time spent in each coordinator {@link QueryPhase} of one query.  A phase that runs more than once, such as the scoring phase of a query
+ * retried in full, accumulates
+ */
+public class QueryTimer {
+
+	private final long start;
+	private final long[] phaseNanos;
+
+	public QueryTimer() {
+		this.start = System.nanoTime();
+		this.phaseNanos = new long[QueryPhase.values().length];
+	}
+
+	public void add(QueryPhase phase, long nanos) {
+		phaseNanos[phase.ordinal()] += nanos;
+	}
+
+	/**
+	 * @param phaseStart the {@link System#nanoTime()} when the phase started
+	 */
+	public void addSince(QueryPhase phase, long phaseStart) {
+		add(phase, System.nanoTime() - phaseStart);
+	}
+
+	public long getNanos(QueryPhase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	public long getElapsedNanos() {
+		return System.nanoTime() - start;
+	}
+}
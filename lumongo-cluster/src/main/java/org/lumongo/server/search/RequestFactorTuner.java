@@ -0,0 +1,94 @@
+package org.lumongo.server.search;
+
+import org.lumongo.cluster.message.Lumongo.FieldSort;
+import org.lumongo.cluster.message.Lumongo.IndexSettings;
+import org.lumongo.cluster.message.Lumongo.SortRequest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Learns the request factor for an index from the queries it coordinates, separately for each sort.  The factor is raised right away
+ * when a query is short or the merged page reaches deeper into a segment than the factor allows for, and lowered slowly toward the depth
+ * actually used, always staying within the index's minRequestFactor and maxRequestFactor
+ */
+public class RequestFactorTuner {
+
+	private static final String SCORE_SORT = "score";
+
+	//room left above the deepest segment seen so normal variation does not cause short results
+	private static final double HEADROOM = 1.25;
+	private static final double SHORT_INCREASE = 1.5;
+	private static final double DECREASE_RATE = 0.02;
+
+	private final ConcurrentHashMap<String, Double> requestFactors;
+
+	public RequestFactorTuner() {
+		this.requestFactors = new ConcurrentHashMap<>();
+	}
+
+	private static String getSortKey(SortRequest sortRequest) {
+		if (sortRequest == null || sortRequest.getFieldSortCount() == 0) {
+			return SCORE_SORT;
+		}
+		StringBuilder sb = new StringBuilder();
+		for (FieldSort fieldSort : sortRequest.getFieldSortList()) {
+			if (sb.length() != 0) {
+				sb.append(',');
+			}
+			sb.append(fieldSort.getSortField()).append(':').append(fieldSort.getDirection());
+		}
+		return sb.toString();
+	}
+
+	private static double bound(IndexSettings indexSettings, double requestFactor) {
+		return Math.min(indexSettings.getMaxRequestFactor(), Math.max(indexSettings.getMinRequestFactor(), requestFactor));
+	}
+
+	/**
+	 * @return the request factor for sorts with nothing learned yet
+	 */
+	public double getDefaultRequestFactor(IndexSettings indexSettings) {
+		return bound(indexSettings, indexSettings.getRequestFactor());
+	}
+
+	public double getRequestFactor(IndexSettings indexSettings, SortRequest sortRequest) {
+		Double requestFactor = requestFactors.get(getSortKey(sortRequest));
+		if (requestFactor == null) {
+			return getDefaultRequestFactor(indexSettings);
+		}
+		return bound(indexSettings, requestFactor);
+	}
+
+	/**
+	 * @param evenAmount the per segment amount before the request factor is applied
+	 * @param maxTaken the most results the merged page took from one segment of the index
+	 * @param isShort whether a segment of the index was short
+	 */
+	public void record(IndexSettings indexSettings, SortRequest sortRequest, int evenAmount, int maxTaken, boolean isShort) {
+		if (evenAmount <= 0) {
+			return;
+		}
+
+		double neededFactor = bound(indexSettings, ((double) maxTaken / evenAmount) * HEADROOM);
+
+		requestFactors.compute(getSortKey(sortRequest), (key, current) -> {
+			double requestFactor = (current != null) ? current : getDefaultRequestFactor(indexSettings);
+			if (isShort) {
+				requestFactor = Math.max(requestFactor * SHORT_INCREASE, neededFactor);
+			}
+			else if (neededFactor > requestFactor) {
+				requestFactor = neededFactor;
+			}
+			else {
+				requestFactor += (neededFactor - requestFactor) * DECREASE_RATE;
+			}
+			return bound(indexSettings, requestFactor);
+		});
+	}
+
+	public Map<String, Double> getRequestFactors() {
+		return new TreeMap<>(requestFactors);
+	}
+}
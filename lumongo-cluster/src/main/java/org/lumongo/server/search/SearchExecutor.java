@@ -0,0 +1,246 @@
+package org.lumongo.server.search;
+
+import org.apache.log4j.Logger;
+import org.lumongo.util.LumongoThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size pool shared by every index on a node for segment level search work.  Each index has its own queue and workers take from
+ * the index queues in turn so a busy index cannot starve the others.  Once half the queue depth is used an index over its fair share of
+ * the queue is rejected, and anything beyond the full queue depth is rejected
+ */
+public class SearchExecutor {
+
+	private final static Logger log = Logger.getLogger(SearchExecutor.class);
+
+	private static class IndexQueue {
+		private final Queue<FutureTask<?>> tasks = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger queued = new AtomicInteger();
+		private volatile boolean removed;
+	}
+
+	private final int threads;
+	private final int queueDepth;
+
+	private final ConcurrentHashMap<String, IndexQueue> indexQueues;
+	private final Semaphore available;
+	private final Object dispatchLock;
+	private final List<Thread> workers;
+
+	private final AtomicInteger queued;
+	private final AtomicInteger active;
+	private final AtomicLong completed;
+	private final AtomicLong rejected;
+
+	private volatile List<IndexQueue> dispatchOrder;
+	private int dispatchPosition;
+
+	private volatile boolean shutdown;
+
+	public SearchExecutor(int threads, int queueDepth) {
+		this.threads = threads;
+		this.queueDepth = queueDepth;
+
+		this.indexQueues = new ConcurrentHashMap<>();
+		this.available = new Semaphore(0);
+		this.dispatchLock = new Object();
+		this.dispatchOrder = new ArrayList<>();
+
+		this.queued = new AtomicInteger();
+		this.active = new AtomicInteger();
+		this.completed = new AtomicLong();
+		this.rejected = new AtomicLong();
+
+		ThreadFactory threadFactory = new LumongoThreadFactory("search");
+		this.workers = new ArrayList<>(threads);
+		for (int i = 0; i < threads; i++) {
+			Thread worker = threadFactory.newThread(this::work);
+			worker.setDaemon(true);
+			workers.add(worker);
+			worker.start();
+		}
+	}
+
+	public <T> Future<T> submit(String indexName, Callable<T> callable) {
+		if (shutdown) {
+			throw new RejectedExecutionException("Search executor is shut down");
+		}
+
+		IndexQueue indexQueue = indexQueues.computeIfAbsent(indexName, k -> {
+			IndexQueue q = new IndexQueue();
+			synchronized (dispatchLock) {
+				List<IndexQueue> newOrder = new ArrayList<>(dispatchOrder);
+				newOrder.add(q);
+				dispatchOrder = newOrder;
+			}
+			return q;
+		});
+
+		int totalQueued = queued.incrementAndGet();
+		int indexQueued = indexQueue.queued.incrementAndGet();
+
+		if (totalQueued > queueDepth || (totalQueued > queueDepth / 2 && indexQueued > getFairShare())) {
+			queued.decrementAndGet();
+			indexQueue.queued.decrementAndGet();
+			rejected.incrementAndGet();
+			throw new RejectedExecutionException(
+					"Search queue is full for index <" + indexName + "> with <" + (totalQueued - 1) + "> tasks queued on this node, the queue depth is <"
+							+ queueDepth + ">");
+		}
+
+		FutureTask<T> task = new FutureTask<>(callable);
+		indexQueue.tasks.add(task);
+		if (indexQueue.removed) {
+			//the index was removed while submitting, cancelled here unless removeIndex already took it
+			cancel(indexQueue, task);
+		}
+		available.release();
+		return task;
+	}
+
+	/**
+	 * Removes the queue of an unloaded or deleted index, cancelling the tasks still queued for it
+	 */
+	public void removeIndex(String indexName) {
+		IndexQueue indexQueue;
+		synchronized (dispatchLock) {
+			indexQueue = indexQueues.remove(indexName);
+			if (indexQueue == null) {
+				return;
+			}
+			indexQueue.removed = true;
+			List<IndexQueue> newOrder = new ArrayList<>(dispatchOrder);
+			newOrder.remove(indexQueue);
+			dispatchOrder = newOrder;
+		}
+
+		FutureTask<?> task;
+		while ((task = indexQueue.tasks.peek()) != null) {
+			cancel(indexQueue, task);
+		}
+	}
+
+	private void cancel(IndexQueue indexQueue, FutureTask<?> task) {
+		if (indexQueue.tasks.remove(task)) {
+			indexQueue.queued.decrementAndGet();
+			queued.decrementAndGet();
+			task.cancel(false);
+		}
+	}
+
+	private int getFairShare() {
+		int busyIndexes = 0;
+		for (IndexQueue indexQueue : dispatchOrder) {
+			if (indexQueue.queued.get() > 0) {
+				busyIndexes++;
+			}
+		}
+		return Math.max(1, queueDepth / Math.max(1, busyIndexes));
+	}
+
+	private FutureTask<?> next() {
+		synchronized (dispatchLock) {
+			List<IndexQueue> order = dispatchOrder;
+			int size = order.size();
+			for (int i = 0; i < size; i++) {
+				IndexQueue indexQueue = order.get((dispatchPosition + i) % size);
+				FutureTask<?> task = indexQueue.tasks.poll();
+				if (task != null) {
+					dispatchPosition = (dispatchPosition + i + 1) % size;
+					indexQueue.queued.decrementAndGet();
+					queued.decrementAndGet();
+					return task;
+				}
+			}
+			return null;
+		}
+	}
+
+	private void work() {
+		while (!shutdown) {
+			try {
+				available.acquire();
+			}
+			catch (InterruptedException e) {
+				break;
+			}
+
+			FutureTask<?> task = next();
+			if (task == null) {
+				continue;
+			}
+
+			active.incrementAndGet();
+			try {
+				task.run();
+			}
+			catch (Throwable t) {
+				log.error("Search task failed: " + t.getClass().getSimpleName() + ": ", t);
+			}
+			finally {
+				active.decrementAndGet();
+				completed.incrementAndGet();
+			}
+		}
+	}
+
+	public void shutdown() {
+		shutdown = true;
+		for (Thread worker : workers) {
+			worker.interrupt();
+		}
+		for (IndexQueue indexQueue : indexQueues.values()) {
+			FutureTask<?> task;
+			while ((task = indexQueue.tasks.poll()) != null) {
+				task.cancel(true);
+			}
+		}
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	public int getQueuedCount() {
+		return queued.get();
+	}
+
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	public Map<String, Integer> getQueuedCountByIndex() {
+		Map<String, Integer> queuedByIndex = new TreeMap<>();
+		for (Map.Entry<String, IndexQueue> entry : indexQueues.entrySet()) {
+			queuedByIndex.put(entry.getKey(), entry.getValue().queued.get());
+		}
+		return queuedByIndex;
+	}
+}
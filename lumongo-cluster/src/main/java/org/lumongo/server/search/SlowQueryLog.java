@@ -0,0 +1,78 @@
+package org.lumongo.server.search;
+
+import com.google.protobuf.util.JsonFormat;
+import org.apache.log4j.Logger;
+import org.lumongo.cluster.message.Lumongo.QueryRequest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logs queries slower than the threshold with the time spent in each coordinator phase.  At most logsPerSecond queries are logged each
+ * second so a slow cluster does not also flood its logs, the rest are only counted
+ */
+public class SlowQueryLog {
+
+	private final static Logger log = Logger.getLogger(SlowQueryLog.class);
+
+	private static final QueryPhase[] COORDINATOR_PHASES = { QueryPhase.PARSE, QueryPhase.FEDERATE, QueryPhase.COMBINE, QueryPhase.RETRY,
+			QueryPhase.FETCH_RESULTS };
+
+	private final long thresholdNanos;
+	private final int logsPerSecond;
+
+	private final AtomicLong currentSecond;
+	private final AtomicInteger loggedThisSecond;
+	private final LongAdder slowQueries;
+
+	public SlowQueryLog(int thresholdMs, int logsPerSecond) {
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+		this.logsPerSecond = logsPerSecond;
+
+		this.currentSecond = new AtomicLong();
+		this.loggedThisSecond = new AtomicInteger();
+		this.slowQueries = new LongAdder();
+	}
+
+	public void check(QueryRequest request, QueryTimer queryTimer, long totalNanos) {
+		if (thresholdNanos <= 0 || totalNanos < thresholdNanos) {
+			return;
+		}
+
+		slowQueries.increment();
+
+		if (!shouldLog()) {
+			return;
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("Slow query took <").append(TimeUnit.NANOSECONDS.toMillis(totalNanos)).append("ms>");
+		for (QueryPhase phase : COORDINATOR_PHASES) {
+			sb.append(' ').append(phase.name().toLowerCase()).append("=<").append(TimeUnit.NANOSECONDS.toMillis(queryTimer.getNanos(phase))).append("ms>");
+		}
+
+		try {
+			sb.append(": <").append(JsonFormat.printer().print(request)).append(">");
+		}
+		catch (Exception e) {
+			sb.append(": <").append(request.getIndexList()).append(":").append(request.getQuery().getQ()).append(">");
+		}
+
+		log.warn(sb.toString());
+	}
+
+	private boolean shouldLog() {
+		long second = System.currentTimeMillis() / 1000;
+		long current = currentSecond.get();
+		if (second != current && currentSecond.compareAndSet(current, second)) {
+			loggedThisSecond.set(0);
+		}
+		return loggedThisSecond.incrementAndGet() <= logsPerSecond;
+	}
+
+	public long getSlowQueries() {
+		return slowQueries.sum();
+	}
+}
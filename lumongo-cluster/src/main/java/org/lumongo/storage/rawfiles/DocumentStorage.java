@@ -14,6 +14,12 @@ import java.util.Map;
 
 public interface DocumentStorage {
 	void storeSourceDocument(String uniqueId, long timeStamp, Document document, List<Metadata> metaDataList) throws Exception;
+
+	/**
+	 * Stores the source documents in one bulk write
+	 * @return error messages keyed by the position of the failed document in sourceDocuments
+	 */
+	Map<Integer, String> storeSourceDocuments(List<SourceDocument> sourceDocuments, long timeStamp) throws Exception;
 	
 	void storeAssociatedDocument(AssociatedDocument docs) throws Exception;
 	
@@ -3,7 +3,9 @@ package org.lumongo.storage.rawfiles;
 import com.google.protobuf.ByteString;
 import com.mongodb.BasicDBObject;
 import com.mongodb.Block;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClient;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.gridfs.GridFSBucket;
@@ -11,6 +13,8 @@ import com.mongodb.client.gridfs.GridFSBuckets;
 import com.mongodb.client.gridfs.GridFSFindIterable;
 import com.mongodb.client.gridfs.model.GridFSFile;
 import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.UpdateOptions;
 import org.apache.log4j.Logger;
 import org.bson.BSON;
@@ -98,6 +102,44 @@ public class MongoDocumentStorage implements DocumentStorage {
 	public void storeSourceDocument(String uniqueId, long timeStamp, Document document, List<Metadata> metaDataList) throws Exception {
 		MongoDatabase db = mongoClient.getDatabase(database);
 		MongoCollection<Document> coll = db.getCollection(rawCollectionName);
+		Document mongoDocument = getMongoDocument(uniqueId, timeStamp, document, metaDataList);
+
+		Document query = new Document(MongoConstants.StandardFields._ID, uniqueId);
+
+		coll.replaceOne(query, mongoDocument, new UpdateOptions().upsert(true));
+	}
+
+	@Override
+	public Map<Integer, String> storeSourceDocuments(List<SourceDocument> sourceDocuments, long timeStamp) throws Exception {
+		Map<Integer, String> errors = new HashMap<>();
+		if (sourceDocuments.isEmpty()) {
+			return errors;
+		}
+
+		MongoDatabase db = mongoClient.getDatabase(database);
+		MongoCollection<Document> coll = db.getCollection(rawCollectionName);
+
+		List<ReplaceOneModel<Document>> replaces = new ArrayList<>(sourceDocuments.size());
+		for (SourceDocument sourceDocument : sourceDocuments) {
+			Document mongoDocument = getMongoDocument(sourceDocument.getUniqueId(), timeStamp, sourceDocument.getDocument(),
+					sourceDocument.getMetadataList());
+			Document query = new Document(MongoConstants.StandardFields._ID, sourceDocument.getUniqueId());
+			replaces.add(new ReplaceOneModel<>(query, mongoDocument, new UpdateOptions().upsert(true)));
+		}
+
+		try {
+			coll.bulkWrite(replaces, new BulkWriteOptions().ordered(false));
+		}
+		catch (MongoBulkWriteException e) {
+			for (BulkWriteError error : e.getWriteErrors()) {
+				errors.put(error.getIndex(), error.getMessage());
+			}
+		}
+
+		return errors;
+	}
+
+	private Document getMongoDocument(String uniqueId, long timeStamp, Document document, List<Metadata> metaDataList) {
 		Document mongoDocument = new Document();
 		mongoDocument.putAll(document);
 
@@ -111,10 +153,7 @@ public class MongoDocumentStorage implements DocumentStorage {
 
 		mongoDocument.put(TIMESTAMP, timeStamp);
 		mongoDocument.put(MongoConstants.StandardFields._ID, uniqueId);
-
-		Document query = new Document(MongoConstants.StandardFields._ID, uniqueId);
-
-		coll.replaceOne(query, mongoDocument, new UpdateOptions().upsert(true));
+		return mongoDocument;
 	}
 
 	@Override
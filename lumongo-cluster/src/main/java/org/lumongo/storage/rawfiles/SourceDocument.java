@@ -0,0 +1,32 @@
+package org.lumongo.storage.rawfiles;
+
+import org.bson.Document;
+import org.lumongo.cluster.message.Lumongo.Metadata;
+
+import java.util.List;
+
+public class SourceDocument {
+
+	private final String uniqueId;
+	private final Document document;
+	private final List<Metadata> metadataList;
+
+	public SourceDocument(String uniqueId, Document document, List<Metadata> metadataList) {
+		this.uniqueId = uniqueId;
+		this.document = document;
+		this.metadataList = metadataList;
+	}
+
+	public String getUniqueId() {
+		return uniqueId;
+	}
+
+	public Document getDocument() {
+		return document;
+	}
+
+	public List<Metadata> getMetadataList() {
+		return metadataList;
+	}
+
+}
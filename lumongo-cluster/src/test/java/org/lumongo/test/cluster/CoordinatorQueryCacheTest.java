@@ -0,0 +1,185 @@
+package org.lumongo.test.cluster;
+
+import org.lumongo.cluster.message.Lumongo.LastResult;
+import org.lumongo.cluster.message.Lumongo.Query;
+import org.lumongo.cluster.message.Lumongo.QueryRequest;
+import org.lumongo.cluster.message.Lumongo.QueryResponse;
+import org.lumongo.server.search.CoordinatorQueryCache;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+public class CoordinatorQueryCacheTest {
+
+	private static final List<Long> GENERATION = Collections.singletonList(1L);
+
+	private static QueryRequest getRequest(String indexName, String query) {
+		return QueryRequest.newBuilder().addIndex(indexName).setQuery(Query.newBuilder().setQ(query)).setAmount(10).build();
+	}
+
+	private static QueryResponse getResponse(long totalHits) {
+		return QueryResponse.newBuilder().setTotalHits(totalHits).setLastResult(LastResult.newBuilder()).build();
+	}
+
+	/**
+	 * Counts its calls and answers with the number of the call once released
+	 */
+	private static class CountingQuery implements Callable<QueryResponse> {
+		private final AtomicInteger calls = new AtomicInteger();
+		private final CountDownLatch release;
+		private final Exception failure;
+
+		public CountingQuery(CountDownLatch release, Exception failure) {
+			this.release = release;
+			this.failure = failure;
+		}
+
+		@Override
+		public QueryResponse call() throws Exception {
+			int call = calls.incrementAndGet();
+			release.await();
+			if (failure != null) {
+				throw failure;
+			}
+			return getResponse(call);
+		}
+	}
+
+	/**
+	 * Runs the same request from several threads, releasing the query once every caller after the first is sharing it
+	 */
+	private static List<Future<QueryResponse>> runConcurrently(CoordinatorQueryCache cache, QueryRequest request, CountingQuery query,
+			CountDownLatch release, int callers) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(callers);
+		try {
+			List<Future<QueryResponse>> futures = new ArrayList<>();
+			for (int i = 0; i < callers; i++) {
+				futures.add(executor.submit(() -> cache.getResponse(request, GENERATION, query)));
+			}
+
+			long timeout = System.currentTimeMillis() + 10000;
+			while (cache.getShared() < callers - 1) {
+				assertTrue("Expected the callers to share the running query", System.currentTimeMillis() < timeout);
+				Thread.sleep(10);
+			}
+			release.countDown();
+
+			for (Future<QueryResponse> future : futures) {
+				try {
+					future.get();
+				}
+				catch (ExecutionException e) {
+					//checked by the caller
+				}
+			}
+			return futures;
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testConcurrentShared() throws Exception {
+		CoordinatorQueryCache cache = new CoordinatorQueryCache(60000, 100);
+		CountDownLatch release = new CountDownLatch(1);
+		CountingQuery query = new CountingQuery(release, null);
+
+		List<Future<QueryResponse>> futures = runConcurrently(cache, getRequest("a", "title:shared"), query, release, 8);
+
+		assertEquals(1, query.calls.get());
+		QueryResponse response = futures.get(0).get();
+		for (Future<QueryResponse> future : futures) {
+			assertSame(response, future.get());
+		}
+		assertEquals(1, cache.getMisses());
+		assertEquals(7, cache.getShared());
+
+		//finished responses are kept for the next identical request
+		assertSame(response, cache.getResponse(getRequest("a", "title:shared"), GENERATION, query));
+		assertEquals(1, query.calls.get());
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void testFailureNotCached() throws Exception {
+		CoordinatorQueryCache cache = new CoordinatorQueryCache(60000, 100);
+		CountDownLatch release = new CountDownLatch(1);
+		IOException failure = new IOException("Query failed");
+		CountingQuery query = new CountingQuery(release, failure);
+
+		List<Future<QueryResponse>> futures = runConcurrently(cache, getRequest("a", "title:failed"), query, release, 8);
+
+		assertEquals(1, query.calls.get());
+		for (Future<QueryResponse> future : futures) {
+			try {
+				future.get();
+				fail("Expected every caller to get the failure");
+			}
+			catch (ExecutionException e) {
+				assertSame(failure, e.getCause());
+			}
+		}
+		assertEquals(0, cache.getSize());
+
+		//the next request runs the query again
+		try {
+			cache.getResponse(getRequest("a", "title:failed"), GENERATION, query);
+			fail("Expected the query to run and fail again");
+		}
+		catch (IOException e) {
+			assertSame(failure, e);
+		}
+		assertEquals(2, query.calls.get());
+	}
+
+	@Test
+	public void testReaderGenerationChanged() throws Exception {
+		CoordinatorQueryCache cache = new CoordinatorQueryCache(60000, 100);
+		CountingQuery query = new CountingQuery(new CountDownLatch(0), null);
+		QueryRequest request = getRequest("a", "title:generation");
+
+		QueryResponse response = cache.getResponse(request, GENERATION, query);
+		assertSame(response, cache.getResponse(request, GENERATION, query));
+		assertEquals(1, query.calls.get());
+
+		QueryResponse changed = cache.getResponse(request, Collections.singletonList(2L), query);
+		assertEquals(2, query.calls.get());
+		assertEquals(2, changed.getTotalHits());
+	}
+
+	@Test
+	public void testInvalidateIndex() throws Exception {
+		CoordinatorQueryCache cache = new CoordinatorQueryCache(60000, 100);
+		CountingQuery query = new CountingQuery(new CountDownLatch(0), null);
+		QueryRequest requestA = getRequest("a", "title:invalidate");
+		QueryRequest requestB = getRequest("b", "title:invalidate");
+
+		cache.getResponse(requestA, GENERATION, query);
+		QueryResponse responseB = cache.getResponse(requestB, GENERATION, query);
+		assertEquals(2, cache.getSize());
+
+		cache.invalidate("a");
+		assertEquals(1, cache.getSize());
+
+		cache.getResponse(requestA, GENERATION, query);
+		assertEquals(3, query.calls.get());
+		assertSame(responseB, cache.getResponse(requestB, GENERATION, query));
+		assertEquals(3, query.calls.get());
+	}
+}
@@ -0,0 +1,100 @@
+package org.lumongo.test.cluster;
+
+import org.lumongo.cluster.message.Lumongo.CountRequest;
+import org.lumongo.cluster.message.Lumongo.FacetCount;
+import org.lumongo.cluster.message.Lumongo.FacetGroup;
+import org.lumongo.cluster.message.Lumongo.LMFacet;
+import org.lumongo.server.search.FacetCombiner;
+import org.testng.annotations.Test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class FacetCombinerTest {
+
+	private static CountRequest countRequest(int maxFacets, int segmentFacets) {
+		return CountRequest.newBuilder().setFacetField(LMFacet.newBuilder().setLabel("category")).setMaxFacets(maxFacets).setSegmentFacets(segmentFacets)
+				.build();
+	}
+
+	private static FacetGroup facetGroup(CountRequest countRequest, Object... facetAndCount) {
+		FacetGroup.Builder fg = FacetGroup.newBuilder().setCountRequest(countRequest);
+		for (int i = 0; i < facetAndCount.length; i += 2) {
+			fg.addFacetCount(FacetCount.newBuilder().setFacet((String) facetAndCount[i]).setCount((Integer) facetAndCount[i + 1]));
+		}
+		return fg.build();
+	}
+
+	private static void assertFacet(FacetCount facetCount, String facet, long count) {
+		assertEquals(facet, facetCount.getFacet());
+		assertEquals(count, facetCount.getCount());
+	}
+
+	@Test
+	public void testErrorAndPossibleMissing() {
+		CountRequest countRequest = countRequest(2, 2);
+		FacetCombiner facetCombiner = new FacetCombiner(countRequest, 3);
+		facetCombiner.addFacetGroup(0, facetGroup(countRequest, "a", 10, "b", 8));
+		facetCombiner.addFacetGroup(1, facetGroup(countRequest, "a", 5, "c", 4));
+		//returned fewer than segment facets so it returned all its facets
+		facetCombiner.addFacetGroup(2, facetGroup(countRequest, "b", 3));
+
+		FacetGroup fg = facetCombiner.getFacetGroup().build();
+		assertEquals(2, fg.getFacetCountCount());
+		assertFacet(fg.getFacetCount(0), "a", 15);
+		assertEquals(0, fg.getFacetCount(0).getMaxError());
+		assertFacet(fg.getFacetCount(1), "b", 11);
+		assertEquals(4, fg.getFacetCount(1).getMaxError());
+
+		assertTrue(fg.getPossibleMissing());
+		assertEquals(12, fg.getMaxValuePossibleMissing());
+	}
+
+	@Test
+	public void testFullResults() {
+		CountRequest countRequest = countRequest(10, 0);
+		FacetCombiner facetCombiner = new FacetCombiner(countRequest, 2);
+		facetCombiner.addFacetGroup(0, facetGroup(countRequest, "b", 2, "a", 1));
+		facetCombiner.addFacetGroup(1, facetGroup(countRequest, "a", 1, "c", 5));
+
+		FacetGroup fg = facetCombiner.getFacetGroup().build();
+		assertEquals(3, fg.getFacetCountCount());
+		assertFacet(fg.getFacetCount(0), "c", 5);
+		//ties are ordered by label
+		assertFacet(fg.getFacetCount(1), "a", 2);
+		assertFacet(fg.getFacetCount(2), "b", 2);
+		assertFalse(fg.getFacetCount(0).hasMaxError());
+		assertFalse(fg.getPossibleMissing());
+	}
+
+	@Test
+	public void testManyFacetsAndSegments() {
+		int segments = 100;
+		CountRequest countRequest = countRequest(5, 0);
+		FacetCombiner facetCombiner = new FacetCombiner(countRequest, segments);
+		for (int i = 0; i < segments; i++) {
+			facetCombiner.addFacetGroup(i, facetGroup(countRequest, "f" + i, i + 1, "common", 1));
+		}
+
+		FacetGroup fg = facetCombiner.getFacetGroup().build();
+		assertEquals(5, fg.getFacetCountCount());
+		assertFacet(fg.getFacetCount(0), "common", 100);
+		assertFacet(fg.getFacetCount(1), "f99", 100);
+		assertFacet(fg.getFacetCount(2), "f98", 99);
+		assertFacet(fg.getFacetCount(3), "f97", 98);
+		assertFacet(fg.getFacetCount(4), "f96", 97);
+	}
+
+	@Test
+	public void testEmpty() {
+		CountRequest countRequest = countRequest(10, 2);
+		FacetCombiner facetCombiner = new FacetCombiner(countRequest, 2);
+		facetCombiner.addFacetGroup(0, facetGroup(countRequest));
+		facetCombiner.addFacetGroup(1, facetGroup(countRequest));
+
+		FacetGroup fg = facetCombiner.getFacetGroup().build();
+		assertEquals(0, fg.getFacetCountCount());
+		assertFalse(fg.getPossibleMissing());
+	}
+}
@@ -0,0 +1,251 @@
+package org.lumongo.test.cluster;
+
+import org.lumongo.cluster.message.Lumongo.FieldConfig.FieldType;
+import org.lumongo.cluster.message.Lumongo.FieldSort;
+import org.lumongo.cluster.message.Lumongo.IndexSegmentResponse;
+import org.lumongo.cluster.message.Lumongo.InternalQueryResponse;
+import org.lumongo.cluster.message.Lumongo.LastIndexResult;
+import org.lumongo.cluster.message.Lumongo.LastResult;
+import org.lumongo.cluster.message.Lumongo.QueryRequest;
+import org.lumongo.cluster.message.Lumongo.QueryResponse;
+import org.lumongo.cluster.message.Lumongo.ScoredResult;
+import org.lumongo.cluster.message.Lumongo.SegmentResponse;
+import org.lumongo.cluster.message.Lumongo.SegmentRetry;
+import org.lumongo.cluster.message.Lumongo.SortRequest;
+import org.lumongo.cluster.message.Lumongo.SortValue;
+import org.lumongo.cluster.message.Lumongo.SortValues;
+import org.lumongo.server.index.LumongoIndex;
+import org.lumongo.server.search.QueryCombiner;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class QueryCombinerTest {
+
+	private static final String INDEX_NAME = "test";
+
+	private static Map<String, LumongoIndex> indexMap(int segments) {
+		LumongoIndex index = mock(LumongoIndex.class);
+		when(index.getNumberOfSegments()).thenReturn(segments);
+		when(index.getSegmentTolerance()).thenReturn(0.05);
+		when(index.getSortFieldType("rating")).thenReturn(FieldType.NUMERIC_INT);
+		return Collections.singletonMap(INDEX_NAME, index);
+	}
+
+	private static ScoredResult result(int segment, int resultIndex, float score) {
+		return ScoredResult.newBuilder().setUniqueId(segment + "_" + resultIndex).setIndexName(INDEX_NAME).setSegment(segment).setResultIndex(resultIndex)
+				.setScore(score).build();
+	}
+
+	private static ScoredResult sortedResult(int segment, int resultIndex, int rating) {
+		SortValues sortValues = SortValues.newBuilder().addSortValue(SortValue.newBuilder().setExists(true).setIntegerValue(rating)).build();
+		return result(segment, resultIndex, 1.0f).toBuilder().setSortValues(sortValues).build();
+	}
+
+	private static SegmentResponse.Builder segment(int segment, int totalHits, float... scores) {
+		SegmentResponse.Builder sr = SegmentResponse.newBuilder().setSegmentNumber(segment).setIndexName(INDEX_NAME).setTotalHits(totalHits);
+		for (int i = 0; i < scores.length; i++) {
+			sr.addScoredResult(result(segment, i, scores[i]));
+		}
+		return sr;
+	}
+
+	private static List<InternalQueryResponse> responses(SegmentResponse.Builder... segmentResponses) {
+		IndexSegmentResponse.Builder isr = IndexSegmentResponse.newBuilder().setIndexName(INDEX_NAME);
+		for (SegmentResponse.Builder sr : segmentResponses) {
+			isr.addSegmentReponse(sr);
+		}
+		return Collections.singletonList(InternalQueryResponse.newBuilder().addIndexSegmentResponse(isr).build());
+	}
+
+	private static QueryRequest.Builder request(int amount) {
+		return QueryRequest.newBuilder().addIndex(INDEX_NAME).setAmount(amount);
+	}
+
+	private static void assertResult(ScoredResult scoredResult, int segment, float score) {
+		assertEquals(segment, scoredResult.getSegment());
+		assertEquals(score, scoredResult.getScore(), 0.0001f);
+	}
+
+	private static QueryCombiner combine(Map<String, LumongoIndex> indexMap, QueryRequest request, List<InternalQueryResponse> responses)
+			throws Exception {
+		QueryCombiner queryCombiner = new QueryCombiner(indexMap, request, responses);
+		queryCombiner.validate();
+		return queryCombiner;
+	}
+
+	@Test
+	public void testMergeByScore() throws Exception {
+		QueryCombiner queryCombiner = combine(indexMap(2), request(3).build(), responses(segment(0, 10, 5, 3, 1), segment(1, 20, 4, 3, 2)));
+		QueryResponse queryResponse = queryCombiner.getQueryResponse();
+
+		assertEquals(30, queryResponse.getTotalHits());
+		assertEquals(3, queryResponse.getResultsCount());
+		assertResult(queryResponse.getResults(0), 0, 5);
+		assertResult(queryResponse.getResults(1), 1, 4);
+		//equal scores and result indexes are taken in segment order
+		assertResult(queryResponse.getResults(2), 0, 3);
+		assertFalse(queryCombiner.isShort());
+
+		assertEquals(1, queryResponse.getLastResult().getLastIndexResultCount());
+		List<ScoredResult> lastForSegment = queryResponse.getLastResult().getLastIndexResult(0).getLastForSegmentList();
+		assertResult(lastForSegment.get(0), 0, 3);
+		assertResult(lastForSegment.get(1), 1, 4);
+
+		assertEquals(2, (int) queryCombiner.getMaxTakenForIndex().get(INDEX_NAME));
+	}
+
+	@Test
+	public void testStart() throws Exception {
+		QueryRequest request = request(2).setStart(1).build();
+		QueryResponse queryResponse = combine(indexMap(2), request, responses(segment(0, 10, 5, 3, 1), segment(1, 20, 4, 3, 2))).getQueryResponse();
+
+		assertEquals(2, queryResponse.getResultsCount());
+		assertResult(queryResponse.getResults(0), 1, 4);
+		assertResult(queryResponse.getResults(1), 0, 3);
+	}
+
+	@Test
+	public void testFewerThanAmount() throws Exception {
+		QueryResponse queryResponse = combine(indexMap(2), request(10).build(), responses(segment(0, 1, 2), segment(1, 0))).getQueryResponse();
+
+		assertEquals(1, queryResponse.getResultsCount());
+		assertResult(queryResponse.getResults(0), 0, 2);
+	}
+
+	@Test
+	public void testMergeBySort() throws Exception {
+		SegmentResponse.Builder segment0 = SegmentResponse.newBuilder().setSegmentNumber(0).setIndexName(INDEX_NAME).setTotalHits(3);
+		segment0.addScoredResult(sortedResult(0, 0, 9)).addScoredResult(sortedResult(0, 1, 4)).addScoredResult(sortedResult(0, 2, 1));
+		SegmentResponse.Builder segment1 = SegmentResponse.newBuilder().setSegmentNumber(1).setIndexName(INDEX_NAME).setTotalHits(2);
+		segment1.addScoredResult(sortedResult(1, 0, 7)).addScoredResult(sortedResult(1, 1, 5));
+
+		SortRequest sortRequest = SortRequest.newBuilder()
+				.addFieldSort(FieldSort.newBuilder().setSortField("rating").setDirection(FieldSort.Direction.DESCENDING)).build();
+		QueryRequest request = request(4).setSortRequest(sortRequest).build();
+		QueryResponse queryResponse = combine(indexMap(2), request, responses(segment0, segment1)).getQueryResponse();
+
+		assertEquals(4, queryResponse.getResultsCount());
+		int[] expected = { 9, 7, 5, 4 };
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], queryResponse.getResults(i).getSortValues().getSortValue(0).getIntegerValue());
+		}
+	}
+
+	@Test
+	public void testSegmentOutOfOrder() throws Exception {
+		QueryCombiner queryCombiner = combine(indexMap(2), request(3).build(), responses(segment(0, 3, 5, 1, 3), segment(1, 1, 4)));
+		QueryResponse queryResponse = queryCombiner.getQueryResponse();
+
+		assertEquals(3, queryResponse.getResultsCount());
+		assertResult(queryResponse.getResults(0), 0, 5);
+		assertResult(queryResponse.getResults(1), 1, 4);
+		assertResult(queryResponse.getResults(2), 0, 3);
+	}
+
+	@Test
+	public void testNodeResponse() throws Exception {
+		QueryCombiner queryCombiner = new QueryCombiner(indexMap(2), request(3).build(), responses(segment(0, 10, 5, 3, 1), segment(1, 20, 4, 3, 2)));
+		InternalQueryResponse nodeResponse = queryCombiner.getNodeResponse();
+
+		List<SegmentResponse> segmentResponses = nodeResponse.getIndexSegmentResponse(0).getSegmentReponseList();
+		assertEquals(2, segmentResponses.size());
+
+		SegmentResponse segment0 = segmentResponses.get(0);
+		assertEquals(10, segment0.getTotalHits());
+		assertEquals(2, segment0.getScoredResultCount());
+		assertResult(segment0.getNext(), 0, 1);
+
+		SegmentResponse segment1 = segmentResponses.get(1);
+		assertEquals(20, segment1.getTotalHits());
+		assertEquals(1, segment1.getScoredResultCount());
+		assertResult(segment1.getNext(), 1, 3);
+
+		//the trimmed responses give the coordinator the same page
+		QueryResponse queryResponse = combine(indexMap(2), request(3).build(), Collections.singletonList(nodeResponse)).getQueryResponse();
+		assertEquals(30, queryResponse.getTotalHits());
+		assertResult(queryResponse.getResults(0), 0, 5);
+		assertResult(queryResponse.getResults(1), 1, 4);
+		assertResult(queryResponse.getResults(2), 0, 3);
+	}
+
+	@Test
+	public void testNodeResponseUnderAmount() throws Exception {
+		List<InternalQueryResponse> responses = responses(segment(0, 10, 5, 3), segment(1, 20, 4));
+		InternalQueryResponse nodeResponse = new QueryCombiner(indexMap(2), request(3).build(), responses).getNodeResponse();
+		assertEquals(responses.get(0), nodeResponse);
+	}
+
+	@Test
+	public void testShortSegment() throws Exception {
+		SegmentResponse.Builder segment0 = segment(0, 10, 5, 4, 3.5f).setNext(result(0, 3, 3));
+		SegmentResponse.Builder segment1 = segment(1, 10, 4.5f).setNext(result(1, 1, 4.2f));
+		QueryCombiner queryCombiner = combine(indexMap(2), request(3).build(), responses(segment0, segment1));
+		queryCombiner.getQueryResponse();
+
+		assertTrue(queryCombiner.isShort());
+		assertEquals(1, queryCombiner.getShortSegments().size());
+		SegmentRetry segmentRetry = queryCombiner.getShortSegments().get(0);
+		assertEquals(INDEX_NAME, segmentRetry.getIndexName());
+		assertEquals(1, segmentRetry.getSegmentNumber());
+		assertResult(segmentRetry.getAfter(), 1, 4.5f);
+
+		SegmentResponse.Builder retry = segment(1, 10, 4.2f, 3.8f).setNext(result(1, 2, 3.6f));
+		List<InternalQueryResponse> retried = QueryCombiner.addRetryResults(responses(segment0, segment1), responses(retry));
+		SegmentResponse retriedSegment = retried.get(0).getIndexSegmentResponse(0).getSegmentReponse(1);
+		assertEquals(3, retriedSegment.getScoredResultCount());
+		assertEquals(2, retriedSegment.getScoredResult(2).getResultIndex());
+		assertResult(retriedSegment.getNext(), 1, 3.6f);
+
+		queryCombiner = combine(indexMap(2), request(3).build(), retried);
+		QueryResponse queryResponse = queryCombiner.getQueryResponse();
+		assertFalse(queryCombiner.isShort());
+		assertResult(queryResponse.getResults(0), 0, 5);
+		assertResult(queryResponse.getResults(1), 1, 4.5f);
+		assertResult(queryResponse.getResults(2), 1, 4.2f);
+	}
+
+	@Test
+	public void testWithinTolerance() throws Exception {
+		SegmentResponse.Builder segment0 = segment(0, 10, 5, 4, 3.5f).setNext(result(0, 3, 3));
+		SegmentResponse.Builder segment1 = segment(1, 10, 4.5f).setNext(result(1, 1, 4.02f));
+		QueryCombiner queryCombiner = combine(indexMap(2), request(3).build(), responses(segment0, segment1));
+		queryCombiner.getQueryResponse();
+
+		assertFalse(queryCombiner.isShort());
+		assertTrue(queryCombiner.getShortSegments().isEmpty());
+	}
+
+	@Test
+	public void testShortSegmentAfterLastResult() throws Exception {
+		ScoredResult lastForSegment0 = result(0, 0, 6.5f);
+		ScoredResult lastForSegment1 = result(1, 0, 6);
+		LastResult lastResult = LastResult.newBuilder()
+				.addLastIndexResult(LastIndexResult.newBuilder().setIndexName(INDEX_NAME).addLastForSegment(lastForSegment0).addLastForSegment(lastForSegment1))
+				.build();
+
+		SegmentResponse.Builder segment0 = segment(0, 10, 5, 4).setNext(result(0, 2, 3));
+		SegmentResponse.Builder segment1 = segment(1, 10).setNext(result(1, 0, 4.5f));
+		QueryCombiner queryCombiner = combine(indexMap(2), request(2).setLastResult(lastResult).build(), responses(segment0, segment1));
+		queryCombiner.getQueryResponse();
+
+		assertTrue(queryCombiner.isShort());
+		SegmentRetry segmentRetry = queryCombiner.getShortSegments().get(0);
+		assertEquals(1, segmentRetry.getSegmentNumber());
+		assertEquals(lastForSegment1, segmentRetry.getAfter());
+	}
+
+	@Test(expectedExceptions = Exception.class)
+	public void testMissingSegment() throws Exception {
+		combine(indexMap(3), request(3).build(), responses(segment(0, 3, 5, 1, 3), segment(1, 1, 4)));
+	}
+
+}
@@ -0,0 +1,85 @@
+package org.lumongo.test.cluster;
+
+import org.lumongo.cluster.message.Lumongo.FieldSort;
+import org.lumongo.cluster.message.Lumongo.IndexSettings;
+import org.lumongo.cluster.message.Lumongo.SortRequest;
+import org.lumongo.server.search.RequestFactorTuner;
+import org.testng.annotations.Test;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+public class RequestFactorTunerTest {
+
+	private static final double DELTA = 0.0001;
+
+	private final IndexSettings indexSettings = IndexSettings.newBuilder().setRequestFactor(2.0).setMinRequestFactor(1.0).setMaxRequestFactor(10.0)
+			.build();
+
+	private static SortRequest sortOn(String field) {
+		return SortRequest.newBuilder().addFieldSort(FieldSort.newBuilder().setSortField(field)).build();
+	}
+
+	@Test
+	public void testDefault() {
+		RequestFactorTuner tuner = new RequestFactorTuner();
+		assertEquals(2.0, tuner.getRequestFactor(indexSettings, null), DELTA);
+
+		IndexSettings bounded = indexSettings.toBuilder().setRequestFactor(20.0).build();
+		assertEquals(10.0, tuner.getDefaultRequestFactor(bounded), DELTA);
+
+		tuner.record(indexSettings, null, 0, 100, true);
+		assertEquals(2.0, tuner.getRequestFactor(indexSettings, null), DELTA);
+	}
+
+	@Test
+	public void testShortIncreases() {
+		RequestFactorTuner tuner = new RequestFactorTuner();
+		tuner.record(indexSettings, null, 10, 10, true);
+		assertEquals(3.0, tuner.getRequestFactor(indexSettings, null), DELTA);
+		tuner.record(indexSettings, null, 10, 10, true);
+		assertEquals(4.5, tuner.getRequestFactor(indexSettings, null), DELTA);
+	}
+
+	@Test
+	public void testDeepPageIncreases() {
+		RequestFactorTuner tuner = new RequestFactorTuner();
+		tuner.record(indexSettings, null, 10, 40, false);
+		assertEquals(5.0, tuner.getRequestFactor(indexSettings, null), DELTA);
+	}
+
+	@Test
+	public void testSlowDecrease() {
+		RequestFactorTuner tuner = new RequestFactorTuner();
+		tuner.record(indexSettings, null, 10, 10, false);
+		assertEquals(1.985, tuner.getRequestFactor(indexSettings, null), DELTA);
+
+		for (int i = 0; i < 1000; i++) {
+			tuner.record(indexSettings, null, 10, 10, false);
+		}
+		assertEquals(1.25, tuner.getRequestFactor(indexSettings, null), DELTA);
+	}
+
+	@Test
+	public void testBounds() {
+		RequestFactorTuner tuner = new RequestFactorTuner();
+		IndexSettings bounded = indexSettings.toBuilder().setMaxRequestFactor(4.0).build();
+		tuner.record(bounded, null, 10, 100, false);
+		assertEquals(4.0, tuner.getRequestFactor(bounded, null), DELTA);
+		tuner.record(bounded, null, 10, 100, true);
+		assertEquals(4.0, tuner.getRequestFactor(bounded, null), DELTA);
+
+		//settings changed after learning still bound the factor
+		IndexSettings lowered = indexSettings.toBuilder().setMaxRequestFactor(3.0).build();
+		assertEquals(3.0, tuner.getRequestFactor(lowered, null), DELTA);
+	}
+
+	@Test
+	public void testSortsSeparate() {
+		RequestFactorTuner tuner = new RequestFactorTuner();
+		tuner.record(indexSettings, sortOn("rating"), 10, 10, true);
+		assertEquals(3.0, tuner.getRequestFactor(indexSettings, sortOn("rating")), DELTA);
+		assertEquals(2.0, tuner.getRequestFactor(indexSettings, sortOn("title")), DELTA);
+		assertEquals(2.0, tuner.getRequestFactor(indexSettings, null), DELTA);
+		assertEquals(1, tuner.getRequestFactors().size());
+	}
+}
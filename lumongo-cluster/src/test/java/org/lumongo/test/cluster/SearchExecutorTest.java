@@ -0,0 +1,132 @@
+package org.lumongo.test.cluster;
+
+import org.lumongo.server.search.SearchExecutor;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+public class SearchExecutorTest {
+
+	private SearchExecutor searchExecutor;
+	private CountDownLatch release;
+
+	@AfterMethod
+	public void shutdown() {
+		release.countDown();
+		searchExecutor.shutdown();
+	}
+
+	/**
+	 * A single worker held busy so submitted tasks stay queued until release
+	 */
+	private void createBlocked(int queueDepth) throws Exception {
+		searchExecutor = new SearchExecutor(1, queueDepth);
+		release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		searchExecutor.submit("blocker", () -> {
+			started.countDown();
+			release.await();
+			return null;
+		});
+		started.await();
+	}
+
+	private void assertRejected(String indexName) {
+		try {
+			searchExecutor.submit(indexName, () -> null);
+			fail("Expected the search for <" + indexName + "> to be rejected");
+		}
+		catch (RejectedExecutionException e) {
+			//expected
+		}
+	}
+
+	@Test
+	public void testQueueDepth() throws Exception {
+		createBlocked(4);
+
+		//one task each is within the fair share of every index
+		for (String indexName : Arrays.asList("a", "b", "c", "d")) {
+			searchExecutor.submit(indexName, () -> null);
+		}
+		assertEquals(4, searchExecutor.getQueuedCount());
+
+		assertRejected("e");
+		assertEquals(4, searchExecutor.getQueuedCount());
+		assertEquals(1, searchExecutor.getRejectedCount());
+	}
+
+	@Test
+	public void testFairShare() throws Exception {
+		createBlocked(4);
+
+		searchExecutor.submit("b", () -> null);
+		searchExecutor.submit("a", () -> null);
+		searchExecutor.submit("a", () -> null);
+
+		//past half the queue depth an index over its share of the busy indexes is rejected while the others still fit
+		assertRejected("a");
+		searchExecutor.submit("b", () -> null);
+
+		assertEquals(4, searchExecutor.getQueuedCount());
+		assertEquals(Integer.valueOf(2), searchExecutor.getQueuedCountByIndex().get("a"));
+		assertEquals(Integer.valueOf(2), searchExecutor.getQueuedCountByIndex().get("b"));
+	}
+
+	@Test
+	public void testRoundRobin() throws Exception {
+		createBlocked(100);
+
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		List<Future<String>> futures = new ArrayList<>();
+		for (String task : Arrays.asList("a1", "a2", "a3", "b1", "b2")) {
+			futures.add(searchExecutor.submit(task.substring(0, 1), () -> {
+				order.add(task);
+				return task;
+			}));
+		}
+
+		release.countDown();
+		for (Future<String> future : futures) {
+			future.get();
+		}
+		assertEquals(Arrays.asList("a1", "b1", "a2", "b2", "a3"), order);
+	}
+
+	@Test
+	public void testRemoveIndex() throws Exception {
+		createBlocked(100);
+
+		Future<Object> removed = searchExecutor.submit("removed", () -> null);
+		Future<Object> kept = searchExecutor.submit("kept", () -> null);
+		assertEquals(2, searchExecutor.getQueuedCount());
+
+		searchExecutor.removeIndex("removed");
+		assertTrue(removed.isCancelled());
+		assertEquals(1, searchExecutor.getQueuedCount());
+		assertFalse(searchExecutor.getQueuedCountByIndex().containsKey("removed"));
+
+		release.countDown();
+		kept.get();
+		try {
+			removed.get();
+			fail("Expected the search of the removed index to be cancelled");
+		}
+		catch (CancellationException e) {
+			//expected
+		}
+	}
+}
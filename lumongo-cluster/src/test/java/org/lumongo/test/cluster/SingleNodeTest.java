@@ -2,6 +2,7 @@ package org.lumongo.test.cluster;
 
 import org.bson.Document;
 import org.lumongo.DefaultAnalyzers;
+import org.lumongo.client.command.BatchStore;
 import org.lumongo.client.command.CursorHelper;
 import org.lumongo.client.command.DeleteAllAssociated;
 import org.lumongo.client.command.DeleteAssociated;
@@ -14,6 +15,7 @@ import org.lumongo.client.command.Query;
 import org.lumongo.client.command.Store;
 import org.lumongo.client.config.IndexConfig;
 import org.lumongo.client.pool.LumongoWorkPool;
+import org.lumongo.client.result.BatchStoreResult;
 import org.lumongo.client.result.FetchResult;
 import org.lumongo.client.result.GetIndexesResult;
 import org.lumongo.client.result.QueryResult;
@@ -624,7 +626,73 @@ public class SingleNodeTest extends ServerTestBase {
 	}
 
 	@Test
-	public void test09DeleteIndex() throws Exception {
+	public void test09BatchStore() throws Exception {
+		LumongoWorkPool lumongoWorkPool = getLumongoWorkPool();
+
+		final int DOCUMENTS_LOADED = 20;
+		final String uniqueIdPrefix = "batchId-";
+		{
+			BatchStore batchStore = new BatchStore();
+			for (int i = 0; i < DOCUMENTS_LOADED; i++) {
+				String uniqueId = uniqueIdPrefix + i;
+
+				Document document = new Document();
+				document.put("uid", uniqueId);
+				document.put("issn", "5555-5555");
+				document.put("title", "Batch Loaded Records");
+				document.put("an", i);
+
+				batchStore.addStore(new Store(uniqueId, MY_TEST_INDEX).setResultDocument(ResultDocBuilder.newBuilder().setDocument(document)));
+			}
+
+			//a later store of the same unique id in a batch replaces the earlier one
+			Document document = new Document();
+			document.put("uid", uniqueIdPrefix + 0);
+			document.put("issn", "6666-6666");
+			document.put("title", "Batch Loaded Records");
+			batchStore.addStore(new Store(uniqueIdPrefix + 0, MY_TEST_INDEX).setResultDocument(ResultDocBuilder.newBuilder().setDocument(document)));
+
+			batchStore.addStore(new Store("batchMissingIndex", "someMissingIndex").setResultDocument(ResultDocBuilder.newBuilder().setDocument(document)));
+
+			BatchStoreResult batchStoreResult = lumongoWorkPool.batchStore(batchStore);
+			assertEquals("Expected a status for each store", DOCUMENTS_LOADED + 2, batchStoreResult.getStoreStatuses().size());
+			assertEquals("Expected only the missing index store to fail", 1, batchStoreResult.getFailures().size());
+			assertEquals("Unique id does not match expected", "batchMissingIndex", batchStoreResult.getFailures().get(0).getUniqueId());
+			assertEquals("Status order does not match request order", uniqueIdPrefix + 1, batchStoreResult.getStoreStatuses().get(1).getUniqueId());
+		}
+		{
+			QueryResult qr = lumongoWorkPool.query(new Query(MY_TEST_INDEX, "title:batch", 100));
+			assertEquals("Total hits is not " + DOCUMENTS_LOADED, DOCUMENTS_LOADED, qr.getTotalHits());
+
+			qr = lumongoWorkPool.query(new Query(MY_TEST_INDEX, "issn:6666-6666", 10));
+			assertEquals("Total hits is not 1", 1, qr.getTotalHits());
+
+			FetchResult response = lumongoWorkPool.fetch(new FetchDocument(uniqueIdPrefix + 0, MY_TEST_INDEX));
+			assertEquals("Fetched document is not the last stored", "6666-6666", response.getDocument().get("issn"));
+		}
+		{
+			//a single segment so the document that fails conversion shares its segment batch with the others
+			BatchStore batchStore = new BatchStore();
+			for (int i = 0; i < DOCUMENTS_LOADED; i++) {
+				Document document = new Document();
+				document.put("title", "Batch Converted Records");
+				document.put("an", i == 5 ? "notANumber" : i);
+
+				batchStore.addStore(new Store("batchConvert-" + i, FACET_TEST_INDEX).setResultDocument(ResultDocBuilder.newBuilder().setDocument(document)));
+			}
+
+			BatchStoreResult batchStoreResult = lumongoWorkPool.batchStore(batchStore);
+			assertEquals("Expected only the document that fails conversion to fail", 1, batchStoreResult.getFailures().size());
+			assertEquals("Unique id does not match expected", "batchConvert-5", batchStoreResult.getFailures().get(0).getUniqueId());
+			assertTrue("Expected an error message for the failed document", !batchStoreResult.getFailures().get(0).getErrorMessage().isEmpty());
+
+			QueryResult qr = lumongoWorkPool.query(new Query(FACET_TEST_INDEX, "title:converted", 100));
+			assertEquals("Total hits is not " + (DOCUMENTS_LOADED - 1), DOCUMENTS_LOADED - 1, qr.getTotalHits());
+		}
+	}
+
+	@Test
+	public void test10DeleteIndex() throws Exception {
 		LumongoWorkPool lumongoWorkPool = getLumongoWorkPool();
 
 		GetIndexesResult gir = null;
@@ -637,7 +705,7 @@ public class SingleNodeTest extends ServerTestBase {
 	}
 
 	@AfterClass
-	public void test10Shutdown() throws Exception {
+	public void test11Shutdown() throws Exception {
 		stopSuite();
 	}
 }
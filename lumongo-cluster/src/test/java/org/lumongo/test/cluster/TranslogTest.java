@@ -0,0 +1,308 @@
+package org.lumongo.test.cluster;
+
+import org.lumongo.cluster.message.Lumongo.ResultDocument;
+import org.lumongo.server.index.Translog;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+public class TranslogTest {
+
+	private Path directory;
+
+	@BeforeMethod
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("translogTest");
+	}
+
+	@AfterMethod
+	public void deleteDirectory() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	private static class RecordingHandler implements Translog.Handler {
+		private final List<String> changes = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public void index(ResultDocument resultDocument) {
+			changes.add("index:" + resultDocument.getUniqueId());
+		}
+
+		@Override
+		public void delete(String uniqueId) {
+			changes.add("delete:" + uniqueId);
+		}
+
+		@Override
+		public void deleteAll() {
+			changes.add("deleteAll");
+		}
+	}
+
+	private static ResultDocument getResultDocument(String uniqueId) {
+		return ResultDocument.newBuilder().setUniqueId(uniqueId).setIndexName("translogTest").build();
+	}
+
+	/**
+	 * Commits the first generation of a translog opened with no earlier commit, as a segment does
+	 * @return commit data of the commit
+	 */
+	private static Map<String, String> commitFirstGeneration(Translog translog) throws IOException {
+		Map<String, String> commitData = translog.rollGeneration();
+		translog.trim(commitData);
+		return commitData;
+	}
+
+	private TreeMap<Long, Path> getGenerationFiles(Map<String, String> commitData) throws IOException {
+		TreeMap<Long, Path> generationFiles = new TreeMap<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, commitData.get(Translog.TRANSLOG_UUID) + ".*")) {
+			for (Path file : files) {
+				generationFiles.put(Long.parseLong(file.getFileName().toString().split("\\.")[1]), file);
+			}
+		}
+		return generationFiles;
+	}
+
+	private static void corrupt(Path file, long position) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocate(1);
+			channel.read(buffer, position);
+			buffer.put(0, (byte) (buffer.get(0) ^ 0x55));
+			buffer.rewind();
+			channel.write(buffer, position);
+		}
+	}
+
+	private static void truncate(Path file, long bytes) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - bytes);
+		}
+	}
+
+	private static int countFiles(Path directory) throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path ignored : files) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		Translog translog = new Translog(directory, new HashMap<>());
+		Map<String, String> commitData = commitFirstGeneration(translog);
+
+		translog.addIndex(getResultDocument("a"));
+		translog.addDelete("b");
+		translog.addDeleteAll();
+		translog.sync(translog.addIndex(getResultDocument("c")));
+		translog.close();
+
+		Translog reopened = new Translog(directory, commitData);
+		RecordingHandler handler = new RecordingHandler();
+		assertEquals(4, reopened.replay(handler));
+		assertEquals(Arrays.asList("index:a", "delete:b", "deleteAll", "index:c"), handler.changes);
+		reopened.close();
+	}
+
+	@Test
+	public void testTornAndCorruptTail() throws Exception {
+		Translog translog = new Translog(directory, new HashMap<>());
+		Map<String, String> commitData = commitFirstGeneration(translog);
+
+		translog.addIndex(getResultDocument("a"));
+		translog.addDelete("b");
+		translog.addDelete("c");
+		translog.close();
+		Path file = getGenerationFiles(commitData).lastEntry().getValue();
+
+		//a last record that does not match its checksum
+		corrupt(file, Files.size(file) - 1);
+		Translog reopened = new Translog(directory, commitData);
+		RecordingHandler handler = new RecordingHandler();
+		assertEquals(2, reopened.replay(handler));
+		assertEquals(Arrays.asList("index:a", "delete:b"), handler.changes);
+		reopened.close();
+
+		//a crash part way through the record before it, the last record is ten bytes
+		truncate(file, 11);
+		reopened = new Translog(directory, commitData);
+		handler = new RecordingHandler();
+		assertEquals(1, reopened.replay(handler));
+		assertEquals(Collections.singletonList("index:a"), handler.changes);
+		reopened.close();
+	}
+
+	@Test
+	public void testCorruptOlderGeneration() throws Exception {
+		Translog translog = new Translog(directory, new HashMap<>());
+		Map<String, String> commitData = commitFirstGeneration(translog);
+
+		translog.addDelete("a");
+		translog.addDelete("b");
+		//a commit that never completed so both generations are still needed
+		translog.rollGeneration();
+		translog.addDelete("c");
+		translog.close();
+
+		TreeMap<Long, Path> generationFiles = getGenerationFiles(commitData);
+		assertEquals(2, generationFiles.size());
+		Path older = generationFiles.firstEntry().getValue();
+
+		//replaying the newer generation without the lost change would reorder the writes
+		corrupt(older, Files.size(older) - 1);
+		Translog reopened = new Translog(directory, commitData);
+		try {
+			reopened.replay(new RecordingHandler());
+			fail("Expected a corrupt older generation to fail the replay");
+		}
+		catch (IOException e) {
+			//expected
+		}
+		reopened.close();
+
+		corrupt(older, Files.size(older) - 1);
+		truncate(older, 1);
+		reopened = new Translog(directory, commitData);
+		try {
+			reopened.replay(new RecordingHandler());
+			fail("Expected a torn older generation to fail the replay");
+		}
+		catch (IOException e) {
+			//expected
+		}
+		reopened.close();
+	}
+
+	@Test
+	public void testRollAndTrim() throws Exception {
+		Translog translog = new Translog(directory, new HashMap<>());
+		translog.addDelete("a");
+		Map<String, String> firstCommit = translog.rollGeneration();
+		translog.addDelete("b");
+		Map<String, String> secondCommit = translog.rollGeneration();
+		translog.addDelete("c");
+		assertEquals(3, countFiles(directory));
+
+		translog.trim(firstCommit);
+		assertEquals(2, countFiles(directory));
+		translog.trim(secondCommit);
+		assertEquals(1, countFiles(directory));
+		translog.close();
+
+		//only the change after the last commit is replayed
+		Translog reopened = new Translog(directory, secondCommit);
+		RecordingHandler handler = new RecordingHandler();
+		assertEquals(1, reopened.replay(handler));
+		assertEquals(Collections.singletonList("delete:c"), handler.changes);
+
+		//the replayed files go once the commit that includes them is made
+		reopened.trim(reopened.rollGeneration());
+		assertEquals(1, countFiles(directory));
+		reopened.close();
+	}
+
+	@Test
+	public void testStaleFilesDeleted() throws Exception {
+		Translog translog = new Translog(directory, new HashMap<>());
+		Map<String, String> commitData = commitFirstGeneration(translog);
+		translog.addDelete("a");
+		translog.close();
+
+		String translogUUID = commitData.get(Translog.TRANSLOG_UUID);
+		Files.createFile(directory.resolve("otherUUID.5.tlog"));
+		Files.createFile(directory.resolve(translogUUID + ".1.tlog"));
+		assertEquals(3, countFiles(directory));
+
+		//another id and generations older than the commit are never replayed
+		Translog reopened = new Translog(directory, commitData);
+		assertTrue(Files.notExists(directory.resolve("otherUUID.5.tlog")));
+		assertTrue(Files.notExists(directory.resolve(translogUUID + ".1.tlog")));
+		assertEquals(2, countFiles(directory));
+		assertEquals(1, reopened.replay(new RecordingHandler()));
+		reopened.close();
+
+		//a segment committed without a translog keeps none
+		new Translog(directory, new HashMap<>()).close();
+		assertEquals(1, countFiles(directory));
+	}
+
+	@Test
+	public void testGroupSync() throws Exception {
+		Translog translog = new Translog(directory, new HashMap<>());
+		Map<String, String> commitData = commitFirstGeneration(translog);
+
+		long location = translog.addDelete("a");
+		translog.sync(location);
+		long laterLocation = translog.addDelete("b");
+		assertTrue(laterLocation > location);
+
+		//the roll syncs and closes the old generation, a sync covered by it must not touch the closed channel
+		Map<String, String> rolled = translog.rollGeneration();
+		translog.sync(laterLocation);
+		translog.sync(location);
+
+		int threads = 8;
+		int changesPerThread = 100;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < changesPerThread; i++) {
+						translog.sync(translog.addIndex(getResultDocument(thread + "-" + i)));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		translog.close();
+
+		//the older generation was not trimmed so it is replayed first
+		Translog reopened = new Translog(directory, commitData);
+		RecordingHandler handler = new RecordingHandler();
+		assertEquals(threads * changesPerThread + 2, reopened.replay(handler));
+		assertEquals(Arrays.asList("delete:a", "delete:b"), handler.changes.subList(0, 2));
+		reopened.close();
+
+		reopened = new Translog(directory, rolled);
+		assertEquals(threads * changesPerThread, reopened.replay(new RecordingHandler()));
+		reopened.close();
+	}
+}
@@ -24,6 +24,8 @@ public class LumongoConstants {
 	public static final String INDEXES_URL = "indexes";
 	public static final String MEMBERS_URL = "members";
 	public static final String STATS_URL = "stats";
+	public static final String LATENCY_URL = "latency";
+	public static final String METRICS_URL = "metrics";
 
 	public static final String QUERY = "q";
 	public static final String QUERY_FIELD = "qf";
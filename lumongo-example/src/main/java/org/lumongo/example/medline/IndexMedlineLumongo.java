@@ -1,11 +1,12 @@
 package org.lumongo.example.medline;
 
 import org.apache.log4j.Logger;
+import org.lumongo.client.command.BatchStore;
 import org.lumongo.client.command.Store;
 import org.lumongo.client.config.LumongoPoolConfig;
 import org.lumongo.client.pool.LumongoWorkPool;
 import org.lumongo.client.result.CreateOrUpdateIndexResult;
-import org.lumongo.client.result.StoreResult;
+import org.lumongo.client.result.BatchStoreResult;
 import org.lumongo.example.medline.schema.MedlineCitation;
 import org.lumongo.fields.Mapper;
 import org.lumongo.util.LogUtil;
@@ -16,7 +17,6 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class IndexMedlineLumongo {
@@ -26,6 +26,9 @@ public class IndexMedlineLumongo {
 	
 	private static LumongoWorkPool lumongoWorkPool;
 	private static Mapper<MedlineDocument> mapper;
+
+	private static final int BATCH_SIZE = 500;
+	private static BatchStore batchStore = new BatchStore();
 	
 	public static void main(String[] args) throws Exception {
 		
@@ -67,7 +70,7 @@ public class IndexMedlineLumongo {
 			public void handleMedlineDocument(MedlineDocument document) throws Exception {
 				Store store = mapper.createStore(document);
 				
-				@SuppressWarnings("unused") StoreResult sr = lumongoWorkPool.store(store);
+				storeBatch(addToBatch(store));
 				
 				int c = counter.incrementAndGet();
 				if (c % 50000 == 0) {
@@ -96,7 +99,32 @@ public class IndexMedlineLumongo {
 
 		s.shutdown();
 
+		storeBatch(drainBatch());
+
 		lumongoWorkPool.shutdown();
 	}
+
+	private static synchronized BatchStore addToBatch(Store store) {
+		batchStore.addStore(store);
+		if (batchStore.size() >= BATCH_SIZE) {
+			return drainBatch();
+		}
+		return null;
+	}
+
+	private static synchronized BatchStore drainBatch() {
+		BatchStore fullBatch = batchStore;
+		batchStore = new BatchStore();
+		return fullBatch;
+	}
+
+	private static void storeBatch(BatchStore fullBatch) throws Exception {
+		if (fullBatch != null && fullBatch.size() > 0) {
+			BatchStoreResult batchStoreResult = lumongoWorkPool.batchStore(fullBatch);
+			if (batchStoreResult.hasFailures()) {
+				System.err.println("Failed to store: " + batchStoreResult.getFailures());
+			}
+		}
+	}
 	
 }
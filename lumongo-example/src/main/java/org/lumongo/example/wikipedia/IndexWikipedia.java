@@ -3,11 +3,12 @@ package org.lumongo.example.wikipedia;
 import info.bliki.wiki.filter.PlainTextConverter;
 import info.bliki.wiki.model.WikiModel;
 import org.apache.log4j.Logger;
+import org.lumongo.client.command.BatchStore;
 import org.lumongo.client.command.Store;
 import org.lumongo.client.config.LumongoPoolConfig;
 import org.lumongo.client.pool.LumongoWorkPool;
 import org.lumongo.client.result.CreateOrUpdateIndexResult;
-import org.lumongo.client.result.StoreResult;
+import org.lumongo.client.result.BatchStoreResult;
 import org.lumongo.example.wikipedia.schema.ContributorType;
 import org.lumongo.example.wikipedia.schema.PageType;
 import org.lumongo.example.wikipedia.schema.RedirectType;
@@ -19,7 +20,6 @@ import org.lumongo.xml.StaxJAXBReader;
 
 import java.io.File;
 import java.util.List;
-import java.util.concurrent.Future;
 
 public class IndexWikipedia {
 
@@ -30,6 +30,9 @@ public class IndexWikipedia {
 
 	private static LumongoWorkPool lumongoWorkPool;
 
+	private static final int BATCH_SIZE = 500;
+	private static BatchStore batchStore = new BatchStore();
+
 	private static WikiModel wikiModel = new WikiModel("/wiki/${image}", "/wiki/${title}");
 	private static PlainTextConverter plainTextConverter = new PlainTextConverter();
 
@@ -81,8 +84,7 @@ public class IndexWikipedia {
 
 					Store store = mapper.createStore(article);
 
-					@SuppressWarnings("unused")
-					Future<StoreResult> sr = lumongoWorkPool.storeAsync(store);
+					storeBatch(addToBatch(store));
 
 				}
 				if (++counter % 5000 == 0) {
@@ -98,9 +100,34 @@ public class IndexWikipedia {
 
 		s.handleFile(fileName);
 
+		storeBatch(drainBatch());
+
 		lumongoWorkPool.shutdown();
 	}
 
+	private static synchronized BatchStore addToBatch(Store store) {
+		batchStore.addStore(store);
+		if (batchStore.size() >= BATCH_SIZE) {
+			return drainBatch();
+		}
+		return null;
+	}
+
+	private static synchronized BatchStore drainBatch() {
+		BatchStore fullBatch = batchStore;
+		batchStore = new BatchStore();
+		return fullBatch;
+	}
+
+	private static void storeBatch(BatchStore fullBatch) throws Exception {
+		if (fullBatch != null && fullBatch.size() > 0) {
+			BatchStoreResult batchStoreResult = lumongoWorkPool.batchStore(fullBatch);
+			if (batchStoreResult.hasFailures()) {
+				System.err.println("Failed to store: " + batchStoreResult.getFailures());
+			}
+		}
+	}
+
 	public static Article formArticle(final PageType page) {
 		RedirectType redirectType = page.getRedirect();
 		if (redirectType != null) {
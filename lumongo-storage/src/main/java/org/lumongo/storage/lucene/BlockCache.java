@@ -0,0 +1,666 @@
+package org.lumongo.storage.lucene;
+
+import com.google.common.cache.CacheStats;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Block cache held off heap in direct buffer slabs and bounded by the bytes of the slabs allocated.  Eviction follows S3-FIFO: new blocks
+ * enter a small probation queue and only move to the main queue if they are read again before reaching its end, so one pass over a large
+ * file cannot push out the blocks queries keep coming back to.  Keys evicted from probation are remembered for a while and go straight to
+ * the main queue when loaded again.
+ *
+ * A hit only bumps a counter on the block, the queues and slabs are locked on loads and evictions.  Readers of a block use the optimistic
+ * read of its stamped lock and retry if the block was evicted under them, writers pin their block with a read lock so it is never evicted
+ * mid write.  Dirty blocks are handed to the {@link BlockFlusher} and passed over until they are clean, eviction never writes to Mongo
+ * but when nothing else can be evicted the caller waits for a flush rather than growing the cache.  Clean blocks evicted are copied to the
+ * {@link DiskBlockCache} when one is set
+ */
+class BlockCache {
+
+	private final static Logger log = Logger.getLogger(BlockCache.class);
+
+	private static final int SLAB_BYTES = 16 * 1024 * 1024;
+	private static final int SMALL_QUEUE_PERCENT = 10;
+	static final int MAX_FREQUENCY = 3;
+
+	static final int NOT_QUEUED = 0;
+	static final int SMALL_QUEUE = 1;
+	static final int MAIN_QUEUE = 2;
+
+	static class Slab {
+		private final int slotSize;
+		private final int slotCount;
+		private final long bytes;
+		private int freeCount;
+
+		private Slab(int slotSize, int slotCount) {
+			this.slotSize = slotSize;
+			this.slotCount = slotCount;
+			this.bytes = (long) slotSize * slotCount;
+		}
+	}
+
+	static class Slot {
+		private final Slab slab;
+		final ByteBuffer buffer;
+
+		private Slot(Slab slab, ByteBuffer buffer) {
+			this.slab = slab;
+			this.buffer = buffer;
+		}
+	}
+
+	private final BlockFlusher flusher;
+	private volatile DiskBlockCache diskCache;
+
+	private final ConcurrentHashMap<Long, MongoBlock> blocks;
+	private final ConcurrentHashMap<Long, FutureTask<MongoBlock>> loading;
+
+	private final Object lock;
+	private final ArrayDeque<MongoBlock> smallQueue;
+	private final ArrayDeque<MongoBlock> mainQueue;
+	private final LinkedHashMap<Long, Boolean> ghosts;
+	private long smallBytes;
+	private long mainBytes;
+
+	/**
+	 * Entries of blocks dropped while queued, skipped when they reach the end of their queue.  Guarded by the lock
+	 */
+	private int droppedInQueues;
+
+	/**
+	 * Flush of a dirty block passed over by the last {@link #nextVictim()}, guarded by the lock
+	 */
+	private CompletableFuture<Void> dirtyVictimFlush;
+
+	private final List<Slab> slabs;
+	private final Map<Integer, ArrayDeque<Slot>> freeSlots;
+	private long allocatedBytes;
+	private volatile long maxBytes;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder loadFailures;
+	private final LongAdder loadNanos;
+	private final LongAdder evictions;
+
+	BlockCache(long maxBytes, BlockFlusher flusher) {
+		this.maxBytes = maxBytes;
+		this.flusher = flusher;
+
+		this.blocks = new ConcurrentHashMap<>();
+		this.loading = new ConcurrentHashMap<>();
+
+		this.lock = new Object();
+		this.smallQueue = new ArrayDeque<>();
+		this.mainQueue = new ArrayDeque<>();
+		this.ghosts = new LinkedHashMap<>();
+
+		this.slabs = new ArrayList<>();
+		this.freeSlots = new HashMap<>();
+
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.loadFailures = new LongAdder();
+		this.loadNanos = new LongAdder();
+		this.evictions = new LongAdder();
+	}
+
+	MongoBlock getIfPresent(long key) {
+		return blocks.get(key);
+	}
+
+	/**
+	 * @param loader loads the block into a slot from {@link #allocate(int)} when it is not cached or already loading
+	 */
+	MongoBlock get(long key, Callable<MongoBlock> loader) throws IOException {
+		while (true) {
+			MongoBlock mongoBlock = blocks.get(key);
+			if (mongoBlock != null) {
+				if (mongoBlock.evicting) {
+					//being flushed and removed, load it again once it is gone
+					Thread.yield();
+					continue;
+				}
+				mongoBlock.touch();
+				hits.increment();
+				return mongoBlock;
+			}
+
+			FutureTask<MongoBlock> task = new FutureTask<>(() -> {
+				MongoBlock loaded = loader.call();
+				MongoBlock existing = blocks.putIfAbsent(key, loaded);
+				if (existing != null) {
+					release(loaded);
+					return existing;
+				}
+				admit(loaded);
+				return loaded;
+			});
+			FutureTask<MongoBlock> runningTask = loading.putIfAbsent(key, task);
+			if (runningTask != null) {
+				return getLoaded(runningTask);
+			}
+
+			misses.increment();
+			long start = System.nanoTime();
+			try {
+				task.run();
+				mongoBlock = getLoaded(task);
+				loadNanos.add(System.nanoTime() - start);
+				return mongoBlock;
+			}
+			catch (IOException e) {
+				loadFailures.increment();
+				throw e;
+			}
+			finally {
+				loading.remove(key, task);
+			}
+		}
+	}
+
+	/**
+	 * Adds a block loaded ahead of being read.  Its first hit is not counted as a second use so blocks read once by a scan stay on probation
+	 * @return false if the block was already cached and the slot of the given block was released
+	 */
+	boolean putReadAhead(MongoBlock mongoBlock) {
+		mongoBlock.frequency = -1;
+		MongoBlock existing = blocks.putIfAbsent(mongoBlock.blockKey, mongoBlock);
+		if (existing != null) {
+			release(mongoBlock);
+			return false;
+		}
+		admit(mongoBlock);
+		return true;
+	}
+
+	/**
+	 * Adds a block just created by a writer, replacing anything cached under its key such as a block of a deleted file that had the same file
+	 * number
+	 */
+	void putNew(MongoBlock mongoBlock) {
+		while (true) {
+			MongoBlock existing = blocks.putIfAbsent(mongoBlock.blockKey, mongoBlock);
+			if (existing == null) {
+				admit(mongoBlock);
+				return;
+			}
+			invalidate(existing);
+		}
+	}
+
+	/**
+	 * Drops a block without writing it
+	 */
+	private void invalidate(MongoBlock mongoBlock) {
+		synchronized (lock) {
+			if (mongoBlock.evicting) {
+				mongoBlock = null;
+			}
+			else {
+				mongoBlock.evicting = true;
+				dropFromQueue(mongoBlock);
+			}
+		}
+
+		if (mongoBlock == null) {
+			//already on its way out
+			Thread.yield();
+			return;
+		}
+
+		mongoBlock.stampedLock.writeLock();
+		synchronized (mongoBlock.lock) {
+			mongoBlock.dirty = false;
+		}
+		blocks.remove(mongoBlock.blockKey, mongoBlock);
+		evictions.increment();
+
+		synchronized (lock) {
+			freeSlot(mongoBlock.slot, 0);
+		}
+	}
+
+	private static MongoBlock getLoaded(FutureTask<MongoBlock> task) throws IOException {
+		try {
+			return task.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for block to load", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	private void admit(MongoBlock mongoBlock) {
+		synchronized (lock) {
+			if (ghosts.remove(mongoBlock.blockKey) != null) {
+				addToMain(mongoBlock);
+			}
+			else {
+				addToSmall(mongoBlock);
+			}
+		}
+	}
+
+	/**
+	 * Takes a free slot of the given size, evicting blocks when the cache is full.  When every block is waiting to be flushed the caller waits
+	 * for one of those flushes instead of growing the cache.  Slots are not cleared
+	 */
+	Slot allocate(int size) throws IOException {
+		while (true) {
+			MongoBlock victim;
+			CompletableFuture<Void> flushed = null;
+			synchronized (lock) {
+				Slot slot = takeFreeSlot(size);
+				if (slot != null) {
+					return slot;
+				}
+
+				if (allocatedBytes + getSlabBytes(size) <= maxBytes) {
+					try {
+						return allocateSlab(size);
+					}
+					catch (OutOfMemoryError e) {
+						log.warn("Failed to allocate a block cache slab with <" + allocatedBytes + "> bytes allocated, raise -XX:MaxDirectMemorySize or lower the cache size: " + e);
+					}
+				}
+
+				victim = nextVictim();
+				if (victim == null) {
+					flushed = dirtyVictimFlush;
+					if (flushed == null) {
+						//everything left is pinned by writers, which each pin a single block, so the cache is too small for the writers
+						log.warn("Every cached block is pinned by a writer, growing the block cache past <" + maxBytes + "> bytes");
+						try {
+							return allocateSlab(size);
+						}
+						catch (OutOfMemoryError e) {
+							throw new IOException("Failed to allocate a block cache slab with <" + allocatedBytes + "> bytes allocated", e);
+						}
+					}
+				}
+			}
+
+			if (victim != null) {
+				evict(victim, size);
+			}
+			else {
+				waitForFlush(flushed);
+			}
+		}
+	}
+
+	private static void waitForFlush(CompletableFuture<Void> flushed) throws IOException {
+		try {
+			flushed.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for a dirty block to be flushed", e);
+		}
+		catch (ExecutionException e) {
+			//the block stays dirty and is flushed again when it is next passed over
+		}
+	}
+
+	private Slot takeFreeSlot(int size) {
+		ArrayDeque<Slot> free = freeSlots.get(size);
+		if (free != null) {
+			Slot slot = free.pollFirst();
+			if (slot != null) {
+				slot.slab.freeCount--;
+				return slot;
+			}
+		}
+		return null;
+	}
+
+	private static long getSlabBytes(int size) {
+		return (long) Math.max(1, SLAB_BYTES / size) * size;
+	}
+
+	private Slot allocateSlab(int size) {
+		int slotCount = Math.max(1, SLAB_BYTES / size);
+		ByteBuffer memory = ByteBuffer.allocateDirect(slotCount * size);
+
+		Slab slab = new Slab(size, slotCount);
+		slabs.add(slab);
+		allocatedBytes += slab.bytes;
+
+		ArrayDeque<Slot> free = freeSlots.computeIfAbsent(size, k -> new ArrayDeque<>());
+		for (int i = 1; i < slotCount; i++) {
+			ByteBuffer buffer = memory.duplicate();
+			buffer.position(i * size);
+			buffer.limit(i * size + size);
+			free.addLast(new Slot(slab, buffer.slice()));
+		}
+		slab.freeCount = slotCount - 1;
+
+		ByteBuffer buffer = memory.duplicate();
+		buffer.limit(size);
+		return new Slot(slab, buffer.slice());
+	}
+
+	/**
+	 * Picks the next block to evict and marks it evicting, must hold the lock
+	 */
+	private MongoBlock nextVictim() {
+		int attempts = 2 * (smallQueue.size() + mainQueue.size()) + 1;
+		long smallTarget = (maxBytes * SMALL_QUEUE_PERCENT) / 100;
+		int smallPassedOver = 0;
+		dirtyVictimFlush = null;
+
+		while (attempts-- > 0) {
+			if (!smallQueue.isEmpty() && smallPassedOver < smallQueue.size() && (smallBytes >= smallTarget || mainQueue.isEmpty())) {
+				MongoBlock mongoBlock = smallQueue.pollLast();
+				if (mongoBlock.queue != SMALL_QUEUE) {
+					droppedInQueues--;
+					continue;
+				}
+				if (mongoBlock.frequency > 0) {
+					takeFromQueue(mongoBlock);
+					mongoBlock.frequency = 0;
+					addToMain(mongoBlock);
+					continue;
+				}
+				//only a second read earns the main queue, a block written once or being flushed waits its turn again on probation
+				if (mongoBlock.isPinned() || isDirty(mongoBlock)) {
+					smallQueue.addFirst(mongoBlock);
+					smallPassedOver++;
+					continue;
+				}
+				takeFromQueue(mongoBlock);
+				addGhost(mongoBlock.blockKey);
+				mongoBlock.evicting = true;
+				return mongoBlock;
+			}
+			else if (!mainQueue.isEmpty()) {
+				MongoBlock mongoBlock = mainQueue.pollLast();
+				if (mongoBlock.queue != MAIN_QUEUE) {
+					droppedInQueues--;
+					continue;
+				}
+				if (mongoBlock.frequency > 0 || mongoBlock.isPinned() || isDirty(mongoBlock)) {
+					if (mongoBlock.frequency > 0) {
+						mongoBlock.frequency--;
+					}
+					mainQueue.addFirst(mongoBlock);
+					continue;
+				}
+				takeFromQueue(mongoBlock);
+				mongoBlock.evicting = true;
+				return mongoBlock;
+			}
+			else {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private void addToSmall(MongoBlock mongoBlock) {
+		smallQueue.addFirst(mongoBlock);
+		smallBytes += mongoBlock.slot.slab.slotSize;
+		mongoBlock.queue = SMALL_QUEUE;
+	}
+
+	private void addToMain(MongoBlock mongoBlock) {
+		mainQueue.addFirst(mongoBlock);
+		mainBytes += mongoBlock.slot.slab.slotSize;
+		mongoBlock.queue = MAIN_QUEUE;
+	}
+
+	/**
+	 * Stops counting a block polled from the end of its queue, must hold the lock
+	 */
+	private void takeFromQueue(MongoBlock mongoBlock) {
+		if (mongoBlock.queue == SMALL_QUEUE) {
+			smallBytes -= mongoBlock.slot.slab.slotSize;
+		}
+		else if (mongoBlock.queue == MAIN_QUEUE) {
+			mainBytes -= mongoBlock.slot.slab.slotSize;
+		}
+		mongoBlock.queue = NOT_QUEUED;
+	}
+
+	/**
+	 * Takes a block leaving the cache out of its queue without searching the queue, its entry is skipped once it reaches the end.  The queues
+	 * are swept when most of their entries are dropped ones.  Must hold the lock
+	 */
+	private void dropFromQueue(MongoBlock mongoBlock) {
+		if (mongoBlock.queue == NOT_QUEUED) {
+			return;
+		}
+		takeFromQueue(mongoBlock);
+		droppedInQueues++;
+
+		if (droppedInQueues > 1024 && droppedInQueues > (smallQueue.size() + mainQueue.size()) / 2) {
+			smallQueue.removeIf(b -> b.queue != SMALL_QUEUE);
+			mainQueue.removeIf(b -> b.queue != MAIN_QUEUE);
+			droppedInQueues = 0;
+		}
+	}
+
+	/**
+	 * Remembers a key evicted from probation, forgetting the oldest once there are more than the main queue holds.  Must hold the lock
+	 */
+	private void addGhost(long key) {
+		ghosts.put(key, Boolean.TRUE);
+		Iterator<Long> iterator = ghosts.keySet().iterator();
+		while (ghosts.size() > Math.max(1024, mainQueue.size())) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	private boolean isDirty(MongoBlock mongoBlock) {
+		if (mongoBlock.dirty) {
+			CompletableFuture<Void> flushed = flusher.flush(mongoBlock);
+			if (dirtyVictimFlush == null) {
+				dirtyVictimFlush = flushed;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Frees the slot of the victim.  A writer that pinned the victim after it was chosen keeps it cached
+	 *
+	 * @param neededSize slot size the caller is evicting for, 0 when shrinking
+	 */
+	private void evict(MongoBlock victim, int neededSize) {
+		long stamp = victim.stampedLock.tryWriteLock();
+		if (stamp == 0) {
+			readmit(victim);
+			return;
+		}
+
+		if (victim.dirty) {
+			victim.stampedLock.unlockWrite(stamp);
+			readmit(victim);
+			flusher.flush(victim);
+			return;
+		}
+
+		//copied while write locked so no writer can change it, blocks of deleted files are not worth keeping
+		DiskBlockCache disk = diskCache;
+		if (disk != null && !victim.mongoFile.isClosed()) {
+			disk.store(victim);
+		}
+
+		//the write lock is never released so readers still holding the block see it is gone
+		blocks.remove(victim.blockKey, victim);
+		evictions.increment();
+
+		synchronized (lock) {
+			freeSlot(victim.slot, neededSize);
+		}
+	}
+
+	private void readmit(MongoBlock mongoBlock) {
+		synchronized (lock) {
+			mongoBlock.evicting = false;
+			addToMain(mongoBlock);
+		}
+	}
+
+	/**
+	 * Returns the slot of a block that was never admitted
+	 */
+	void release(MongoBlock mongoBlock) {
+		release(mongoBlock.slot);
+	}
+
+	void release(Slot slot) {
+		synchronized (lock) {
+			freeSlot(slot, 0);
+		}
+	}
+
+	/**
+	 * A slot on the heap outside of the cache for a reader that keeps its own blocks, it is never released
+	 */
+	static Slot allocateUncached(int size) {
+		return new Slot(null, ByteBuffer.allocate(size));
+	}
+
+	/**
+	 * Evicts a block now instead of letting it age out of its queue.  A block that is pinned, dirty or already being evicted is left alone
+	 */
+	void discard(MongoBlock mongoBlock) {
+		if (blocks.get(mongoBlock.blockKey) != mongoBlock) {
+			return;
+		}
+
+		synchronized (lock) {
+			if (mongoBlock.evicting) {
+				return;
+			}
+
+			long stamp = mongoBlock.stampedLock.tryWriteLock();
+			if (stamp == 0) {
+				return;
+			}
+			//writers only dirty a block they have pinned so it stays clean from here
+			if (mongoBlock.dirty) {
+				mongoBlock.stampedLock.unlockWrite(stamp);
+				return;
+			}
+
+			mongoBlock.evicting = true;
+			dropFromQueue(mongoBlock);
+
+			blocks.remove(mongoBlock.blockKey, mongoBlock);
+			evictions.increment();
+			freeSlot(mongoBlock.slot, 0);
+		}
+	}
+
+	private void freeSlot(Slot slot, int neededSize) {
+		Slab slab = slot.slab;
+		slab.freeCount++;
+		freeSlots.get(slab.slotSize).addFirst(slot);
+
+		if (slab.freeCount == slab.slotCount) {
+			boolean overMax = allocatedBytes > maxBytes;
+			boolean neededElsewhere = neededSize != 0 && neededSize != slab.slotSize && allocatedBytes + getSlabBytes(neededSize) > maxBytes;
+			if (overMax || neededElsewhere) {
+				dropSlab(slab);
+			}
+		}
+	}
+
+	private void dropSlab(Slab slab) {
+		slabs.remove(slab);
+		freeSlots.get(slab.slotSize).removeIf(slot -> slot.slab == slab);
+		allocatedBytes -= slab.bytes;
+	}
+
+	/**
+	 * Changes the size in place, evicting down to the new size when shrinking
+	 */
+	void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+
+		while (true) {
+			MongoBlock victim;
+			synchronized (lock) {
+				if (allocatedBytes <= this.maxBytes) {
+					return;
+				}
+
+				for (Iterator<Slab> iterator = new ArrayList<>(slabs).iterator(); iterator.hasNext() && allocatedBytes > this.maxBytes; ) {
+					Slab slab = iterator.next();
+					if (slab.freeCount == slab.slotCount) {
+						dropSlab(slab);
+					}
+				}
+				if (allocatedBytes <= this.maxBytes) {
+					return;
+				}
+
+				victim = nextVictim();
+				if (victim == null) {
+					return;
+				}
+			}
+			evict(victim, 0);
+		}
+	}
+
+	/**
+	 * @param diskCache tier clean blocks are copied to when evicted, null for none
+	 */
+	void setDiskCache(DiskBlockCache diskCache) {
+		this.diskCache = diskCache;
+	}
+
+	long getMaxBytes() {
+		return maxBytes;
+	}
+
+	long getAllocatedBytes() {
+		synchronized (lock) {
+			return allocatedBytes;
+		}
+	}
+
+	long getCachedBytes() {
+		synchronized (lock) {
+			return smallBytes + mainBytes;
+		}
+	}
+
+	long getSize() {
+		return blocks.size();
+	}
+
+	CacheStats getStats() {
+		return new CacheStats(hits.sum(), misses.sum(), misses.sum() - loadFailures.sum(), loadFailures.sum(), loadNanos.sum(), evictions.sum());
+	}
+}
@@ -0,0 +1,74 @@
+package org.lumongo.storage.lucene;
+
+import org.apache.lucene.codecs.compressing.CompressionMode;
+import org.apache.lucene.codecs.compressing.Compressor;
+import org.apache.lucene.codecs.compressing.Decompressor;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compression of index blocks stored in Mongo.  The codec is recorded with each block so an index can change codec and still read blocks
+ * written before the change
+ */
+public enum BlockCodec {
+
+	NONE(null),
+	/**
+	 * Fast LZ4, cheap enough to not be noticed next to the Mongo round trip
+	 */
+	LZ4(CompressionMode.FAST),
+	/**
+	 * Deflate, smaller blocks for more CPU
+	 */
+	DEFLATE(CompressionMode.HIGH_COMPRESSION);
+
+	private final ThreadLocal<Compressor> compressors;
+	private final ThreadLocal<Decompressor> decompressors;
+
+	BlockCodec(CompressionMode compressionMode) {
+		if (compressionMode != null) {
+			this.compressors = ThreadLocal.withInitial(compressionMode::newCompressor);
+			this.decompressors = ThreadLocal.withInitial(compressionMode::newDecompressor);
+		}
+		else {
+			this.compressors = null;
+			this.decompressors = null;
+		}
+	}
+
+	/**
+	 * @return the compressed bytes or null if the codec is NONE or compressing does not make the bytes smaller
+	 */
+	public byte[] compress(byte[] bytes) throws IOException {
+		if (compressors == null || bytes.length == 0) {
+			return null;
+		}
+
+		byte[] buffer = new byte[bytes.length + (bytes.length >>> 6) + 64];
+		ByteArrayDataOutput out = new ByteArrayDataOutput(buffer);
+		compressors.get().compress(bytes, 0, bytes.length, out);
+
+		if (out.getPosition() >= bytes.length) {
+			return null;
+		}
+		return Arrays.copyOf(buffer, out.getPosition());
+	}
+
+	public byte[] decompress(byte[] compressed, int length) throws IOException {
+		if (decompressors == null) {
+			return compressed;
+		}
+
+		BytesRef bytesRef = new BytesRef();
+		decompressors.get().decompress(new ByteArrayDataInput(compressed), length, 0, length, bytesRef);
+		if (bytesRef.offset == 0 && bytesRef.bytes.length == length) {
+			return bytesRef.bytes;
+		}
+		return Arrays.copyOfRange(bytesRef.bytes, bytesRef.offset, bytesRef.offset + length);
+	}
+
+}
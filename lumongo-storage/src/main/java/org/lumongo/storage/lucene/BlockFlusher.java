@@ -0,0 +1,228 @@
+package org.lumongo.storage.lucene;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import org.apache.log4j.Logger;
+import org.bson.Document;
+import org.bson.types.Binary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes dirty blocks to Mongo behind the writers on its own threads.  A block is queued at most once no matter how often it is written
+ * before its turn, and queued blocks are written in unordered bulk writes per blocks collection.  Evictions hand dirty blocks here instead
+ * of writing them on the thread that needed the space
+ */
+class BlockFlusher {
+
+	private final static Logger log = Logger.getLogger(BlockFlusher.class);
+
+	private static final int MAX_BATCH_BLOCKS = 64;
+
+	private static final CompletableFuture<Void> FLUSHED = CompletableFuture.completedFuture(null);
+
+	private static class PendingWrite {
+		private final MongoBlock mongoBlock;
+		private final byte[] bytes;
+		private final CompletableFuture<Void> future;
+
+		public PendingWrite(MongoBlock mongoBlock, byte[] bytes, CompletableFuture<Void> future) {
+			this.mongoBlock = mongoBlock;
+			this.bytes = bytes;
+			this.future = future;
+		}
+	}
+
+	private final LinkedBlockingQueue<MongoBlock> queue;
+	private final ExecutorService pool;
+
+	private final LongAdder bulkWrites;
+	private final LongAdder failedBulkWrites;
+
+	BlockFlusher(int threads) {
+		this.queue = new LinkedBlockingQueue<>();
+		this.bulkWrites = new LongAdder();
+		this.failedBulkWrites = new LongAdder();
+
+		this.pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "lumongo-block-flusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (int i = 0; i < threads; i++) {
+			pool.execute(this::run);
+		}
+	}
+
+	/**
+	 * Queues the block if it is dirty and not already queued.  A block is written by one flush at a time, changes made while it is being
+	 * written are queued once that write finishes
+	 * @return completes once the block as of now is in Mongo
+	 */
+	CompletableFuture<Void> flush(MongoBlock mongoBlock) {
+		synchronized (mongoBlock.lock) {
+			if (!mongoBlock.dirty) {
+				return FLUSHED;
+			}
+			if (mongoBlock.pendingFlush != null) {
+				return mongoBlock.pendingFlush;
+			}
+			if (mongoBlock.inFlightFlush != null && mongoBlock.inFlightVersion == mongoBlock.version) {
+				return mongoBlock.inFlightFlush;
+			}
+			mongoBlock.pendingFlush = new CompletableFuture<>();
+			if (mongoBlock.inFlightFlush == null) {
+				queue.add(mongoBlock);
+			}
+			return mongoBlock.pendingFlush;
+		}
+	}
+
+	/**
+	 * Ends the write in flight for the block, the block stays dirty if it failed or was written again meanwhile
+	 */
+	private void finishFlush(MongoBlock mongoBlock, boolean stored) {
+		synchronized (mongoBlock.lock) {
+			mongoBlock.inFlightFlush = null;
+			if (stored && mongoBlock.version == mongoBlock.inFlightVersion) {
+				mongoBlock.dirty = false;
+			}
+			if (mongoBlock.pendingFlush != null) {
+				queue.add(mongoBlock);
+			}
+		}
+	}
+
+	private void run() {
+		List<MongoBlock> batch = new ArrayList<>(MAX_BATCH_BLOCKS);
+		while (true) {
+			try {
+				batch.add(queue.take());
+				queue.drainTo(batch, MAX_BATCH_BLOCKS - 1);
+				write(batch);
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			catch (Throwable t) {
+				log.error("Failed to flush blocks: " + t.getMessage(), t);
+			}
+			finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void write(List<MongoBlock> batch) {
+		Map<MongoDirectory, List<PendingWrite>> writesByDirectory = new IdentityHashMap<>();
+
+		for (MongoBlock mongoBlock : batch) {
+			CompletableFuture<Void> future;
+			byte[] bytes = null;
+			synchronized (mongoBlock.lock) {
+				future = mongoBlock.pendingFlush;
+				mongoBlock.pendingFlush = null;
+				if (mongoBlock.dirty && !mongoBlock.mongoFile.isClosed()) {
+					//stays dirty until stored so it is not evicted and later flushes wait on this write
+					bytes = mongoBlock.getBytes();
+					mongoBlock.inFlightFlush = future;
+					mongoBlock.inFlightVersion = mongoBlock.version;
+				}
+				else {
+					//blocks of deleted files are dropped
+					mongoBlock.dirty = false;
+				}
+			}
+
+			if (bytes == null) {
+				future.complete(null);
+			}
+			else {
+				writesByDirectory.computeIfAbsent(mongoBlock.mongoFile.getMongoDirectory(), k -> new ArrayList<>())
+						.add(new PendingWrite(mongoBlock, bytes, future));
+			}
+		}
+
+		for (Map.Entry<MongoDirectory, List<PendingWrite>> entry : writesByDirectory.entrySet()) {
+			write(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private void write(MongoDirectory mongoDirectory, List<PendingWrite> writes) {
+		BlockCodec blockCodec = mongoDirectory.getBlockCodec();
+		MongoCollection<Document> c = mongoDirectory.getBlocksCollection();
+
+		long storedBytes = 0;
+		try {
+			List<ReplaceOneModel<Document>> models = new ArrayList<>(writes.size());
+			for (PendingWrite write : writes) {
+				MongoBlock mongoBlock = write.mongoBlock;
+
+				Document query = new Document();
+				query.put(MongoDirectory.FILE_NUMBER, mongoBlock.mongoFile.fileNumber);
+				query.put(MongoDirectory.BLOCK_NUMBER, mongoBlock.blockNumber);
+
+				Document object = new Document();
+				object.put(MongoDirectory.FILE_NUMBER, mongoBlock.mongoFile.fileNumber);
+				object.put(MongoDirectory.BLOCK_NUMBER, mongoBlock.blockNumber);
+
+				//compressed on the flusher threads so writers never wait on it
+				byte[] compressed = blockCodec.compress(write.bytes);
+				if (compressed != null) {
+					object.put(MongoDirectory.BYTES, new Binary(compressed));
+					object.put(MongoDirectory.CODEC, blockCodec.name());
+					object.put(MongoDirectory.UNCOMPRESSED_LENGTH, write.bytes.length);
+					storedBytes += compressed.length;
+				}
+				else {
+					object.put(MongoDirectory.BYTES, new Binary(write.bytes));
+					storedBytes += write.bytes.length;
+				}
+
+				models.add(new ReplaceOneModel<>(query, object, new UpdateOptions().upsert(true)));
+			}
+
+			c.bulkWrite(models, new BulkWriteOptions().ordered(false));
+			bulkWrites.increment();
+		}
+		catch (RuntimeException | IOException e) {
+			failedBulkWrites.increment();
+			log.error("Failed to write <" + writes.size() + "> blocks to <" + c.getNamespace() + ">: " + e.getMessage(), e);
+			for (PendingWrite write : writes) {
+				//still dirty so the next flush or eviction retries it
+				finishFlush(write.mongoBlock, false);
+				write.future.completeExceptionally(e);
+			}
+			return;
+		}
+
+		MongoFile.recordStored(writes.size(), storedBytes);
+		for (PendingWrite write : writes) {
+			finishFlush(write.mongoBlock, true);
+			write.future.complete(null);
+		}
+	}
+
+	int getQueueSize() {
+		return queue.size();
+	}
+
+	long getBulkWrites() {
+		return bulkWrites.sum();
+	}
+
+	long getFailedBulkWrites() {
+		return failedBulkWrites.sum();
+	}
+}
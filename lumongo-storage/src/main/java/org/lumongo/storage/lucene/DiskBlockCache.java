@@ -0,0 +1,423 @@
+package org.lumongo.storage.lucene;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Second tier of the block cache in a memory mapped file on local disk.  Clean blocks evicted from memory are copied here and blocks not
+ * in memory are read from here before going to Mongo, so a restarted node or a segment loaded again reads local disk instead of the
+ * network.
+ *
+ * The file is split into slots of one block each, every slot has a header naming its index, file and block, the generation of the file
+ * and a checksum.  Slots are reused in clock order.  The headers are read again when the file is opened so blocks survive a restart, they
+ * are claimed by each directory as it is opened since the index numbers in block keys are only assigned in memory.  A block is used only if
+ * its file still has the generation it was stored with and its checksum matches, anything else is a miss
+ */
+class DiskBlockCache {
+
+	private final static Logger log = Logger.getLogger(DiskBlockCache.class);
+
+	private static final int MAGIC = 0x4C4D4243;
+	private static final int FILE_HEADER_BYTES = 4096;
+	private static final int SLOT_HEADER_BYTES = 32;
+	private static final int MAX_REGION_BYTES = 1 << 30;
+
+	private static final byte FREE = 0;
+	private static final byte UNCLAIMED = 1;
+	private static final byte CLAIMED = 2;
+
+	private final Path path;
+	private final FileChannel channel;
+	private final FileLock fileLock;
+	private final int blockSize;
+	private final int slotBytes;
+	private final int slotCount;
+	private final int slotsPerRegion;
+	private final MappedByteBuffer[] regions;
+
+	/**
+	 * Odd while a slot is being written, readers retry or miss if it changed while they copied
+	 */
+	private final AtomicLongArray versions;
+	private final byte[] referenced;
+
+	private final ConcurrentHashMap<Long, Integer> index;
+
+	private final Object lock;
+	private final byte[] states;
+	private final long[] slotKeys;
+	private final ArrayDeque<Integer> freeSlots;
+	private final Map<Long, List<Integer>> unclaimed;
+	private int hand;
+	private volatile boolean closed;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder stores;
+
+	/**
+	 * Opens the cache file, keeping the blocks in it if it was written with the same block size and slot count
+	 */
+	DiskBlockCache(Path path, long maxBytes, int blockSize) throws IOException {
+		this.path = path;
+		this.blockSize = blockSize;
+		this.slotBytes = SLOT_HEADER_BYTES + blockSize;
+		this.slotCount = (int) Math.min(Integer.MAX_VALUE, maxBytes / slotBytes);
+		this.slotsPerRegion = MAX_REGION_BYTES / slotBytes;
+
+		if (slotCount < 1) {
+			throw new IOException("Disk block cache <" + path + "> of <" + maxBytes + "> bytes can not hold a block of <" + blockSize + "> bytes");
+		}
+
+		Path parent = path.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		//slots are only guarded from threads of this process, another node sharing the file would overwrite them
+		this.fileLock = tryLock();
+		if (fileLock == null) {
+			channel.close();
+			throw new IOException("Disk block cache <" + path + "> is already in use, each node needs its own cache file");
+		}
+
+		boolean reuse = readFileHeader();
+		if (!reuse) {
+			channel.truncate(0);
+			writeFileHeader();
+		}
+
+		int regionCount = (slotCount + slotsPerRegion - 1) / slotsPerRegion;
+		this.regions = new MappedByteBuffer[regionCount];
+		for (int r = 0; r < regionCount; r++) {
+			int slots = Math.min(slotsPerRegion, slotCount - (r * slotsPerRegion));
+			long offset = FILE_HEADER_BYTES + ((long) r * slotsPerRegion * slotBytes);
+			regions[r] = channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) slots * slotBytes);
+		}
+
+		this.versions = new AtomicLongArray(slotCount);
+		this.referenced = new byte[slotCount];
+		this.index = new ConcurrentHashMap<>();
+
+		this.lock = new Object();
+		this.states = new byte[slotCount];
+		this.slotKeys = new long[slotCount];
+		this.freeSlots = new ArrayDeque<>();
+		this.unclaimed = new HashMap<>();
+
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.stores = new LongAdder();
+
+		int found = 0;
+		for (int slot = 0; slot < slotCount; slot++) {
+			ByteBuffer header = getSlotBuffer(slot);
+			long directoryId = header.getLong(0);
+			int length = header.getInt(24);
+			//the checksum is checked when the block is read, a slot torn by a crash is a miss then
+			if (reuse && directoryId != 0 && length > 0 && length <= blockSize) {
+				states[slot] = UNCLAIMED;
+				unclaimed.computeIfAbsent(directoryId, k -> new ArrayList<>()).add(slot);
+				found++;
+			}
+			else {
+				freeSlots.add(slot);
+			}
+		}
+
+		log.info("Opened disk block cache <" + path + "> with <" + slotCount + "> slots of <" + blockSize + "> bytes and <" + found + "> blocks kept");
+	}
+
+	private FileLock tryLock() throws IOException {
+		try {
+			return channel.tryLock();
+		}
+		catch (OverlappingFileLockException e) {
+			//held by another cache in this process
+			return null;
+		}
+	}
+
+	/**
+	 * Releases the cache file, blocks are no longer read from or stored in it
+	 */
+	void close() throws IOException {
+		synchronized (lock) {
+			closed = true;
+			index.clear();
+		}
+		try {
+			fileLock.release();
+		}
+		finally {
+			channel.close();
+		}
+		log.info("Closed disk block cache <" + path + ">");
+	}
+
+	private boolean readFileHeader() throws IOException {
+		if (channel.size() < FILE_HEADER_BYTES) {
+			return false;
+		}
+		ByteBuffer header = ByteBuffer.allocate(12);
+		channel.read(header, 0);
+		header.flip();
+		return header.getInt() == MAGIC && header.getInt() == blockSize && header.getInt() == slotCount;
+	}
+
+	private void writeFileHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(12);
+		header.putInt(MAGIC).putInt(blockSize).putInt(slotCount);
+		header.flip();
+		channel.write(header, 0);
+	}
+
+	/**
+	 * Stable id of a directory across restarts
+	 */
+	static long getDirectoryId(String dbname, String indexName) {
+		//64 bit FNV-1a, 0 marks an empty slot
+		long hash = 0xcbf29ce484222325L;
+		String key = dbname + "-" + indexName;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return (hash == 0) ? 1 : hash;
+	}
+
+	/**
+	 * Slice of the mapped file holding the slot, header first
+	 */
+	private ByteBuffer getSlotBuffer(int slot) {
+		ByteBuffer buffer = regions[slot / slotsPerRegion].duplicate();
+		int offset = (slot % slotsPerRegion) * slotBytes;
+		buffer.position(offset);
+		buffer.limit(offset + slotBytes);
+		return buffer.slice();
+	}
+
+	/**
+	 * Indexes the blocks of the directory that were stored before the cache was opened
+	 */
+	void claim(MongoDirectory mongoDirectory) {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			List<Integer> slots = unclaimed.remove(mongoDirectory.directoryId);
+			if (slots == null) {
+				return;
+			}
+
+			for (int slot : slots) {
+				//the clock may have reused it already
+				if (states[slot] != UNCLAIMED) {
+					continue;
+				}
+				ByteBuffer header = getSlotBuffer(slot);
+				long key = MongoBlock.computeBlockKey(mongoDirectory.indexNumber, header.getShort(16), header.getInt(20));
+				if (index.putIfAbsent(key, slot) == null) {
+					states[slot] = CLAIMED;
+					slotKeys[slot] = key;
+				}
+				else {
+					states[slot] = FREE;
+					freeSlots.add(slot);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the contents of the block or null if it is not stored for this generation of the file
+	 */
+	byte[] read(MongoFile mongoFile, int blockNumber) {
+		Integer slot = index.get(MongoBlock.computeBlockKey(mongoFile, blockNumber));
+		if (slot != null) {
+			byte[] bytes = read(slot, mongoFile, blockNumber);
+			if (bytes != null) {
+				referenced[slot] = 1;
+				hits.increment();
+				return bytes;
+			}
+		}
+		misses.increment();
+		return null;
+	}
+
+	private byte[] read(int slot, MongoFile mongoFile, int blockNumber) {
+		long version = versions.get(slot);
+		if ((version & 1) != 0 || closed) {
+			return null;
+		}
+
+		ByteBuffer buffer = getSlotBuffer(slot);
+		long directoryId = buffer.getLong(0);
+		long generation = buffer.getLong(8);
+		short fileNumber = buffer.getShort(16);
+		int storedBlockNumber = buffer.getInt(20);
+		int length = buffer.getInt(24);
+		int checksum = buffer.getInt(28);
+
+		if (directoryId != mongoFile.getMongoDirectory().directoryId || generation != mongoFile.getLastModified() || fileNumber != mongoFile.fileNumber
+				|| storedBlockNumber != blockNumber || length <= 0 || length > blockSize) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		buffer.position(SLOT_HEADER_BYTES);
+		buffer.get(bytes);
+
+		if (versions.get(slot) != version || checksum != getChecksum(directoryId, generation, fileNumber, blockNumber, bytes, length)) {
+			return null;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Copies a clean block being evicted from memory, replacing any older copy of it
+	 */
+	void store(MongoBlock mongoBlock) {
+		byte[] bytes;
+		synchronized (mongoBlock.lock) {
+			if (mongoBlock.dirty || mongoBlock.length == 0 || mongoBlock.length > blockSize) {
+				return;
+			}
+			bytes = mongoBlock.getBytes();
+		}
+
+		MongoFile mongoFile = mongoBlock.mongoFile;
+		long directoryId = mongoFile.getMongoDirectory().directoryId;
+		long generation = mongoFile.getLastModified();
+		int checksum = getChecksum(directoryId, generation, mongoFile.fileNumber, mongoBlock.blockNumber, bytes, bytes.length);
+
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			Integer slot = index.get(mongoBlock.blockKey);
+			if (slot == null) {
+				slot = takeSlot();
+				states[slot] = CLAIMED;
+				slotKeys[slot] = mongoBlock.blockKey;
+				index.put(mongoBlock.blockKey, slot);
+			}
+
+			versions.incrementAndGet(slot);
+			ByteBuffer buffer = getSlotBuffer(slot);
+			buffer.putLong(0, directoryId);
+			buffer.putLong(8, generation);
+			buffer.putShort(16, mongoFile.fileNumber);
+			buffer.putInt(20, mongoBlock.blockNumber);
+			buffer.putInt(24, bytes.length);
+			buffer.putInt(28, checksum);
+			buffer.position(SLOT_HEADER_BYTES);
+			buffer.put(bytes);
+			versions.incrementAndGet(slot);
+
+			referenced[slot] = 0;
+		}
+		stores.increment();
+	}
+
+	/**
+	 * Takes a free slot or the next slot in clock order not read since the hand last passed it, must hold the lock
+	 */
+	private int takeSlot() {
+		Integer free = freeSlots.poll();
+		if (free != null) {
+			return free;
+		}
+
+		while (true) {
+			int slot = hand;
+			hand = (hand + 1) % slotCount;
+
+			if (states[slot] == CLAIMED && referenced[slot] != 0) {
+				referenced[slot] = 0;
+				continue;
+			}
+
+			if (states[slot] == CLAIMED) {
+				index.remove(slotKeys[slot], slot);
+			}
+			states[slot] = FREE;
+			return slot;
+		}
+	}
+
+	/**
+	 * Drops the stored copies of blocks of a file being deleted or written again
+	 */
+	void invalidate(MongoFile mongoFile, int fromBlock, int toBlock) {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			for (int block = fromBlock; block < toBlock; block++) {
+				long key = MongoBlock.computeBlockKey(mongoFile, block);
+				Integer slot = index.remove(key);
+				if (slot != null) {
+					versions.incrementAndGet(slot);
+					getSlotBuffer(slot).putLong(0, 0);
+					versions.incrementAndGet(slot);
+					states[slot] = FREE;
+					freeSlots.add(slot);
+				}
+			}
+		}
+	}
+
+	private static int getChecksum(long directoryId, long generation, short fileNumber, int blockNumber, byte[] bytes, int length) {
+		CRC32 crc = new CRC32();
+		ByteBuffer header = ByteBuffer.allocate(22);
+		header.putLong(directoryId).putLong(generation).putShort(fileNumber).putInt(blockNumber);
+		crc.update(header.array());
+		crc.update(bytes, 0, length);
+		return (int) crc.getValue();
+	}
+
+	long getHits() {
+		return hits.sum();
+	}
+
+	long getMisses() {
+		return misses.sum();
+	}
+
+	long getStores() {
+		return stores.sum();
+	}
+
+	long getSize() {
+		return index.size();
+	}
+
+	long getMaxBytes() {
+		return (long) slotCount * blockSize;
+	}
+
+	Path getPath() {
+		return path;
+	}
+}
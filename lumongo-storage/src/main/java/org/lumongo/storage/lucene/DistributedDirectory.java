@@ -33,8 +33,17 @@ public class DistributedDirectory extends BaseDirectory {
 	/** Used to generate temp file names in {@link #createTempOutput}. */
 	private final AtomicLong nextTempFileCounter = new AtomicLong();
 
+	private static volatile boolean cacheMergeOutput = false;
+
 	protected NosqlDirectory nosqlDirectory;
 
+	/**
+	 * @param cacheMerge true to keep the blocks of files written by merges cached once stored like any other file
+	 */
+	public static void setCacheMergeOutput(boolean cacheMerge) {
+		cacheMergeOutput = cacheMerge;
+	}
+
 	public DistributedDirectory(NosqlDirectory nosqlDirectory) throws IOException {
 		this(nosqlDirectory, new SingleInstanceLockFactory());
 	}
@@ -45,12 +54,14 @@ public class DistributedDirectory extends BaseDirectory {
 	}
 
 	/**
-	 * ignore IOContext
+	 * Output of a merge is not kept cached unless configured, a large merged segment would otherwise push out the blocks queries are using
+	 * before any of it is searched
 	 */
 	@Override
 	public IndexOutput createOutput(String name, IOContext context) throws IOException {
 		ensureOpen();
 		NosqlFile nosqlFile = nosqlDirectory.getFileHandle(name, true);
+		nosqlFile.setCacheWrites(context.context != IOContext.Context.MERGE || cacheMergeOutput);
 		return new DistributedIndexOutput(nosqlFile);
 	}
 
@@ -62,6 +73,7 @@ public class DistributedDirectory extends BaseDirectory {
 		String name = IndexFileNames.segmentFileName(prefix, suffix + "_" + Long.toString(nextTempFileCounter.getAndIncrement(), Character.MAX_RADIX), "tmp");
 
 		NosqlFile nosqlFile = nosqlDirectory.getFileHandle(name, true);
+		nosqlFile.setCacheWrites(context.context != IOContext.Context.MERGE || cacheMergeOutput);
 		return new DistributedIndexOutput(nosqlFile);
 
 	}
@@ -82,13 +94,14 @@ public class DistributedDirectory extends BaseDirectory {
 	}
 
 	/**
-	 * ignore IOContext
+	 * Inputs for merges, flushes and files read once make a single pass, they use blocks already cached but do not cache the rest
 	 */
 	@Override
 	public IndexInput openInput(String name, IOContext context) throws IOException {
 		ensureOpen();
 		NosqlFile nosqlFile = nosqlDirectory.getFileHandle(name);
-		return new DistributedIndexInput(nosqlFile.getFileName(), nosqlFile);
+		boolean uncached = context.readOnce || context.context == IOContext.Context.MERGE || context.context == IOContext.Context.FLUSH;
+		return new DistributedIndexInput(nosqlFile.getFileName(), nosqlFile, uncached);
 	}
 
 	@Override
@@ -117,7 +130,7 @@ public class DistributedDirectory extends BaseDirectory {
 
 	public void copyToDirectory(Directory directory) throws IOException {
 		for (String file : this.listAll()) {
-			directory.copyFrom(this, file, file, IOContext.DEFAULT);
+			directory.copyFrom(this, file, file, IOContext.READONCE);
 		}
 	}
 
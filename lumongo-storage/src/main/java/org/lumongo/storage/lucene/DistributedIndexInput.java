@@ -24,18 +24,27 @@ import java.io.IOException;
 
 public class DistributedIndexInput extends IndexInput {
 	private final NosqlFile nosqlFile;
+	private final ReadCursor cursor;
 
 	protected long position;
 	protected long sliceOffset;
 	protected long length;
 
 	public DistributedIndexInput(String name, NosqlFile nosqlFile) {
-		this(name, nosqlFile, 0, nosqlFile.getFileLength());
+		this(name, nosqlFile, false);
 	}
 
-	public DistributedIndexInput(String name, NosqlFile nosqlFile, long sliceOffset, long length) {
+	/**
+	 * @param uncached true to read blocks that are not already cached without caching them
+	 */
+	public DistributedIndexInput(String name, NosqlFile nosqlFile, boolean uncached) {
+		this(name, nosqlFile, 0, nosqlFile.getFileLength(), uncached);
+	}
+
+	public DistributedIndexInput(String name, NosqlFile nosqlFile, long sliceOffset, long length, boolean uncached) {
 		super(DistributedIndexInput.class.getSimpleName() + "(" + name + ")");
 		this.nosqlFile = nosqlFile;
+		this.cursor = new ReadCursor(uncached);
 		this.sliceOffset = sliceOffset;
 		this.length = length;
 	}
@@ -67,21 +76,21 @@ public class DistributedIndexInput extends IndexInput {
 			throw new EOFException("read past EOF: " + this);
 		}
 
-		byte result = nosqlFile.readByte(position + sliceOffset);
+		byte result = nosqlFile.readByte(cursor, position + sliceOffset);
 		position += 1;
 		return result;
 	}
 
 	@Override
 	public int readInt() throws IOException {
-		int result = nosqlFile.readInt(position + sliceOffset);
+		int result = nosqlFile.readInt(cursor, position + sliceOffset);
 		position += 4;
 		return result;
 	}
 
 	@Override
 	public long readLong() throws IOException {
-		long result = nosqlFile.readLong(position + sliceOffset);
+		long result = nosqlFile.readLong(cursor, position + sliceOffset);
 		position += 8;
 		return result;
 	}
@@ -93,7 +102,7 @@ public class DistributedIndexInput extends IndexInput {
 			throw new EOFException("read past EOF: " + this);
 		}
 
-		nosqlFile.readBytes(position + sliceOffset, b, offset, length);
+		nosqlFile.readBytes(cursor, position + sliceOffset, b, offset, length);
 		position += length;
 	}
 
@@ -102,13 +111,14 @@ public class DistributedIndexInput extends IndexInput {
 		if (sliceOffset < 0 || length < 0 || sliceOffset + length > this.length) {
 			throw new IllegalArgumentException("slice() " + sliceDescription + " out of bounds: "  + this);
 		}
-		final DistributedIndexInput dii = new DistributedIndexInput(getFullSliceDescription(sliceDescription), nosqlFile, this.sliceOffset + sliceOffset, length);
+		final DistributedIndexInput dii = new DistributedIndexInput(getFullSliceDescription(sliceDescription), nosqlFile, this.sliceOffset + sliceOffset, length,
+				cursor.uncached);
 		return dii;
 	}
 
 	@Override
 	public IndexInput clone() {
-		IndexInput ii = new DistributedIndexInput(getFullSliceDescription(null), nosqlFile, sliceOffset, length);
+		IndexInput ii = new DistributedIndexInput(getFullSliceDescription(null), nosqlFile, sliceOffset, length, cursor.uncached);
 		try {
 			ii.seek(getFilePointer());
 		}
@@ -64,9 +64,12 @@ public class DistributedIndexOutput extends IndexOutput {
 		position += length;
 	}
 
+	/**
+	 * The checksum is kept as bytes are written so the file is not flushed, which would store its last block again once the footer is
+	 * written
+	 */
 	@Override
 	public long getChecksum() throws IOException {
-		flush();
 		return nosqlFile.getChecksum();
 	}
 
@@ -1,5 +1,9 @@
 package org.lumongo.storage.lucene;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.StampedLock;
+
 /**
  * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
  * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
@@ -21,17 +25,96 @@ public class MongoBlock {
 
 	protected final Object lock;
 
-	protected byte[] bytes;
-
-	private boolean dirty;
-
-	public MongoBlock(MongoFile mongoFile, int blockNumber, byte[] bytes) {
+	private static final byte[] ZEROS = new byte[4096];
+
+	protected final BlockCache.Slot slot;
+	protected final ByteBuffer buffer;
+
+	/**
+	 * Write locked for good once the block is evicted and its slot may hold another block
+	 */
+	protected final StampedLock stampedLock;
+
+	protected volatile boolean evicting;
+	protected volatile int frequency;
+
+	/**
+	 * Cache queue holding the block, guarded by the cache lock
+	 */
+	protected int queue;
+
+	/**
+	 * Bytes of the block that hold file contents, a partial last block is stored trimmed to this length.  Guarded by the lock
+	 */
+	protected int length;
+
+	/**
+	 * Set from the first write until a write to Mongo holding every change succeeds, so the block is not evicted before it is stored.
+	 * Changed only holding the lock
+	 */
+	protected volatile boolean dirty;
+
+	/**
+	 * Counts writes to the block so a store can tell whether the block changed after its bytes were copied, guarded by the lock
+	 */
+	protected int version;
+
+	/**
+	 * Set while the block is waiting to be flushed, guarded by the lock.  The block is in the flusher queue unless a flush is also in flight,
+	 * then it is queued once that flush finishes
+	 */
+	protected CompletableFuture<Void> pendingFlush;
+
+	/**
+	 * Set while the bytes of version inFlightVersion are being written, guarded by the lock
+	 */
+	protected CompletableFuture<Void> inFlightFlush;
+	protected int inFlightVersion;
+
+	public MongoBlock(MongoFile mongoFile, int blockNumber, BlockCache.Slot slot) {
 		this.mongoFile = mongoFile;
 		this.blockNumber = blockNumber;
-		this.bytes = bytes;
+		this.slot = slot;
+		this.buffer = slot.buffer;
 		this.dirty = false;
 		this.blockKey = computeBlockKey(mongoFile, blockNumber);
 		this.lock = new Object();
+		this.stampedLock = new StampedLock();
+	}
+
+	/**
+	 * Copies the bytes into the block, zeroing the rest of the block
+	 */
+	protected void load(byte[] bytes) {
+		ByteBuffer target = buffer.duplicate();
+		int loaded = Math.min(bytes.length, target.capacity());
+		target.put(bytes, 0, loaded);
+		while (target.hasRemaining()) {
+			target.put(ZEROS, 0, Math.min(ZEROS.length, target.remaining()));
+		}
+		synchronized (lock) {
+			length = loaded;
+		}
+	}
+
+	/**
+	 * Copies the file contents of the block, must hold the lock
+	 */
+	protected byte[] getBytes() {
+		byte[] bytes = new byte[length];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+
+	protected void touch() {
+		int f = frequency;
+		if (f < BlockCache.MAX_FREQUENCY) {
+			frequency = f + 1;
+		}
+	}
+
+	protected boolean isPinned() {
+		return stampedLock.isReadLocked();
 	}
 
 	@Override
@@ -53,17 +136,15 @@ public class MongoBlock {
 
 	}
 
-	public void markDirty() {
+	/**
+	 * @param end offset in the block after the last byte written
+	 */
+	public void markDirty(int end) {
 		synchronized (lock) {
 			dirty = true;
-		}
-	}
-
-	public void flushIfDirty() {
-		synchronized (lock) {
-			if (dirty) {
-				mongoFile.storeBlock(this);
-				dirty = false;
+			version++;
+			if (end > length) {
+				length = end;
 			}
 		}
 	}
@@ -74,7 +155,11 @@ public class MongoBlock {
 	}
 
 	protected static long computeBlockKey(MongoFile mongoFile, int blockNumber) {
-		return ((0xFFFF & (long)mongoFile.indexNumber)) << 48 | ((0xFFFF & (long) mongoFile.fileNumber)) << 32 | (blockNumber & 0xffffffffL);
+		return computeBlockKey(mongoFile.indexNumber, mongoFile.fileNumber, blockNumber);
+	}
+
+	protected static long computeBlockKey(short indexNumber, short fileNumber, int blockNumber) {
+		return ((0xFFFF & (long) indexNumber)) << 48 | ((0xFFFF & (long) fileNumber)) << 32 | (blockNumber & 0xffffffffL);
 	}
 
 
@@ -11,6 +11,7 @@ import org.lumongo.storage.constants.MongoConstants;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
@@ -36,6 +37,8 @@ public class MongoDirectory implements NosqlDirectory {
 	public static final String LENGTH = "length";
 	public static final String FILE_NAME = "fileName";
 	public static final String FILE_NUMBER = "fileNumber";
+	public static final String CODEC = "codec";
+	public static final String UNCOMPRESSED_LENGTH = "uncompressedLength";
 
 	public static String BYTES = "bytes";
 
@@ -43,7 +46,9 @@ public class MongoDirectory implements NosqlDirectory {
 	public static final String BLOCKS_SUFFIX = ".blocks";
 
 	public static final int DEFAULT_BLOCK_SIZE = 1024 * 128;
-	public static final int DEFAULT_BLOCK_MAX = 12500;
+	public static final int DEFAULT_MAX_CACHE_MB = 1024;
+	public static final int DEFAULT_READ_AHEAD_BLOCKS = 8;
+	public static final int DEFAULT_FLUSH_THREADS = 2;
 
 	private static short indexCount = 0;
 	private static final ConcurrentHashMap<String, Short> indexNameToNumberMap = new ConcurrentHashMap<>();
@@ -52,11 +57,37 @@ public class MongoDirectory implements NosqlDirectory {
 	private final String dbname;
 	protected final String indexName;
 	private final int blockSize;
+	private final BlockCodec blockCodec;
 	protected final short indexNumber;
+	protected final long directoryId;
 	private final ConcurrentHashMap<String, MongoFile> nameToFileMap;
 
-	public static void setMaxIndexBlocks(int blocks) {
-		MongoFile.setMaxIndexBlocks(blocks);
+	/**
+	 * Sets the size of the off heap block cache shared by all directories, -XX:MaxDirectMemorySize must allow at least this much
+	 * @param maxCacheMB
+	 */
+	public static void setMaxIndexCacheMB(int maxCacheMB) {
+		MongoFile.setMaxCacheBytes(maxCacheMB * 1024L * 1024L);
+	}
+
+	/**
+	 * Sets how many blocks are loaded in one query once an index input reads blocks in order, 0 disables read ahead
+	 * @param blocks
+	 */
+	public static void setReadAheadBlocks(int blocks) {
+		MongoFile.setReadAheadBlocks(blocks);
+	}
+
+	/**
+	 * Keeps blocks evicted from the memory cache in a file on local disk that is read before Mongo, and kept across restarts
+	 * @param path cache file, one per node
+	 * @param maxCacheMB
+	 * @param blockSize largest block kept, normally the index block size of the cluster
+	 */
+	public static void setIndexDiskCache(Path path, int maxCacheMB, int blockSize) throws IOException {
+		//the current cache lets go of its file first since the new one may be opened on the same path
+		MongoFile.setDiskCache(null);
+		MongoFile.setDiskCache(new DiskBlockCache(path, maxCacheMB * 1024L * 1024L, blockSize));
 	}
 
 	/**
@@ -80,11 +111,20 @@ public class MongoDirectory implements NosqlDirectory {
 	}
 
 	public MongoDirectory(MongoClient mongo, String ddName, String indexName, boolean sharded, int blockSize) throws MongoException, IOException {
+		this(mongo, ddName, indexName, sharded, blockSize, BlockCodec.NONE);
+	}
+
+	/**
+	 * @param blockCodec codec for blocks written from now on, blocks already stored keep the codec they were written with
+	 */
+	public MongoDirectory(MongoClient mongo, String ddName, String indexName, boolean sharded, int blockSize, BlockCodec blockCodec)
+			throws MongoException, IOException {
 
 		this.mongo = mongo;
 		this.dbname = ddName;
 		this.indexName = indexName;
 		this.blockSize = blockSize;
+		this.blockCodec = blockCodec;
 
 		synchronized (MongoDirectory.class) {
 			//get back a index number to use instead of the string
@@ -98,6 +138,7 @@ public class MongoDirectory implements NosqlDirectory {
 			}
 			this.indexNumber = indexNumber;
 		}
+		this.directoryId = DiskBlockCache.getDirectoryId(dbname, indexName);
 
 		getFilesCollection().createIndex(new Document(FILE_NUMBER, 1));
 
@@ -118,6 +159,8 @@ public class MongoDirectory implements NosqlDirectory {
 		nameToFileMap = new ConcurrentHashMap<>();
 
 		fetchInitialContents();
+
+		MongoFile.claimDiskBlocks(this);
 	}
 
 	public String getIndexName() {
@@ -250,6 +293,10 @@ public class MongoDirectory implements NosqlDirectory {
 		}
 	}
 
+	public BlockCodec getBlockCodec() {
+		return blockCodec;
+	}
+
 	@Override
 	public int getBlockSize() {
 		return blockSize;
@@ -269,6 +316,10 @@ public class MongoDirectory implements NosqlDirectory {
 
 	@Override
 	public void deleteFile(NosqlFile nosqlFile) throws IOException {
+		//stop blocks still waiting to be written behind from recreating the file, and let the writes already sent land before the delete
+		nosqlFile.close();
+		((MongoFile) nosqlFile).awaitInFlightFlushes();
+
 		MongoCollection<Document> c = getFilesCollection();
 
 		Document query = new Document();
@@ -280,8 +331,6 @@ public class MongoDirectory implements NosqlDirectory {
 
 		nameToFileMap.remove(nosqlFile.getFileName());
 
-		nosqlFile.close();
-
 	}
 
 	@Override
@@ -1,20 +1,22 @@
 package org.lumongo.storage.lucene;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.RemovalListener;
+import com.google.common.cache.CacheStats;
 import com.mongodb.client.MongoCollection;
-import com.mongodb.client.model.UpdateOptions;
 import org.bson.Document;
 import org.bson.types.Binary;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.zip.CRC32;
 
 /**
@@ -43,54 +45,192 @@ public class MongoFile implements NosqlFile {
 	private long lastModified;
 	private String fileName;
 
-	private MongoBlock currentReadBlock;
 	private MongoBlock currentWriteBlock;
+	private long currentWriteStamp;
 
 	private ConcurrentMap<Long, Boolean> dirtyBlocks;
 
 	private final CRC32 crc;
 
-	private static Cache<Long, MongoBlock> cache;
-	private static RemovalListener<Long, MongoBlock> removalListener;
+	private volatile boolean closed;
 
-	static {
+	private volatile boolean cacheWrites;
 
-		createCache();
+	private static final BlockFlusher flusher = new BlockFlusher(MongoDirectory.DEFAULT_FLUSH_THREADS);
+	private static volatile BlockCache cache = new BlockCache(MongoDirectory.DEFAULT_MAX_CACHE_MB * 1024L * 1024L, flusher);
 
+	private static volatile DiskBlockCache diskCache;
+
+	private static volatile int readAheadBlocks = MongoDirectory.DEFAULT_READ_AHEAD_BLOCKS;
+
+	/**
+	 * Consecutive blocks a cursor must read in order before the blocks after it are read ahead
+	 */
+	private static final int SEQUENTIAL_BLOCKS_FOR_READ_AHEAD = 2;
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private static final LongAdder blocksLoaded = new LongAdder();
+	private static final LongAdder blocksReadAhead = new LongAdder();
+	private static final LongAdder blocksLoadedUncached = new LongAdder();
+	private static final LongAdder bytesLoaded = new LongAdder();
+	private static final LongAdder blocksStored = new LongAdder();
+	private static final LongAdder bytesStored = new LongAdder();
+
+	public static void clearCache() {
+		BlockCache blockCache = new BlockCache(cache.getMaxBytes(), flusher);
+		blockCache.setDiskCache(diskCache);
+		cache = blockCache;
 	}
 
-	private static void createCache() {
-		removalListener = notification -> {
-			/*
-			ReadWriteLock lock = lockHandler.getLock(notification.getKey());
-			Lock wLock = lock.writeLock();
-			wLock.lock();
-			try {
-			*/
-			MongoBlock mongoBlock = notification.getValue();
-			mongoBlock.flushIfDirty();
-			/*
-			}
-			finally {
-				wLock.unlock();
-			}
-			*/
-		};
-		cache = CacheBuilder.newBuilder().concurrencyLevel(32).maximumSize(MongoDirectory.DEFAULT_BLOCK_MAX).removalListener(removalListener).build();
+	/**
+	 * @param disk replaces the current disk cache, which is closed, null for none
+	 */
+	static synchronized void setDiskCache(DiskBlockCache disk) throws IOException {
+		DiskBlockCache previous = diskCache;
+		diskCache = disk;
+		cache.setDiskCache(disk);
+		if (previous != null && previous != disk) {
+			previous.close();
+		}
 	}
 
-	public static void clearCache() {
-		createCache();
+	static void claimDiskBlocks(MongoDirectory mongoDirectory) {
+		DiskBlockCache disk = diskCache;
+		if (disk != null) {
+			disk.claim(mongoDirectory);
+		}
 	}
 
 	public static long getCacheSize() {
-		return cache.size();
+		return cache.getSize();
+	}
+
+	/**
+	 * Bytes of the blocks currently cached
+	 */
+	public static long getCacheBytes() {
+		return cache.getCachedBytes();
+	}
+
+	/**
+	 * Off heap bytes allocated by the block cache, cached blocks plus free slots
+	 */
+	public static long getCacheAllocatedBytes() {
+		return cache.getAllocatedBytes();
+	}
+
+	public static long getMaxCacheBytes() {
+		return cache.getMaxBytes();
+	}
+
+	/**
+	 * Hit, miss and eviction counts of the block cache since it was last created
+	 */
+	public static CacheStats getCacheStats() {
+		return cache.getStats();
+	}
+
+	public static long getBlocksLoaded() {
+		return blocksLoaded.sum();
+	}
+
+	/**
+	 * Blocks loaded by read ahead queries, also counted in blocks loaded
+	 */
+	public static long getBlocksReadAhead() {
+		return blocksReadAhead.sum();
+	}
+
+	/**
+	 * Blocks loaded for merges and inputs read once without being cached, also counted in blocks loaded
+	 */
+	public static long getBlocksLoadedUncached() {
+		return blocksLoadedUncached.sum();
+	}
+
+	public static boolean hasDiskCache() {
+		return diskCache != null;
+	}
+
+	/**
+	 * Blocks found in the disk cache instead of being loaded from Mongo
+	 */
+	public static long getDiskCacheHits() {
+		DiskBlockCache disk = diskCache;
+		return (disk != null) ? disk.getHits() : 0;
+	}
+
+	public static long getDiskCacheMisses() {
+		DiskBlockCache disk = diskCache;
+		return (disk != null) ? disk.getMisses() : 0;
+	}
+
+	/**
+	 * Blocks copied to the disk cache when evicted from memory
+	 */
+	public static long getDiskCacheStores() {
+		DiskBlockCache disk = diskCache;
+		return (disk != null) ? disk.getStores() : 0;
+	}
+
+	public static long getDiskCacheSize() {
+		DiskBlockCache disk = diskCache;
+		return (disk != null) ? disk.getSize() : 0;
+	}
+
+	public static long getDiskCacheMaxBytes() {
+		DiskBlockCache disk = diskCache;
+		return (disk != null) ? disk.getMaxBytes() : 0;
+	}
+
+	public static long getBytesLoaded() {
+		return bytesLoaded.sum();
+	}
+
+	/**
+	 * Blocks written to Mongo, both new blocks and dirty blocks flushed
+	 */
+	public static long getBlocksStored() {
+		return blocksStored.sum();
+	}
+
+	/**
+	 * Bytes written to Mongo after compression
+	 */
+	public static long getBytesStored() {
+		return bytesStored.sum();
+	}
+
+	static void recordStored(int blocks, long bytes) {
+		blocksStored.add(blocks);
+		bytesStored.add(bytes);
+	}
+
+	/**
+	 * Dirty blocks waiting to be written to Mongo
+	 */
+	public static int getFlushQueueSize() {
+		return flusher.getQueueSize();
+	}
+
+	public static long getBulkWrites() {
+		return flusher.getBulkWrites();
 	}
 
-	public static void setMaxIndexBlocks(int blocks) {
-		Cache<Long, MongoBlock> oldCache = cache;
-		cache = CacheBuilder.newBuilder().concurrencyLevel(32).maximumSize(blocks).removalListener(removalListener).build();
-		cache.putAll(oldCache.asMap());
+	public static long getFailedBulkWrites() {
+		return flusher.getFailedBulkWrites();
+	}
+
+	public static void setMaxCacheBytes(long maxBytes) {
+		cache.setMaxBytes(maxBytes);
+	}
+
+	/**
+	 * @param blocks blocks loaded in one query once a reader is reading sequentially, 0 disables read ahead
+	 */
+	public static void setReadAheadBlocks(int blocks) {
+		readAheadBlocks = blocks;
 	}
 
 	protected MongoFile(MongoDirectory mongoDirectory, String fileName, short fileNumber, int blockSize) {
@@ -108,6 +248,7 @@ public class MongoFile implements NosqlFile {
 		this.blockSize = blockSize;
 
 		this.dirtyBlocks = new ConcurrentHashMap<>();
+		this.cacheWrites = true;
 
 	}
 
@@ -143,36 +284,233 @@ public class MongoFile implements NosqlFile {
 	}
 
 	@Override
-	public byte readByte(long position) throws IOException {
+	public byte readByte(ReadCursor cursor, long position) throws IOException {
 
 		int block = (int) (position / blockSize);
 		int blockOffset = (int) (position - (block * blockSize));
 
-		MongoBlock mb = currentReadBlock;
+		while (true) {
+			MongoBlock mb = getReadBlock(cursor, block);
+
+			long stamp = mb.stampedLock.tryOptimisticRead();
+			byte b = mb.buffer.get(blockOffset);
+			if (mb.stampedLock.validate(stamp)) {
+				return b;
+			}
+			cursor.block = null;
+		}
+
+	}
+
+	private MongoBlock getReadBlock(ReadCursor cursor, int block) throws IOException {
+		MongoBlock mb = cursor.block;
 
 		if (mb == null || block != mb.blockNumber) {
-			currentReadBlock = mb = getMongoBlock(block);
+			if (block != cursor.lastBlockNumber) {
+				cursor.sequentialBlocks = (block == cursor.lastBlockNumber + 1) ? cursor.sequentialBlocks + 1 : 0;
+				cursor.lastBlockNumber = block;
+			}
+
+			if (cursor.uncached) {
+				cursor.block = mb = getUncachedBlock(cursor, block);
+				return mb;
+			}
+
+			int blocks = readAheadBlocks;
+			if (blocks > 1 && cursor.sequentialBlocks >= SEQUENTIAL_BLOCKS_FOR_READ_AHEAD && block >= cursor.readAheadTo) {
+				cursor.readAheadTo = readAhead(block, blocks);
+			}
+
+			cursor.block = mb = getMongoBlock(block);
+		}
+		return mb;
+	}
+
+	/**
+	 * Uses the block if it is cached, without counting it as a use, and otherwise reads it from the window of the cursor.  A pass over a whole
+	 * file by a merge leaves the cache as it was
+	 */
+	private MongoBlock getUncachedBlock(ReadCursor cursor, int block) throws IOException {
+		MongoBlock mb = cache.getIfPresent(MongoBlock.computeBlockKey(this, block));
+		if (mb != null) {
+			return mb;
+		}
+
+		if (block < cursor.windowStart || block >= cursor.windowStart + cursor.windowCount) {
+			loadWindow(cursor, block);
+		}
+		return cursor.window[block - cursor.windowStart];
+	}
+
+	/**
+	 * Loads the block into the window of the cursor with the blocks after it once the cursor is reading sequentially
+	 */
+	private void loadWindow(ReadCursor cursor, int fromBlock) throws IOException {
+		BlockCache blockCache = cache;
+
+		int blocks = (cursor.sequentialBlocks >= SEQUENTIAL_BLOCKS_FOR_READ_AHEAD) ? Math.max(1, readAheadBlocks) : 1;
+		int lastBlock = (int) ((fileLength - 1) / blockSize);
+		int toBlock = (int) Math.max(fromBlock + 1, Math.min((long) fromBlock + blocks, (long) lastBlock + 1));
+
+		//a cached block may be dirty and not in Mongo yet, blocks not cached are stored since dirty blocks are never evicted
+		for (int block = fromBlock + 1; block < toBlock; block++) {
+			if (blockCache.getIfPresent(MongoBlock.computeBlockKey(this, block)) != null) {
+				toBlock = block;
+				break;
+			}
+		}
+
+		int count = toBlock - fromBlock;
+		if (cursor.window == null || cursor.window.length < count) {
+			MongoBlock[] window = new MongoBlock[count];
+			if (cursor.window != null) {
+				System.arraycopy(cursor.window, 0, window, 0, cursor.window.length);
+			}
+			cursor.window = window;
+		}
+		//nothing is valid until the query finishes
+		cursor.windowCount = 0;
+
+		byte[][] loaded = new byte[count][];
+		boolean[] stored = new boolean[count];
+
+		DiskBlockCache disk = diskCache;
+		List<Integer> missing = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			loaded[i] = (disk != null) ? disk.read(this, fromBlock + i) : null;
+			if (loaded[i] == null) {
+				missing.add(fromBlock + i);
+			}
+		}
+
+		if (!missing.isEmpty()) {
+			MongoCollection<Document> c = mongoDirectory.getBlocksCollection();
+
+			Document query = new Document();
+			query.put(MongoDirectory.FILE_NUMBER, fileNumber);
+			if (missing.size() == 1) {
+				query.put(MongoDirectory.BLOCK_NUMBER, missing.get(0));
+			}
+			else if (missing.size() == count) {
+				query.put(MongoDirectory.BLOCK_NUMBER, new Document("$gte", fromBlock).append("$lt", toBlock));
+			}
+			else {
+				query.put(MongoDirectory.BLOCK_NUMBER, new Document("$in", missing));
+			}
+
+			try {
+				for (Document result : c.find(query)) {
+					int i = ((Number) result.get(MongoDirectory.BLOCK_NUMBER)).intValue() - fromBlock;
+					loaded[i] = getBlockBytes(result);
+					stored[i] = true;
+				}
+			}
+			catch (RuntimeException e) {
+				throw new IOException(
+						"Failed to load blocks <" + fromBlock + "> to <" + (toBlock - 1) + "> for file <" + fileName + "> of index <" + indexName + ">", e);
+			}
+		}
+
+		//only blocks past the end of the file, such as the block of an empty file, are not stored
+		long blockCount = (fileLength + blockSize - 1) / blockSize;
+		for (int i = 0; i < count; i++) {
+			if (loaded[i] == null && fromBlock + i < blockCount) {
+				throw new IOException("Block <" + (fromBlock + i) + "> of file <" + fileName + "> of index <" + indexName + "> is missing");
+			}
+		}
+
+		for (int i = 0; i < count; i++) {
+			MongoBlock previous = cursor.window[i];
+			BlockCache.Slot slot = (previous != null) ? previous.slot : BlockCache.allocateUncached(blockSize);
+
+			MongoBlock mongoBlock = new MongoBlock(this, fromBlock + i, slot);
+			mongoBlock.load((loaded[i] != null) ? loaded[i] : EMPTY);
+			if (stored[i]) {
+				blocksLoaded.increment();
+				blocksLoadedUncached.increment();
+				bytesLoaded.add(loaded[i].length);
+			}
+			cursor.window[i] = mongoBlock;
+		}
+
+		cursor.windowStart = fromBlock;
+		cursor.windowCount = count;
+	}
+
+	/**
+	 * Loads the blocks from the given block that are not cached with one query
+	 * @return the block number after the last block considered
+	 */
+	private int readAhead(int fromBlock, int blocks) throws IOException {
+		BlockCache blockCache = cache;
+
+		int lastBlock = (int) ((fileLength - 1) / blockSize);
+		int toBlock = (int) Math.min((long) fromBlock + blocks, (long) lastBlock + 1);
+
+		DiskBlockCache disk = diskCache;
+
+		List<Integer> missing = new ArrayList<>();
+		for (int block = fromBlock; block < toBlock; block++) {
+			if (blockCache.getIfPresent(MongoBlock.computeBlockKey(this, block)) == null) {
+				byte[] bytes = (disk != null) ? disk.read(this, block) : null;
+				if (bytes != null) {
+					MongoBlock mongoBlock = new MongoBlock(this, block, blockCache.allocate(blockSize));
+					mongoBlock.load(bytes);
+					blockCache.putReadAhead(mongoBlock);
+				}
+				else {
+					missing.add(block);
+				}
+			}
 		}
 
-		return mb.bytes[blockOffset];
+		//nothing to gain from read ahead for a single block
+		if (missing.size() > 1) {
+			MongoCollection<Document> c = mongoDirectory.getBlocksCollection();
+
+			Document query = new Document();
+			query.put(MongoDirectory.FILE_NUMBER, fileNumber);
+			query.put(MongoDirectory.BLOCK_NUMBER, new Document("$in", missing));
 
+			try {
+				for (Document result : c.find(query)) {
+					int blockNumber = ((Number) result.get(MongoDirectory.BLOCK_NUMBER)).intValue();
+					byte[] bytes = getBlockBytes(result);
+
+					MongoBlock mongoBlock = new MongoBlock(this, blockNumber, blockCache.allocate(blockSize));
+					mongoBlock.load(bytes);
+					blockCache.putReadAhead(mongoBlock);
+
+					blocksLoaded.increment();
+					blocksReadAhead.increment();
+					bytesLoaded.add(bytes.length);
+				}
+			}
+			catch (RuntimeException | IOException e) {
+				//read ahead is only a hint, the blocks not loaded are fetched one at a time and report any failure
+			}
+		}
+
+		return toBlock;
 	}
 
 	private MongoBlock getMongoBlock(int block) throws IOException {
 
 		long blockKey = MongoBlock.computeBlockKey(this, block);
 
-		Callable<MongoBlock> loadBlockIfNeeded = () -> fetchBlock(block, true);
+		BlockCache blockCache = cache;
+		Callable<MongoBlock> loadBlockIfNeeded = () -> fetchBlock(blockCache, block, true);
 		try {
-			return cache.get(blockKey, loadBlockIfNeeded);
+			return blockCache.get(blockKey, loadBlockIfNeeded);
 		}
-		catch (ExecutionException e) {
-			throw new IOException("Failed to load block <" + block + "> for file <" + fileName + "> of index <" + indexName + ">");
+		catch (IOException e) {
+			throw new IOException("Failed to load block <" + block + "> for file <" + fileName + "> of index <" + indexName + ">", e);
 		}
 
 	}
 
-	public void readBytes(long position, byte[] b, int offset, int length) throws IOException {
+	@Override
+	public void readBytes(ReadCursor cursor, long position, byte[] b, int offset, int length) throws IOException {
 
 		while (length > 0) {
 			int block = (int) (position / blockSize);
@@ -180,14 +518,17 @@ public class MongoFile implements NosqlFile {
 
 			int readSize = Math.min(blockSize - blockOffset, length);
 
-			MongoBlock mb = currentReadBlock;
+			MongoBlock mb = getReadBlock(cursor, block);
 
-			if (mb == null || block != mb.blockNumber) {
-				currentReadBlock = mb = getMongoBlock(block);
+			long stamp = mb.stampedLock.tryOptimisticRead();
+			ByteBuffer buffer = mb.buffer.duplicate();
+			buffer.position(blockOffset);
+			buffer.get(b, offset, readSize);
+			if (!mb.stampedLock.validate(stamp)) {
+				cursor.block = null;
+				continue;
 			}
 
-			System.arraycopy(mb.bytes, blockOffset, b, offset, readSize);
-
 			position += readSize;
 			offset += readSize;
 			length -= readSize;
@@ -203,17 +544,10 @@ public class MongoFile implements NosqlFile {
 
 		crc.update(b);
 
-		MongoBlock mb = currentWriteBlock;
-
-		if (mb == null || block != mb.blockNumber) {
-			if (mb != null) {
-				markDirty(mb);
-			}
-			currentWriteBlock = mb = getMongoBlock(block);
-		}
+		MongoBlock mb = getWriteBlock(block);
 
-		mb.bytes[blockOffset] = b;
-		mb.markDirty();
+		mb.buffer.put(blockOffset, b);
+		mb.markDirty(blockOffset + 1);
 
 		fileLength = Math.max(position + 1, fileLength);
 
@@ -229,17 +563,12 @@ public class MongoFile implements NosqlFile {
 			int blockOffset = (int) (position - (block * blockSize));
 			int writeSize = Math.min(blockSize - blockOffset, length);
 
-			MongoBlock mb = currentWriteBlock;
-
-			if (mb == null || block != mb.blockNumber) {
-				if (mb != null) {
-					markDirty(mb);
-				}
-				currentWriteBlock = mb = getMongoBlock(block);
-			}
+			MongoBlock mb = getWriteBlock(block);
 
-			System.arraycopy(b, offset, mb.bytes, blockOffset, writeSize);
-			mb.markDirty();
+			ByteBuffer buffer = mb.buffer.duplicate();
+			buffer.position(blockOffset);
+			buffer.put(b, offset, writeSize);
+			mb.markDirty(blockOffset + writeSize);
 			position += writeSize;
 			offset += writeSize;
 			length -= writeSize;
@@ -248,80 +577,150 @@ public class MongoFile implements NosqlFile {
 
 	}
 
-	private void markDirty(MongoBlock mb) {
-		mb.markDirty();
-		cache.put(mb.blockKey, mb);
-		dirtyBlocks.put(mb.blockKey, true);
+	/**
+	 * Pins the block being written with a read lock so it cannot be evicted until the writer moves to another block or flushes
+	 */
+	private MongoBlock getWriteBlock(int block) throws IOException {
+		MongoBlock mb = currentWriteBlock;
+
+		if (mb == null || block != mb.blockNumber) {
+			releaseWriteBlock();
+
+			while (true) {
+				//Lucene files are write once so a block past the end of the file is not in Mongo yet
+				if ((long) block * blockSize >= fileLength) {
+					mb = newMongoBlock(block);
+				}
+				else {
+					mb = getMongoBlock(block);
+					//the tail block is written again so a copy on disk is about to be out of date
+					invalidateDiskBlocks(block, block + 1);
+				}
+				long stamp = mb.stampedLock.tryReadLock();
+				if (stamp != 0) {
+					currentWriteBlock = mb;
+					currentWriteStamp = stamp;
+					break;
+				}
+			}
+		}
+		return mb;
+	}
+
+	/**
+	 * Unpins the block being written and queues it to be written behind
+	 */
+	private void releaseWriteBlock() {
+		MongoBlock mb = currentWriteBlock;
+		if (mb != null) {
+			dirtyBlocks.put(mb.blockKey, true);
+			mb.stampedLock.unlockRead(currentWriteStamp);
+			currentWriteBlock = null;
+			CompletableFuture<Void> flushed = flusher.flush(mb);
+			if (!cacheWrites) {
+				BlockCache blockCache = cache;
+				flushed.thenRun(() -> blockCache.discard(mb));
+			}
+		}
 	}
 
 	@Override
 	public void flush() throws IOException {
 
-		if (currentWriteBlock != null) {
-			currentWriteBlock.flushIfDirty();
-		}
+		releaseWriteBlock();
 
 		if (!dirtyBlocks.isEmpty()) {
 			Set<Long> dirtyBlockKeys = new HashSet<>(dirtyBlocks.keySet());
 
+			List<CompletableFuture<Void>> flushes = new ArrayList<>(dirtyBlockKeys.size());
 			for (Long key : dirtyBlockKeys) {
 
 				dirtyBlocks.remove(key);
 
+				//dirty blocks are not evicted until written
 				MongoBlock mb = cache.getIfPresent(key);
 				if (mb != null) {
-					mb.flushIfDirty();
+					flushes.add(flusher.flush(mb));
 				}
 			}
 
+			try {
+				CompletableFuture.allOf(flushes.toArray(new CompletableFuture<?>[0])).get();
+			}
+			catch (InterruptedException e) {
+				dirtyBlockKeys.forEach(key -> dirtyBlocks.put(key, true));
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted flushing file <" + fileName + "> of index <" + indexName + ">", e);
+			}
+			catch (ExecutionException e) {
+				dirtyBlockKeys.forEach(key -> dirtyBlocks.put(key, true));
+				throw new IOException("Failed to flush file <" + fileName + "> of index <" + indexName + ">", e.getCause());
+			}
+
 		}
 
 		mongoDirectory.updateFileMetadata(this);
 
 	}
 
-	private MongoBlock fetchBlock(Integer blockNumber, boolean createIfNotExist) throws IOException {
+	/**
+	 * @return the bytes of a stored block, decompressed with the codec the block was written with
+	 */
+	private static byte[] getBlockBytes(Document result) throws IOException {
+		byte[] bytes = ((Binary) result.get(MongoDirectory.BYTES)).getData();
 
-		MongoCollection<Document> c = mongoDirectory.getBlocksCollection();
+		String codec = result.getString(MongoDirectory.CODEC);
+		if (codec != null) {
+			int length = ((Number) result.get(MongoDirectory.UNCOMPRESSED_LENGTH)).intValue();
+			return BlockCodec.valueOf(codec).decompress(bytes, length);
+		}
+		return bytes;
+	}
 
-		Document query = new Document();
-		query.put(MongoDirectory.FILE_NUMBER, fileNumber);
-		query.put(MongoDirectory.BLOCK_NUMBER, blockNumber);
+	/**
+	 * Creates an empty block in the cache without a round trip, it is written to Mongo once it is filled or the file is flushed
+	 */
+	private MongoBlock newMongoBlock(int block) throws IOException {
+		BlockCache blockCache = cache;
 
-		Document result = c.find(query).first();
+		MongoBlock mongoBlock = new MongoBlock(this, block, blockCache.allocate(blockSize));
+		mongoBlock.load(EMPTY);
+		blockCache.putNew(mongoBlock);
+		return mongoBlock;
+	}
 
-		byte[] bytes;
-		if (result != null) {
-			bytes = ((Binary) result.get(MongoDirectory.BYTES)).getData();
-			return new MongoBlock(this, blockNumber, bytes);
-		}
+	private MongoBlock fetchBlock(BlockCache blockCache, Integer blockNumber, boolean createIfNotExist) throws IOException {
 
-		if (createIfNotExist) {
-			bytes = new byte[blockSize];
-			MongoBlock mongoBlock = new MongoBlock(this, blockNumber, bytes);
-			storeBlock(mongoBlock);
+		DiskBlockCache disk = diskCache;
+		byte[] diskBytes = (disk != null) ? disk.read(this, blockNumber) : null;
+		if (diskBytes != null) {
+			MongoBlock mongoBlock = new MongoBlock(this, blockNumber, blockCache.allocate(blockSize));
+			mongoBlock.load(diskBytes);
 			return mongoBlock;
 		}
 
-		return null;
+		MongoCollection<Document> c = mongoDirectory.getBlocksCollection();
 
-	}
+		Document query = new Document();
+		query.put(MongoDirectory.FILE_NUMBER, fileNumber);
+		query.put(MongoDirectory.BLOCK_NUMBER, blockNumber);
 
-	public static void storeBlock(MongoBlock mongoBlock) {
-		// System.out.println("Store: " + mongoBlock.getBlockNumber());
+		Document result = c.find(query).first();
 
-		MongoCollection<Document> c = mongoBlock.mongoFile.mongoDirectory.getBlocksCollection();
+		if (result == null && !createIfNotExist) {
+			return null;
+		}
 
-		Document query = new Document();
-		query.put(MongoDirectory.FILE_NUMBER, mongoBlock.mongoFile.fileNumber);
-		query.put(MongoDirectory.BLOCK_NUMBER, mongoBlock.blockNumber);
+		byte[] bytes = (result != null) ? getBlockBytes(result) : EMPTY;
 
-		Document object = new Document();
-		object.put(MongoDirectory.FILE_NUMBER, mongoBlock.mongoFile.fileNumber);
-		object.put(MongoDirectory.BLOCK_NUMBER, mongoBlock.blockNumber);
-		object.put(MongoDirectory.BYTES, new Binary(mongoBlock.bytes));
+		MongoBlock mongoBlock = new MongoBlock(this, blockNumber, blockCache.allocate(blockSize));
+		mongoBlock.load(bytes);
 
-		c.replaceOne(query, object, new UpdateOptions().upsert(true));
+		if (result != null) {
+			blocksLoaded.increment();
+			bytesLoaded.add(bytes.length);
+		}
+		return mongoBlock;
 
 	}
 
@@ -335,6 +734,11 @@ public class MongoFile implements NosqlFile {
 		return blockSize;
 	}
 
+	@Override
+	public void setCacheWrites(boolean cacheWrites) {
+		this.cacheWrites = cacheWrites;
+	}
+
 	@Override
 	public long getChecksum() {
 		return crc.getValue();
@@ -345,65 +749,109 @@ public class MongoFile implements NosqlFile {
 		crc.reset();
 	}
 
+	protected MongoDirectory getMongoDirectory() {
+		return mongoDirectory;
+	}
+
+	protected boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Called when the file is deleted, blocks not yet written are dropped
+	 */
 	@Override
 	public void close() {
-		currentWriteBlock = null;
-		currentReadBlock = null;
+		closed = true;
+		releaseWriteBlock();
+		invalidateDiskBlocks(0, (int) ((fileLength + blockSize - 1) / blockSize));
+	}
+
+	/**
+	 * Waits for the bulk writes that took blocks of this file before it was closed.  Blocks being written stay dirty so they are still
+	 * cached, and writes started after the close drop the blocks of the file
+	 */
+	void awaitInFlightFlushes() throws IOException {
+		BlockCache blockCache = cache;
+		List<CompletableFuture<Void>> inFlight = new ArrayList<>();
+		int blocks = (int) ((fileLength + blockSize - 1) / blockSize);
+		for (int block = 0; block < blocks; block++) {
+			MongoBlock mb = blockCache.getIfPresent(MongoBlock.computeBlockKey(this, block));
+			if (mb != null && mb.mongoFile == this) {
+				synchronized (mb.lock) {
+					if (mb.inFlightFlush != null) {
+						inFlight.add(mb.inFlightFlush);
+					}
+				}
+			}
+		}
+
+		try {
+			CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for block writes of deleted file <" + fileName + "> of index <" + indexName + ">", e);
+		}
+		catch (ExecutionException e) {
+			//a failed bulk write may still have stored some of its blocks, they are deleted with the rest of the file
+		}
+	}
+
+	private void invalidateDiskBlocks(int fromBlock, int toBlock) {
+		DiskBlockCache disk = diskCache;
+		if (disk != null) {
+			disk.invalidate(this, fromBlock, toBlock);
+		}
 	}
 
 	@Override
 	public String toString() {
 		return "MongoFile{" + "mongoDirectory=" + mongoDirectory + ", indexNumber=" + indexNumber + ", fileNumber=" + fileNumber + ", indexName='" + indexName
 				+ '\'' + ", blockSize=" + blockSize + ", fileLength=" + fileLength + ", lastModified=" + lastModified + ", fileName='" + fileName + '\''
-				+ ", currentReadBlock=" + currentReadBlock + ", currentWriteBlock=" + currentWriteBlock + ", dirtyBlocks=" + dirtyBlocks + ", crc=" + crc + '}';
+				+ ", currentWriteBlock=" + currentWriteBlock + ", dirtyBlocks=" + dirtyBlocks + ", crc=" + crc + '}';
 	}
 
 	@Override
-	public int readInt(long position) throws IOException {
+	public int readInt(ReadCursor cursor, long position) throws IOException {
 
 		int block = (int) (position / blockSize);
 		int blockOffset = (int) (position - (block * blockSize));
 
-		int readSize = Math.min(blockSize - blockOffset, 4);
-
-		MongoBlock mb = currentReadBlock;
+		if (blockSize - blockOffset >= 4) {
+			while (true) {
+				MongoBlock mb = getReadBlock(cursor, block);
 
-		if (mb == null || block != mb.blockNumber) {
-			currentReadBlock = mb = getMongoBlock(block);
-		}
-
-		if (readSize == 4) {
-			byte[] buffer = mb.bytes;
-			return ((buffer[blockOffset++] & 0xFF) << 24) | ((buffer[blockOffset++] & 0xFF) << 16) | ((buffer[blockOffset++] & 0xFF) << 8) | (
-					buffer[blockOffset++] & 0xFF);
+				long stamp = mb.stampedLock.tryOptimisticRead();
+				int i = mb.buffer.getInt(blockOffset);
+				if (mb.stampedLock.validate(stamp)) {
+					return i;
+				}
+				cursor.block = null;
+			}
 		}
-		return ((readByte(position++) & 0xFF) << 24) | ((readByte(position++) & 0xFF) << 16) | ((readByte(position++) & 0xFF) << 8) | (readByte(position++)
-				& 0xFF);
+		return ((readByte(cursor, position++) & 0xFF) << 24) | ((readByte(cursor, position++) & 0xFF) << 16) | ((readByte(cursor, position++) & 0xFF) << 8)
+				| (readByte(cursor, position++) & 0xFF);
 	}
 
 	@Override
-	public long readLong(long position) throws IOException {
+	public long readLong(ReadCursor cursor, long position) throws IOException {
 		int block = (int) (position / blockSize);
 		int blockOffset = (int) (position - (block * blockSize));
 
-		int readSize = Math.min(blockSize - blockOffset, 8);
-
-		MongoBlock mb = currentReadBlock;
+		if (blockSize - blockOffset >= 8) {
+			while (true) {
+				MongoBlock mb = getReadBlock(cursor, block);
 
-		if (mb == null || block != mb.blockNumber) {
-			currentReadBlock = mb = getMongoBlock(block);
-		}
-
-		if (readSize == 8) {
-			byte[] buffer = mb.bytes;
-			final int i1 = ((buffer[blockOffset++] & 0xff) << 24) | ((buffer[blockOffset++] & 0xff) << 16) | ((buffer[blockOffset++] & 0xff) << 8) | (
-					buffer[blockOffset++] & 0xff);
-			final int i2 = ((buffer[blockOffset++] & 0xff) << 24) | ((buffer[blockOffset++] & 0xff) << 16) | ((buffer[blockOffset++] & 0xff) << 8) | (
-					buffer[blockOffset++] & 0xff);
-			return (((long) i1) << 32) | (i2 & 0xFFFFFFFFL);
+				long stamp = mb.stampedLock.tryOptimisticRead();
+				long l = mb.buffer.getLong(blockOffset);
+				if (mb.stampedLock.validate(stamp)) {
+					return l;
+				}
+				cursor.block = null;
+			}
 		}
-		return (((long) readInt(position)) << 32) | (readInt(position + 4) & 0xFFFFFFFFL);
+		return (((long) readInt(cursor, position)) << 32) | (readInt(cursor, position + 4) & 0xFFFFFFFFL);
 	}
 
-
 }
@@ -41,16 +41,21 @@ public interface NosqlFile {
 
 	void flush() throws IOException;
 
-	byte readByte(long position) throws IOException;
+	byte readByte(ReadCursor cursor, long position) throws IOException;
 
-	void readBytes(long position, byte[] b, int offset, int length) throws IOException;
+	void readBytes(ReadCursor cursor, long position, byte[] b, int offset, int length) throws IOException;
 
-	int readInt(long position) throws IOException;
+	int readInt(ReadCursor cursor, long position) throws IOException;
 
-	long readLong(long position) throws IOException;
+	long readLong(ReadCursor cursor, long position) throws IOException;
 
 	int getBlockSize();
 
+	/**
+	 * @param cacheWrites false to drop blocks from the cache once they are stored, for files such as merge outputs that are not read soon
+	 */
+	void setCacheWrites(boolean cacheWrites);
+
 	long getChecksum();
 
 	void resetChecksum();
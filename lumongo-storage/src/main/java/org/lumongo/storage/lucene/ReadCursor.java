@@ -0,0 +1,39 @@
+package org.lumongo.storage.lucene;
+
+/**
+ * Read position of one index input within a {@link NosqlFile}.  Each input, clone and slice has its own cursor so concurrent readers of
+ * the same file do not keep replacing each other's current block, and the access pattern of one reader can be tracked for read ahead
+ */
+public class ReadCursor {
+
+	/**
+	 * Set for merges and inputs read once, blocks that are not cached are read into the window instead of the shared cache
+	 */
+	protected final boolean uncached;
+
+	protected MongoBlock block;
+
+	protected int lastBlockNumber = -1;
+	protected int sequentialBlocks;
+
+	/**
+	 * Block number after the last block read ahead
+	 */
+	protected int readAheadTo;
+
+	/**
+	 * Blocks of an uncached cursor from the last query, window[i] holds block windowStart + i.  Their buffers are reused by the next query
+	 */
+	protected MongoBlock[] window;
+	protected int windowStart;
+	protected int windowCount;
+
+	public ReadCursor() {
+		this(false);
+	}
+
+	public ReadCursor(boolean uncached) {
+		this.uncached = uncached;
+	}
+
+}
@@ -1,5 +1,9 @@
 package org.lumongo.util;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -34,4 +38,20 @@ public class LockHandler {
 		int index = segmentIndexer.getIndex(h);
 		return readWriteLock[index];
 	}
+
+	/**
+	 * Returns the distinct locks covering the given ids in a consistent order so that multiple locks can be taken without deadlocking
+	 */
+	public List<ReadWriteLock> getLocks(Collection<String> uniqueIds) {
+		TreeSet<Integer> indexes = new TreeSet<>();
+		for (String uniqueId : uniqueIds) {
+			indexes.add(segmentIndexer.getIndex(uniqueId.hashCode()));
+		}
+
+		List<ReadWriteLock> locks = new ArrayList<>(indexes.size());
+		for (Integer index : indexes) {
+			locks.add(readWriteLock[index]);
+		}
+		return locks;
+	}
 }
@@ -0,0 +1,176 @@
+package org.lumongo.storage.lucene;
+
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class BlockCacheTest {
+
+	private static final int BLOCK_SIZE = 1024 * 1024;
+
+	//a single slab of 16 blocks
+	private static final long MAX_BYTES = 16 * BLOCK_SIZE;
+
+	private MemoryMongo memoryMongo;
+	private MongoDirectory mongoDirectory;
+	private MongoFile mongoFile;
+
+	@BeforeClass
+	public void setup() throws IOException {
+		memoryMongo = new MemoryMongo();
+		mongoDirectory = new MongoDirectory(memoryMongo.getMongo(), "test", "blockCacheTest", false, BLOCK_SIZE);
+		mongoFile = mongoDirectory.getFileHandle("cached", true);
+	}
+
+	private MongoBlock load(BlockCache blockCache, int blockNumber) throws IOException {
+		return blockCache.get(MongoBlock.computeBlockKey(mongoFile, blockNumber), () -> {
+			MongoBlock mongoBlock = new MongoBlock(mongoFile, blockNumber, blockCache.allocate(BLOCK_SIZE));
+			mongoBlock.load(new byte[] { (byte) blockNumber });
+			return mongoBlock;
+		});
+	}
+
+	private MongoBlock getIfPresent(BlockCache blockCache, int blockNumber) {
+		return blockCache.getIfPresent(MongoBlock.computeBlockKey(mongoFile, blockNumber));
+	}
+
+	@Test
+	public void testScanResistance() throws IOException {
+		BlockCache blockCache = new BlockCache(MAX_BYTES, new BlockFlusher(1));
+
+		MongoBlock hot = load(blockCache, 0);
+		assertSame(hot, load(blockCache, 0));
+
+		for (int i = 1; i <= 200; i++) {
+			load(blockCache, i);
+		}
+
+		assertSame(hot, getIfPresent(blockCache, 0));
+		assertEquals(BlockCache.MAIN_QUEUE, hot.queue);
+		assertEquals(MAX_BYTES, blockCache.getAllocatedBytes());
+		assertEquals(16, blockCache.getSize());
+		assertNull(getIfPresent(blockCache, 1));
+
+		//evicted from probation recently so it goes straight to the main queue
+		MongoBlock reloaded = load(blockCache, 1);
+		assertEquals(BlockCache.MAIN_QUEUE, reloaded.queue);
+
+		MongoBlock once = load(blockCache, 1000);
+		assertEquals(BlockCache.SMALL_QUEUE, once.queue);
+	}
+
+	@Test
+	public void testPinnedNotEvicted() throws IOException {
+		BlockCache blockCache = new BlockCache(MAX_BYTES, new BlockFlusher(1));
+
+		MongoBlock pinned = load(blockCache, 0);
+		long stamp = pinned.stampedLock.tryReadLock();
+		assertTrue(stamp != 0);
+
+		for (int i = 1; i <= 100; i++) {
+			load(blockCache, i);
+		}
+		assertSame(pinned, getIfPresent(blockCache, 0));
+
+		pinned.stampedLock.unlockRead(stamp);
+		for (int i = 101; i <= 200; i++) {
+			load(blockCache, i);
+		}
+		assertNull(getIfPresent(blockCache, 0));
+		//readers still holding the evicted block fail validation and look it up again
+		assertTrue(pinned.stampedLock.isWriteLocked());
+	}
+
+	@Test
+	public void testDirtyNotEvicted() throws Exception {
+		BlockCache blockCache = new BlockCache(MAX_BYTES, new BlockFlusher(1));
+
+		MongoBlock dirty = load(blockCache, 0);
+		dirty.markDirty(1);
+
+		memoryMongo.failWrites = true;
+		try {
+			for (int i = 1; i <= 100; i++) {
+				load(blockCache, i);
+			}
+			assertSame(dirty, getIfPresent(blockCache, 0));
+			assertTrue(dirty.dirty);
+		}
+		finally {
+			memoryMongo.failWrites = false;
+		}
+
+		new BlockFlusher(1).flush(dirty).get();
+		assertFalse(dirty.dirty);
+		for (int i = 101; i <= 200; i++) {
+			load(blockCache, i);
+		}
+		assertNull(getIfPresent(blockCache, 0));
+		assertEquals(MAX_BYTES, blockCache.getAllocatedBytes());
+	}
+
+	@Test
+	public void testShrink() throws IOException {
+		BlockCache blockCache = new BlockCache(MAX_BYTES, new BlockFlusher(1));
+		for (int i = 0; i < 16; i++) {
+			load(blockCache, i);
+		}
+
+		blockCache.setMaxBytes(MAX_BYTES / 2);
+		assertEquals(0, blockCache.getAllocatedBytes());
+		assertEquals(0, blockCache.getSize());
+	}
+
+	@Test
+	public void testOptimisticReadRetry() throws IOException {
+		MongoDirectory retryDirectory = new MongoDirectory(memoryMongo.getMongo(), "test", "optimisticReadTest", false, 1024);
+		DistributedDirectory directory = new DistributedDirectory(retryDirectory);
+
+		byte[] bytes = new byte[4096];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (i * 31);
+		}
+		try (IndexOutput indexOutput = directory.createOutput("retry", IOContext.DEFAULT)) {
+			indexOutput.writeBytes(bytes, bytes.length);
+		}
+		MongoFile retryFile = retryDirectory.getFileHandle("retry");
+
+		//a block evicted after the cursor took it, its slot now holds another block
+		MongoBlock evicted = new MongoBlock(retryFile, 1, BlockCache.allocateUncached(1024));
+		evicted.load(new byte[1024]);
+		evicted.stampedLock.writeLock();
+
+		ReadCursor cursor = new ReadCursor();
+		cursor.block = evicted;
+		assertEquals(bytes[1025], retryFile.readByte(cursor, 1025));
+		assertNotSame(evicted, cursor.block);
+
+		cursor.block = evicted;
+		assertEquals(ByteBuffer.wrap(bytes).getInt(1028), retryFile.readInt(cursor, 1028));
+
+		cursor.block = evicted;
+		assertEquals(ByteBuffer.wrap(bytes).getLong(1032), retryFile.readLong(cursor, 1032));
+
+		cursor.block = evicted;
+		byte[] read = new byte[100];
+		retryFile.readBytes(cursor, 1100, read, 0, read.length);
+		for (int i = 0; i < read.length; i++) {
+			assertEquals(bytes[1100 + i], read[i]);
+		}
+		assertNotNull(cursor.block);
+
+		directory.close();
+	}
+}
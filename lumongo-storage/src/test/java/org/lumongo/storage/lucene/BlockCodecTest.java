@@ -0,0 +1,120 @@
+package org.lumongo.storage.lucene;
+
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class BlockCodecTest {
+
+	private static final int BLOCK_SIZE = 4096;
+
+	private static byte[] getCompressible(int length) {
+		Random random = new Random(1);
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) ('a' + random.nextInt(4));
+		}
+		return bytes;
+	}
+
+	private static void assertBytes(byte[] expected, byte[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i]);
+		}
+	}
+
+	private static void assertRead(byte[] expected, IndexInput indexInput) throws IOException {
+		byte[] read = new byte[expected.length];
+		indexInput.readBytes(read, 0, read.length);
+		assertBytes(expected, read);
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		byte[] bytes = getCompressible(BLOCK_SIZE);
+		for (BlockCodec blockCodec : new BlockCodec[] { BlockCodec.LZ4, BlockCodec.DEFLATE }) {
+			byte[] compressed = blockCodec.compress(bytes);
+			assertNotNull(compressed);
+			assertTrue(compressed.length < bytes.length);
+			assertBytes(bytes, blockCodec.decompress(compressed, bytes.length));
+		}
+	}
+
+	@Test
+	public void testNotCompressed() throws IOException {
+		assertNull(BlockCodec.NONE.compress(getCompressible(BLOCK_SIZE)));
+		assertNull(BlockCodec.LZ4.compress(new byte[0]));
+
+		//bytes that do not get smaller are stored as they are
+		byte[] random = new byte[BLOCK_SIZE];
+		new Random(1).nextBytes(random);
+		assertNull(BlockCodec.LZ4.compress(random));
+		assertNull(BlockCodec.DEFLATE.compress(random));
+	}
+
+	@Test
+	public void testStoredCompressed() throws IOException {
+		MemoryMongo memoryMongo = new MemoryMongo();
+		DistributedDirectory directory = new DistributedDirectory(
+				new MongoDirectory(memoryMongo.getMongo(), "test", "blockCodecTest", false, BLOCK_SIZE, BlockCodec.LZ4));
+
+		byte[] bytes = getCompressible(2 * BLOCK_SIZE + 100);
+		try (IndexOutput indexOutput = directory.createOutput("compressed", IOContext.DEFAULT)) {
+			indexOutput.writeBytes(bytes, bytes.length);
+		}
+
+		Document stored = memoryMongo.getBlock(0, 2);
+		assertEquals(BlockCodec.LZ4.name(), stored.getString(MongoDirectory.CODEC));
+		assertEquals(100, stored.getInteger(MongoDirectory.UNCOMPRESSED_LENGTH).intValue());
+
+		MongoFile.clearCache();
+		assertRead(bytes, directory.openInput("compressed", IOContext.DEFAULT));
+		assertRead(bytes, directory.openInput("compressed", IOContext.READONCE));
+		directory.close();
+	}
+
+	@Test
+	public void testLegacyBlocks() throws IOException {
+		MemoryMongo memoryMongo = new MemoryMongo();
+
+		//blocks written before codecs were added are full blocks with no codec
+		byte[] bytes = getCompressible(BLOCK_SIZE + 500);
+		byte[] block1 = new byte[BLOCK_SIZE];
+		System.arraycopy(bytes, BLOCK_SIZE, block1, 0, 500);
+		for (int blockNumber = 0; blockNumber < 2; blockNumber++) {
+			Document block = new Document();
+			block.put(MongoDirectory.FILE_NUMBER, (short) 0);
+			block.put(MongoDirectory.BLOCK_NUMBER, blockNumber);
+			block.put(MongoDirectory.BYTES, new Binary(blockNumber == 0 ? Arrays.copyOf(bytes, BLOCK_SIZE) : block1));
+			memoryMongo.putBlock(block);
+		}
+		Document file = new Document();
+		file.put(MongoDirectory.FILE_NUMBER, (short) 0);
+		file.put(MongoDirectory.FILE_NAME, "legacy");
+		file.put(MongoDirectory.LENGTH, (long) bytes.length);
+		file.put(MongoDirectory.LAST_MODIFIED, System.currentTimeMillis());
+		file.put(MongoDirectory.BLOCK_SIZE, BLOCK_SIZE);
+		memoryMongo.files.put(0, file);
+
+		//the directory codec only applies to blocks written from now on
+		DistributedDirectory directory = new DistributedDirectory(
+				new MongoDirectory(memoryMongo.getMongo(), "test", "legacyBlockTest", false, BLOCK_SIZE, BlockCodec.DEFLATE));
+		MongoFile.clearCache();
+		assertRead(bytes, directory.openInput("legacy", IOContext.DEFAULT));
+		assertRead(bytes, directory.openInput("legacy", IOContext.READONCE));
+		directory.close();
+	}
+}
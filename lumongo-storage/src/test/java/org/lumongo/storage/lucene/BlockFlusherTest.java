@@ -0,0 +1,147 @@
+package org.lumongo.storage.lucene;
+
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+public class BlockFlusherTest {
+
+	private static final int BLOCK_SIZE = 1024;
+
+	private MemoryMongo memoryMongo;
+	private MongoDirectory mongoDirectory;
+
+	@BeforeClass
+	public void setup() throws IOException {
+		memoryMongo = new MemoryMongo();
+		mongoDirectory = new MongoDirectory(memoryMongo.getMongo(), "test", "blockFlusherTest", false, BLOCK_SIZE);
+	}
+
+	private static MongoBlock dirtyBlock(MongoFile mongoFile, int blockNumber, int length) {
+		MongoBlock mongoBlock = new MongoBlock(mongoFile, blockNumber, BlockCache.allocateUncached(BLOCK_SIZE));
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (blockNumber + i);
+		}
+		mongoBlock.load(bytes);
+		mongoBlock.markDirty(length);
+		return mongoBlock;
+	}
+
+	@Test
+	public void testFailedWriteStaysDirty() throws Exception {
+		BlockFlusher flusher = new BlockFlusher(1);
+		MongoFile mongoFile = mongoDirectory.getFileHandle("failed", true);
+		MongoBlock mongoBlock = dirtyBlock(mongoFile, 0, 100);
+
+		memoryMongo.failWrites = true;
+		try {
+			flusher.flush(mongoBlock).get();
+			fail("Expected the flush to fail");
+		}
+		catch (ExecutionException e) {
+			//expected
+		}
+		finally {
+			memoryMongo.failWrites = false;
+		}
+
+		assertTrue(mongoBlock.dirty);
+		assertEquals(1, flusher.getFailedBulkWrites());
+		assertNull(memoryMongo.getBlock(mongoFile.fileNumber, 0));
+
+		flusher.flush(mongoBlock).get();
+		assertFalse(mongoBlock.dirty);
+		assertEquals(1, flusher.getBulkWrites());
+
+		//a partial block is stored trimmed
+		Document stored = memoryMongo.getBlock(mongoFile.fileNumber, 0);
+		assertNotNull(stored);
+		assertEquals(100, ((Binary) stored.get(MongoDirectory.BYTES)).getData().length);
+	}
+
+	@Test
+	public void testCoalesce() throws Exception {
+		BlockFlusher flusher = new BlockFlusher(1);
+		MongoFile mongoFile = mongoDirectory.getFileHandle("coalesce", true);
+		MongoBlock mongoBlock = dirtyBlock(mongoFile, 0, BLOCK_SIZE);
+
+		CompletableFuture<Void> flushed;
+		//the flusher can not take the block while its lock is held
+		synchronized (mongoBlock.lock) {
+			flushed = flusher.flush(mongoBlock);
+			mongoBlock.markDirty(BLOCK_SIZE);
+			assertSame(flushed, flusher.flush(mongoBlock));
+		}
+		flushed.get();
+
+		assertFalse(mongoBlock.dirty);
+		assertEquals(1, flusher.getBulkWrites());
+		assertSame(flusher.flush(mongoBlock), flusher.flush(mongoBlock));
+		assertTrue(flusher.flush(mongoBlock).isDone());
+	}
+
+	@Test
+	public void testClosedFileDropped() throws Exception {
+		BlockFlusher flusher = new BlockFlusher(1);
+		MongoFile mongoFile = mongoDirectory.getFileHandle("closed", true);
+		MongoBlock mongoBlock = dirtyBlock(mongoFile, 0, BLOCK_SIZE);
+
+		mongoFile.close();
+		flusher.flush(mongoBlock).get();
+
+		assertFalse(mongoBlock.dirty);
+		assertEquals(0, flusher.getBulkWrites());
+		assertNull(memoryMongo.getBlock(mongoFile.fileNumber, 0));
+	}
+
+	@Test
+	public void testDeleteWaitsForInFlightWrite() throws Exception {
+		MemoryMongo gatedMongo = new MemoryMongo();
+		DistributedDirectory directory = new DistributedDirectory(new MongoDirectory(gatedMongo.getMongo(), "test", "inFlightDeleteTest", false, BLOCK_SIZE));
+		gatedMongo.writeGate = new CountDownLatch(1);
+
+		//moving on to the second block sends the first one to be written behind
+		IndexOutput indexOutput = directory.createOutput("inFlight", IOContext.DEFAULT);
+		indexOutput.writeBytes(new byte[BLOCK_SIZE + 1], BLOCK_SIZE + 1);
+		MongoFile mongoFile = (MongoFile) directory.nosqlDirectory.getFileHandle("inFlight");
+		long timeout = System.currentTimeMillis() + 10000;
+		while (gatedMongo.gatedWrites.get() == 0) {
+			assertTrue("Expected the block to be written", System.currentTimeMillis() < timeout);
+			Thread.sleep(10);
+		}
+
+		CompletableFuture<Void> deleted = CompletableFuture.runAsync(() -> {
+			try {
+				directory.deleteFile("inFlight");
+			}
+			catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		Thread.sleep(200);
+		assertFalse(deleted.isDone());
+
+		//the write lands before the delete so it can not leave blocks behind for the file number to be reused with
+		gatedMongo.writeGate.countDown();
+		deleted.get();
+		assertNull(gatedMongo.getBlock(mongoFile.fileNumber, 0));
+		assertTrue(gatedMongo.blocks.isEmpty());
+	}
+}
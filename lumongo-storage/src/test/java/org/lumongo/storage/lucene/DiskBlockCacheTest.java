@@ -0,0 +1,191 @@
+package org.lumongo.storage.lucene;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.fail;
+
+public class DiskBlockCacheTest {
+
+	private static final int BLOCK_SIZE = 1024;
+	private static final long MAX_BYTES = 16 * (BLOCK_SIZE + 32);
+
+	//file header then the slot header of the first slot
+	private static final int FIRST_SLOT_BYTES = 4096 + 32;
+
+	private MemoryMongo memoryMongo;
+	private Path path;
+
+	@BeforeClass
+	public void setup() {
+		memoryMongo = new MemoryMongo();
+	}
+
+	@BeforeMethod
+	public void createPath() throws IOException {
+		path = Files.createTempFile("diskBlockCacheTest", ".cache");
+	}
+
+	@AfterMethod
+	public void deletePath() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	private static MongoBlock cleanBlock(MongoFile mongoFile, int blockNumber, int length) {
+		MongoBlock mongoBlock = new MongoBlock(mongoFile, blockNumber, BlockCache.allocateUncached(BLOCK_SIZE));
+		mongoBlock.load(getBytes(blockNumber, length));
+		return mongoBlock;
+	}
+
+	private static byte[] getBytes(int blockNumber, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (blockNumber * 7 + i);
+		}
+		return bytes;
+	}
+
+	private static void assertBytes(byte[] expected, byte[] actual) {
+		assertNotNull(actual);
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i]);
+		}
+	}
+
+	@Test
+	public void testStoreAndInvalidate() throws IOException {
+		MongoDirectory mongoDirectory = new MongoDirectory(memoryMongo.getMongo(), "test", "diskStoreTest", false, BLOCK_SIZE);
+		MongoFile mongoFile = mongoDirectory.getFileHandle("stored", true);
+
+		DiskBlockCache disk = new DiskBlockCache(path, MAX_BYTES, BLOCK_SIZE);
+		disk.store(cleanBlock(mongoFile, 0, BLOCK_SIZE));
+		disk.store(cleanBlock(mongoFile, 1, 100));
+
+		assertBytes(getBytes(0, BLOCK_SIZE), disk.read(mongoFile, 0));
+		assertBytes(getBytes(1, 100), disk.read(mongoFile, 1));
+		assertNull(disk.read(mongoFile, 2));
+
+		//dirty blocks are not in Mongo yet so they are never stored
+		MongoBlock dirty = cleanBlock(mongoFile, 2, BLOCK_SIZE);
+		dirty.markDirty(BLOCK_SIZE);
+		disk.store(dirty);
+		assertNull(disk.read(mongoFile, 2));
+
+		disk.invalidate(mongoFile, 0, 1);
+		assertNull(disk.read(mongoFile, 0));
+		assertNotNull(disk.read(mongoFile, 1));
+		assertEquals(1, disk.getSize());
+		disk.close();
+	}
+
+	@Test
+	public void testGenerationMismatch() throws IOException {
+		MongoDirectory mongoDirectory = new MongoDirectory(memoryMongo.getMongo(), "test", "diskGenerationTest", false, BLOCK_SIZE);
+		MongoFile mongoFile = mongoDirectory.getFileHandle("generation", true);
+
+		DiskBlockCache disk = new DiskBlockCache(path, MAX_BYTES, BLOCK_SIZE);
+		disk.store(cleanBlock(mongoFile, 0, BLOCK_SIZE));
+		assertNotNull(disk.read(mongoFile, 0));
+
+		//the file was written again since the block was stored
+		mongoFile.setLastModified(mongoFile.getLastModified() + 1);
+		assertNull(disk.read(mongoFile, 0));
+		disk.close();
+	}
+
+	@Test
+	public void testRestartClaim() throws IOException {
+		MongoDirectory mongoDirectory = new MongoDirectory(memoryMongo.getMongo(), "test", "diskRestartTest", false, BLOCK_SIZE);
+		MongoFile mongoFile = mongoDirectory.getFileHandle("restart", true);
+
+		DiskBlockCache disk = new DiskBlockCache(path, MAX_BYTES, BLOCK_SIZE);
+		for (int blockNumber = 0; blockNumber < 4; blockNumber++) {
+			disk.store(cleanBlock(mongoFile, blockNumber, BLOCK_SIZE));
+		}
+		disk.close();
+
+		//the blocks are kept when the file is opened again, but only used once their directory claims them
+		DiskBlockCache reopened = new DiskBlockCache(path, MAX_BYTES, BLOCK_SIZE);
+		MongoDirectory reopenedDirectory = new MongoDirectory(memoryMongo.getMongo(), "test", "diskRestartTest", false, BLOCK_SIZE);
+		MongoFile reopenedFile = reopenedDirectory.getFileHandle("restart");
+		assertNull(reopened.read(reopenedFile, 0));
+
+		reopened.claim(reopenedDirectory);
+		assertEquals(4, reopened.getSize());
+		for (int blockNumber = 0; blockNumber < 4; blockNumber++) {
+			assertBytes(getBytes(blockNumber, BLOCK_SIZE), reopened.read(reopenedFile, blockNumber));
+		}
+
+		reopened.close();
+
+		//a cache file written with another block size is started over
+		DiskBlockCache resized = new DiskBlockCache(path, MAX_BYTES, BLOCK_SIZE / 2);
+		resized.claim(reopenedDirectory);
+		assertEquals(0, resized.getSize());
+		resized.close();
+	}
+
+	@Test
+	public void testTornSlot() throws IOException {
+		MongoDirectory mongoDirectory = new MongoDirectory(memoryMongo.getMongo(), "test", "diskTornTest", false, BLOCK_SIZE);
+		MongoFile mongoFile = mongoDirectory.getFileHandle("torn", true);
+
+		DiskBlockCache disk = new DiskBlockCache(path, MAX_BYTES, BLOCK_SIZE);
+		disk.store(cleanBlock(mongoFile, 0, BLOCK_SIZE));
+		assertNotNull(disk.read(mongoFile, 0));
+
+		//a crash part way through writing the slot leaves bytes that do not match the checksum
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 0x55, 0x55, 0x55 }), FIRST_SLOT_BYTES + 10);
+		}
+		assertNull(disk.read(mongoFile, 0));
+		disk.close();
+
+		DiskBlockCache reopened = new DiskBlockCache(path, MAX_BYTES, BLOCK_SIZE);
+		reopened.claim(mongoDirectory);
+		assertNull(reopened.read(mongoFile, 0));
+		reopened.close();
+	}
+
+	@Test
+	public void testFileInUse() throws IOException {
+		MongoDirectory mongoDirectory = new MongoDirectory(memoryMongo.getMongo(), "test", "diskInUseTest", false, BLOCK_SIZE);
+		MongoFile mongoFile = mongoDirectory.getFileHandle("inUse", true);
+
+		DiskBlockCache disk = new DiskBlockCache(path, MAX_BYTES, BLOCK_SIZE);
+		disk.store(cleanBlock(mongoFile, 0, BLOCK_SIZE));
+
+		//a second cache on the same file would overwrite the slots of the first
+		try {
+			new DiskBlockCache(path, MAX_BYTES, BLOCK_SIZE);
+			fail("Expected the cache file to be in use");
+		}
+		catch (IOException e) {
+			//expected
+		}
+		assertBytes(getBytes(0, BLOCK_SIZE), disk.read(mongoFile, 0));
+
+		//a closed cache releases the file and keeps nothing more in it
+		disk.close();
+		disk.store(cleanBlock(mongoFile, 1, BLOCK_SIZE));
+		assertNull(disk.read(mongoFile, 1));
+
+		DiskBlockCache reopened = new DiskBlockCache(path, MAX_BYTES, BLOCK_SIZE);
+		reopened.claim(mongoDirectory);
+		assertBytes(getBytes(0, BLOCK_SIZE), reopened.read(mongoFile, 0));
+		reopened.close();
+	}
+}
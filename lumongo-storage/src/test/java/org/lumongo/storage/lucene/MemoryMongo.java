@@ -0,0 +1,217 @@
+package org.lumongo.storage.lucene;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Mongo client mock keeping the files and blocks collections of every directory in memory and answering the queries {@link MongoDirectory}
+ * and {@link MongoFile} make
+ */
+class MemoryMongo {
+
+	final ConcurrentSkipListMap<Integer, Document> files;
+	final ConcurrentHashMap<Long, Document> blocks;
+	final AtomicInteger blockQueries;
+
+	/**
+	 * Fails bulk writes of blocks while set
+	 */
+	volatile boolean failWrites;
+
+	/**
+	 * Bulk writes of blocks wait for the latch while it is set, counted in gatedWrites while they wait
+	 */
+	volatile CountDownLatch writeGate;
+	final AtomicInteger gatedWrites;
+
+	private final MongoClient mongo;
+
+	@SuppressWarnings("unchecked")
+	MemoryMongo() {
+		this.files = new ConcurrentSkipListMap<>();
+		this.blocks = new ConcurrentHashMap<>();
+		this.blockQueries = new AtomicInteger();
+		this.gatedWrites = new AtomicInteger();
+
+		MongoCollection<Document> filesCollection = mock(MongoCollection.class);
+		when(filesCollection.find()).thenAnswer(invocation -> findIterable(new ArrayList<>(files.values())));
+		when(filesCollection.find(any(Bson.class))).thenAnswer(invocation -> {
+			Document query = (Document) invocation.getArguments()[0];
+			List<Document> found = new ArrayList<>();
+			for (Document document : files.values()) {
+				if (document.get(MongoDirectory.FILE_NAME).equals(query.get(MongoDirectory.FILE_NAME))) {
+					found.add(document);
+				}
+			}
+			return findIterable(found);
+		});
+		when(filesCollection.replaceOne(any(Bson.class), any(Document.class), any(UpdateOptions.class))).thenAnswer(invocation -> {
+			Document document = (Document) invocation.getArguments()[1];
+			files.put(getFileNumber(document), document);
+			return null;
+		});
+		when(filesCollection.deleteMany(any(Bson.class))).thenAnswer(invocation -> {
+			files.remove(getFileNumber((Document) invocation.getArguments()[0]));
+			return null;
+		});
+
+		MongoCollection<Document> blocksCollection = mock(MongoCollection.class);
+		when(blocksCollection.find(any(Bson.class))).thenAnswer(invocation -> {
+			blockQueries.incrementAndGet();
+			return findIterable(findBlocks((Document) invocation.getArguments()[0]));
+		});
+		when(blocksCollection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenAnswer(invocation -> {
+			CountDownLatch gate = writeGate;
+			if (gate != null) {
+				gatedWrites.incrementAndGet();
+				gate.await();
+				gatedWrites.decrementAndGet();
+			}
+			if (failWrites) {
+				throw new MongoException("Write failed");
+			}
+			for (ReplaceOneModel<Document> model : (List<ReplaceOneModel<Document>>) invocation.getArguments()[0]) {
+				Document document = model.getReplacement();
+				blocks.put(getKey(getFileNumber(document), ((Number) document.get(MongoDirectory.BLOCK_NUMBER)).intValue()), document);
+			}
+			return null;
+		});
+		when(blocksCollection.deleteMany(any(Bson.class))).thenAnswer(invocation -> {
+			int fileNumber = getFileNumber((Document) invocation.getArguments()[0]);
+			blocks.keySet().removeIf(key -> (key >>> 32) == fileNumber);
+			return null;
+		});
+
+		MongoDatabase database = mock(MongoDatabase.class);
+		when(database.getCollection(anyString())).thenAnswer(
+				invocation -> ((String) invocation.getArguments()[0]).endsWith(MongoDirectory.BLOCKS_SUFFIX) ? blocksCollection : filesCollection);
+
+		mongo = mock(MongoClient.class);
+		when(mongo.getDatabase(anyString())).thenReturn(database);
+	}
+
+	MongoClient getMongo() {
+		return mongo;
+	}
+
+	Document getBlock(int fileNumber, int blockNumber) {
+		return blocks.get(getKey(fileNumber, blockNumber));
+	}
+
+	void putBlock(Document document) {
+		blocks.put(getKey(getFileNumber(document), ((Number) document.get(MongoDirectory.BLOCK_NUMBER)).intValue()), document);
+	}
+
+	private static int getFileNumber(Document document) {
+		return ((Number) document.get(MongoDirectory.FILE_NUMBER)).intValue();
+	}
+
+	private static long getKey(int fileNumber, int blockNumber) {
+		return ((long) fileNumber << 32) | blockNumber;
+	}
+
+	/**
+	 * Answers a single block number, a range or a list
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Document> findBlocks(Document query) {
+		int fileNumber = getFileNumber(query);
+		Object blockNumber = query.get(MongoDirectory.BLOCK_NUMBER);
+
+		List<Integer> blockNumbers = new ArrayList<>();
+		if (blockNumber instanceof Document) {
+			Document condition = (Document) blockNumber;
+			if (condition.containsKey("$in")) {
+				blockNumbers.addAll((List<Integer>) condition.get("$in"));
+			}
+			else {
+				for (int block = condition.getInteger("$gte"); block < condition.getInteger("$lt"); block++) {
+					blockNumbers.add(block);
+				}
+			}
+		}
+		else {
+			blockNumbers.add(((Number) blockNumber).intValue());
+		}
+
+		List<Document> found = new ArrayList<>(blockNumbers.size());
+		for (int block : blockNumbers) {
+			Document document = blocks.get(getKey(fileNumber, block));
+			if (document != null) {
+				found.add(document);
+			}
+		}
+		return found;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static FindIterable<Document> findIterable(List<Document> documents) {
+		FindIterable<Document> findIterable = mock(FindIterable.class);
+		when(findIterable.first()).thenReturn(documents.isEmpty() ? null : documents.get(0));
+		when(findIterable.iterator()).thenAnswer(invocation -> new ListCursor(documents.iterator()));
+		return findIterable;
+	}
+
+	private static class ListCursor implements MongoCursor<Document> {
+		private final Iterator<Document> iterator;
+
+		public ListCursor(Iterator<Document> iterator) {
+			this.iterator = iterator;
+		}
+
+		@Override
+		public void close() {
+
+		}
+
+		@Override
+		public boolean hasNext() {
+			return iterator.hasNext();
+		}
+
+		@Override
+		public Document next() {
+			return iterator.next();
+		}
+
+		@Override
+		public Document tryNext() {
+			return iterator.hasNext() ? iterator.next() : null;
+		}
+
+		@Override
+		public ServerCursor getServerCursor() {
+			return null;
+		}
+
+		@Override
+		public ServerAddress getServerAddress() {
+			return null;
+		}
+	}
+}
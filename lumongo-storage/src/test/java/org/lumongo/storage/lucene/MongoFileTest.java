@@ -0,0 +1,225 @@
+package org.lumongo.storage.lucene;
+
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.MergeInfo;
+import org.bson.types.Binary;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class MongoFileTest {
+
+	private static final int BLOCK_SIZE = 1024;
+
+	private MemoryMongo memoryMongo;
+	private int directories;
+
+	@BeforeClass
+	public void setup() {
+		memoryMongo = new MemoryMongo();
+		MongoFile.setReadAheadBlocks(8);
+	}
+
+	@AfterClass
+	public void tearDown() {
+		MongoFile.setReadAheadBlocks(MongoDirectory.DEFAULT_READ_AHEAD_BLOCKS);
+		MongoFile.clearCache();
+	}
+
+	private DistributedDirectory createDirectory() throws IOException {
+		return new DistributedDirectory(new MongoDirectory(memoryMongo.getMongo(), "test", "mongoFileTest" + (directories++), false, BLOCK_SIZE));
+	}
+
+	private static MongoFile getMongoFile(DistributedDirectory directory, String fileName) throws IOException {
+		return (MongoFile) directory.nosqlDirectory.getFileHandle(fileName);
+	}
+
+	private static byte[] getBytes(int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (i * 31 + (i / BLOCK_SIZE));
+		}
+		return bytes;
+	}
+
+	private static byte[] writeFile(DistributedDirectory directory, String fileName, int length, IOContext context) throws IOException {
+		byte[] bytes = getBytes(length);
+		try (IndexOutput indexOutput = directory.createOutput(fileName, context)) {
+			indexOutput.writeBytes(bytes, bytes.length);
+		}
+		return bytes;
+	}
+
+	private static void assertRead(byte[] bytes, IndexInput indexInput, long position, int length) throws IOException {
+		byte[] read = new byte[length];
+		indexInput.seek(position);
+		indexInput.readBytes(read, 0, length);
+		for (int i = 0; i < length; i++) {
+			assertEquals(bytes[(int) position + i], read[i]);
+		}
+	}
+
+	@Test
+	public void testSeparateCursors() throws IOException {
+		DistributedDirectory directory = createDirectory();
+		byte[] bytes = writeFile(directory, "cursors", 16 * BLOCK_SIZE, IOContext.DEFAULT);
+
+		IndexInput input = directory.openInput("cursors", IOContext.DEFAULT);
+		IndexInput clone = input.clone();
+		IndexInput slice = input.slice("slice", 5 * BLOCK_SIZE + 10, 4 * BLOCK_SIZE);
+
+		//interleaved readers on different blocks each keep their own position and block
+		for (int i = 0; i < 4; i++) {
+			assertRead(bytes, input, i * BLOCK_SIZE + 100, 50);
+			assertRead(bytes, clone, (15 - i) * BLOCK_SIZE + 200, 500);
+			assertEquals(bytes[5 * BLOCK_SIZE + 10 + i * BLOCK_SIZE], slice.readByte());
+			slice.seek((i + 1) * BLOCK_SIZE);
+		}
+
+		//an int across two blocks
+		int position = 3 * BLOCK_SIZE - 2;
+		int expected = ByteBuffer.wrap(bytes).getInt(position);
+		input.seek(position);
+		assertEquals(expected, input.readInt());
+
+		directory.close();
+	}
+
+	@Test
+	public void testSequentialReadAhead() throws IOException {
+		DistributedDirectory directory = createDirectory();
+		int blocks = 32;
+		byte[] bytes = writeFile(directory, "sequential", blocks * BLOCK_SIZE, IOContext.DEFAULT);
+		MongoFile.clearCache();
+
+		long readAhead = MongoFile.getBlocksReadAhead();
+		int queries = memoryMongo.blockQueries.get();
+
+		IndexInput input = directory.openInput("sequential", IOContext.DEFAULT);
+		for (int block = 0; block < blocks; block++) {
+			assertRead(bytes, input, block * BLOCK_SIZE, BLOCK_SIZE);
+		}
+
+		//the first block is read alone, then groups of eight
+		assertEquals(5, memoryMongo.blockQueries.get() - queries);
+		assertEquals(blocks - 1, MongoFile.getBlocksReadAhead() - readAhead);
+
+		directory.close();
+	}
+
+	@Test
+	public void testRandomNoReadAhead() throws IOException {
+		DistributedDirectory directory = createDirectory();
+		byte[] bytes = writeFile(directory, "random", 32 * BLOCK_SIZE, IOContext.DEFAULT);
+		MongoFile.clearCache();
+
+		long readAhead = MongoFile.getBlocksReadAhead();
+		int queries = memoryMongo.blockQueries.get();
+
+		IndexInput input = directory.openInput("random", IOContext.DEFAULT);
+		int[] blocks = { 20, 3, 11, 30, 7, 25 };
+		for (int block : blocks) {
+			assertRead(bytes, input, block * BLOCK_SIZE + 1, 10);
+		}
+
+		assertEquals(blocks.length, memoryMongo.blockQueries.get() - queries);
+		assertEquals(0, MongoFile.getBlocksReadAhead() - readAhead);
+		assertTrue(MongoFile.getCacheSize() >= blocks.length);
+
+		directory.close();
+	}
+
+	@Test
+	public void testNewFileWrite() throws IOException {
+		DistributedDirectory directory = createDirectory();
+		int queries = memoryMongo.blockQueries.get();
+
+		int length = 2 * BLOCK_SIZE + BLOCK_SIZE / 2;
+		byte[] bytes = writeFile(directory, "new", length, IOContext.DEFAULT);
+
+		//new blocks are created in the cache without looking for them in Mongo
+		assertEquals(queries, memoryMongo.blockQueries.get());
+
+		MongoFile mongoFile = getMongoFile(directory, "new");
+		assertEquals(BLOCK_SIZE, ((Binary) memoryMongo.getBlock(mongoFile.fileNumber, 1).get(MongoDirectory.BYTES)).getData().length);
+		//the tail block is stored trimmed
+		assertEquals(BLOCK_SIZE / 2, ((Binary) memoryMongo.getBlock(mongoFile.fileNumber, 2).get(MongoDirectory.BYTES)).getData().length);
+		assertNull(memoryMongo.getBlock(mongoFile.fileNumber, 3));
+
+		MongoFile.clearCache();
+		assertRead(bytes, directory.openInput("new", IOContext.DEFAULT), 0, length);
+
+		directory.close();
+	}
+
+	@Test
+	public void testFileNumberReused() throws IOException {
+		DistributedDirectory directory = createDirectory();
+		writeFile(directory, "deleted", 2 * BLOCK_SIZE, IOContext.DEFAULT);
+		short fileNumber = getMongoFile(directory, "deleted").fileNumber;
+		assertRead(getBytes(2 * BLOCK_SIZE), directory.openInput("deleted", IOContext.DEFAULT), 0, 2 * BLOCK_SIZE);
+		directory.deleteFile("deleted");
+
+		//blocks of the deleted file still cached under the same keys are replaced
+		byte[] bytes = new byte[BLOCK_SIZE + 10];
+		Arrays.fill(bytes, (byte) 7);
+		try (IndexOutput indexOutput = directory.createOutput("created", IOContext.DEFAULT)) {
+			indexOutput.writeBytes(bytes, bytes.length);
+		}
+		assertEquals(fileNumber, getMongoFile(directory, "created").fileNumber);
+		assertRead(bytes, directory.openInput("created", IOContext.DEFAULT), 0, bytes.length);
+
+		directory.close();
+	}
+
+	@Test
+	public void testUncachedRead() throws IOException {
+		DistributedDirectory directory = createDirectory();
+		int blocks = 20;
+		byte[] bytes = writeFile(directory, "uncached", blocks * BLOCK_SIZE, IOContext.DEFAULT);
+
+		for (IOContext context : new IOContext[] { IOContext.READONCE, new IOContext(new MergeInfo(1, blocks * BLOCK_SIZE, false, 1)) }) {
+			MongoFile.clearCache();
+			long loadedUncached = MongoFile.getBlocksLoadedUncached();
+			int queries = memoryMongo.blockQueries.get();
+
+			IndexInput input = directory.openInput("uncached", context);
+			for (int block = 0; block < blocks; block++) {
+				assertRead(bytes, input, block * BLOCK_SIZE, BLOCK_SIZE);
+			}
+
+			assertEquals(0, MongoFile.getCacheSize());
+			assertEquals(blocks, MongoFile.getBlocksLoadedUncached() - loadedUncached);
+			//the first block is read alone, then windows of eight
+			assertEquals(4, memoryMongo.blockQueries.get() - queries);
+		}
+
+		directory.close();
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void testMissingBlock() throws IOException {
+		DistributedDirectory directory = createDirectory();
+		byte[] bytes = writeFile(directory, "missing", 3 * BLOCK_SIZE, IOContext.DEFAULT);
+		MongoFile mongoFile = getMongoFile(directory, "missing");
+		memoryMongo.blocks.values().remove(memoryMongo.getBlock(mongoFile.fileNumber, 1));
+		MongoFile.clearCache();
+
+		try {
+			assertRead(bytes, directory.openInput("missing", IOContext.READONCE), 0, bytes.length);
+		}
+		finally {
+			directory.close();
+		}
+	}
+}